@@ -0,0 +1,74 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package jp.dip.komusubi.lunch.benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import jp.dip.komusubi.lunch.service.AccountService;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * account service benchmark, sign in by email and password.
+ * @author jun.ozeki
+ * @since 2013/06/29
+ */
+@BenchmarkMode({ Mode.Throughput, Mode.SampleTime })
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+@State(Scope.Thread)
+public class AccountServiceBenchmark {
+
+    private AccountService accountService;
+
+    @Setup
+    public void setUp(LunchatState state) {
+        accountService = state.getInstance(AccountService.class);
+    }
+
+    @Benchmark
+    public boolean signIn(LunchatState state) {
+        state.counter.operation();
+        return accountService.signIn(state.email(state.randomUser()), LunchatState.PASSWORD);
+    }
+
+    /**
+     * sign in at peak login concurrency, many users sign in just before the last order.
+     * @param state
+     * @return
+     */
+    @Benchmark
+    @Threads(16)
+    public boolean signInConcurrently(LunchatState state) {
+        state.counter.operation();
+        return accountService.signIn(state.email(state.randomUser()), LunchatState.PASSWORD);
+    }
+}
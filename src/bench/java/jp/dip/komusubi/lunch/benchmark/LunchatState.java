@@ -0,0 +1,250 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package jp.dip.komusubi.lunch.benchmark;
+
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+
+import javax.sql.DataSource;
+
+import jp.dip.komusubi.lunch.model.Authentication;
+import jp.dip.komusubi.lunch.module.DefaultAuthentication;
+import jp.dip.komusubi.lunch.module.dao.ContractDao;
+import jp.dip.komusubi.lunch.module.dao.DailyCounterDao;
+import jp.dip.komusubi.lunch.module.dao.GroupDao;
+import jp.dip.komusubi.lunch.module.dao.HealthDao;
+import jp.dip.komusubi.lunch.module.dao.OrderDao;
+import jp.dip.komusubi.lunch.module.dao.OrderLineDao;
+import jp.dip.komusubi.lunch.module.dao.ProductBatchDao;
+import jp.dip.komusubi.lunch.module.dao.ProductDao;
+import jp.dip.komusubi.lunch.module.dao.ReceiptDao;
+import jp.dip.komusubi.lunch.module.dao.ReceiptLineDao;
+import jp.dip.komusubi.lunch.module.dao.ShopDao;
+import jp.dip.komusubi.lunch.module.dao.UserDao;
+import jp.dip.komusubi.lunch.module.dao.jdbc.JdbcContractDao;
+import jp.dip.komusubi.lunch.module.dao.jdbc.JdbcDailyCounterDao;
+import jp.dip.komusubi.lunch.module.dao.jdbc.JdbcGroupDao;
+import jp.dip.komusubi.lunch.module.dao.jdbc.JdbcHealthDao;
+import jp.dip.komusubi.lunch.module.dao.jdbc.JdbcOrderDao;
+import jp.dip.komusubi.lunch.module.dao.jdbc.JdbcOrderLineDao;
+import jp.dip.komusubi.lunch.module.dao.jdbc.JdbcProductDao;
+import jp.dip.komusubi.lunch.module.dao.jdbc.JdbcReceiptDao;
+import jp.dip.komusubi.lunch.module.dao.jdbc.JdbcReceiptLineDao;
+import jp.dip.komusubi.lunch.module.dao.jdbc.JdbcShopDao;
+import jp.dip.komusubi.lunch.module.dao.jdbc.JdbcUserDao;
+import jp.dip.komusubi.lunch.module.database.Lunchat;
+import jp.dip.komusubi.lunch.module.resolver.DateResolver;
+import jp.dip.komusubi.lunch.module.resolver.DigestResolver;
+import jp.dip.komusubi.lunch.module.resolver.Resolvers;
+
+import org.apache.commons.dbcp.BasicDataSource;
+import org.apache.commons.lang3.time.DateUtils;
+import org.komusubi.common.protocol.smtp.SmtpServer;
+import org.komusubi.common.util.Resolver;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import com.google.inject.AbstractModule;
+import com.google.inject.Guice;
+import com.google.inject.Injector;
+import com.google.inject.TypeLiteral;
+import com.google.inject.name.Names;
+
+/**
+ * embedded h2 database seeded by Lunchat#configure and generated history.
+ * sizes are changed by jmh parameters, e.g. "-p users=1000 -p days=60".
+ * @author jun.ozeki
+ * @since 2013/06/29
+ */
+@State(Scope.Benchmark)
+public class LunchatState {
+
+    private static final String DRIVER_CLASS_NAME = "org.apache.empire.db.h2.DBDatabaseDriverH2";
+    private static final String JDBC_URL = "jdbc:h2:mem:lunchat-bench;DB_CLOSE_DELAY=-1";
+    public static final String PASSWORD = "password";
+
+    @Param("200")
+    public int users;
+    @Param("10")
+    public int groups;
+    @Param("3")
+    public int shops;
+    @Param("20")
+    public int days;
+
+    public final StatementCounter counter = new StatementCounter();
+    public Injector injector;
+    public JdbcTemplate jdbc;
+    private BasicDataSource dataSource;
+    private List<String> shopIds;
+    private Date today;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        new Lunchat(DRIVER_CLASS_NAME).configure(JDBC_URL, "sa", "");
+        dataSource = new BasicDataSource();
+        dataSource.setUrl(JDBC_URL);
+        dataSource.setUsername("sa");
+        dataSource.setPassword("");
+        dataSource.setDefaultAutoCommit(true);
+        dataSource.setMaxActive(20);
+        jdbc = new JdbcTemplate(dataSource);
+        today = DateUtils.truncate(new Date(), Calendar.DATE);
+        seed();
+
+        final DataSource counting = counter.wrap(dataSource);
+        injector = Guice.createInjector(new AbstractModule() {
+            @Override
+            protected void configure() {
+                bind(DataSource.class).toInstance(counting);
+                bind(UserDao.class).to(JdbcUserDao.class);
+                bind(ShopDao.class).to(JdbcShopDao.class);
+                bind(OrderDao.class).to(JdbcOrderDao.class);
+                bind(OrderLineDao.class).to(JdbcOrderLineDao.class);
+                bind(DailyCounterDao.class).to(JdbcDailyCounterDao.class);
+                bind(ReceiptDao.class).to(JdbcReceiptDao.class);
+                bindConstant().annotatedWith(Names.named("billing.fetch.size")).to(JdbcReceiptDao.DEFAULT_FETCH_SIZE);
+                bind(ReceiptLineDao.class).to(JdbcReceiptLineDao.class);
+                bind(HealthDao.class).to(JdbcHealthDao.class);
+                bind(GroupDao.class).to(JdbcGroupDao.class);
+                bind(ProductDao.class).to(JdbcProductDao.class);
+                bind(ProductBatchDao.class).to(JdbcProductDao.class);
+                bind(ContractDao.class).to(JdbcContractDao.class);
+                bind(SmtpServer.class).toInstance(new SmtpServer());
+                bind(Authentication.class).to(DefaultAuthentication.class);
+                bind(new TypeLiteral<Resolver<String>>() {}).annotatedWith(Names.named("digest")).to(DigestResolver.class);
+                bind(new TypeLiteral<Resolver<Date>>() {}).annotatedWith(Names.named("date")).to(DateResolver.class);
+                bind(new TypeLiteral<Resolver<Calendar>>() {}).annotatedWith(Names.named("calendar")).to(Resolvers.CalendarResolver.class);
+            }
+        });
+        counter.reset();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws Exception {
+        System.out.println();
+        System.out.println("# " + counter);
+        jdbc.execute("drop all objects");
+        dataSource.close();
+    }
+
+    /**
+     * seed shops, products, groups, users and orders of history days (include today).
+     */
+    private void seed() {
+        shopIds = new ArrayList<>(jdbc.queryForList("select id from shops order by id", String.class));
+        Timestamp lastOrder = new Timestamp(DateUtils.setHours(today, 10).getTime());
+        for (int i = shopIds.size(); i < shops; i++) {
+            String id = String.format("shop%03d", i);
+            jdbc.update("insert into shops (id, name, url, phoneNumber, lastOrder) values (?, ?, ?, ?, ?)",
+                    id, "shop " + i, "http://localhost/" + id, "03-0000-0000", lastOrder);
+            shopIds.add(id);
+        }
+        shopIds = shopIds.subList(0, Math.min(shops, shopIds.size()));
+
+        List<Object[]> products = new ArrayList<>();
+        for (int d = 0; d < days; d++) {
+            Date day = DateUtils.addDays(today, -d);
+            for (String shopId: shopIds)
+                products.add(new Object[]{ productId(shopId, day), shopId, shopId + " bento", 450,
+                        new Timestamp(DateUtils.addDays(day, -7).getTime()),
+                        new Timestamp(DateUtils.setHours(day, 10).getTime()) });
+        }
+        jdbc.batchUpdate("insert into products (id, shopId, name, amount, start, finish) values (?, ?, ?, ?, ?, ?)", products);
+
+        List<Object[]> groupRows = new ArrayList<>();
+        for (int g = 1; g <= groups; g++)
+            groupRows.add(new Object[]{ g, String.format("group%03d", g), "group " + g });
+        jdbc.batchUpdate("insert into groups (id, code, name) values (?, ?, ?)", groupRows);
+
+        String password = new DigestResolver().resolve(PASSWORD);
+        Timestamp joined = new Timestamp(DateUtils.addDays(today, -days).getTime());
+        List<Object[]> userRows = new ArrayList<>();
+        List<Object[]> healthRows = new ArrayList<>();
+        for (int u = 1; u <= users; u++) {
+            userRows.add(new Object[]{ u, email(u), password, String.format("user%05d", u), "user " + u, joined });
+            healthRows.add(new Object[]{ u, 0, 0, true, groupId(u), joined });
+        }
+        jdbc.batchUpdate("insert into users (id, email, password, nickname, name, joined) values (?, ?, ?, ?, ?, ?)", userRows);
+        jdbc.batchUpdate("insert into health (userId, login, loginFail, active, groupId, groupJoined) values (?, ?, ?, ?, ?, ?)", healthRows);
+
+        int orderId = 0;
+        List<Object[]> orders = new ArrayList<>();
+        List<Object[]> lines = new ArrayList<>();
+        for (int d = 0; d < days; d++) {
+            Date day = DateUtils.addDays(today, -d);
+            Timestamp datetime = new Timestamp(DateUtils.setHours(day, 9).getTime());
+            for (int u = 1; u <= users; u++) {
+                String shopId = shopIds.get(u % shopIds.size());
+                orders.add(new Object[]{ ++orderId, u, groupId(u), shopId, 450, false, false, datetime });
+                lines.add(new Object[]{ orderId, 1, productId(shopId, day), 1, 450, datetime, false });
+            }
+        }
+        jdbc.batchUpdate("insert into orders (id, userId, groupId, shopId, amount, summary, cancel, datetime)"
+                + " values (?, ?, ?, ?, ?, ?, ?, ?)", orders);
+        jdbc.batchUpdate("insert into orderLines (orderId, no, productId, quantity, amount, datetime, cancel)"
+                + " values (?, ?, ?, ?, ?, ?, ?)", lines);
+        jdbc.execute("alter table orders alter column id restart with " + (orderId + 1));
+    }
+
+    private String productId(String shopId, Date day) {
+        return String.format("%s-%tY%<tm%<td", shopId, day);
+    }
+
+    private int groupId(int userId) {
+        return userId % groups + 1;
+    }
+
+    public String email(int userId) {
+        return String.format("user%05d@lunchat.jp", userId);
+    }
+
+    public int randomUser() {
+        return ThreadLocalRandom.current().nextInt(users) + 1;
+    }
+
+    public int randomGroup() {
+        return ThreadLocalRandom.current().nextInt(groups) + 1;
+    }
+
+    public String randomShop() {
+        return shopIds.get(ThreadLocalRandom.current().nextInt(shopIds.size()));
+    }
+
+    /**
+     * a day of history.
+     * @return
+     */
+    public Date randomDay() {
+        return DateUtils.addDays(today, -ThreadLocalRandom.current().nextInt(days));
+    }
+
+    public <T> T getInstance(Class<T> type) {
+        return injector.getInstance(type);
+    }
+}
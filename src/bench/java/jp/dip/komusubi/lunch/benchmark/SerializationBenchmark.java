@@ -0,0 +1,154 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package jp.dip.komusubi.lunch.benchmark;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import jp.dip.komusubi.lunch.model.Contract;
+import jp.dip.komusubi.lunch.model.Group;
+import jp.dip.komusubi.lunch.model.Order;
+import jp.dip.komusubi.lunch.model.OrderLine;
+import jp.dip.komusubi.lunch.model.OrderLine.OrderLineKey;
+import jp.dip.komusubi.lunch.model.Product;
+import jp.dip.komusubi.lunch.model.Shop;
+import jp.dip.komusubi.lunch.model.User;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * serialization of models kept in a page (menu, signed in user and group orders).
+ * serialized bytes are printed on setup, run on the commit before compact serialization to compare.
+ * @author jun.ozeki
+ * @since 2013/07/28
+ */
+@BenchmarkMode({ Mode.Throughput, Mode.SampleTime })
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+@State(Scope.Thread)
+public class SerializationBenchmark {
+
+    @Param({ "2" })
+    public int shops;
+    @Param({ "20" })
+    public int products;
+    @Param({ "30" })
+    public int users;
+
+    private ArrayList<Serializable> page;
+    private byte[] bytes;
+
+    @Setup
+    public void setUp() throws IOException {
+        Group group = new Group(1)
+                        .setCode("GRP")
+                        .setName("group")
+                        .setPhoneNumber("03-0000-0000");
+        List<Contract> contracts = new ArrayList<>();
+        List<Product> menu = new ArrayList<>();
+        for (int s = 0; s < shops; s++) {
+            Shop shop = new Shop("shop" + s)
+                            .setName("shop name " + s)
+                            .setUrl("http://localhost/shop" + s)
+                            .setPhoneNumber("03-1234-000" + s)
+                            .setLastOrder(now());
+            contracts.add(new Contract(s, shop, group).setContracted(now()));
+            for (int p = 0; p < products; p++) {
+                menu.add(new Product(shop.getId() + "-" + p)
+                            .setRefId("ref" + p)
+                            .setName("product name " + p)
+                            .setAmount(400 + p)
+                            .setShop(shop)
+                            .setStart(now())
+                            .setFinish(now()));
+            }
+        }
+        group.setContracts(contracts);
+        List<Order> orders = new ArrayList<>();
+        for (int u = 0; u < users; u++) {
+            User user = new User(u)
+                            .setEmail("user" + u + "@example.com")
+                            .setName("user name " + u)
+                            .setNickname("user" + u)
+                            .setPassword("0123456789abcdef0123456789abcdef")
+                            .setJoined(now());
+            user.getHealth().setGroup(group).setLastLogin(now()).setActive(true);
+            Product product = menu.get(u % menu.size());
+            Order order = new Order(u)
+                            .setUser(user)
+                            .setShop(product.getShop())
+                            .setDatetime(now());
+            order.addLine(new OrderLine(new OrderLineKey(u, 1))
+                            .setProduct(product)
+                            .setQuantity(1)
+                            .setDatetime(now()));
+            orders.add(order);
+        }
+        page = new ArrayList<>();
+        page.add(new ArrayList<>(menu));
+        page.add(orders.get(0).getUser());
+        page.add(new ArrayList<>(orders));
+        bytes = serialize();
+        System.out.println("# serialized page bytes: " + bytes.length);
+    }
+
+    /**
+     * dates loaded from database are distinct instances.
+     * @return
+     */
+    private Date now() {
+        return new Date();
+    }
+
+    @Benchmark
+    public byte[] serialize() throws IOException {
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream(4096);
+        try (ObjectOutputStream out = new ObjectOutputStream(buffer)) {
+            out.writeObject(page);
+        }
+        return buffer.toByteArray();
+    }
+
+    @Benchmark
+    public Object deserialize() throws IOException, ClassNotFoundException {
+        try (ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(bytes))) {
+            return in.readObject();
+        }
+    }
+}
@@ -0,0 +1,83 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package jp.dip.komusubi.lunch.benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import jp.dip.komusubi.lunch.model.Group;
+import jp.dip.komusubi.lunch.model.User;
+import jp.dip.komusubi.lunch.module.dao.GroupDao;
+import jp.dip.komusubi.lunch.module.dao.UserDao;
+import jp.dip.komusubi.lunch.service.Shopping;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * shopping benchmark, summarize orders of a group.
+ * summary orders of today are deleted before each invocation, so
+ * run in single thread.
+ * @author jun.ozeki
+ * @since 2013/06/29
+ */
+@BenchmarkMode({ Mode.Throughput, Mode.SampleTime })
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+@Threads(1)
+public class ShoppingBenchmark {
+
+    @State(Scope.Thread)
+    public static class GroupOrder {
+        Shopping shopping;
+        Group group;
+
+        @Setup(Level.Trial)
+        public void setUp(LunchatState state) {
+            group = state.getInstance(GroupDao.class).find(state.randomGroup());
+            User user = state.getInstance(UserDao.class).find(state.randomUser());
+            shopping = state.getInstance(Shopping.class);
+            shopping.getBasket(user);
+        }
+
+        @Setup(Level.Invocation)
+        public void clear(LunchatState state) {
+            state.jdbc.update("delete from orderLines where orderId in"
+                    + " (select id from orders where groupId = ? and summary = true)", group.getId());
+            state.jdbc.update("delete from orders where groupId = ? and summary = true", group.getId());
+        }
+    }
+
+    @Benchmark
+    public void order(LunchatState state, GroupOrder groupOrder) {
+        state.counter.operation();
+        groupOrder.shopping.order(groupOrder.group);
+    }
+}
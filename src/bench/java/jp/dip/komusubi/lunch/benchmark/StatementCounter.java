@@ -0,0 +1,110 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package jp.dip.komusubi.lunch.benchmark;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.sql.DataSource;
+
+/**
+ * count statements prepared through a data source.
+ * a batch is counted as a statement(a round trip).
+ * @author jun.ozeki
+ * @since 2013/06/29
+ */
+public class StatementCounter {
+
+    private final AtomicLong statements = new AtomicLong();
+    private final AtomicLong operations = new AtomicLong();
+
+    /**
+     * wrap data source.
+     * @param dataSource
+     * @return counting data source.
+     */
+    public DataSource wrap(final DataSource dataSource) {
+        return (DataSource) Proxy.newProxyInstance(getClass().getClassLoader(),
+                new Class<?>[]{ DataSource.class }, new InvocationHandler() {
+            @Override
+            public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+                Object result = invokeTarget(dataSource, method, args);
+                if (result instanceof Connection)
+                    return wrap((Connection) result);
+                return result;
+            }
+        });
+    }
+
+    private Connection wrap(final Connection connection) {
+        return (Connection) Proxy.newProxyInstance(getClass().getClassLoader(),
+                new Class<?>[]{ Connection.class }, new InvocationHandler() {
+            @Override
+            public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+                String name = method.getName();
+                if ("prepareStatement".equals(name) || "createStatement".equals(name)
+                        || "prepareCall".equals(name))
+                    statements.incrementAndGet();
+                return invokeTarget(connection, method, args);
+            }
+        });
+    }
+
+    private Object invokeTarget(Object target, Method method, Object[] args) throws Throwable {
+        try {
+            return method.invoke(target, args);
+        } catch (InvocationTargetException e) {
+            throw e.getTargetException();
+        }
+    }
+
+    /**
+     * count an operation of benchmark.
+     */
+    public void operation() {
+        operations.incrementAndGet();
+    }
+
+    /**
+     * reset counts, e.g. after seeding.
+     */
+    public void reset() {
+        statements.set(0);
+        operations.set(0);
+    }
+
+    public long getStatements() {
+        return statements.get();
+    }
+
+    public long getOperations() {
+        return operations.get();
+    }
+
+    @Override
+    public String toString() {
+        long ops = operations.get();
+        return String.format("statements: %d, operations: %d, statements/op: %.2f",
+                statements.get(), ops, ops == 0 ? 0d : (double) statements.get() / ops);
+    }
+}
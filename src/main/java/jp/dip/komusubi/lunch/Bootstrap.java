@@ -20,13 +20,17 @@ package jp.dip.komusubi.lunch;
 
 import static com.google.inject.matcher.Matchers.annotatedWith;
 import static com.google.inject.matcher.Matchers.any;
+import static com.google.inject.matcher.Matchers.inSubpackage;
 
 import java.io.PrintWriter;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
 import java.sql.DriverManager;
 import java.util.Calendar;
 import java.util.Date;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.UUID;
 
 import javax.servlet.ServletContextEvent;
 import javax.sql.DataSource;
@@ -38,16 +42,24 @@ import jp.dip.komusubi.lunch.module.DefaultAuthentication;
 import jp.dip.komusubi.lunch.module.DefaultNonce;
 import jp.dip.komusubi.lunch.module.Transactional;
 import jp.dip.komusubi.lunch.module.dao.ContractDao;
+import jp.dip.komusubi.lunch.module.dao.DailyCounterDao;
 import jp.dip.komusubi.lunch.module.dao.GroupDao;
 import jp.dip.komusubi.lunch.module.dao.HealthDao;
+import jp.dip.komusubi.lunch.module.dao.IdentityMap;
 import jp.dip.komusubi.lunch.module.dao.OrderDao;
 import jp.dip.komusubi.lunch.module.dao.OrderLineDao;
+import jp.dip.komusubi.lunch.module.dao.ProductBatchDao;
 import jp.dip.komusubi.lunch.module.dao.ProductDao;
 import jp.dip.komusubi.lunch.module.dao.ReceiptDao;
 import jp.dip.komusubi.lunch.module.dao.ReceiptLineDao;
 import jp.dip.komusubi.lunch.module.dao.ShopDao;
 import jp.dip.komusubi.lunch.module.dao.UserDao;
+import jp.dip.komusubi.lunch.module.dao.cache.CachedContractDao;
+import jp.dip.komusubi.lunch.module.dao.cache.CachedGroupDao;
+import jp.dip.komusubi.lunch.module.dao.cache.CachedShopDao;
+import jp.dip.komusubi.lunch.module.dao.cache.WriteBehindHealthDao;
 import jp.dip.komusubi.lunch.module.dao.jdbc.JdbcContractDao;
+import jp.dip.komusubi.lunch.module.dao.jdbc.JdbcDailyCounterDao;
 import jp.dip.komusubi.lunch.module.dao.jdbc.JdbcGroupDao;
 import jp.dip.komusubi.lunch.module.dao.jdbc.JdbcHealthDao;
 import jp.dip.komusubi.lunch.module.dao.jdbc.JdbcOrderDao;
@@ -57,15 +69,26 @@ import jp.dip.komusubi.lunch.module.dao.jdbc.JdbcReceiptDao;
 import jp.dip.komusubi.lunch.module.dao.jdbc.JdbcReceiptLineDao;
 import jp.dip.komusubi.lunch.module.dao.jdbc.JdbcShopDao;
 import jp.dip.komusubi.lunch.module.dao.jdbc.JdbcUserDao;
+import jp.dip.komusubi.lunch.module.dao.monitor.MonitorInterceptor;
+import jp.dip.komusubi.lunch.module.dao.monitor.MonitoredDataSource;
+import jp.dip.komusubi.lunch.module.dao.monitor.PoolDataSource;
+import jp.dip.komusubi.lunch.module.dao.monitor.QueryMonitor;
+import jp.dip.komusubi.lunch.module.event.EventBus;
+import jp.dip.komusubi.lunch.module.mail.Outbox;
 import jp.dip.komusubi.lunch.module.resolver.DateResolver;
 import jp.dip.komusubi.lunch.module.resolver.DigestResolver;
 import jp.dip.komusubi.lunch.module.resolver.Resolvers;
+import jp.dip.komusubi.lunch.module.scheduler.Scheduler;
 import jp.dip.komusubi.lunch.service.AccountService;
+import jp.dip.komusubi.lunch.service.Authenticator;
 import jp.dip.komusubi.lunch.service.BackOffice;
+import jp.dip.komusubi.lunch.service.BackOfficeResource;
+import jp.dip.komusubi.lunch.service.ProductSupplyJob;
 import jp.dip.komusubi.lunch.service.Shopping;
 import jp.dip.komusubi.lunch.service.ShoppingResource;
 import jp.dip.komusubi.lunch.util.Nonce;
 import jp.dip.komusubi.lunch.wicket.DevelopmentFilter;
+import jp.dip.komusubi.lunch.wicket.SessionMonitor;
 import jp.dip.komusubi.lunch.wicket.WicketApplication;
 
 import org.aopalliance.intercept.MethodInterceptor;
@@ -85,6 +108,7 @@ import com.google.inject.Guice;
 import com.google.inject.Injector;
 import com.google.inject.Singleton;
 import com.google.inject.TypeLiteral;
+import com.google.inject.matcher.AbstractMatcher;
 import com.google.inject.name.Names;
 import com.google.inject.servlet.GuiceServletContextListener;
 import com.google.inject.servlet.ServletModule;
@@ -111,6 +135,33 @@ public class Bootstrap extends GuiceServletContextListener {
     public void contextInitialized(ServletContextEvent servletContextEvent) {
         Configuration.setServletContext(servletContextEvent.getServletContext());
         super.contextInitialized(servletContextEvent);
+        startScheduler();
+    }
+
+    /**
+     * destroy servlet context.
+     */
+    @Override
+    public void contextDestroyed(ServletContextEvent servletContextEvent) {
+        Configuration.getInstance(Scheduler.class).stop();
+        Configuration.getInstance(Outbox.class).stop();
+        Configuration.getInstance(EventBus.class).stop();
+        HealthDao healthDao = Configuration.getInstance(HealthDao.class);
+        if (healthDao instanceof WriteBehindHealthDao)
+            ((WriteBehindHealthDao) healthDao).stop();
+        Configuration.getInstance(PoolDataSource.class).close();
+        super.contextDestroyed(servletContextEvent);
+    }
+
+    /**
+     * start scheduler and background jobs.
+     * product supply runs on start and daily at "scheduler.supply.time" (HH:mm).
+     */
+    protected void startScheduler() {
+        Scheduler scheduler = Configuration.getInstance(Scheduler.class);
+        scheduler.start();
+        scheduler.scheduleDaily(ProductSupplyJob.NAME, Configuration.getInstance(ProductSupplyJob.class),
+                Configuration.getParameter("scheduler.supply.time", "06:00"), true);
     }
 
     /**
@@ -129,10 +180,46 @@ public class Bootstrap extends GuiceServletContextListener {
      * @since 2010/12/30
      */
     public static class WebModule extends ServletModule {
+        private static final Logger logger = LoggerFactory.getLogger(WebModule.class);
+
+        /**
+         * secret of api token signature. tokens are invalid after restart if not specified.
+         * @return
+         */
+        private String getTokenSecret() {
+            String secret = Configuration.getParameter("api.token.secret", "null");
+            if ("null".equals(secret) || secret.isEmpty()) {
+                logger.warn("\"api.token.secret\" is not specified, use random secret.");
+                secret = UUID.randomUUID().toString();
+            }
+            return secret;
+        }
+
+        /**
+         * emails of back office administrators, comma separated. back office is closed if not specified.
+         * @return
+         */
+        private String getAdminUsers() {
+            String admins = Configuration.getParameter("api.admin.users", "null");
+            if ("null".equals(admins) || admins.isEmpty()) {
+                logger.warn("\"api.admin.users\" is not specified, back office is available for ADMIN role only.");
+                return "";
+            }
+            return admins;
+        }
+
         @Override
         protected void configureServlets() {
             // rest resource
             bind(ShoppingResource.class);
+            bind(BackOfficeResource.class);
+            bind(String.class).annotatedWith(Names.named("api.token.secret")).toInstance(getTokenSecret());
+            bind(Long.class).annotatedWith(Names.named("api.token.ttl")).toInstance(Long.valueOf(
+                    Configuration.getParameter("api.token.ttl", String.valueOf(Authenticator.DEFAULT_TOKEN_TTL))));
+            bind(String.class).annotatedWith(Names.named("api.admin.users")).toInstance(getAdminUsers());
+            // session size sampled per "session.monitor.sampling" requests.
+            bind(SessionMonitor.class).toInstance(new SessionMonitor(Integer.parseInt(
+                    Configuration.getParameter("session.monitor.sampling", String.valueOf(SessionMonitor.DEFAULT_SAMPLING)))));
 
             Map<String, String> param = new HashMap<String, String>(2);
             param.put(WicketFilter.FILTER_MAPPING_PARAM, "/*");
@@ -145,7 +232,7 @@ public class Bootstrap extends GuiceServletContextListener {
                 bind(DevelopmentFilter.class).in(Singleton.class);
                 filter("/*").through(DevelopmentFilter.class, param);
             }
-            serve("/v1", "/v2").with(GuiceContainer.class);
+            serve("/v1", "/v2", "/api/*").with(GuiceContainer.class);
         }
     }
 
@@ -166,15 +253,35 @@ public class Bootstrap extends GuiceServletContextListener {
             return smtp;
         }
 
+        private Outbox getOutbox(SmtpServer smtp) {
+            return new Outbox(smtp,
+                    Integer.parseInt(Configuration.getParameter("mail.outbox.capacity", String.valueOf(Outbox.DEFAULT_CAPACITY))),
+                    Integer.parseInt(Configuration.getParameter("mail.outbox.workers", String.valueOf(Outbox.DEFAULT_WORKERS))),
+                    Integer.parseInt(Configuration.getParameter("mail.outbox.attempts", String.valueOf(Outbox.DEFAULT_MAX_ATTEMPTS))),
+                    Long.parseLong(Configuration.getParameter("mail.outbox.backoff", String.valueOf(Outbox.DEFAULT_BACKOFF))));
+        }
+
+        private EventBus getEventBus() {
+            return new EventBus(
+                    Integer.parseInt(Configuration.getParameter("event.capacity", String.valueOf(EventBus.DEFAULT_CAPACITY))),
+                    Long.parseLong(Configuration.getParameter("event.poll.timeout", String.valueOf(EventBus.DEFAULT_TIMEOUT))),
+                    Integer.parseInt(Configuration.getParameter("event.poll.waiters", String.valueOf(EventBus.DEFAULT_MAX_WAITERS))));
+        }
+
         @Override
         protected void configure() {
-            bind(SmtpServer.class).toInstance(getSmtpServer());
+            SmtpServer smtp = getSmtpServer();
+            bind(SmtpServer.class).toInstance(smtp);
+            bind(Outbox.class).toInstance(getOutbox(smtp));
+            bind(EventBus.class).toInstance(getEventBus());
             bind(Authentication.class).to(DefaultAuthentication.class);
             bind(new TypeLiteral<Resolver<String>>() {}).annotatedWith(Names.named("digest")).to(DigestResolver.class);
             bind(new TypeLiteral<Resolver<Date>>() {}).annotatedWith(Names.named("date")).to(DateResolver.class);
             bind(new TypeLiteral<Resolver<Calendar>>() {}).annotatedWith(Names.named("calendar")).to(Resolvers.CalendarResolver.class);
             bind(AccountService.class);
             bind(BackOffice.class);
+            bind(Scheduler.class);
+            bind(ProductSupplyJob.class);
             bind(Nonce.class).to(DefaultNonce.class);
             bind(Shopping.class);
             bind(Basket.class);
@@ -189,13 +296,39 @@ public class Bootstrap extends GuiceServletContextListener {
      * @since 2010/12/26
      */
     public static class PersistenceModule extends AbstractModule {
+        private static final Logger logger = LoggerFactory.getLogger(PersistenceModule.class);
+        private QueryMonitor queryMonitor;
+        private PoolDataSource poolDataSource;
         private DataSource dataSource;
 
         public PersistenceModule() {
-            this.dataSource = newDataSource();
+            this.queryMonitor = newQueryMonitor();
+            this.poolDataSource = newPoolDataSource();
+            if (queryMonitor.isEnabled())
+                this.dataSource = new MonitoredDataSource(poolDataSource, queryMonitor);
+            else
+                this.dataSource = poolDataSource;
         }
 
-        private DataSource newDataSource() {
+        /**
+         * sql statement monitor, enabled by "sql.monitor.enabled" parameter.
+         * "sql.monitor.budget" is statements per request(or transaction) to warn.
+         * @return
+         */
+        private QueryMonitor newQueryMonitor() {
+            boolean enabled = Boolean.valueOf(Configuration.getParameter("sql.monitor.enabled", "true"));
+            int budget = Integer.parseInt(Configuration.getParameter("sql.monitor.budget",
+                    String.valueOf(QueryMonitor.DEFAULT_BUDGET)));
+            if (enabled)
+                logger.info("sql monitor enabled, budget: {}", budget);
+            return new QueryMonitor(enabled, budget);
+        }
+
+        /**
+         * connection pool configured by "jdbc.pool.*" parameters.
+         * @return
+         */
+        private PoolDataSource newPoolDataSource() {
             // debug
             if (RuntimeMode.DEVELOPMENT.equals(Configuration.mode()))
                 DriverManager.setLogWriter(new PrintWriter(System.out));
@@ -205,9 +338,31 @@ public class Bootstrap extends GuiceServletContextListener {
             dataSource.setUsername(Configuration.getParameter("database.user"));
             dataSource.setPassword(Configuration.getParameter("database.password"));
             dataSource.setDefaultAutoCommit(false);
-            dataSource.setMaxActive(20);
-            dataSource.setMaxWait(5);
-            return dataSource;
+            // sizing and wait timeout(milliseconds)
+            dataSource.setInitialSize(Integer.parseInt(Configuration.getParameter("jdbc.pool.initialSize", "0")));
+            dataSource.setMaxActive(Integer.parseInt(Configuration.getParameter("jdbc.pool.maxActive", "20")));
+            dataSource.setMaxIdle(Integer.parseInt(Configuration.getParameter("jdbc.pool.maxIdle", "20")));
+            dataSource.setMinIdle(Integer.parseInt(Configuration.getParameter("jdbc.pool.minIdle", "2")));
+            dataSource.setMaxWait(Long.parseLong(Configuration.getParameter("jdbc.pool.maxWait", "3000")));
+            // validation
+            String validationQuery = Configuration.getParameter("jdbc.pool.validationQuery", "select 1");
+            if (validationQuery != null && !validationQuery.isEmpty()) {
+                dataSource.setValidationQuery(validationQuery);
+                dataSource.setTestOnBorrow(Boolean.valueOf(Configuration.getParameter("jdbc.pool.testOnBorrow", "false")));
+                dataSource.setTestWhileIdle(true);
+            }
+            dataSource.setTimeBetweenEvictionRunsMillis(Long.parseLong(Configuration.getParameter("jdbc.pool.evictionInterval", "60000")));
+            dataSource.setMinEvictableIdleTimeMillis(Long.parseLong(Configuration.getParameter("jdbc.pool.minEvictableIdleTime", "300000")));
+            // prepared statement cache per connection
+            int statements = Integer.parseInt(Configuration.getParameter("jdbc.pool.preparedStatements", "50"));
+            dataSource.setPoolPreparedStatements(statements > 0);
+            dataSource.setMaxOpenPreparedStatements(statements);
+
+            long leakThreshold = Long.parseLong(Configuration.getParameter("jdbc.pool.leakThreshold", "60000"));
+            boolean leakStackTrace = Boolean.valueOf(Configuration.getParameter("jdbc.pool.leakStackTrace", "false"));
+            logger.info("connection pool maxActive: {}, maxWait: {}ms, prepared statements: {}",
+                    dataSource.getMaxActive(), dataSource.getMaxWait(), statements);
+            return new PoolDataSource(dataSource, leakThreshold, leakStackTrace);
         }
 
         private DataSourceTransactionManager newTransactionManager() {
@@ -218,25 +373,83 @@ public class Bootstrap extends GuiceServletContextListener {
         @Override
         protected void configure() {
             bind(UserDao.class).to(JdbcUserDao.class);
-            bind(ShopDao.class).to(JdbcShopDao.class);
             bind(OrderDao.class).to(JdbcOrderDao.class);
             bind(OrderLineDao.class).to(JdbcOrderLineDao.class);
+            bind(DailyCounterDao.class).to(JdbcDailyCounterDao.class);
             bind(ReceiptDao.class).to(JdbcReceiptDao.class);
+            bindConstant().annotatedWith(Names.named("billing.fetch.size")).to(Integer.parseInt(
+                    Configuration.getParameter("billing.fetch.size", String.valueOf(JdbcReceiptDao.DEFAULT_FETCH_SIZE))));
             bind(ReceiptLineDao.class).to(JdbcReceiptLineDao.class);
-            bind(HealthDao.class).to(JdbcHealthDao.class);
-            bind(GroupDao.class).to(JdbcGroupDao.class);
+            bindHealthDao();
             bind(ProductDao.class).to(JdbcProductDao.class);
-            bind(ContractDao.class).to(JdbcContractDao.class);
+            bind(ProductBatchDao.class).to(JdbcProductDao.class);
+            bindReferenceDao();
+            bind(IdentityMap.class);
             bind(DataSource.class).toInstance(dataSource);
+            bind(QueryMonitor.class).toInstance(queryMonitor);
+            bind(PoolDataSource.class).toInstance(poolDataSource);
+            if (queryMonitor.isEnabled())
+                bindInterceptor(inSubpackage(JdbcUserDao.class.getPackage().getName()), new DaoMethodMatcher(),
+                        new MonitorInterceptor(queryMonitor, "dao:"));
             bindInterceptor(any(), annotatedWith(Transactional.class), getTransactionInterceptor());
             bind(PlatformTransactionManager.class).toInstance(newTransactionManager());
         }
 
+        /**
+         * bind shop, group and contract dao. read through cache is used
+         * when "reference.cache.enabled" parameter is true.
+         */
+        protected void bindReferenceDao() {
+            if (Boolean.valueOf(Configuration.getParameter("reference.cache.enabled", "false"))) {
+                int maxSize = Integer.parseInt(Configuration.getParameter("reference.cache.size", "256"));
+                long timeToLive = Long.parseLong(Configuration.getParameter("reference.cache.ttl", "600")) * 1000L;
+                bindConstant().annotatedWith(Names.named("reference.cache.size")).to(maxSize);
+                bindConstant().annotatedWith(Names.named("reference.cache.ttl")).to(timeToLive);
+                bind(ShopDao.class).to(CachedShopDao.class);
+                bind(GroupDao.class).to(CachedGroupDao.class);
+                bind(ContractDao.class).to(CachedContractDao.class);
+                logger.info("reference cache enabled, size: {}, ttl: {}ms", maxSize, timeToLive);
+            } else {
+                bind(ShopDao.class).to(JdbcShopDao.class);
+                bind(GroupDao.class).to(JdbcGroupDao.class);
+                bind(ContractDao.class).to(JdbcContractDao.class);
+            }
+        }
+
+        /**
+         * bind health dao. successful logins are written behind every
+         * "health.write.behind.interval" seconds, written immediately when 0.
+         */
+        protected void bindHealthDao() {
+            long interval = Long.parseLong(Configuration.getParameter("health.write.behind.interval",
+                    String.valueOf(WriteBehindHealthDao.DEFAULT_INTERVAL / 1000L))) * 1000L;
+            if (interval > 0) {
+                bindConstant().annotatedWith(Names.named("health.write.behind.interval")).to(interval);
+                bind(HealthDao.class).to(WriteBehindHealthDao.class);
+                logger.info("health write behind enabled, interval: {}ms", interval);
+            } else {
+                bind(HealthDao.class).to(JdbcHealthDao.class);
+            }
+        }
+
         protected MethodInterceptor getTransactionInterceptor() {
             return new TransactionInterceptor();
         }
     }
 
+    /**
+     * public methods declared by dao.
+     * @author jun.ozeki
+     * @since 2013/07/06
+     */
+    private static class DaoMethodMatcher extends AbstractMatcher<Method> {
+        @Override
+        public boolean matches(Method method) {
+            return Modifier.isPublic(method.getModifiers()) && !method.isSynthetic()
+                    && !Object.class.equals(method.getDeclaringClass());
+        }
+    }
+
     /**
      * transaction interceptor.
      * @author jun.ozeki
@@ -247,7 +460,11 @@ public class Bootstrap extends GuiceServletContextListener {
         public Object invoke(MethodInvocation invocation) throws Throwable {
             Object obj = null;
             PlatformTransactionManager txManager = Configuration.getInstance(PlatformTransactionManager.class);
+            IdentityMap identityMap = Configuration.getInstance(IdentityMap.class);
+            QueryMonitor queryMonitor = Configuration.getInstance(QueryMonitor.class);
             TransactionStatus status = null;
+            identityMap.begin();
+            queryMonitor.begin();
             try {
 
                 status = txManager.getTransaction(null);
@@ -260,6 +477,12 @@ public class Bootstrap extends GuiceServletContextListener {
                 logger.warn("database rollback: {}", e);
                 txManager.rollback(status);
                 throw e;
+            } finally {
+                // entities might be modified or rolled back in the transaction, nested call joins outer one.
+                if (status != null && status.isNewTransaction())
+                    identityMap.clear();
+                identityMap.end();
+                queryMonitor.end("tx:" + QueryMonitor.nameOf(invocation.getMethod()));
             }
             return obj;
         }
@@ -39,6 +39,17 @@ public enum Configuration {
 		return injector.getInstance(type);
 	}
 
+	/**
+	 * inject fields and methods of the instance which is not created by injector
+	 * (e.g. deserialized).
+	 * @param instance
+	 */
+	public static void injectMembers(Object instance) {
+		if (injector == null)
+			injector = (Injector) servletContext.getAttribute(Injector.class.getName());
+		injector.injectMembers(instance);
+	}
+
 	public static <T> T getInstance(TypeLiteral<Resolver<Date>> literal, Class<T> type) {
 //	    new TypeLiteral<Resolver<String>>(){};
 //	    bind(new TypeLiteral<Resolver<String>>(){ })
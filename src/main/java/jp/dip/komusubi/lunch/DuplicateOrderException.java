@@ -0,0 +1,35 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package jp.dip.komusubi.lunch;
+
+/**
+ * order already exists, rejected by unique constraint of orders.
+ * transaction must be rolled back and the existing order should be read again.
+ * @author jun.ozeki
+ * @since 2013/07/28
+ */
+public class DuplicateOrderException extends TransactionException {
+
+    private static final long serialVersionUID = -2807447180913602147L;
+
+    public DuplicateOrderException(String arg0, Throwable arg1) {
+        super(arg0, arg1);
+    }
+
+}
@@ -0,0 +1,129 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package jp.dip.komusubi.lunch.model;
+
+import java.io.IOException;
+import java.io.ObjectInput;
+import java.io.ObjectOutput;
+import java.sql.Time;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+
+/**
+ * nullable values for externalizable models.
+ * @author jun.ozeki
+ * @since 2013/07/28
+ */
+final class Externals {
+
+    private static final byte NULL_DATE = 0;
+    private static final byte UTIL_DATE = 1;
+    private static final byte SQL_DATE = 2;
+    private static final byte SQL_TIME = 3;
+    private static final byte SQL_TIMESTAMP = 4;
+
+    private Externals() {
+
+    }
+
+    static void writeString(ObjectOutput out, String value) throws IOException {
+        out.writeBoolean(value != null);
+        if (value != null)
+            out.writeUTF(value);
+    }
+
+    static String readString(ObjectInput in) throws IOException {
+        return in.readBoolean() ? in.readUTF() : null;
+    }
+
+    static void writeInteger(ObjectOutput out, Integer value) throws IOException {
+        out.writeBoolean(value != null);
+        if (value != null)
+            out.writeInt(value);
+    }
+
+    static Integer readInteger(ObjectInput in) throws IOException {
+        return in.readBoolean() ? in.readInt() : null;
+    }
+
+    /**
+     * date subtype is kept, timestamp with its nanos.
+     */
+    static void writeDate(ObjectOutput out, Date value) throws IOException {
+        if (value == null) {
+            out.writeByte(NULL_DATE);
+            return;
+        }
+        if (value instanceof Timestamp)
+            out.writeByte(SQL_TIMESTAMP);
+        else if (value instanceof java.sql.Date)
+            out.writeByte(SQL_DATE);
+        else if (value instanceof Time)
+            out.writeByte(SQL_TIME);
+        else
+            out.writeByte(UTIL_DATE);
+        out.writeLong(value.getTime());
+        if (value instanceof Timestamp)
+            out.writeInt(((Timestamp) value).getNanos());
+    }
+
+    static Date readDate(ObjectInput in) throws IOException {
+        byte type = in.readByte();
+        switch (type) {
+        case NULL_DATE:
+            return null;
+        case UTIL_DATE:
+            return new Date(in.readLong());
+        case SQL_DATE:
+            return new java.sql.Date(in.readLong());
+        case SQL_TIME:
+            return new Time(in.readLong());
+        case SQL_TIMESTAMP:
+            Timestamp timestamp = new Timestamp(in.readLong());
+            timestamp.setNanos(in.readInt());
+            return timestamp;
+        default:
+            throw new IOException("unknown date type: " + type);
+        }
+    }
+
+    /**
+     * list elements are written as objects, so shared references and cycles resolve by handle.
+     */
+    static void writeList(ObjectOutput out, List<?> value) throws IOException {
+        out.writeInt(value == null ? -1 : value.size());
+        if (value != null) {
+            for (Object o: value)
+                out.writeObject(o);
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    static <T> List<T> readList(ObjectInput in) throws IOException, ClassNotFoundException {
+        int size = in.readInt();
+        if (size < 0)
+            return null;
+        List<T> list = new ArrayList<>(size);
+        for (int i = 0; i < size; i++)
+            list.add((T) in.readObject());
+        return list;
+    }
+}
@@ -18,7 +18,10 @@
  */
 package jp.dip.komusubi.lunch.model;
 
-import java.io.Serializable;
+import java.io.Externalizable;
+import java.io.IOException;
+import java.io.ObjectInput;
+import java.io.ObjectOutput;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Date;
@@ -33,7 +36,7 @@ import jp.dip.komusubi.lunch.module.dao.UserDao;
  * @author jun.ozeki
  * @since 2011/12/03
  */
-public class Group implements Serializable {
+public class Group implements Externalizable {
 
 	private static final long serialVersionUID = 9163879003361362197L;
 	private Integer id;
@@ -137,11 +140,15 @@ public class Group implements Serializable {
 		return shops;
 	}
 
+	/**
+	 * contracts, loaded ones are not kept(group might be shared by cache).
+	 * @return
+	 */
 	public List<Contract> getContracts() {
 		if (contracts == null) {
 			// FIXME refer to module package. should fix proxy pattern.
 			ContractDao contractDao = Configuration.getInstance(ContractDao.class);
-			contracts = contractDao.findByGroupId(getId());
+			return contractDao.findByGroupId(getId());
 		}
 		return contracts;
 	}
@@ -163,11 +170,15 @@ public class Group implements Serializable {
 		return phoneNumber;
 	}
 
+	/**
+	 * users, loaded ones are not kept(group might be shared by cache).
+	 * @return
+	 */
 	public List<User> getUsers() {
 		if (users == null) {
 			// FIXME should fix proxy pattern.
 			UserDao userDao = Configuration.getInstance(UserDao.class);
-			users = userDao.findByGroupId(getId());
+			return userDao.findByGroupId(getId());
 //			users.addAll(userDao.findByGroupId(getId()));
 		}
 		return users;
@@ -220,6 +231,31 @@ public class Group implements Serializable {
 	}
 
 
+	/**
+	 * contracts and users are not written, loaded again when required.
+	 */
+	@Override
+	public void writeExternal(ObjectOutput out) throws IOException {
+		Externals.writeInteger(out, id);
+		Externals.writeString(out, code);
+		Externals.writeString(out, name);
+		Externals.writeDate(out, lastOrder);
+		Externals.writeString(out, phoneNumber);
+		Externals.writeList(out, contracts);
+		Externals.writeList(out, users);
+	}
+
+	@Override
+	public void readExternal(ObjectInput in) throws IOException, ClassNotFoundException {
+		id = Externals.readInteger(in);
+		code = Externals.readString(in);
+		name = Externals.readString(in);
+		lastOrder = Externals.readDate(in);
+		phoneNumber = Externals.readString(in);
+		contracts = Externals.readList(in);
+		users = Externals.readList(in);
+	}
+
     @Override
     public String toString() {
         StringBuilder builder = new StringBuilder();
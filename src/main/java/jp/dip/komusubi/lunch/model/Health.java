@@ -16,7 +16,10 @@
  */
 package jp.dip.komusubi.lunch.model;
 
-import java.io.Serializable;
+import java.io.Externalizable;
+import java.io.IOException;
+import java.io.ObjectInput;
+import java.io.ObjectOutput;
 import java.util.Date;
 
 import org.slf4j.Logger;
@@ -27,7 +30,7 @@ import org.slf4j.LoggerFactory;
  * @author jun.ozeki
  * @since 2011/12/05
  */
-public class Health implements Serializable {
+public class Health implements Externalizable {
 
 	private static final long serialVersionUID = -5968243531502612079L;
 	private static final Logger logger = LoggerFactory.getLogger(Health.class);
@@ -200,6 +203,31 @@ public class Health implements Serializable {
 		throw new IllegalArgumentException("can NOT set userId : " + userId);
 	}
 
+	@Override
+	public void writeExternal(ObjectOutput out) throws IOException {
+		out.writeInt(login);
+		Externals.writeDate(out, lastLogin);
+		out.writeInt(loginFail);
+		out.writeBoolean(active);
+		// back reference to user is written as a handle.
+		out.writeObject(user);
+		Externals.writeString(out, admitter);
+		out.writeObject(group);
+		Externals.writeDate(out, groupJoined);
+	}
+
+	@Override
+	public void readExternal(ObjectInput in) throws IOException, ClassNotFoundException {
+		login = in.readInt();
+		lastLogin = Externals.readDate(in);
+		loginFail = in.readInt();
+		active = in.readBoolean();
+		user = (User) in.readObject();
+		admitter = Externals.readString(in);
+		group = (Group) in.readObject();
+		groupJoined = Externals.readDate(in);
+	}
+
 	@Override
 	public String toString() {
 		StringBuilder builder = new StringBuilder();
@@ -16,7 +16,10 @@
  */
 package jp.dip.komusubi.lunch.model;
 
-import java.io.Serializable;
+import java.io.Externalizable;
+import java.io.IOException;
+import java.io.ObjectInput;
+import java.io.ObjectOutput;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Date;
@@ -29,7 +32,7 @@ import java.util.List;
  * @author jun.ozeki
  * @since 2011/11/24
  */
-public class Order implements Serializable, Iterable<OrderLine> {
+public class Order implements Externalizable, Iterable<OrderLine> {
 
     private static final long serialVersionUID = 1L;
     private int id;
@@ -40,6 +43,7 @@ public class Order implements Serializable, Iterable<OrderLine> {
     private boolean cancel;
     private int amount;
     private Date datetime;
+    private String token;
     // private int geoId;
     private List<OrderLine> lines;
 
@@ -222,6 +226,14 @@ public class Order implements Serializable, Iterable<OrderLine> {
         return shop;
     }
 
+    /**
+     * get idempotency token of submission.
+     * @return token, null if not specified.
+     */
+    public String getToken() {
+        return token;
+    }
+
     /**
      * get user.
      * @return
@@ -377,6 +389,17 @@ public class Order implements Serializable, Iterable<OrderLine> {
         return this;
     }
 
+    /**
+     * set idempotency token of submission.
+     * orders of the same user, shop and token are persisted only once.
+     * @param token
+     * @return
+     */
+    public Order setToken(String token) {
+        this.token = token;
+        return this;
+    }
+
     /**
      * convert to receipt.
      * @return
@@ -456,6 +479,40 @@ public class Order implements Serializable, Iterable<OrderLine> {
         return true;
     }
 
+    @Override
+    public void writeExternal(ObjectOutput out) throws IOException {
+        out.writeInt(id);
+        // group, user and shop are shared in a page, written once per stream.
+        out.writeObject(group);
+        out.writeObject(user);
+        out.writeObject(shop);
+        out.writeBoolean(summary);
+        out.writeBoolean(cancel);
+        out.writeInt(amount);
+        Externals.writeDate(out, datetime);
+        Externals.writeString(out, token);
+        out.writeInt(lines.size());
+        for (OrderLine line: lines)
+            out.writeObject(line);
+    }
+
+    @Override
+    public void readExternal(ObjectInput in) throws IOException, ClassNotFoundException {
+        id = in.readInt();
+        group = (Group) in.readObject();
+        user = (User) in.readObject();
+        shop = (Shop) in.readObject();
+        summary = in.readBoolean();
+        cancel = in.readBoolean();
+        amount = in.readInt();
+        datetime = Externals.readDate(in);
+        token = Externals.readString(in);
+        int size = in.readInt();
+        lines = new ArrayList<>(size);
+        for (int i = 0; i < size; i++)
+            lines.add((OrderLine) in.readObject());
+    }
+
     @Override
     public String toString() {
         StringBuilder builder = new StringBuilder();
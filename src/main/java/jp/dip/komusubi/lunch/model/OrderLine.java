@@ -16,6 +16,10 @@
  */
 package jp.dip.komusubi.lunch.model;
 
+import java.io.Externalizable;
+import java.io.IOException;
+import java.io.ObjectInput;
+import java.io.ObjectOutput;
 import java.io.Serializable;
 import java.util.Date;
 
@@ -26,7 +30,7 @@ import org.komusubi.common.util.Resolver;
  * @author jun.ozeki
  * @since 2011/11/20
  */
-public class OrderLine implements Serializable {
+public class OrderLine implements Externalizable {
 
 	/**
 	 * order line primary key.
@@ -161,6 +165,30 @@ public class OrderLine implements Serializable {
 	    return receiptLine;
 	}
 	
+	@Override
+	public void writeExternal(ObjectOutput out) throws IOException {
+		out.writeBoolean(primaryKey != null);
+		if (primaryKey != null) {
+			out.writeInt(primaryKey.getOrderId());
+			out.writeInt(primaryKey.getNo());
+		}
+		out.writeObject(product);
+		out.writeInt(quantity);
+		out.writeInt(fixedAmount);
+		Externals.writeDate(out, datetime);
+		out.writeBoolean(cancel);
+	}
+
+	@Override
+	public void readExternal(ObjectInput in) throws IOException, ClassNotFoundException {
+		primaryKey = in.readBoolean() ? new OrderLineKey(in.readInt(), in.readInt()) : null;
+		product = (Product) in.readObject();
+		quantity = in.readInt();
+		fixedAmount = in.readInt();
+		datetime = Externals.readDate(in);
+		cancel = in.readBoolean();
+	}
+
     @Override
     public String toString() {
         StringBuilder builder = new StringBuilder();
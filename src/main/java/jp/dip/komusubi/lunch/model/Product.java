@@ -16,10 +16,13 @@
  */
 package jp.dip.komusubi.lunch.model;
 
-import java.io.Serializable;
+import java.io.Externalizable;
+import java.io.IOException;
+import java.io.ObjectInput;
+import java.io.ObjectOutput;
 import java.util.Date;
 
-public class Product implements Serializable {
+public class Product implements Externalizable {
 
 	private static final long serialVersionUID = -2538213207179936427L;
 	public static final String DEFAULT_ID = "dummy";
@@ -129,6 +132,29 @@ public class Product implements Serializable {
 		return result;
 	}
 	
+	@Override
+	public void writeExternal(ObjectOutput out) throws IOException {
+		Externals.writeString(out, id);
+		Externals.writeString(out, refId);
+		Externals.writeString(out, name);
+		out.writeInt(amount);
+		// shared shop is written once per stream.
+		out.writeObject(shop);
+		Externals.writeDate(out, start);
+		Externals.writeDate(out, finish);
+	}
+
+	@Override
+	public void readExternal(ObjectInput in) throws IOException, ClassNotFoundException {
+		id = Externals.readString(in);
+		refId = Externals.readString(in);
+		name = Externals.readString(in);
+		amount = in.readInt();
+		shop = (Shop) in.readObject();
+		start = Externals.readDate(in);
+		finish = Externals.readDate(in);
+	}
+
 	@Override
 	public String toString() {
 		StringBuilder builder = new StringBuilder();
@@ -16,7 +16,10 @@
  */
 package jp.dip.komusubi.lunch.model;
 
-import java.io.Serializable;
+import java.io.Externalizable;
+import java.io.IOException;
+import java.io.ObjectInput;
+import java.io.ObjectOutput;
 import java.net.MalformedURLException;
 import java.net.URL;
 import java.util.ArrayList;
@@ -32,7 +35,7 @@ import jp.dip.komusubi.lunch.module.dao.ContractDao;
  * @author jun.ozeki
  * @since 2011/12/11
  */
-public class Shop implements Serializable {
+public class Shop implements Externalizable {
 
 	public static final String DEFAULT_ID = "default";
     private static final long serialVersionUID = -1020122183352301083L;
@@ -102,11 +105,15 @@ public class Shop implements Serializable {
         return true;
     }
 
+	/**
+	 * contracts, loaded ones are not kept(shop might be shared by cache).
+	 * @return
+	 */
 	public List<Contract> getContracts() {
 		if (contracts == null) {
 			// FIXME should be proxy pattern.
 			ContractDao contractDao = Configuration.getInstance(ContractDao.class);
-			contracts = contractDao.findByShopId(getId());
+			return contractDao.findByShopId(getId());
 		}
 		return contracts;
 	}
@@ -194,6 +201,29 @@ public class Shop implements Serializable {
 		return this;
 	}
 	
+	/**
+	 * contracts are not written, loaded again when required.
+	 */
+	@Override
+	public void writeExternal(ObjectOutput out) throws IOException {
+		Externals.writeString(out, id);
+		Externals.writeString(out, name);
+		Externals.writeString(out, url);
+		Externals.writeString(out, phoneNumber);
+		Externals.writeDate(out, lastOrder);
+		Externals.writeList(out, contracts);
+	}
+
+	@Override
+	public void readExternal(ObjectInput in) throws IOException, ClassNotFoundException {
+		id = Externals.readString(in);
+		name = Externals.readString(in);
+		url = Externals.readString(in);
+		phoneNumber = Externals.readString(in);
+		lastOrder = Externals.readDate(in);
+		contracts = Externals.readList(in);
+	}
+
 	@Override
 	public String toString() {
 		StringBuilder builder = new StringBuilder();
@@ -16,7 +16,10 @@
  */
 package jp.dip.komusubi.lunch.model;
 
-import java.io.Serializable;
+import java.io.Externalizable;
+import java.io.IOException;
+import java.io.ObjectInput;
+import java.io.ObjectOutput;
 import java.util.ArrayList;
 import java.util.Date;
 import java.util.List;
@@ -28,7 +31,7 @@ import org.komusubi.common.protocol.smtp.Destination;
  * @author jun.ozeki
  * @since 2011/12/11
  */
-public class User implements Serializable, Destination {
+public class User implements Externalizable, Destination {
 	private static final long serialVersionUID = 8305012931385761901L;
 	private String email;
 	private Integer id;
@@ -243,6 +246,38 @@ public class User implements Serializable, Destination {
 		this.roles = roles;
 	}
 	
+	/**
+	 * notices are not written.
+	 */
+	@Override
+	public void writeExternal(ObjectOutput out) throws IOException {
+		Externals.writeInteger(out, id);
+		Externals.writeString(out, email);
+		Externals.writeString(out, name);
+		Externals.writeString(out, nickname);
+		Externals.writeString(out, password);
+		Externals.writeDate(out, joined);
+		out.writeInt(roles.size());
+		for (Role role: roles)
+			out.writeUTF(role.name());
+		out.writeObject(health);
+	}
+
+	@Override
+	public void readExternal(ObjectInput in) throws IOException, ClassNotFoundException {
+		id = Externals.readInteger(in);
+		email = Externals.readString(in);
+		name = Externals.readString(in);
+		nickname = Externals.readString(in);
+		password = Externals.readString(in);
+		joined = Externals.readDate(in);
+		int size = in.readInt();
+		roles = new ArrayList<Role>(size);
+		for (int i = 0; i < size; i++)
+			roles.add(Role.valueOf(in.readUTF()));
+		health = (Health) in.readObject();
+	}
+
 	@Override
 	public String toString() {
 		StringBuilder builder = new StringBuilder();
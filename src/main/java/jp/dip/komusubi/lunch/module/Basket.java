@@ -16,7 +16,10 @@
  */
 package jp.dip.komusubi.lunch.module;
 
-import java.io.Serializable;
+import java.io.Externalizable;
+import java.io.IOException;
+import java.io.ObjectInput;
+import java.io.ObjectOutput;
 import java.util.ArrayList;
 import java.util.Date;
 import java.util.Iterator;
@@ -25,6 +28,7 @@ import java.util.List;
 import javax.inject.Inject;
 import javax.inject.Named;
 
+import jp.dip.komusubi.lunch.Configuration;
 import jp.dip.komusubi.lunch.model.Order;
 import jp.dip.komusubi.lunch.model.OrderLine;
 import jp.dip.komusubi.lunch.model.Product;
@@ -43,7 +47,7 @@ import org.slf4j.LoggerFactory;
  * @author jun.ozeki
  * @since 2011/11/23
  */
-public class Basket implements Iterable<Order>, Serializable {
+public class Basket implements Iterable<Order>, Externalizable {
 
 	private static final long serialVersionUID = -4354827769351959572L;
 	private static final Logger logger = LoggerFactory.getLogger(Basket.class);
@@ -98,6 +102,7 @@ public class Basket implements Iterable<Order>, Serializable {
 	public void add(Product product, int quantity) {
 		if (product == null)
 			throw new IllegalArgumentException("product is null");
+		inject();
 		boolean found = false;
 		Order order = null;
 		for (Order o: orders) {
@@ -125,6 +130,7 @@ public class Basket implements Iterable<Order>, Serializable {
 	}
 
 	public void add(String productId, int quantity) {
+		inject();
 		add(productDao.find(productId), quantity);
 	}
 	
@@ -143,6 +149,7 @@ public class Basket implements Iterable<Order>, Serializable {
 	}
 	
 	public void clear(String shopId) {
+		inject();
 		clear(shopDao.find(shopId));
 	}
 	
@@ -185,6 +192,34 @@ public class Basket implements Iterable<Order>, Serializable {
 //		}
 //	}
 	
+	/**
+	 * transient daos are lost by serialization, inject again on first use.
+	 */
+	private void inject() {
+		if (orderDao == null || productDao == null || shopDao == null || dateResolver == null)
+			Configuration.injectMembers(this);
+	}
+
+	/**
+	 * user and orders only.
+	 */
+	@Override
+	public void writeExternal(ObjectOutput out) throws IOException {
+		out.writeObject(user);
+		out.writeInt(orders.size());
+		for (Order order: orders)
+			out.writeObject(order);
+	}
+
+	@Override
+	public void readExternal(ObjectInput in) throws IOException, ClassNotFoundException {
+		user = (User) in.readObject();
+		int size = in.readInt();
+		orders = new ArrayList<>(size);
+		for (int i = 0; i < size; i++)
+			orders.add((Order) in.readObject());
+	}
+
 	@Override
 	public String toString() {
 		StringBuilder builder = new StringBuilder();
@@ -0,0 +1,178 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package jp.dip.komusubi.lunch.module.dao;
+
+import java.util.Date;
+
+/**
+ * a receipt line of billing, flattened with receipt, user, shop and product.
+ * an instance is reused for every row while scanning, so handlers must not keep it.
+ * @author jun.ozeki
+ * @since 2013/08/11
+ */
+public class BillingLine {
+
+    /**
+     * billing lines handler called per row.
+     */
+    public interface Handler {
+        void processLine(BillingLine line);
+    }
+
+    private int receiptId;
+    private int no;
+    private int orderId;
+    private Date datetime;
+    private int userId;
+    private String userName;
+    private String email;
+    private String shopId;
+    private String shopName;
+    private String productId;
+    private String productName;
+    private int quantity;
+    private int amount;
+
+    public int getReceiptId() {
+        return receiptId;
+    }
+
+    public BillingLine setReceiptId(int receiptId) {
+        this.receiptId = receiptId;
+        return this;
+    }
+
+    public int getNo() {
+        return no;
+    }
+
+    public BillingLine setNo(int no) {
+        this.no = no;
+        return this;
+    }
+
+    public int getOrderId() {
+        return orderId;
+    }
+
+    public BillingLine setOrderId(int orderId) {
+        this.orderId = orderId;
+        return this;
+    }
+
+    public Date getDatetime() {
+        return datetime;
+    }
+
+    public BillingLine setDatetime(Date datetime) {
+        this.datetime = datetime;
+        return this;
+    }
+
+    public int getUserId() {
+        return userId;
+    }
+
+    public BillingLine setUserId(int userId) {
+        this.userId = userId;
+        return this;
+    }
+
+    public String getUserName() {
+        return userName;
+    }
+
+    public BillingLine setUserName(String userName) {
+        this.userName = userName;
+        return this;
+    }
+
+    public String getEmail() {
+        return email;
+    }
+
+    public BillingLine setEmail(String email) {
+        this.email = email;
+        return this;
+    }
+
+    public String getShopId() {
+        return shopId;
+    }
+
+    public BillingLine setShopId(String shopId) {
+        this.shopId = shopId;
+        return this;
+    }
+
+    public String getShopName() {
+        return shopName;
+    }
+
+    public BillingLine setShopName(String shopName) {
+        this.shopName = shopName;
+        return this;
+    }
+
+    public String getProductId() {
+        return productId;
+    }
+
+    public BillingLine setProductId(String productId) {
+        this.productId = productId;
+        return this;
+    }
+
+    public String getProductName() {
+        return productName;
+    }
+
+    public BillingLine setProductName(String productName) {
+        this.productName = productName;
+        return this;
+    }
+
+    public int getQuantity() {
+        return quantity;
+    }
+
+    public BillingLine setQuantity(int quantity) {
+        this.quantity = quantity;
+        return this;
+    }
+
+    public int getAmount() {
+        return amount;
+    }
+
+    public BillingLine setAmount(int amount) {
+        this.amount = amount;
+        return this;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder builder = new StringBuilder();
+        builder.append("BillingLine [receiptId=").append(receiptId).append(", no=").append(no)
+                .append(", orderId=").append(orderId).append(", userId=").append(userId)
+                .append(", productId=").append(productId).append(", quantity=").append(quantity)
+                .append(", amount=").append(amount).append("]");
+        return builder.toString();
+    }
+}
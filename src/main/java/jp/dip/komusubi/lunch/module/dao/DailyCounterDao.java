@@ -0,0 +1,69 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package jp.dip.komusubi.lunch.module.dao;
+
+import java.util.Date;
+import java.util.List;
+
+import jp.dip.komusubi.lunch.model.Order;
+import jp.dip.komusubi.lunch.model.OrderLine;
+
+/**
+ * daily counters of orders per group, shop and product.
+ * counters are maintained in the same transaction as orders.
+ * @author jun.ozeki
+ * @since 2013/07/27
+ */
+public interface DailyCounterDao {
+
+	/**
+	 * add available order lines of the order to counters of the order day.
+	 * @param order member order(not summary).
+	 */
+	void increment(Order order);
+
+	/**
+	 * subtract available order lines of the order.
+	 * @param order canceled order.
+	 */
+	void decrement(Order order);
+
+	/**
+	 * subtract a order line of the order.
+	 * @param order
+	 * @param orderLine canceled order line.
+	 */
+	void decrement(Order order, OrderLine orderLine);
+
+	/**
+	 * counters of the group in the day.
+	 * @param groupId
+	 * @param date
+	 * @return summary orders per shop, not persisted.
+	 */
+	List<Order> findByGroupIdAndDate(Integer groupId, Date date);
+
+	/**
+	 * recompute counters of days from orders.
+	 * @param from first day.
+	 * @param to last day(inclusive).
+	 * @return count of counters.
+	 */
+	int rebuild(Date from, Date to);
+}
@@ -24,4 +24,16 @@ import org.komusubi.common.persistence.GenericDao;
 
 public interface HealthDao extends GenericDao<Integer, Health> {
 
+	/**
+	 * update login counters and active by primary key only.
+	 * @param instance
+	 */
+	void updateLogin(Health instance);
+
+	/**
+	 * count a successful login(login + 1, last login) which changes nothing about security.
+	 * it might be persisted later by write behind.
+	 * @param instance
+	 */
+	void recordLogin(Health instance);
 }
@@ -0,0 +1,203 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package jp.dip.komusubi.lunch.module.dao;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.inject.Singleton;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * request(or transaction) scoped identity map.
+ * entities found by primary key are kept per thread between #begin and #end.
+ * out of scope, #get always returns null and #put does nothing.
+ * @author jun.ozeki
+ * @since 2013/06/01
+ */
+@Singleton
+public class IdentityMap {
+
+    private static final Logger logger = LoggerFactory.getLogger(IdentityMap.class);
+    private final ThreadLocal<Scope> scopes = new ThreadLocal<>();
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+
+    /**
+     * begin scope in current thread. nested scope shares outer one.
+     */
+    public void begin() {
+        Scope scope = scopes.get();
+        if (scope == null) {
+            scope = new Scope();
+            scopes.set(scope);
+        }
+        scope.depth++;
+    }
+
+    /**
+     * end scope in current thread. entities are discarded when outermost scope ends.
+     * @return statistics of ended scope, null if out of scope.
+     */
+    public Statistics end() {
+        Scope scope = scopes.get();
+        if (scope == null)
+            return null;
+        if (--scope.depth > 0)
+            return scope.statistics;
+        scopes.remove();
+        if (logger.isDebugEnabled())
+            logger.debug("identity map scope end: {}", scope.statistics);
+        return scope.statistics;
+    }
+
+    /**
+     * discard all entities in current scope(e.g. after commit or rollback).
+     */
+    public void clear() {
+        Scope scope = scopes.get();
+        if (scope != null)
+            scope.entities.clear();
+    }
+
+    /**
+     * is in scope.
+     * @return
+     */
+    public boolean isActive() {
+        return scopes.get() != null;
+    }
+
+    /**
+     * get entity.
+     * @param type entity class.
+     * @param key primary key.
+     * @return entity, null if not found or out of scope.
+     */
+    public <T> T get(Class<T> type, Object key) {
+        Scope scope = scopes.get();
+        if (scope == null || key == null)
+            return null;
+        Object entity = scope.entities(type).get(key);
+        if (entity == null) {
+            misses.incrementAndGet();
+            scope.statistics.misses++;
+        } else {
+            hits.incrementAndGet();
+            scope.statistics.hits++;
+        }
+        return type.cast(entity);
+    }
+
+    /**
+     * put entity.
+     * @param type entity class.
+     * @param key primary key.
+     * @param entity
+     * @return entity
+     */
+    public <T> T put(Class<T> type, Object key, T entity) {
+        Scope scope = scopes.get();
+        if (scope != null && key != null && entity != null)
+            scope.entities(type).put(key, entity);
+        return entity;
+    }
+
+    /**
+     * remove entity.
+     * @param type entity class.
+     * @param key primary key.
+     */
+    public void evict(Class<?> type, Object key) {
+        Scope scope = scopes.get();
+        if (scope != null)
+            scope.entities(type).remove(key);
+    }
+
+    /**
+     * get statistics of current scope.
+     * @return statistics, null if out of scope.
+     */
+    public Statistics getStatistics() {
+        Scope scope = scopes.get();
+        return scope == null ? null : scope.statistics;
+    }
+
+    /**
+     * total hit count since application start.
+     * @return
+     */
+    public long getHits() {
+        return hits.get();
+    }
+
+    /**
+     * total miss count since application start.
+     * @return
+     */
+    public long getMisses() {
+        return misses.get();
+    }
+
+    /**
+     * entities bound to a thread.
+     */
+    private static class Scope {
+        private final Map<Class<?>, Map<Object, Object>> entities = new HashMap<>();
+        private final Statistics statistics = new Statistics();
+        private int depth;
+
+        private Map<Object, Object> entities(Class<?> type) {
+            Map<Object, Object> map = entities.get(type);
+            if (map == null) {
+                map = new HashMap<>();
+                entities.put(type, map);
+            }
+            return map;
+        }
+    }
+
+    /**
+     * hit and miss count of a scope.
+     * each hit is a round trip to database saved.
+     */
+    public static class Statistics {
+        private int hits;
+        private int misses;
+
+        public int getHits() {
+            return hits;
+        }
+
+        public int getMisses() {
+            return misses;
+        }
+
+        @Override
+        public String toString() {
+            StringBuilder builder = new StringBuilder();
+            builder.append("Statistics [hits=").append(hits).append(", misses=").append(misses)
+                    .append("]");
+            return builder.toString();
+        }
+    }
+}
@@ -0,0 +1,70 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package jp.dip.komusubi.lunch.module.dao;
+
+import java.util.Date;
+
+/**
+ * successful logins of a user not persisted yet.
+ * @author jun.ozeki
+ * @since 2013/08/10
+ */
+public class LoginCount {
+
+    private final Integer userId;
+    private int count;
+    private Date lastLogin;
+
+    public LoginCount(Integer userId) {
+        this.userId = userId;
+    }
+
+    /**
+     * add logins.
+     * @param logins count of logins.
+     * @param last the latest login.
+     * @return this
+     */
+    public LoginCount add(int logins, Date last) {
+        count += logins;
+        if (lastLogin == null || (last != null && last.after(lastLogin)))
+            lastLogin = last;
+        return this;
+    }
+
+    public Integer getUserId() {
+        return userId;
+    }
+
+    public int getCount() {
+        return count;
+    }
+
+    public Date getLastLogin() {
+        return lastLogin;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder builder = new StringBuilder();
+        builder.append("LoginCount [userId=").append(userId).append(", count=").append(count)
+                .append(", lastLogin=").append(lastLogin).append("]");
+        return builder.toString();
+    }
+}
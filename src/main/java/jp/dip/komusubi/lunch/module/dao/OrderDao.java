@@ -18,6 +18,7 @@
  */
 package jp.dip.komusubi.lunch.module.dao;
 
+import java.util.Collection;
 import java.util.Date;
 import java.util.List;
 
@@ -38,5 +39,27 @@ public interface OrderDao extends GenericDao<Integer, Order> {
 	List<Order> findByUserAndProductAndDate(Integer userId, String productId, Date date);
 	List<Order> findByGroupId(String groupId);
 	List<Order> findByGroupIdAndDate(Integer groupId, Date date, boolean summary);
+	/**
+	 * summarize available order lines of the group in the day per shop and product.
+	 * summary orders have shop and lines(quantity and amount), not persisted yet.
+	 */
+	List<Order> summarizeByGroupIdAndDate(Integer groupId, Date date);
+	/**
+	 * persist orders, order lines are inserted by a batch.
+	 */
+	List<Integer> persistAll(Collection<Order> instances);
+	/**
+	 * orders submitted with the idempotency token.
+	 */
+	List<Order> findByUserAndToken(Integer userId, String token);
+	/**
+	 * orders(with lines and users) of the ids.
+	 */
+	List<Order> findByIds(Collection<Integer> ids);
+	/**
+	 * lock orders of the ids until end of the transaction(select for update).
+	 * @return locked order ids.
+	 */
+	List<Integer> lockByIds(Collection<Integer> ids);
 
 }
@@ -18,6 +18,7 @@
  */
 package jp.dip.komusubi.lunch.module.dao;
 
+import java.util.Collection;
 import java.util.List;
 
 import jp.dip.komusubi.lunch.model.OrderLine;
@@ -29,4 +30,11 @@ public interface OrderLineDao extends GenericDao<OrderLineKey, OrderLine> {
 
 	List<OrderLine> findByOrderId(int orderId);
 
+	/**
+	 * persist order lines by a batch.
+	 * @param instances order lines, primary key must be set.
+	 * @return primary keys.
+	 */
+	List<OrderLineKey> persistAll(Collection<OrderLine> instances);
+
 }
@@ -18,8 +18,10 @@
  */
 package jp.dip.komusubi.lunch.module.dao;
 
+import java.util.Collection;
 import java.util.Date;
 import java.util.List;
+import java.util.Set;
 
 import jp.dip.komusubi.lunch.model.Receipt;
 
@@ -35,4 +37,28 @@ public interface ReceiptDao extends GenericDao<Integer, Receipt> {
 
     List<Receipt> findByOrderId(Integer orderId);
 
+    /**
+     * order ids which have receipts already.
+     * @param orderIds
+     * @return
+     */
+    Set<Integer> findReceivedOrderIds(Collection<Integer> orderIds);
+
+    /**
+     * persist receipts, receipts and receipt lines are inserted by a batch each.
+     * @param instances
+     * @return generated receipt ids.
+     */
+    List<Integer> persistAll(Collection<Receipt> instances);
+
+    /**
+     * scan receipt lines of the group in the month, ordered by user and datetime.
+     * lines are streamed to handler without building a list.
+     * @param groupId
+     * @param month any day of the month.
+     * @param handler
+     * @return count of lines.
+     */
+    int scanBillingByGroupAndMonth(Integer groupId, Date month, BillingLine.Handler handler);
+
 }
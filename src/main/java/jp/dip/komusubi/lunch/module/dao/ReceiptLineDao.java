@@ -18,6 +18,9 @@
  */
 package jp.dip.komusubi.lunch.module.dao;
 
+import java.util.Collection;
+import java.util.List;
+
 import jp.dip.komusubi.lunch.model.ReceiptLine;
 import jp.dip.komusubi.lunch.model.ReceiptLine.ReceiptLineKey;
 
@@ -30,4 +33,10 @@ import org.komusubi.common.persistence.GenericDao;
  */
 public interface ReceiptLineDao extends GenericDao<ReceiptLineKey, ReceiptLine> {
 
+    /**
+     * persist receipt lines by a batch.
+     * @param instances receipt lines, primary key must be set.
+     * @return primary keys.
+     */
+    List<ReceiptLineKey> persistAll(Collection<ReceiptLine> instances);
 }
@@ -28,9 +28,21 @@ import org.komusubi.common.persistence.GenericDao;
 public interface UserDao extends GenericDao<Integer, User> {
 
 	User findByEmail(String email);
+	/**
+	 * find user with health and group by a query, for authentication.
+	 */
+	User findByEmailWithHealth(String email);
 	User findByNickname(String nickname);
 	List<User> findByGroupId(Integer groupId);
 	List<User> findByAdmitter(String name);
 	void update(Health instance);
+	/**
+	 * update login counters and active of health by primary key.
+	 */
+	void updateLogin(Health instance);
+	/**
+	 * count a successful login of health, it might be persisted later.
+	 */
+	void recordLogin(Health instance);
 	
 }
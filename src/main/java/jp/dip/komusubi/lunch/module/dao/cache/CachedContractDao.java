@@ -0,0 +1,163 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package jp.dip.komusubi.lunch.module.dao.cache;
+
+import java.util.List;
+
+import javax.inject.Inject;
+import javax.inject.Named;
+import javax.inject.Singleton;
+
+import jp.dip.komusubi.lunch.model.Contract;
+import jp.dip.komusubi.lunch.module.dao.ContractDao;
+import jp.dip.komusubi.lunch.module.dao.jdbc.JdbcContractDao;
+
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+/**
+ * read through cached contract dao.
+ * cached contracts are kept inside, callers get their own copy.
+ * every write evicts all contracts, because a contract is found by group and shop as well.
+ * @author jun.ozeki
+ * @since 2013/06/08
+ */
+@Singleton
+public class CachedContractDao implements ContractDao {
+
+    private static final String ALL = "all";
+    private final ContractDao delegate;
+    private final ReferenceCache<String, Contract> contracts;
+    private final ReferenceCache<String, List<Contract>> lists;
+
+    @Inject
+    public CachedContractDao(JdbcContractDao delegate,
+                             @Named("reference.cache.size") int maxSize,
+                             @Named("reference.cache.ttl") long timeToLive) {
+        this.delegate = delegate;
+        this.contracts = new ReferenceCache<>("contracts", maxSize, timeToLive);
+        this.lists = new ReferenceCache<>("contract lists", maxSize, timeToLive);
+    }
+
+    @Override
+    public Contract find(Integer pk) {
+        String key = "id:" + pk;
+        Contract contract = contracts.get(key);
+        if (contract == null)
+            contract = contracts.put(key, delegate.find(pk));
+        return ReferenceCopies.copy(contract);
+    }
+
+    @Override
+    public List<Contract> findAll() {
+        List<Contract> list = lists.get(ALL);
+        if (list == null)
+            list = lists.put(ALL, delegate.findAll());
+        return ReferenceCopies.copyContracts(list);
+    }
+
+    @Override
+    public List<Contract> findByGroupId(Integer groupId) {
+        String key = "group:" + groupId;
+        List<Contract> list = lists.get(key);
+        if (list == null)
+            list = lists.put(key, delegate.findByGroupId(groupId));
+        return ReferenceCopies.copyContracts(list);
+    }
+
+    @Override
+    public List<Contract> findByShopId(String shopId) {
+        String key = "shop:" + shopId;
+        List<Contract> list = lists.get(key);
+        if (list == null)
+            list = lists.put(key, delegate.findByShopId(shopId));
+        return ReferenceCopies.copyContracts(list);
+    }
+
+    @Override
+    public Contract findByGroupIdAndShopId(Integer groupId, String shopId) {
+        String key = "group:" + groupId + ":shop:" + shopId;
+        Contract contract = contracts.get(key);
+        if (contract == null)
+            contract = contracts.put(key, delegate.findByGroupIdAndShopId(groupId, shopId));
+        return ReferenceCopies.copy(contract);
+    }
+
+    @Override
+    public Contract findByGroupCodeAndShopId(String groupCode, String shopId) {
+        String key = "code:" + groupCode + ":shop:" + shopId;
+        Contract contract = contracts.get(key);
+        if (contract == null)
+            contract = contracts.put(key, delegate.findByGroupCodeAndShopId(groupCode, shopId));
+        return ReferenceCopies.copy(contract);
+    }
+
+    @Override
+    public Integer persist(Contract instance) {
+        try {
+            return delegate.persist(instance);
+        } finally {
+            evictAll();
+        }
+    }
+
+    @Override
+    public void remove(Contract instance) {
+        try {
+            delegate.remove(instance);
+        } finally {
+            evictAll();
+        }
+    }
+
+    @Override
+    public void update(Contract instance) {
+        try {
+            delegate.update(instance);
+        } finally {
+            evictAll();
+        }
+    }
+
+    /**
+     * evict all cached contracts, and again after commit of current transaction.
+     * a reader between the write and the commit might have cached the record committed before.
+     */
+    public void evictAll() {
+        evict();
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronizationAdapter() {
+                @Override
+                public void afterCommit() {
+                    evict();
+                }
+            });
+        }
+    }
+
+    private void evict() {
+        contracts.clear();
+        lists.clear();
+    }
+
+    @Override
+    public String toString() {
+        return contracts + ", " + lists;
+    }
+}
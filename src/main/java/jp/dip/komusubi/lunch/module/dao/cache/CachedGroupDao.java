@@ -0,0 +1,136 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package jp.dip.komusubi.lunch.module.dao.cache;
+
+import java.util.List;
+
+import javax.inject.Inject;
+import javax.inject.Named;
+import javax.inject.Singleton;
+
+import jp.dip.komusubi.lunch.model.Group;
+import jp.dip.komusubi.lunch.module.dao.GroupDao;
+import jp.dip.komusubi.lunch.module.dao.jdbc.JdbcGroupDao;
+
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+/**
+ * read through cached group dao.
+ * cached groups are kept inside, callers get their own copy.
+ * @author jun.ozeki
+ * @since 2013/06/08
+ */
+@Singleton
+public class CachedGroupDao implements GroupDao {
+
+    private static final String ALL = "all";
+    private final GroupDao delegate;
+    private final ReferenceCache<Integer, Group> groups;
+    private final ReferenceCache<String, Group> codes;
+    private final ReferenceCache<String, List<Group>> lists;
+
+    @Inject
+    public CachedGroupDao(JdbcGroupDao delegate,
+                          @Named("reference.cache.size") int maxSize,
+                          @Named("reference.cache.ttl") long timeToLive) {
+        this.delegate = delegate;
+        this.groups = new ReferenceCache<>("groups", maxSize, timeToLive);
+        this.codes = new ReferenceCache<>("group codes", maxSize, timeToLive);
+        this.lists = new ReferenceCache<>("group lists", 1, timeToLive);
+    }
+
+    @Override
+    public Group find(Integer pk) {
+        Group group = groups.get(pk);
+        if (group == null)
+            group = groups.put(pk, delegate.find(pk));
+        return ReferenceCopies.copy(group);
+    }
+
+    @Override
+    public Group findByCode(String code) {
+        Group group = codes.get(code);
+        if (group == null)
+            group = codes.put(code, delegate.findByCode(code));
+        return ReferenceCopies.copy(group);
+    }
+
+    @Override
+    public List<Group> findAll() {
+        List<Group> list = lists.get(ALL);
+        if (list == null)
+            list = lists.put(ALL, delegate.findAll());
+        return ReferenceCopies.copyGroups(list);
+    }
+
+    @Override
+    public Integer persist(Group instance) {
+        try {
+            return delegate.persist(instance);
+        } finally {
+            evictAll();
+        }
+    }
+
+    @Override
+    public void remove(Group instance) {
+        try {
+            delegate.remove(instance);
+        } finally {
+            evictAll();
+        }
+    }
+
+    @Override
+    public void update(Group instance) {
+        try {
+            delegate.update(instance);
+        } finally {
+            evictAll();
+        }
+    }
+
+    /**
+     * evict all cached groups, and again after commit of current transaction.
+     * a reader between the write and the commit might have cached the record committed before.
+     */
+    public void evictAll() {
+        evict();
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronizationAdapter() {
+                @Override
+                public void afterCommit() {
+                    evict();
+                }
+            });
+        }
+    }
+
+    private void evict() {
+        groups.clear();
+        codes.clear();
+        lists.clear();
+    }
+
+    @Override
+    public String toString() {
+        return groups + ", " + codes + ", " + lists;
+    }
+}
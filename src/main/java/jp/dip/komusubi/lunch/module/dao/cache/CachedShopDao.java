@@ -0,0 +1,139 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package jp.dip.komusubi.lunch.module.dao.cache;
+
+import java.util.Date;
+import java.util.List;
+
+import javax.inject.Inject;
+import javax.inject.Named;
+import javax.inject.Singleton;
+
+import jp.dip.komusubi.lunch.model.Product;
+import jp.dip.komusubi.lunch.model.Shop;
+import jp.dip.komusubi.lunch.module.dao.ShopDao;
+import jp.dip.komusubi.lunch.module.dao.jdbc.JdbcShopDao;
+
+import org.apache.commons.lang3.time.DateUtils;
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+/**
+ * read through cached shop dao.
+ * cached shops are kept inside, callers get their own copy.
+ * last order time is loaded as today's date, shops loaded before today are reloaded.
+ * products(findBySalable) are not cached.
+ * @author jun.ozeki
+ * @since 2013/06/08
+ */
+@Singleton
+public class CachedShopDao implements ShopDao {
+
+    private static final String ALL = "all";
+    private final ShopDao delegate;
+    private final ReferenceCache<String, Shop> shops;
+    private final ReferenceCache<String, List<Shop>> lists;
+
+    @Inject
+    public CachedShopDao(JdbcShopDao delegate,
+                         @Named("reference.cache.size") int maxSize,
+                         @Named("reference.cache.ttl") long timeToLive) {
+        this.delegate = delegate;
+        this.shops = new ReferenceCache<>("shops", maxSize, timeToLive);
+        this.lists = new ReferenceCache<>("shop lists", 1, timeToLive);
+    }
+
+    @Override
+    public Shop find(String pk) {
+        Shop shop = shops.get(pk);
+        if (shop == null || !isToday(shop))
+            shop = shops.put(pk, delegate.find(pk));
+        return ReferenceCopies.copy(shop);
+    }
+
+    @Override
+    public List<Shop> findAll() {
+        List<Shop> list = lists.get(ALL);
+        if (list == null || (list.size() > 0 && !isToday(list.get(0))))
+            list = lists.put(ALL, delegate.findAll());
+        return ReferenceCopies.copyShops(list);
+    }
+
+    @Override
+    public List<Product> findBySalable(String shopId, Date date) {
+        return delegate.findBySalable(shopId, date);
+    }
+
+    @Override
+    public String persist(Shop instance) {
+        try {
+            return delegate.persist(instance);
+        } finally {
+            evictAll();
+        }
+    }
+
+    @Override
+    public void remove(Shop instance) {
+        try {
+            delegate.remove(instance);
+        } finally {
+            evictAll();
+        }
+    }
+
+    @Override
+    public void update(Shop instance) {
+        try {
+            delegate.update(instance);
+        } finally {
+            evictAll();
+        }
+    }
+
+    /**
+     * evict all cached shops, and again after commit of current transaction.
+     * a reader between the write and the commit might have cached the record committed before.
+     */
+    public void evictAll() {
+        evict();
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronizationAdapter() {
+                @Override
+                public void afterCommit() {
+                    evict();
+                }
+            });
+        }
+    }
+
+    private void evict() {
+        shops.clear();
+        lists.clear();
+    }
+
+    private boolean isToday(Shop shop) {
+        return shop.getLastOrder() == null || DateUtils.isSameDay(shop.getLastOrder(), new Date());
+    }
+
+    @Override
+    public String toString() {
+        return shops + ", " + lists;
+    }
+}
@@ -0,0 +1,141 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package jp.dip.komusubi.lunch.module.dao.cache;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * bounded, expiring cache for reference data (LRU order).
+ * @author jun.ozeki
+ * @since 2013/06/08
+ */
+public class ReferenceCache<K, V> {
+
+    private static final Logger logger = LoggerFactory.getLogger(ReferenceCache.class);
+    private final String name;
+    private final long timeToLive;
+    private final Map<K, Entry<V>> entries;
+    private long hits;
+    private long misses;
+
+    /**
+     * create new instance.
+     * @param name cache name for logging.
+     * @param maxSize max entries, eldest(least recently used) entry is removed when over.
+     * @param timeToLive millisecond.
+     */
+    public ReferenceCache(String name, final int maxSize, long timeToLive) {
+        if (maxSize < 1)
+            throw new IllegalArgumentException("maxSize must be over zero: " + maxSize);
+        this.name = name;
+        this.timeToLive = timeToLive;
+        this.entries = new LinkedHashMap<K, Entry<V>>(16, 0.75f, true) {
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<K, Entry<V>> eldest) {
+                return size() > maxSize;
+            }
+        };
+    }
+
+    /**
+     * get value.
+     * @param key
+     * @return value, null if not cached or expired.
+     */
+    public synchronized V get(K key) {
+        Entry<V> entry = entries.get(key);
+        if (entry != null && entry.expire < System.currentTimeMillis()) {
+            entries.remove(key);
+            entry = null;
+        }
+        if (entry == null) {
+            misses++;
+            return null;
+        }
+        hits++;
+        return entry.value;
+    }
+
+    /**
+     * put value. null value is not cached.
+     * @param key
+     * @param value
+     * @return value
+     */
+    public synchronized V put(K key, V value) {
+        if (key != null && value != null)
+            entries.put(key, new Entry<V>(value, System.currentTimeMillis() + timeToLive));
+        return value;
+    }
+
+    /**
+     * remove value.
+     * @param key
+     */
+    public synchronized void evict(K key) {
+        entries.remove(key);
+    }
+
+    /**
+     * remove all values.
+     */
+    public synchronized void clear() {
+        entries.clear();
+        logger.info("cache cleared: {}", name);
+    }
+
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    public synchronized long getHits() {
+        return hits;
+    }
+
+    public synchronized long getMisses() {
+        return misses;
+    }
+
+    @Override
+    public synchronized String toString() {
+        StringBuilder builder = new StringBuilder();
+        builder.append("ReferenceCache [name=").append(name).append(", size=").append(entries.size())
+                .append(", hits=").append(hits).append(", misses=").append(misses).append("]");
+        return builder.toString();
+    }
+
+    /**
+     * cached value and expire time.
+     */
+    private static class Entry<V> {
+        private final V value;
+        private final long expire;
+
+        private Entry(V value, long expire) {
+            this.value = value;
+            this.expire = expire;
+        }
+    }
+}
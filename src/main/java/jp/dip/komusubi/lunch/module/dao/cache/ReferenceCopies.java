@@ -0,0 +1,98 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package jp.dip.komusubi.lunch.module.dao.cache;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+
+import jp.dip.komusubi.lunch.model.Contract;
+import jp.dip.komusubi.lunch.model.Group;
+import jp.dip.komusubi.lunch.model.Shop;
+
+/**
+ * copy cached reference models.
+ * cached instances are never handed out, so a setter called by one session
+ * (even in a transaction rolled back later) is not seen by the others.
+ * contracts and users are not copied, they are loaded by each copy.
+ * @author jun.ozeki
+ * @since 2013/06/08
+ */
+final class ReferenceCopies {
+
+    private ReferenceCopies() {
+
+    }
+
+    static Shop copy(Shop shop) {
+        if (shop == null)
+            return null;
+        return new Shop(shop.getId())
+                    .setName(shop.getName())
+                    .setUrl(shop.getUrl())
+                    .setPhoneNumber(shop.getPhoneNumber())
+                    .setLastOrder(copy(shop.getLastOrder()));
+    }
+
+    static Group copy(Group group) {
+        if (group == null)
+            return null;
+        Group copy = new Group();
+        copy.setId(group.getId())
+            .setCode(group.getCode())
+            .setName(group.getName())
+            .setPhoneNumber(group.getPhoneNumber())
+            .setLastOrder(copy(group.getLastOrder()));
+        return copy;
+    }
+
+    static Contract copy(Contract contract) {
+        if (contract == null)
+            return null;
+        return new Contract(contract.getId())
+                    .setGroup(copy(contract.getGroup()))
+                    .setShop(copy(contract.getShop()))
+                    .setContracted(copy(contract.getContracted()));
+    }
+
+    static List<Shop> copyShops(List<Shop> shops) {
+        List<Shop> copies = new ArrayList<>(shops.size());
+        for (Shop shop: shops)
+            copies.add(copy(shop));
+        return copies;
+    }
+
+    static List<Group> copyGroups(List<Group> groups) {
+        List<Group> copies = new ArrayList<>(groups.size());
+        for (Group group: groups)
+            copies.add(copy(group));
+        return copies;
+    }
+
+    static List<Contract> copyContracts(List<Contract> contracts) {
+        List<Contract> copies = new ArrayList<>(contracts.size());
+        for (Contract contract: contracts)
+            copies.add(copy(contract));
+        return copies;
+    }
+
+    private static Date copy(Date date) {
+        return date == null ? null : new Date(date.getTime());
+    }
+}
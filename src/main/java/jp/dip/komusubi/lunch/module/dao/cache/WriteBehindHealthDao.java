@@ -0,0 +1,232 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package jp.dip.komusubi.lunch.module.dao.cache;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.inject.Inject;
+import javax.inject.Named;
+import javax.inject.Singleton;
+
+import jp.dip.komusubi.lunch.model.Health;
+import jp.dip.komusubi.lunch.module.dao.HealthDao;
+import jp.dip.komusubi.lunch.module.dao.LoginCount;
+import jp.dip.komusubi.lunch.module.dao.jdbc.JdbcHealthDao;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionStatus;
+import org.springframework.transaction.support.TransactionCallbackWithoutResult;
+import org.springframework.transaction.support.TransactionTemplate;
+
+/**
+ * write behind health dao.
+ * successful logins(#recordLogin) are coalesced per user in memory and flushed
+ * periodically by a batch in its own transaction, because flusher thread is out of
+ * transaction interceptor. login is persisted as an increment, so a flush never
+ * overwrites other columns and reads need no pending logins.
+ * login fail, lock and activation(#update, #updateLogin) are persisted immediately.
+ * @author jun.ozeki
+ * @since 2013/08/10
+ */
+@Singleton
+public class WriteBehindHealthDao implements HealthDao {
+
+    private static final Logger logger = LoggerFactory.getLogger(WriteBehindHealthDao.class);
+    public static final long DEFAULT_INTERVAL = 10000L;
+    public static final int DEFAULT_BATCH_SIZE = 100;
+    private final JdbcHealthDao delegate;
+    private final TransactionTemplate transactionTemplate;
+    private final int batchSize;
+    private final ScheduledExecutorService flusher;
+    private Map<Integer, LoginCount> pendings = new HashMap<>();
+    private final AtomicLong recorded = new AtomicLong();
+    private final AtomicLong flushed = new AtomicLong();
+    private final AtomicLong failed = new AtomicLong();
+
+    /**
+     * create new instance.
+     * @param delegate
+     * @param transactionManager
+     * @param interval flush interval(millisecond).
+     */
+    @Inject
+    public WriteBehindHealthDao(JdbcHealthDao delegate, PlatformTransactionManager transactionManager,
+                                @Named("health.write.behind.interval") long interval) {
+        this(delegate, transactionManager, interval, DEFAULT_BATCH_SIZE);
+    }
+
+    /**
+     * create new instance.
+     * @param delegate
+     * @param transactionManager transaction manager of a batch.
+     * @param interval flush interval(millisecond), not flushed periodically if 0.
+     * @param batchSize max updates of a batch.
+     */
+    public WriteBehindHealthDao(JdbcHealthDao delegate, PlatformTransactionManager transactionManager,
+                                long interval, int batchSize) {
+        this.delegate = delegate;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.batchSize = batchSize;
+        this.flusher = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, "lunch-health-flusher");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        if (interval > 0) {
+            flusher.scheduleWithFixedDelay(new Runnable() {
+                @Override
+                public void run() {
+                    flush();
+                }
+            }, interval, interval, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    @Override
+    public Health find(Integer pk) {
+        return delegate.find(pk);
+    }
+
+    @Override
+    public List<Health> findAll() {
+        return delegate.findAll();
+    }
+
+    @Override
+    public Integer persist(Health instance) {
+        return delegate.persist(instance);
+    }
+
+    @Override
+    public void remove(Health instance) {
+        delegate.remove(instance);
+    }
+
+    @Override
+    public void update(Health instance) {
+        delegate.update(instance);
+    }
+
+    @Override
+    public void updateLogin(Health instance) {
+        delegate.updateLogin(instance);
+    }
+
+    @Override
+    public void recordLogin(Health instance) {
+        if (instance == null || instance.getUser() == null || instance.getUser().getId() == null)
+            throw new IllegalArgumentException("health user id must not be null.");
+        merge(instance.getUser().getId(), 1, instance.getLastLogin());
+        recorded.incrementAndGet();
+    }
+
+    private synchronized void merge(Integer userId, int count, Date lastLogin) {
+        LoginCount pending = pendings.get(userId);
+        if (pending == null) {
+            pending = new LoginCount(userId);
+            pendings.put(userId, pending);
+        }
+        pending.add(count, lastLogin);
+    }
+
+    private synchronized Map<Integer, LoginCount> drain() {
+        Map<Integer, LoginCount> drained = pendings;
+        pendings = new HashMap<>();
+        return drained;
+    }
+
+    /**
+     * flush pending logins by batches, a transaction per batch. logins of failed batch
+     * are kept for next flush.
+     * @return count of flushed users.
+     */
+    public int flush() {
+        Map<Integer, LoginCount> drained = drain();
+        if (drained.isEmpty())
+            return 0;
+        List<LoginCount> counts = new ArrayList<>(drained.values());
+        int count = 0;
+        for (int i = 0; i < counts.size(); i += batchSize) {
+            final List<LoginCount> batch = counts.subList(i, Math.min(i + batchSize, counts.size()));
+            try {
+                transactionTemplate.execute(new TransactionCallbackWithoutResult() {
+                    @Override
+                    protected void doInTransactionWithoutResult(TransactionStatus status) {
+                        delegate.recordLogins(batch);
+                    }
+                });
+                count += batch.size();
+                flushed.addAndGet(batch.size());
+            } catch (RuntimeException e) {
+                failed.addAndGet(batch.size());
+                logger.warn("health flush failed, retry next time: {} users, cause: {}", batch.size(), e.toString());
+                for (LoginCount pending: batch)
+                    merge(pending.getUserId(), pending.getCount(), pending.getLastLogin());
+            }
+        }
+        if (logger.isDebugEnabled())
+            logger.debug("health flushed: {} users", count);
+        return count;
+    }
+
+    /**
+     * count of users waiting to flush.
+     * @return
+     */
+    public synchronized int getPendings() {
+        return pendings.size();
+    }
+
+    /**
+     * stop periodical flush and flush pending logins.
+     */
+    public void stop() {
+        flusher.shutdownNow();
+        try {
+            flusher.awaitTermination(10, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        flush();
+        logger.info("health write behind stopped: {}", this);
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder builder = new StringBuilder();
+        builder.append("WriteBehindHealthDao [pendings=").append(getPendings())
+                .append(", recorded=").append(recorded.get()).append(", flushed=").append(flushed.get())
+                .append(", failed=").append(failed.get()).append("]");
+        return builder.toString();
+    }
+}
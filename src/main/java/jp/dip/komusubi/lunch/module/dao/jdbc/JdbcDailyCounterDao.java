@@ -0,0 +1,267 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package jp.dip.komusubi.lunch.module.dao.jdbc;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.inject.Inject;
+import javax.sql.DataSource;
+
+import jp.dip.komusubi.lunch.LunchException;
+import jp.dip.komusubi.lunch.model.Order;
+import jp.dip.komusubi.lunch.model.OrderLine;
+import jp.dip.komusubi.lunch.model.Product;
+import jp.dip.komusubi.lunch.module.dao.DailyCounterDao;
+import jp.dip.komusubi.lunch.module.dao.IdentityMap;
+import jp.dip.komusubi.lunch.module.dao.ShopDao;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.dao.DataAccessException;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+
+/**
+ * jdbc daily counter dao.
+ * counters are incremented by "insert ... on duplicate key update quantity = quantity + values(quantity)"
+ * in a single statement, so that concurrent first orders of the same product are never lost and
+ * don't deadlock on gap locks(update miss then insert does on innodb).
+ * counters are decremented by "update ... set quantity = quantity - ?" only.
+ * counters never go below zero, decrement of a missing counter is ignored(fixed by #rebuild).
+ * @author jun.ozeki
+ * @since 2013/07/27
+ */
+public class JdbcDailyCounterDao implements DailyCounterDao {
+
+    private static final Logger logger = LoggerFactory.getLogger(JdbcDailyCounterDao.class);
+    private static final String COLUMNS = "groupId, shopId, productId, orderDay, quantity, amount, orderers";
+    private static final String INCREMENT_QUERY = "insert into dailyCounters ( " + COLUMNS + " ) values "
+            + "(:groupId, :shopId, :productId, :orderDay, :quantity, :amount, :orderers) "
+            + "on duplicate key update quantity = quantity + values(quantity), "
+            + "amount = amount + values(amount), orderers = orderers + values(orderers)";
+    private static final String UPDATE_QUERY = "update dailyCounters set quantity = greatest(quantity + :quantity, 0), "
+            + "amount = greatest(amount + :amount, 0), orderers = greatest(orderers + :orderers, 0) "
+            + "where groupId = :groupId and orderDay = :orderDay and shopId = :shopId and productId = :productId";
+    private static final String SELECT_QUERY_BY_GROUP_AND_DAY = "select c.shopId, c.productId, c.quantity, c.amount, "
+            + "p.refId as productRefId, p.shopId as productShopId, p.name as productName, p.amount as productAmount, "
+            + "p.start as productStart, p.finish as productFinish"
+            + " from dailyCounters c inner join products p on p.id = c.productId"
+            + " where c.groupId = :groupId and c.orderDay = :orderDay and c.quantity > 0"
+            + " order by c.shopId, c.productId";
+    private static final String DELETE_QUERY_BY_PERIOD = "delete from dailyCounters where orderDay >= :fromDay and orderDay <= :toDay";
+    // same conditions as summary of available order lines, see JdbcOrderDao.
+    private static final String REBUILD_QUERY_BY_PERIOD = "insert into dailyCounters ( " + COLUMNS + " ) "
+            + "select o.groupId, o.shopId, l.productId, cast(o.datetime as date), "
+            + "sum(l.quantity), sum(l.quantity * p.amount), count(distinct o.id)"
+            + " from orders o inner join orderLines l on l.orderId = o.id inner join products p on p.id = l.productId"
+            + " where o.datetime >= :dayStart and o.datetime < :nextDayStart and o.groupId is not null"
+            + " and o.summary = false and o.cancel = false and l.cancel = false"
+            + " group by o.groupId, o.shopId, l.productId, cast(o.datetime as date)";
+    private NamedParameterJdbcTemplate template;
+    @Inject private ShopDao shopDao;
+    @Inject private IdentityMap identityMap = new IdentityMap();
+
+    @Inject
+    public JdbcDailyCounterDao(DataSource dataSource) {
+        this.template = new NamedParameterJdbcTemplate(dataSource);
+    }
+
+    /**
+     * add available order lines of the order.
+     */
+    @Override
+    public void increment(Order order) {
+        count(order, order.getOrderLines(false), 1);
+    }
+
+    /**
+     * subtract available order lines of the order.
+     */
+    @Override
+    public void decrement(Order order) {
+        count(order, order.getOrderLines(false), -1);
+    }
+
+    /**
+     * subtract a order line, orderer is subtracted only when no other available line
+     * of the same product remains in the order.
+     */
+    @Override
+    public void decrement(Order order, OrderLine orderLine) {
+        Integer groupId = groupIdOf(order);
+        if (groupId == null || orderLine.getProduct() == null)
+            return;
+        String productId = orderLine.getProduct().getId();
+        int orderers = -1;
+        for (OrderLine line: order.getOrderLines(false)) {
+            if (line.getPrimaryKey() != null && orderLine.getPrimaryKey() != null
+                    && line.getPrimaryKey().getNo() == orderLine.getPrimaryKey().getNo())
+                continue;
+            if (line.getProduct() != null && productId.equals(line.getProduct().getId()))
+                orderers = 0;
+        }
+        upsert(counter(groupId, order, orderLine.getProduct(), 
+                -orderLine.getQuantity(), -orderLine.getProduct().getAmount() * orderLine.getQuantity(), orderers), false);
+    }
+
+    /**
+     * counters joined with products, shaped as summary orders per shop.
+     */
+    @Override
+    public List<Order> findByGroupIdAndDate(Integer groupId, Date date) {
+        MapSqlParameterSource sqlParameter = new MapSqlParameterSource()
+                                            .addValue("groupId", groupId)
+                                            .addValue("orderDay", JdbcDateConverter.toSqlDate(date));
+        final Map<String, Order> summaries = new LinkedHashMap<>();
+        template.query(SELECT_QUERY_BY_GROUP_AND_DAY, sqlParameter, new RowCallbackHandler() {
+
+            @Override
+            public void processRow(ResultSet rs) throws SQLException {
+                String shopId = rs.getString("shopId");
+                Order summary = summaries.get(shopId);
+                if (summary == null) {
+                    summary = new Order()
+                                .setShop(shopDao.find(shopId))
+                                .setSummary(true);
+                    summaries.put(shopId, summary);
+                }
+                String productId = rs.getString("productId");
+                Product product = identityMap.get(Product.class, productId);
+                if (product == null) {
+                    product = new Product(productId)
+                                .setRefId(rs.getString("productRefId"))
+                                .setShop(summary.getShop().getId().equals(rs.getString("productShopId"))
+                                        ? summary.getShop() : shopDao.find(rs.getString("productShopId")))
+                                .setName(rs.getString("productName"))
+                                .setAmount(rs.getInt("productAmount"))
+                                .setStart(rs.getTimestamp("productStart"))
+                                .setFinish(rs.getTimestamp("productFinish"));
+                    identityMap.put(Product.class, productId, product);
+                }
+                summary.addLine(new OrderLine()
+                                    .setProduct(product)
+                                    .setQuantity(rs.getInt("quantity"))
+                                    .setAmount(rs.getInt("amount")));
+            }
+        });
+        logger.info("findByGroupIdAndDate groupId:{}, shops:{}", groupId, summaries.size());
+        return new ArrayList<>(summaries.values());
+    }
+
+    /**
+     * delete counters of the period and aggregate them again from orders.
+     */
+    @Override
+    public int rebuild(Date from, Date to) {
+        MapSqlParameterSource sqlParameter = new MapSqlParameterSource()
+                                            .addValue("fromDay", JdbcDateConverter.toSqlDate(from))
+                                            .addValue("toDay", JdbcDateConverter.toSqlDate(to))
+                                            .addValue("dayStart", JdbcDateConverter.toDayStart(from))
+                                            .addValue("nextDayStart", JdbcDateConverter.toNextDayStart(to));
+        try {
+            int deleted = template.update(DELETE_QUERY_BY_PERIOD, sqlParameter);
+            int inserted = template.update(REBUILD_QUERY_BY_PERIOD, sqlParameter);
+            logger.info("rebuild daily counters from:{}, to:{}, deleted:{}, inserted:{}", 
+                    new Object[]{ from, to, deleted, inserted });
+            return inserted;
+        } catch (DataAccessException e) {
+            throw new LunchException(e);
+        }
+    }
+
+    /**
+     * count order lines per product.
+     * @param order
+     * @param orderLines available order lines.
+     * @param sign 1: increment, -1: decrement.
+     */
+    private void count(Order order, List<OrderLine> orderLines, int sign) {
+        Integer groupId = groupIdOf(order);
+        if (groupId == null || order.isSummary())
+            return;
+        // lines of the same product in a order are counted as a orderer.
+        Map<String, MapSqlParameterSource> counters = new LinkedHashMap<>();
+        Map<String, int[]> totals = new LinkedHashMap<>();
+        for (OrderLine line: orderLines) {
+            Product product = line.getProduct();
+            if (product == null)
+                continue;
+            int[] total = totals.get(product.getId());
+            if (total == null) {
+                total = new int[2];
+                totals.put(product.getId(), total);
+                counters.put(product.getId(), counter(groupId, order, product, 0, 0, sign));
+            }
+            total[0] += line.getQuantity();
+            total[1] += product.getAmount() * line.getQuantity();
+        }
+        for (Map.Entry<String, MapSqlParameterSource> e: counters.entrySet()) {
+            int[] total = totals.get(e.getKey());
+            upsert(e.getValue().addValue("quantity", sign * total[0])
+                               .addValue("amount", sign * total[1]), sign > 0);
+        }
+    }
+
+    private MapSqlParameterSource counter(Integer groupId, Order order, Product product, 
+            int quantity, int amount, int orderers) {
+        String shopId = order.getShop() != null ? order.getShop().getId() : product.getShop().getId();
+        return new MapSqlParameterSource()
+                        .addValue("groupId", groupId)
+                        .addValue("shopId", shopId)
+                        .addValue("productId", product.getId())
+                        .addValue("orderDay", JdbcDateConverter.toSqlDate(order.getDatetime()))
+                        .addValue("quantity", quantity)
+                        .addValue("amount", amount)
+                        .addValue("orderers", orderers);
+    }
+
+    /**
+     * insert counter or add to existing one in a single statement(increment),
+     * or update existing counter only(decrement).
+     * @param sqlParameter
+     * @param insertable false: counter is not inserted(decrement).
+     */
+    private void upsert(MapSqlParameterSource sqlParameter, boolean insertable) {
+        try {
+            if (insertable) {
+                template.update(INCREMENT_QUERY, sqlParameter);
+                return;
+            }
+            if (template.update(UPDATE_QUERY, sqlParameter) == 0)
+                logger.warn("daily counter to decrement not found, should be rebuilt: {}", sqlParameter.getValues());
+        } catch (DataAccessException e) {
+            throw new LunchException(e);
+        }
+    }
+
+    private Integer groupIdOf(Order order) {
+        if (order.getGroup() != null)
+            return order.getGroup().getId();
+        if (order.getUser() != null)
+            return order.getUser().getGroupId();
+        return null;
+    }
+}
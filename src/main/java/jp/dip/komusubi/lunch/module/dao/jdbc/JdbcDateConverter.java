@@ -34,6 +34,53 @@ public class JdbcDateConverter {
 		return new java.sql.Date(cal.getTimeInMillis());
 	}
 
+	/**
+	 * start of the day, use with {@link #toNextDayStart(java.util.Date)} as half open
+	 * range "col >= dayStart and col < nextDayStart" instead of "date(col) = ?"
+	 * so that index on col can be used.
+	 * @param date
+	 * @return 00:00:00.000 of date.
+	 */
+	public static final Timestamp toDayStart(java.util.Date date) {
+		return new Timestamp(toSqlDate(date).getTime());
+	}
+
+	/**
+	 * start of the next day.
+	 * @param date
+	 * @return 00:00:00.000 of the day after date.
+	 */
+	public static final Timestamp toNextDayStart(java.util.Date date) {
+		Calendar cal = Calendar.getInstance();
+		cal.setTime(toSqlDate(date));
+		cal.add(Calendar.DATE, 1);
+		return new Timestamp(cal.getTimeInMillis());
+	}
+
+	/**
+	 * start of the month, use with {@link #toNextMonthStart(java.util.Date)} as half open range.
+	 * @param date
+	 * @return 00:00:00.000 of the first day of the month.
+	 */
+	public static final Timestamp toMonthStart(java.util.Date date) {
+		Calendar cal = Calendar.getInstance();
+		cal.setTime(toSqlDate(date));
+		cal.set(Calendar.DATE, 1);
+		return new Timestamp(cal.getTimeInMillis());
+	}
+
+	/**
+	 * start of the next month.
+	 * @param date
+	 * @return 00:00:00.000 of the first day of the month after date.
+	 */
+	public static final Timestamp toNextMonthStart(java.util.Date date) {
+		Calendar cal = Calendar.getInstance();
+		cal.setTime(toMonthStart(date));
+		cal.add(Calendar.MONTH, 1);
+		return new Timestamp(cal.getTimeInMillis());
+	}
+
 	public static final Timestamp toTimestamp(java.util.Date date) {
 	    if (date == null)
 	        return null;
@@ -29,6 +29,7 @@ import javax.sql.DataSource;
 import jp.dip.komusubi.lunch.LunchException;
 import jp.dip.komusubi.lunch.model.Group;
 import jp.dip.komusubi.lunch.module.dao.GroupDao;
+import jp.dip.komusubi.lunch.module.dao.IdentityMap;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -48,6 +49,7 @@ public class JdbcGroupDao implements GroupDao {
 //	private static final String SELECT_QUERY_CONTRACTS = "select id, shopId from"
 //	@Inject private ContractDao contractDao;
 	private SimpleJdbcTemplate template;
+	@Inject private IdentityMap identityMap = new IdentityMap();
 
 	@Inject
 	public JdbcGroupDao(DataSource dataSource) {
@@ -56,9 +58,12 @@ public class JdbcGroupDao implements GroupDao {
 	
     @Override
     public Group find(Integer pk) {
-        Group group = null;
+        Group group = identityMap.get(Group.class, pk);
+        if (group != null)
+            return group;
         try {
             group = template.queryForObject(SELECT_RECORD_QUERY, groupRowMapper, pk);
+            identityMap.put(Group.class, pk, group);
         } catch (EmptyResultDataAccessException e) {
             logger.info("nof found group, pk is {}", pk);
         }
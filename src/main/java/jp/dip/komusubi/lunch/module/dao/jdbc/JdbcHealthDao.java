@@ -20,6 +20,8 @@ package jp.dip.komusubi.lunch.module.dao.jdbc;
 
 import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collection;
 import java.util.List;
 
 import javax.inject.Inject;
@@ -30,6 +32,8 @@ import jp.dip.komusubi.lunch.model.Health;
 import jp.dip.komusubi.lunch.model.User;
 import jp.dip.komusubi.lunch.module.dao.GroupDao;
 import jp.dip.komusubi.lunch.module.dao.HealthDao;
+import jp.dip.komusubi.lunch.module.dao.IdentityMap;
+import jp.dip.komusubi.lunch.module.dao.LoginCount;
 
 import org.springframework.dao.DataAccessException;
 import org.springframework.jdbc.core.RowMapper;
@@ -42,10 +46,16 @@ public class JdbcHealthDao implements HealthDao {
 	private static final String SELECT_QUERY_PK = "select " + COLUMNS + " from health where userId = ?";
 	private static final String UPDATE_QUERY = "update health set login = ?, lastLogin = ?, loginFail = ?,"
 			+ " admitted = ?, active = ?, groupId = (select id from groups where code = ?), groupJoined = ? where userId = ?";
+	private static final String UPDATE_LOGIN_QUERY = "update health set login = ?, lastLogin = ?, loginFail = ?, active = ?"
+			+ " where userId = ?";
+	// lastLogin never moves backwards, a deferred login might be flushed after a newer one.
+	private static final String ADD_LOGIN_QUERY = "update health set login = login + ?,"
+			+ " lastLogin = case when lastLogin is null or lastLogin < ? then ? else lastLogin end where userId = ?";
 	private static final String INSERT_QUERY = "insert into health (" + COLUMNS + ") values ("
 			+ "(select id from users where email = ?), ?, ?, ?, ?, ?, (select id from groups where code = ?),  ?)";
 	private SimpleJdbcTemplate template;
 	private GroupDao groupDao;
+	@Inject private IdentityMap identityMap = new IdentityMap();
 
 	@Inject
 	public JdbcHealthDao(DataSource dataSource, GroupDao groupDao) {
@@ -55,9 +65,12 @@ public class JdbcHealthDao implements HealthDao {
 	
 	@Override
 	public Health find(Integer pk) {
-		Health health = null;
+		Health health = identityMap.get(Health.class, pk);
+		if (health != null)
+			return health;
 		try {
 			health = template.queryForObject(SELECT_QUERY_PK, healthRowMapper, pk);
+			identityMap.put(Health.class, pk, health);
 		} catch (DataAccessException e) {
 			throw new LunchException(e);
 		}
@@ -109,6 +122,45 @@ public class JdbcHealthDao implements HealthDao {
 		}
 	}
 
+	@Override
+	public void updateLogin(Health instance) {
+		validate(instance);
+		try {
+			template.update(UPDATE_LOGIN_QUERY, instance.getLogin(),
+											instance.getLastLogin(),
+											instance.getLoginFail(),
+											instance.isActive(),
+											instance.getUser().getId());
+		} catch (DataAccessException e) {
+			throw new LunchException(e);
+		}
+	}
+
+	@Override
+	public void recordLogin(Health instance) {
+		validate(instance);
+		try {
+			template.update(ADD_LOGIN_QUERY, 1, instance.getLastLogin(), instance.getLastLogin(), instance.getUser().getId());
+		} catch (DataAccessException e) {
+			throw new LunchException(e);
+		}
+	}
+
+	/**
+	 * add login counts by a batch.
+	 * @param counts
+	 */
+	public void recordLogins(Collection<LoginCount> counts) {
+		List<Object[]> batchArgs = new ArrayList<>(counts.size());
+		for (LoginCount count: counts)
+			batchArgs.add(new Object[]{ count.getCount(), count.getLastLogin(), count.getLastLogin(), count.getUserId() });
+		try {
+			template.batchUpdate(ADD_LOGIN_QUERY, batchArgs);
+		} catch (DataAccessException e) {
+			throw new LunchException(e);
+		}
+	}
+
 	private void validate(Health health) {
 		if (health.getUser() == null)
 			throw new IllegalArgumentException("health.User object must NOT be null");
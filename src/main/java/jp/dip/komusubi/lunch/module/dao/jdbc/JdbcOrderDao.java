@@ -20,17 +20,29 @@ package jp.dip.komusubi.lunch.module.dao.jdbc;
 
 import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.Date;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 
 import javax.inject.Inject;
 import javax.sql.DataSource;
 
+import jp.dip.komusubi.lunch.DuplicateOrderException;
 import jp.dip.komusubi.lunch.LunchException;
+import jp.dip.komusubi.lunch.model.Group;
 import jp.dip.komusubi.lunch.model.Order;
 import jp.dip.komusubi.lunch.model.OrderLine;
 import jp.dip.komusubi.lunch.model.OrderLine.OrderLineKey;
+import jp.dip.komusubi.lunch.model.Product;
+import jp.dip.komusubi.lunch.model.Shop;
+import jp.dip.komusubi.lunch.model.User;
 import jp.dip.komusubi.lunch.module.dao.GroupDao;
+import jp.dip.komusubi.lunch.module.dao.IdentityMap;
 import jp.dip.komusubi.lunch.module.dao.OrderDao;
 import jp.dip.komusubi.lunch.module.dao.OrderLineDao;
 import jp.dip.komusubi.lunch.module.dao.ShopDao;
@@ -39,6 +51,9 @@ import jp.dip.komusubi.lunch.module.dao.UserDao;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.dao.DataAccessException;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.jdbc.core.ResultSetExtractor;
+import org.springframework.jdbc.core.RowCallbackHandler;
 import org.springframework.jdbc.core.RowMapper;
 import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
 import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
@@ -52,13 +67,50 @@ import org.springframework.jdbc.support.GeneratedKeyHolder;
 public class JdbcOrderDao implements OrderDao {
 	
 	private static final Logger logger = LoggerFactory.getLogger(JdbcOrderDao.class);
-	private static String COLUMNS = "id, userId, groupId, shopId, amount, geoId, summary, cancel, datetime";
+	private static String COLUMNS = "id, userId, groupId, shopId, amount, geoId, summary, cancel, datetime, summaryDay, token";
 	private static final String INSERT_QUERY = "insert into orders ( " + COLUMNS + " ) values " +
-			"(:id, :userId, :groupId, :shopId, :amount, :geoId, :summary, :cancel, :datetime)";
+			"(:id, :userId, :groupId, :shopId, :amount, :geoId, :summary, :cancel, :datetime, :summaryDay, :token)";
 	private static final String SELECT_QUERY_BY_USER = "select " + COLUMNS + " from orders where userId = :userId";
-	private static final String SELECT_QUERY_BY_USER_AND_DATE = "select " + COLUMNS + " from orders where userId = :userId and date(datetime) = :datetime";
+	private static final String SELECT_QUERY_BY_USER_AND_DATE = "select " + COLUMNS + " from orders "
+			+ "where userId = :userId and datetime >= :dayStart and datetime < :nextDayStart";
 	private static final String SELECT_QUERY_BY_GROUP_AND_DATE = "select " + COLUMNS + " from orders " +
-			"where groupId = :groupId and date(datetime) = :datetime and summary = :summary";
+			"where groupId = :groupId and datetime >= :dayStart and datetime < :nextDayStart and summary = :summary";
+	// join based order graph (orders, orderLines, products, shops and groups in one statement).
+	private static final String GRAPH_COLUMNS = "o.id, o.userId, o.groupId, o.shopId, o.amount, o.summary, o.cancel, o.datetime, o.token, "
+			+ "s.name as shopName, s.url as shopUrl, s.phoneNumber as shopPhoneNumber, s.lastOrder as shopLastOrder, "
+			+ "g.code as groupCode, g.name as groupName, g.phoneNumber as groupPhoneNumber, "
+			+ "l.no as lineNo, l.productId as lineProductId, l.quantity as lineQuantity, l.datetime as lineDatetime, l.cancel as lineCancel, "
+			+ "p.refId as productRefId, p.shopId as productShopId, p.name as productName, p.amount as productAmount, "
+			+ "p.start as productStart, p.finish as productFinish";
+	private static final String GRAPH_TABLES = " from orders o inner join shops s on s.id = o.shopId"
+			+ " left outer join groups g on g.id = o.groupId"
+			+ " left outer join orderLines l on l.orderId = o.id"
+			+ " left outer join products p on p.id = l.productId";
+	private static final String SELECT_GRAPH_BY_USER_AND_DATE = "select " + GRAPH_COLUMNS + GRAPH_TABLES
+			+ " where o.userId = :userId and o.datetime >= :dayStart and o.datetime < :nextDayStart order by o.id, l.no";
+	private static final String SELECT_GRAPH_BY_GROUP_AND_DATE = "select " + GRAPH_COLUMNS + GRAPH_TABLES
+			+ " where o.groupId = :groupId and o.datetime >= :dayStart and o.datetime < :nextDayStart"
+			+ " and o.summary = :summary order by o.id, l.no";
+	private static final String SELECT_GRAPH_BY_USER_AND_TOKEN = "select " + GRAPH_COLUMNS + GRAPH_TABLES
+			+ " where o.userId = :userId and o.token = :token order by o.id, l.no";
+	private static final String SELECT_GRAPH_BY_IDS = "select " + GRAPH_COLUMNS + GRAPH_TABLES
+			+ " where o.id in (:ids) order by o.id, l.no";
+	// summary of available order lines per shop and product.
+	private static final String SELECT_IDS_FOR_UPDATE = "select id from orders where id in (:ids) for update";
+	private static final String SELECT_SUMMARY_BY_GROUP_AND_DATE = "select o.shopId, l.productId, "
+			+ "sum(l.quantity) as quantity, sum(l.quantity * p.amount) as amount, "
+			+ "p.refId as productRefId, p.shopId as productShopId, p.name as productName, p.amount as productAmount, "
+			+ "p.start as productStart, p.finish as productFinish"
+			+ " from orders o inner join orderLines l on l.orderId = o.id inner join products p on p.id = l.productId"
+			+ " where o.groupId = :groupId and o.datetime >= :dayStart and o.datetime < :nextDayStart"
+			+ " and o.summary = false and o.cancel = false and l.cancel = false"
+			+ " group by o.shopId, l.productId, p.refId, p.shopId, p.name, p.amount, p.start, p.finish"
+			+ " order by o.shopId, l.productId";
+	private static final String SELECT_GRAPH_USERS = "select u.id, u.email, u.password, u.nickname, u.name, u.joined, "
+			+ "h.login, h.lastLogin, h.loginFail, h.admitted, h.active, h.groupId, h.groupJoined, "
+			+ "g.code as groupCode, g.name as groupName, g.phoneNumber as groupPhoneNumber "
+			+ "from users u left outer join health h on h.userId = u.id left outer join groups g on g.id = h.groupId "
+			+ "where u.id in (:userIds)";
 	private static final String UPDATE_QUERY = "update order set userId = :userId, groupId = :groupId, " +
 			"shopId = :shopId, amount = :amount, geoId = :geoId, summary = :summary, cancel = :cancel, datetime = :datetime where id = :id";
 	private NamedParameterJdbcTemplate template;
@@ -66,12 +118,22 @@ public class JdbcOrderDao implements OrderDao {
 	@Inject	private ShopDao shopDao;
 	@Inject	private UserDao userDao;
 	@Inject private GroupDao groupDao;
+	@Inject private IdentityMap identityMap = new IdentityMap();
+	private boolean joinFetch = true;
 	
 	@Inject
 	public JdbcOrderDao(DataSource dataSource) {
 	    // get auto increment value 
 	    this.template = new NamedParameterJdbcTemplate(dataSource);
 	}
+
+	/**
+	 * switch loading mode of #findByUserAndDate and #findByGroupIdAndDate.
+	 * @param joinFetch true: load order graph by join query(default). false: load by row mapper per record.
+	 */
+	public void setJoinFetch(boolean joinFetch) {
+	    this.joinFetch = joinFetch;
+	}
 	
 	public Order find(Integer pk) {
 		throw new UnsupportedOperationException("find(pk)");
@@ -82,23 +144,40 @@ public class JdbcOrderDao implements OrderDao {
 	}
 	
 	public Integer persist(Order instance) {
-	    GeneratedKeyHolder holder = new GeneratedKeyHolder();
+		return persistAll(Collections.singletonList(instance)).get(0);
+	}
+
+	/**
+	 * persist orders. order id is generated per order, and order lines of all orders
+	 * are inserted by a batch.
+	 */
+	@Override
+	public List<Integer> persistAll(Collection<Order> instances) {
+	    List<Integer> ids = new ArrayList<>(instances.size());
+	    List<OrderLine> orderLines = new ArrayList<>();
 		try {
-		    MapSqlParameterSource sqlParameter = buildSqlParameterSource(instance); 
-		    template.update(INSERT_QUERY, sqlParameter, holder); 
-		    
-		    int i = 1;
-			for (OrderLine o: instance) {
-			    OrderLineKey primaryKey = new OrderLineKey(holder.getKey().intValue(), i++);
-			    o.setOrderLineKey(primaryKey);
-				orderLineDao.persist(o);
-			}
-			logger.info("persisted: {}", instance);
+		    for (Order instance: instances) {
+		        GeneratedKeyHolder holder = new GeneratedKeyHolder();
+		        MapSqlParameterSource sqlParameter = buildSqlParameterSource(instance); 
+		        template.update(INSERT_QUERY, sqlParameter, holder); 
+		        
+		        int orderId = holder.getKey().intValue();
+		        int i = 1;
+		        for (OrderLine o: instance) {
+		            OrderLineKey primaryKey = new OrderLineKey(orderId, i++);
+		            o.setOrderLineKey(primaryKey);
+		            orderLines.add(o);
+		        }
+		        ids.add(orderId);
+		        logger.info("persisted: {}", instance);
+		    }
+			orderLineDao.persistAll(orderLines);
+		} catch (DuplicateKeyException e) {
+		    throw new DuplicateOrderException("order already exists: " + instances, e);
 		} catch (DataAccessException e) {
 			throw new LunchException(e);
 		}
-		// return to auto boxing 
-		return holder.getKey().intValue();
+		return ids;
 	}
 
 	public void remove(Order instance) {
@@ -127,7 +206,11 @@ public class JdbcOrderDao implements OrderDao {
                                                     .addValue("geoId", null)
                                                     .addValue("summary", instance.isSummary())
                                                     .addValue("cancel", instance.isCancel())
-                                                    .addValue("datetime", instance.getDatetime());
+                                                    .addValue("datetime", instance.getDatetime())
+                                                    // unique per group, shop and day only for summary orders.
+                                                    .addValue("summaryDay", instance.isSummary() 
+                                                            ? JdbcDateConverter.toSqlDate(instance.getDatetime()) : null)
+                                                    .addValue("token", instance.getToken());
         return sqlParameter;
 	}
 	
@@ -158,9 +241,13 @@ public class JdbcOrderDao implements OrderDao {
 	public List<Order> findByUserAndDate(Integer userId, Date date) {
         MapSqlParameterSource sqlParameter = new MapSqlParameterSource()
                                         .addValue("userId", userId)
-                                        .addValue("datetime", JdbcDateConverter.toSqlDate(date));
-	    
-	    List<Order> orders = template.query(SELECT_QUERY_BY_USER_AND_DATE, sqlParameter, orderRowMapper);
+                                        .addValue("dayStart", JdbcDateConverter.toDayStart(date))
+                                        .addValue("nextDayStart", JdbcDateConverter.toNextDayStart(date));
+	    List<Order> orders;
+	    if (joinFetch)
+	        orders = findOrderGraph(SELECT_GRAPH_BY_USER_AND_DATE, sqlParameter);
+	    else
+	        orders = template.query(SELECT_QUERY_BY_USER_AND_DATE, sqlParameter, orderRowMapper);
 	    logger.info("findByUserAndDate count:{}", orders.size());
 	    return orders;
 	}
@@ -192,12 +279,123 @@ public class JdbcOrderDao implements OrderDao {
 	public List<Order> findByGroupIdAndDate(Integer groupId, Date orderDate, boolean summary) {
 	    MapSqlParameterSource sqlParameter = new MapSqlParameterSource()
 	                                        .addValue("groupId", groupId)
-	                                        .addValue("datetime", orderDate)
+	                                        .addValue("dayStart", JdbcDateConverter.toDayStart(orderDate))
+	                                        .addValue("nextDayStart", JdbcDateConverter.toNextDayStart(orderDate))
 	                                        .addValue("summary", summary);
-	    List<Order> orders = template.query(SELECT_QUERY_BY_GROUP_AND_DATE, sqlParameter, orderRowMapper);
+	    List<Order> orders;
+	    if (joinFetch)
+	        orders = findOrderGraph(SELECT_GRAPH_BY_GROUP_AND_DATE, sqlParameter);
+	    else
+	        orders = template.query(SELECT_QUERY_BY_GROUP_AND_DATE, sqlParameter, orderRowMapper);
 	    logger.info("findByGroupIdAndDate count:{}", orders.size());
 	    return orders;
 	}
+
+	@Override
+	public List<Order> findByUserAndToken(Integer userId, String token) {
+	    MapSqlParameterSource sqlParameter = new MapSqlParameterSource()
+	                                        .addValue("userId", userId)
+	                                        .addValue("token", token);
+	    List<Order> orders = findOrderGraph(SELECT_GRAPH_BY_USER_AND_TOKEN, sqlParameter);
+	    logger.info("findByUserAndToken count:{}", orders.size());
+	    return orders;
+	}
+
+	@Override
+	public List<Order> findByIds(Collection<Integer> ids) {
+	    if (ids.isEmpty())
+	        return new ArrayList<>();
+	    MapSqlParameterSource sqlParameter = new MapSqlParameterSource()
+	                                        .addValue("ids", new ArrayList<>(ids));
+	    List<Order> orders = findOrderGraph(SELECT_GRAPH_BY_IDS, sqlParameter);
+	    logger.info("findByIds ids:{}, count:{}", ids.size(), orders.size());
+	    return orders;
+	}
+
+	@Override
+	public List<Integer> lockByIds(Collection<Integer> ids) {
+	    if (ids.isEmpty())
+	        return new ArrayList<>();
+	    try {
+	        return template.queryForList(SELECT_IDS_FOR_UPDATE,
+	                new MapSqlParameterSource("ids", new ArrayList<>(ids)), Integer.class);
+	    } catch (DataAccessException e) {
+	        throw new LunchException(e);
+	    }
+	}
+
+	/**
+	 * summarize available order lines by a aggregate query.
+	 */
+	@Override
+	public List<Order> summarizeByGroupIdAndDate(Integer groupId, Date date) {
+	    MapSqlParameterSource sqlParameter = new MapSqlParameterSource()
+	                                        .addValue("groupId", groupId)
+	                                        .addValue("dayStart", JdbcDateConverter.toDayStart(date))
+	                                        .addValue("nextDayStart", JdbcDateConverter.toNextDayStart(date));
+	    final Map<String, Order> summaries = new LinkedHashMap<>();
+	    template.query(SELECT_SUMMARY_BY_GROUP_AND_DATE, sqlParameter, new RowCallbackHandler() {
+
+	        @Override
+	        public void processRow(ResultSet rs) throws SQLException {
+	            String shopId = rs.getString("shopId");
+	            Order summary = summaries.get(shopId);
+	            if (summary == null) {
+	                summary = new Order()
+	                            .setShop(shopDao.find(shopId))
+	                            .setSummary(true);
+	                summaries.put(shopId, summary);
+	            }
+	            String productId = rs.getString("productId");
+	            Product product = identityMap.get(Product.class, productId);
+	            if (product == null) {
+	                product = new Product(productId)
+	                            .setRefId(rs.getString("productRefId"))
+	                            .setShop(summary.getShop().getId().equals(rs.getString("productShopId"))
+	                                    ? summary.getShop() : shopDao.find(rs.getString("productShopId")))
+	                            .setName(rs.getString("productName"))
+	                            .setAmount(rs.getInt("productAmount"))
+	                            .setStart(rs.getTimestamp("productStart"))
+	                            .setFinish(rs.getTimestamp("productFinish"));
+	                identityMap.put(Product.class, productId, product);
+	            }
+	            summary.addLine(new OrderLine()
+	                                .setProduct(product)
+	                                .setQuantity(rs.getInt("quantity"))
+	                                .setAmount(rs.getInt("amount")));
+	        }
+	    });
+	    logger.info("summarizeByGroupIdAndDate groupId:{}, shops:{}", groupId, summaries.size());
+	    return new ArrayList<>(summaries.values());
+	}
+
+	/**
+	 * find order graph by two statements, orders(with lines, products, shops) and users(with health, groups).
+	 * @param query order graph query.
+	 * @param sqlParameter
+	 * @return
+	 */
+	private List<Order> findOrderGraph(String query, MapSqlParameterSource sqlParameter) {
+	    OrderGraphExtractor extractor = new OrderGraphExtractor();
+	    List<Order> orders = template.query(query, sqlParameter, extractor);
+	    // users in identity map are shared as they are, only the others are loaded.
+	    List<Integer> userIds = new ArrayList<>();
+	    for (Map.Entry<Integer, List<Order>> entry: extractor.ordersByUser.entrySet()) {
+	        User user = identityMap.get(User.class, entry.getKey());
+	        if (user == null) {
+	            userIds.add(entry.getKey());
+	            continue;
+	        }
+	        for (Order order: entry.getValue())
+	            order.setUser(user);
+	    }
+	    if (userIds.size() > 0) {
+	        MapSqlParameterSource userParameter = new MapSqlParameterSource()
+	                                        .addValue("userIds", userIds);
+	        template.query(SELECT_GRAPH_USERS, userParameter, extractor.userCallbackHandler);
+	    }
+	    return orders;
+	}
 	
 	private RowMapper<Order> orderRowMapper = new RowMapper<Order>() {
 		
@@ -211,10 +409,145 @@ public class JdbcOrderDao implements OrderDao {
                         			.addLines(orderLineDao.findByOrderId(rs.getInt("id")))
                         			.setSummary(rs.getBoolean("summary"))
                         			.setCancel(rs.getBoolean("cancel"))
-                        			.setDatetime(rs.getDate("datetime"));
+                        			.setDatetime(rs.getDate("datetime"))
+                        			.setToken(rs.getString("token"));
 			return order;
 		}
 		
 	};
-	
+
+	/**
+	 * assemble order graph from joined result set.
+	 * each shop, product, group and user is materialized only once per query (identity map).
+	 */
+	private class OrderGraphExtractor implements ResultSetExtractor<List<Order>> {
+	    private final Map<Integer, Order> orders = new LinkedHashMap<>();
+	    private final Map<Integer, List<Order>> ordersByUser = new HashMap<>();
+	    private final Map<String, Shop> shops = new HashMap<>();
+	    private final Map<String, Product> products = new HashMap<>();
+	    private final Map<Integer, Group> groups = new HashMap<>();
+
+	    @Override
+	    public List<Order> extractData(ResultSet rs) throws SQLException {
+	        while (rs.next()) {
+	            int orderId = rs.getInt("id");
+	            Order order = orders.get(orderId);
+	            if (order == null) {
+	                order = new Order(orderId)
+	                            .setGroup(group(rs, "groupId"))
+	                            .setShop(shop(rs))
+	                            .setAmount(rs.getInt("amount"))
+	                            .setSummary(rs.getBoolean("summary"))
+	                            .setCancel(rs.getBoolean("cancel"))
+	                            .setDatetime(rs.getDate("datetime"))
+	                            .setToken(rs.getString("token"));
+	                orders.put(orderId, order);
+	                Integer userId = rs.getInt("userId");
+	                if (!ordersByUser.containsKey(userId))
+	                    ordersByUser.put(userId, new ArrayList<Order>());
+	                ordersByUser.get(userId).add(order);
+	            }
+	            int no = rs.getInt("lineNo");
+	            if (rs.wasNull())
+	                continue;
+	            OrderLine orderLine = new OrderLine(new OrderLineKey(orderId, no))
+	                                        .setProduct(product(rs, order.getShop()))
+	                                        .setQuantity(rs.getInt("lineQuantity"))
+	                                        .setDatetime(rs.getDate("lineDatetime"))
+	                                        .setCancel(rs.getBoolean("lineCancel"));
+	            order.addLine(orderLine);
+	        }
+	        return new ArrayList<>(orders.values());
+	    }
+
+	    private Shop shop(ResultSet rs) throws SQLException {
+	        String shopId = rs.getString("shopId");
+	        Shop shop = shops.get(shopId);
+	        if (shop == null)
+	            shop = identityMap.get(Shop.class, shopId);
+	        if (shop == null) {
+	            shop = new Shop(shopId)
+	                        .setName(rs.getString("shopName"))
+	                        .setPhoneNumber(rs.getString("shopPhoneNumber"))
+	                        .setUrl(rs.getString("shopUrl"))
+	                        .setLastOrder(JdbcDateConverter.toCurrentDate(rs.getTime("shopLastOrder")));
+	            identityMap.put(Shop.class, shopId, shop);
+	        }
+	        shops.put(shopId, shop);
+	        return shop;
+	    }
+
+	    private Product product(ResultSet rs, Shop orderShop) throws SQLException {
+	        String productId = rs.getString("lineProductId");
+	        Product product = products.get(productId);
+	        if (product == null)
+	            product = identityMap.get(Product.class, productId);
+	        if (product == null) {
+	            String shopId = rs.getString("productShopId");
+	            Shop shop = shops.get(shopId);
+	            if (shop == null) {
+	                // product of other shop, not appeared in this result set.
+	                shop = shopDao.find(shopId);
+	                shops.put(shopId, shop);
+	            }
+	            product = new Product(productId)
+	                            .setRefId(rs.getString("productRefId"))
+	                            .setShop(shop)
+	                            .setName(rs.getString("productName"))
+	                            .setAmount(rs.getInt("productAmount"))
+	                            .setStart(rs.getTimestamp("productStart"))
+	                            .setFinish(rs.getTimestamp("productFinish"));
+	            identityMap.put(Product.class, productId, product);
+	        }
+	        products.put(productId, product);
+	        return product;
+	    }
+
+	    private Group group(ResultSet rs, String column) throws SQLException {
+	        int groupId = rs.getInt(column);
+	        if (rs.wasNull())
+	            return null;
+	        Group group = groups.get(groupId);
+	        if (group == null)
+	            group = identityMap.get(Group.class, groupId);
+	        if (group == null && rs.getString("groupCode") != null) {
+	            group = new Group(groupId)
+	                        .setCode(rs.getString("groupCode"))
+	                        .setName(rs.getString("groupName"))
+	                        .setPhoneNumber(rs.getString("groupPhoneNumber"));
+	            identityMap.put(Group.class, groupId, group);
+	        }
+	        if (group != null)
+	            groups.put(groupId, group);
+	        return group;
+	    }
+
+	    /**
+	     * map users(with health and group) not in identity map to orders.
+	     * user without health is mapped with default health, so that no order has null user.
+	     */
+	    private final RowCallbackHandler userCallbackHandler = new RowCallbackHandler() {
+
+	        @Override
+	        public void processRow(ResultSet rs) throws SQLException {
+	            User user = new User(rs.getInt("id"));
+	            user.getHealth()
+	                    .setLogin(rs.getInt("login"))
+	                    .setLoginFail(rs.getInt("loginFail"))
+	                    .setLastLogin(rs.getTimestamp("lastLogin"))
+	                    .setAdmitter(rs.getString("admitted"))
+	                    .setActive(rs.getBoolean("active"))
+	                    .setGroup(group(rs, "groupId"))
+	                    .setGroupJoined(rs.getTimestamp("groupJoined"));
+	            user.setPassword(rs.getString("password"))
+	                .setName(rs.getString("name"))
+	                .setNickname(rs.getString("nickname"))
+	                .setEmail(rs.getString("email"))
+	                .setJoined(rs.getTimestamp("joined"));
+	            identityMap.put(User.class, user.getId(), user);
+	            for (Order order: ordersByUser.get(user.getId()))
+	                order.setUser(user);
+	        }
+	    };
+	}
 }
@@ -18,6 +18,8 @@ package jp.dip.komusubi.lunch.module.dao.jdbc;
 
 import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collection;
 import java.util.List;
 
 import javax.inject.Inject;
@@ -130,6 +132,34 @@ public class JdbcOrderLineDao implements OrderLineDao {
         return instance.getPrimaryKey();
     }
 
+    /**
+     * persist order lines by a batch (a round trip for all lines).
+     */
+    @Override
+    public List<OrderLineKey> persistAll(Collection<OrderLine> instances) {
+        List<Object[]> batchArgs = new ArrayList<>(instances.size());
+        List<OrderLineKey> keys = new ArrayList<>(instances.size());
+        for (OrderLine instance: instances) {
+            batchArgs.add(new Object[]{ instance.getPrimaryKey().getOrderId(),
+                                        instance.getPrimaryKey().getNo(),
+                                        instance.getProduct().getId(),
+                                        instance.getQuantity(),
+                                        instance.getAmount(),
+                                        instance.getDatetime(),
+                                        instance.isCancel() });
+            keys.add(instance.getPrimaryKey());
+        }
+        if (batchArgs.isEmpty())
+            return keys;
+        try {
+            template.batchUpdate(INSERT_QUERY_RECORD, batchArgs);
+        } catch (DataAccessException e) {
+            throw new LunchException(e);
+        }
+        logger.info("persisted order lines: {}", keys.size());
+        return keys;
+    }
+
     /**
      * remove a order line.
      */
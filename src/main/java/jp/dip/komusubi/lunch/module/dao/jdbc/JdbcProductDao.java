@@ -21,6 +21,8 @@ package jp.dip.komusubi.lunch.module.dao.jdbc;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.Date;
 import java.util.List;
@@ -30,7 +32,8 @@ import javax.sql.DataSource;
 
 import jp.dip.komusubi.lunch.LunchException;
 import jp.dip.komusubi.lunch.model.Product;
-import jp.dip.komusubi.lunch.module.dao.ProductDao;
+import jp.dip.komusubi.lunch.module.dao.IdentityMap;
+import jp.dip.komusubi.lunch.module.dao.ProductBatchDao;
 import jp.dip.komusubi.lunch.module.dao.ShopDao;
 
 import org.slf4j.Logger;
@@ -45,7 +48,7 @@ import org.springframework.jdbc.core.simple.SimpleJdbcTemplate;
  * @author jun.ozeki
  * @since 2011/12/29
  */
-public class JdbcProductDao implements ProductDao {
+public class JdbcProductDao implements ProductBatchDao {
 
     private static final Logger logger = LoggerFactory.getLogger(JdbcProductDao.class);
     private static final String TABLE_NAME = "products";
@@ -55,12 +58,15 @@ public class JdbcProductDao implements ProductDao {
     private static final String SELECT_RECORDS_SHOPID_SALABLE = "select " + COLUMNS
             + " from " + TABLE_NAME + " where shopId = ? and start <= ? and finish >= ?";
     private static final String SELECT_RECORDS_SHOPID_FINISH_DATE = "select " + COLUMNS
-            + " from " + TABLE_NAME + " where shopId = ? and date(finish) = ?";
+            + " from " + TABLE_NAME + " where shopId = ? and finish >= ? and finish < ?";
     private static final String SELECT_RECORDS_SHOPID_FINISH_DATETIME = "select " + COLUMNS
-            + " from " + TABLE_NAME + " where shopId = ? and date(finish) = ? and finish >= ?";
+            + " from " + TABLE_NAME + " where shopId = ? and finish >= ? and finish < ?";
+    private static final String SELECT_RECORDS_FINISH_PERIOD = "select " + COLUMNS
+            + " from " + TABLE_NAME + " where finish >= ? and finish < ? order by shopId, finish";
     private static final String INSERT_QUERY = "insert into " + TABLE_NAME + " ( " + COLUMNS + " )"
             + " values (?, ?, ?, ?, ?, ?, ?)";
     @Inject private ShopDao shopDao;
+    @Inject private IdentityMap identityMap = new IdentityMap();
     private SimpleJdbcTemplate template;
 
     /**
@@ -87,9 +93,11 @@ public class JdbcProductDao implements ProductDao {
      */
     @Override
     public Product find(String pk) {
-        Product product = null;
+        Product product = identityMap.get(Product.class, pk);
+        if (product != null)
+            return product;
         product = template.queryForObject(SELECT_RECORD_PK, productRowMapper, pk);
-        return product;
+        return identityMap.put(Product.class, pk, product);
     }
 
     /**
@@ -121,6 +129,35 @@ public class JdbcProductDao implements ProductDao {
         return instance.getId();
     }
 
+    /**
+     * persist products by a batch.
+     */
+    @Override
+    public List<String> persistAll(Collection<Product> instances) {
+        List<Object[]> batchArgs = new ArrayList<>(instances.size());
+        List<String> ids = new ArrayList<>(instances.size());
+        for (Product instance: instances) {
+            if (Product.DEFAULT_ID.equals(instance.getId()))
+                throw new IllegalArgumentException("product id is " + Product.DEFAULT_ID);
+            batchArgs.add(new Object[]{ instance.getId(),
+                                        instance.getRefId(),
+                                        instance.getShopId(),
+                                        instance.getName(),
+                                        instance.getAmount(),
+                                        instance.getStart(),
+                                        instance.getFinish() });
+            ids.add(instance.getId());
+        }
+        if (batchArgs.isEmpty())
+            return ids;
+        try {
+            template.batchUpdate(INSERT_QUERY, batchArgs);
+        } catch (DataAccessException e) {
+            throw new LunchException(e);
+        }
+        return ids;
+    }
+
     /**
      * remove a product.
      */
@@ -172,11 +209,24 @@ public class JdbcProductDao implements ProductDao {
     @Override
     public List<Product> findByShopIdAndFinishDate(String shopId, Date finishDate) {
         List<Product> list = template.query(SELECT_RECORDS_SHOPID_FINISH_DATE, productRowMapper, 
-                                    shopId, JdbcDateConverter.toSqlDate(finishDate));
+                                    shopId, JdbcDateConverter.toDayStart(finishDate),
+                                    JdbcDateConverter.toNextDayStart(finishDate));
         logger.info("shopId:{}, finishDay:{}, count:{}", shopId, finishDate, list.size());
         return list;
     }
 
+    /**
+     * find by finish period of all shops.
+     */
+    @Override
+    public List<Product> findByFinishPeriod(Date from, Date to) {
+        List<Product> list = template.query(SELECT_RECORDS_FINISH_PERIOD, productRowMapper,
+                                JdbcDateConverter.toTimestamp(from),
+                                JdbcDateConverter.toTimestamp(to));
+        logger.info("from:{}, to:{}, count:{}", new Object[]{ from, to, list.size() });
+        return list;
+    }
+
     /**
      * find by finish date time and shop id.
      */
@@ -184,8 +234,8 @@ public class JdbcProductDao implements ProductDao {
     public List<Product> findByShopIdAndFinishDatetime(String shopId, Date finishDate) {
         List<Product> list = template.query(SELECT_RECORDS_SHOPID_FINISH_DATETIME,
                                 productRowMapper, shopId,
-                                JdbcDateConverter.toSqlDate(finishDate), 
-                                JdbcDateConverter.toTimestamp(finishDate));
+                                JdbcDateConverter.toTimestamp(finishDate),
+                                JdbcDateConverter.toNextDayStart(finishDate));
         logger.info("shopId:{}, finishDate:{}, count:{}", shopId, finishDate, list.size());
         return list;
     }
@@ -202,8 +252,8 @@ public class JdbcProductDao implements ProductDao {
                                             .setShop(shopDao.find(rs.getString("shopId")))
                                             .setName(rs.getString("name"))
                                             .setAmount(rs.getInt("amount"))
-                                            .setStart(rs.getDate("start"))
-                                            .setFinish(rs.getDate("finish"));
+                                            .setStart(rs.getTimestamp("start"))
+                                            .setFinish(rs.getTimestamp("finish"));
             return product;
         }
     };
@@ -18,19 +18,28 @@
  */
 package jp.dip.komusubi.lunch.module.dao.jdbc;
 
+import java.sql.Connection;
+import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.sql.Statement;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.Date;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
 
 import javax.inject.Inject;
+import javax.inject.Named;
 import javax.sql.DataSource;
 
 import jp.dip.komusubi.lunch.TransactionException;
 import jp.dip.komusubi.lunch.model.Receipt;
 import jp.dip.komusubi.lunch.model.ReceiptLine;
 import jp.dip.komusubi.lunch.model.ReceiptLine.ReceiptLineKey;
+import jp.dip.komusubi.lunch.module.dao.BillingLine;
 import jp.dip.komusubi.lunch.module.dao.GroupDao;
 import jp.dip.komusubi.lunch.module.dao.ReceiptDao;
 import jp.dip.komusubi.lunch.module.dao.ReceiptLineDao;
@@ -40,11 +49,12 @@ import jp.dip.komusubi.lunch.module.dao.UserDao;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.dao.DataAccessException;
+import org.springframework.jdbc.core.ConnectionCallback;
+import org.springframework.jdbc.core.PreparedStatementCreator;
+import org.springframework.jdbc.core.RowCallbackHandler;
 import org.springframework.jdbc.core.RowMapper;
-import org.springframework.jdbc.core.namedparam.BeanPropertySqlParameterSource;
 import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
 import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
-import org.springframework.jdbc.support.GeneratedKeyHolder;
 
 
 /**
@@ -56,18 +66,44 @@ public class JdbcReceiptDao implements ReceiptDao {
 
     private static final Logger logger = LoggerFactory.getLogger(JdbcReceiptDao.class);
     private static final String COLUMNS = "id, orderId, userId, groupId, shopId, amount, datetime";
-    private static final String INSERT_QUERY = "insert into receive ( " + COLUMNS + " ) values ( :id, :orderId, :userId, :groupId, :shopId, :amount, :datetime)";
-    private static final String SELECT_RECORDS_USER_AND_DATE = "select " + COLUMNS + " from receipts where userId = :userId and date(datetime) = :datetime";
+    // id is generated, a key is read by getGeneratedKeys per row (some drivers return only the last key of a batch).
+    private static final String INSERT_QUERY = "insert into receipts ( orderId, userId, groupId, shopId, amount, datetime ) values ( ?, ?, ?, ?, ?, ? )";
+    // locking read, receipts of the orders are not inserted by other transaction until commit.
+    private static final String SELECT_ORDER_IDS_RECEIVED = "select orderId from receipts where orderId in (:orderIds) for update";
+    private static final String SELECT_RECORDS_USER_AND_DATE = "select " + COLUMNS + " from receipts "
+            + "where userId = :userId and datetime >= :dayStart and datetime < :nextDayStart";
     private static final String SELECT_RECORDS_ORDER_ID = "select " + COLUMNS + " from receipts where orderId = :orderId";
+    // billing lines in one statement, no query per row while streaming.
+    private static final String SELECT_BILLING_BY_GROUP_AND_MONTH = "select r.id as receiptId, r.orderId, r.userId, r.shopId, r.datetime, "
+            + "u.name as userName, u.email, s.name as shopName, l.no, l.productId, p.name as productName, l.quantity, "
+            + "coalesce(l.amount, l.quantity * p.amount) as amount"
+            + " from receipts r inner join receiptLines l on l.receiptId = r.id"
+            + " inner join users u on u.id = r.userId inner join shops s on s.id = r.shopId"
+            + " left outer join products p on p.id = l.productId"
+            + " where r.groupId = ? and r.datetime >= ? and r.datetime < ?"
+            + " order by r.userId, r.datetime, r.id, l.no";
+    /** mysql streams rows one by one with Integer.MIN_VALUE (otherwise whole result set is read into memory). */
+    public static final int DEFAULT_FETCH_SIZE = Integer.MIN_VALUE;
     private NamedParameterJdbcTemplate template;
+    private int fetchSize;
     @Inject private GroupDao groupDao;
     @Inject private ShopDao shopDao;
     @Inject private UserDao userDao;
     @Inject private ReceiptLineDao receiptLineDao;
     
-    @Inject
     public JdbcReceiptDao(DataSource dataSource) {
+        this(dataSource, DEFAULT_FETCH_SIZE);
+    }
+
+    /**
+     * create new instance.
+     * @param dataSource
+     * @param fetchSize fetch size of forward only result set to scan billing.
+     */
+    @Inject
+    public JdbcReceiptDao(DataSource dataSource, @Named("billing.fetch.size") int fetchSize) {
         this.template = new NamedParameterJdbcTemplate(dataSource);
+        this.fetchSize = fetchSize;
     }
     
     @Override
@@ -81,7 +117,8 @@ public class JdbcReceiptDao implements ReceiptDao {
         try {
             MapSqlParameterSource sqlParameter = new MapSqlParameterSource()
                                                     .addValue("userId", id)
-                                                    .addValue("datetime", date);
+                                                    .addValue("dayStart", JdbcDateConverter.toDayStart(date))
+                                                    .addValue("nextDayStart", JdbcDateConverter.toNextDayStart(date));
             receipts = template.query(SELECT_RECORDS_USER_AND_DATE, sqlParameter, receiptRowMapper);
         } catch (DataAccessException e) {
             receipts = new ArrayList<>();
@@ -103,26 +140,126 @@ public class JdbcReceiptDao implements ReceiptDao {
         return receipts;
     }
     
+    /**
+     * scan billing lines by a forward only result set, a line instance is reused for every row.
+     * fetch size is set to statement directly, JdbcTemplate ignores fetch size less than 1.
+     */
+    @Override
+    public int scanBillingByGroupAndMonth(final Integer groupId, final Date month, final BillingLine.Handler handler) {
+        final BillingLine line = new BillingLine();
+        final int[] count = new int[1];
+        try {
+            template.getJdbcOperations().query(new PreparedStatementCreator() {
+
+                @Override
+                public PreparedStatement createPreparedStatement(Connection con) throws SQLException {
+                    PreparedStatement ps = con.prepareStatement(SELECT_BILLING_BY_GROUP_AND_MONTH,
+                            ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+                    ps.setFetchSize(fetchSize);
+                    ps.setInt(1, groupId);
+                    ps.setTimestamp(2, JdbcDateConverter.toMonthStart(month));
+                    ps.setTimestamp(3, JdbcDateConverter.toNextMonthStart(month));
+                    return ps;
+                }
+            }, new RowCallbackHandler() {
+
+                @Override
+                public void processRow(ResultSet rs) throws SQLException {
+                    line.setReceiptId(rs.getInt("receiptId"))
+                        .setNo(rs.getInt("no"))
+                        .setOrderId(rs.getInt("orderId"))
+                        .setDatetime(rs.getTimestamp("datetime"))
+                        .setUserId(rs.getInt("userId"))
+                        .setUserName(rs.getString("userName"))
+                        .setEmail(rs.getString("email"))
+                        .setShopId(rs.getString("shopId"))
+                        .setShopName(rs.getString("shopName"))
+                        .setProductId(rs.getString("productId"))
+                        .setProductName(rs.getString("productName"))
+                        .setQuantity(rs.getInt("quantity"))
+                        .setAmount(rs.getInt("amount"));
+                    handler.processLine(line);
+                    count[0]++;
+                }
+            });
+        } catch (DataAccessException e) {
+            throw new TransactionException(e);
+        }
+        logger.info("scanBillingByGroupAndMonth groupId:{}, month:{}, lines:{}", new Object[]{groupId, month, count[0]});
+        return count[0];
+    }
+
     @Override
     public List<Receipt> findAll() {
         throw new UnsupportedOperationException("JdbcReceiptDao#findAll");
     }
     
+    @Override
+    public Set<Integer> findReceivedOrderIds(Collection<Integer> orderIds) {
+        final Set<Integer> received = new HashSet<>();
+        if (orderIds.isEmpty())
+            return received;
+        template.query(SELECT_ORDER_IDS_RECEIVED, new MapSqlParameterSource("orderIds", new ArrayList<>(orderIds)),
+                new RowCallbackHandler() {
+                    @Override
+                    public void processRow(ResultSet rs) throws SQLException {
+                        received.add(rs.getInt("orderId"));
+                    }
+                });
+        return received;
+    }
+
     @Override
     public Integer persist(Receipt instance) {
-        GeneratedKeyHolder holder = new GeneratedKeyHolder();
+        return persistAll(Collections.singletonList(instance)).get(0);
+    }
+
+    /**
+     * persist receipts by a prepared statement, and receipt lines of all receipts by a batch.
+     */
+    @Override
+    public List<Integer> persistAll(final Collection<Receipt> instances) {
+        if (instances.isEmpty())
+            return new ArrayList<>();
+        List<Integer> ids;
         try {
-            template.update(INSERT_QUERY, new BeanPropertySqlParameterSource(instance), holder);
-            
-            int i = 1;
-            for (ReceiptLine receiptLine: instance) {
-                receiptLine.setPrimaryKey(new ReceiptLineKey(holder.getKey().intValue(), i++));
-                receiptLineDao.persist(receiptLine);
+            ids = template.getJdbcOperations().execute(new ConnectionCallback<List<Integer>>() {
+
+                @Override
+                public List<Integer> doInConnection(Connection con) throws SQLException {
+                    List<Integer> keys = new ArrayList<>(instances.size());
+                    try (PreparedStatement ps = con.prepareStatement(INSERT_QUERY, Statement.RETURN_GENERATED_KEYS)) {
+                        for (Receipt instance: instances) {
+                            setParameters(ps, instance);
+                            ps.executeUpdate();
+                            try (ResultSet rs = ps.getGeneratedKeys()) {
+                                if (rs.next())
+                                    keys.add(rs.getInt(1));
+                            }
+                        }
+                    }
+                    return keys;
+                }
+            });
+            if (ids.size() != instances.size())
+                throw new TransactionException("generated keys: " + ids.size() + ", receipts: " + instances.size());
+            List<ReceiptLine> receiptLines = new ArrayList<>();
+            int index = 0;
+            for (Receipt instance: instances) {
+                Integer id = ids.get(index++);
+                instance.setId(id);
+                int i = 1;
+                for (ReceiptLine receiptLine: instance) {
+                    receiptLine.setPrimaryKey(new ReceiptLineKey(id, i++));
+                    receiptLines.add(receiptLine);
+                }
             }
+            receiptLineDao.persistAll(receiptLines);
         } catch (DataAccessException e) {
             throw new TransactionException(e);
         }
-        return holder.getKey().intValue();
+        logger.info("persisted receipts: {}", ids.size());
+        return ids;
     }
     
     @Override
@@ -136,11 +273,13 @@ public class JdbcReceiptDao implements ReceiptDao {
         
     }
 
-    private MapSqlParameterSource buildSqlParameter(Receipt instance) {
-        MapSqlParameterSource sqlParameter = new MapSqlParameterSource();
-//                                                .addValue("id",  instance.);
-        throw new UnsupportedOperationException("JdbcReceiptDao#buildSqlParameter");
-//        return sqlParameter;
+    private void setParameters(PreparedStatement ps, Receipt instance) throws SQLException {
+        ps.setInt(1, instance.getOrderId());
+        ps.setInt(2, instance.getUser().getId());
+        ps.setInt(3, instance.getGroup().getId());
+        ps.setString(4, instance.getShop().getId());
+        ps.setInt(5, instance.getAmount());
+        ps.setTimestamp(6, JdbcDateConverter.toTimestamp(instance.getDatetime()));
     }
     
     private RowMapper<Receipt> receiptRowMapper = new RowMapper<Receipt>() {
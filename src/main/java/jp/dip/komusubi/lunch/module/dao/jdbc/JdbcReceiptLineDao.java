@@ -20,6 +20,8 @@ package jp.dip.komusubi.lunch.module.dao.jdbc;
 
 import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collection;
 import java.util.List;
 
 import javax.inject.Inject;
@@ -37,6 +39,7 @@ import org.springframework.dao.DataAccessException;
 import org.springframework.jdbc.core.RowMapper;
 import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
 import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.jdbc.core.namedparam.SqlParameterSource;
 
 /**
  * receipt line jdbc dao. 
@@ -46,7 +49,7 @@ public class JdbcReceiptLineDao implements ReceiptLineDao {
     
     private static final Logger logger = LoggerFactory.getLogger(JdbcReceiptLineDao.class);
     private static final String COLUMNS = "receiptId, no, productId, quantity, amount, memo, datetime";
-    private static final String INSERT_QUERY = "insert into receiptlines ( " + COLUMNS + " ) " +
+    private static final String INSERT_QUERY = "insert into receiptLines ( " + COLUMNS + " ) " +
     		"values ( :receiptId, :no, :productId, :quantity, :amount, :memo, :datetime )";
     private NamedParameterJdbcTemplate template;
     @Inject private ProductDao productDao;
@@ -78,6 +81,25 @@ public class JdbcReceiptLineDao implements ReceiptLineDao {
         return instance.getPrimaryKey();
     }
 
+    @Override
+    public List<ReceiptLineKey> persistAll(Collection<ReceiptLine> instances) {
+        List<SqlParameterSource> batchArgs = new ArrayList<>(instances.size());
+        List<ReceiptLineKey> keys = new ArrayList<>(instances.size());
+        for (ReceiptLine instance: instances) {
+            batchArgs.add(buildSqlParamterSource(instance));
+            keys.add(instance.getPrimaryKey());
+        }
+        if (batchArgs.isEmpty())
+            return keys;
+        try {
+            template.batchUpdate(INSERT_QUERY, batchArgs.toArray(new SqlParameterSource[batchArgs.size()]));
+        } catch (DataAccessException e) {
+            throw new TransactionException(e);
+        }
+        logger.info("persisted receipt lines: {}", keys.size());
+        return keys;
+    }
+
     @Override
     public void remove(ReceiptLine instance) {
         // TODO Auto-generated method stub
@@ -94,6 +116,7 @@ public class JdbcReceiptLineDao implements ReceiptLineDao {
         MapSqlParameterSource sqlParameter = new MapSqlParameterSource()
                                                 .addValue("receiptId", instance.getPrimaryKey().getReceiptId())
                                                 .addValue("no", instance.getPrimaryKey().getNo())
+                                                .addValue("productId", instance.getProduct().getId())
                                                 .addValue("quantity", instance.getQuantity())
                                                 .addValue("amount", instance.getAmount())
                                                 .addValue("memo", instance.getMemo())
@@ -28,6 +28,7 @@ import javax.sql.DataSource;
 import jp.dip.komusubi.lunch.model.Product;
 import jp.dip.komusubi.lunch.model.Shop;
 import jp.dip.komusubi.lunch.module.dao.ContractDao;
+import jp.dip.komusubi.lunch.module.dao.IdentityMap;
 import jp.dip.komusubi.lunch.module.dao.ShopDao;
 
 import org.slf4j.Logger;
@@ -44,6 +45,7 @@ public class JdbcShopDao implements ShopDao {
 	private static final String SELECT_ALL_RECORD = "select " + COLUMNS + " from shops";
 	private SimpleJdbcTemplate template;
 	@Inject private ContractDao contractDao;
+	@Inject private IdentityMap identityMap = new IdentityMap();
 
 	@Inject
 	public JdbcShopDao(DataSource dataSource) {
@@ -52,9 +54,12 @@ public class JdbcShopDao implements ShopDao {
 
 	@Override
 	public Shop find(String pk) {
-		Shop shop = null;
+		Shop shop = identityMap.get(Shop.class, pk);
+		if (shop != null)
+			return shop;
 		try {
 			shop = template.queryForObject(SELECT_RECORD_QUERY, shopRowMapper, pk);
+			identityMap.put(Shop.class, pk, shop);
 		} catch (EmptyResultDataAccessException e) {
 			logger.info("not found shop is {}", pk);
 		}
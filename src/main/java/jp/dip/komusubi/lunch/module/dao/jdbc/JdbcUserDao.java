@@ -24,9 +24,11 @@ import javax.inject.Inject;
 import javax.sql.DataSource;
 
 import jp.dip.komusubi.lunch.LunchException;
+import jp.dip.komusubi.lunch.model.Group;
 import jp.dip.komusubi.lunch.model.Health;
 import jp.dip.komusubi.lunch.model.User;
 import jp.dip.komusubi.lunch.module.dao.HealthDao;
+import jp.dip.komusubi.lunch.module.dao.IdentityMap;
 import jp.dip.komusubi.lunch.module.dao.UserDao;
 
 import org.slf4j.Logger;
@@ -56,9 +58,15 @@ public class JdbcUserDao implements UserDao {
 					+ " where health.groupId = ? and health.userId = id";
 	private static final String SELECT_RECORD_BY_NICKNAME = "select " + COLUMNS + " from users where nickname = ?";
     private static final String SELECT_RECORD_BY_ADMITTER = "select " + COLUMNS + " from users, health where admitted = ? and health.userId = id"; 
+    private static final String SELECT_RECORD_WITH_HEALTH_BY_EMAIL = "select u.email, u.id, u.password, u.nickname, u.name, u.joined,"
+                    + " h.login, h.lastLogin, h.loginFail, h.admitted, h.active, h.groupId, h.groupJoined,"
+                    + " g.code as groupCode, g.name as groupName, g.phoneNumber as groupPhoneNumber"
+                    + " from users u inner join health h on h.userId = u.id"
+                    + " left outer join groups g on g.id = h.groupId where u.email = ?";
 	private HealthDao healthDao;
 	private SimpleJdbcTemplate simple;
 	private NamedParameterJdbcTemplate template;
+	@Inject private IdentityMap identityMap = new IdentityMap();
 	
 	@Inject
 	public JdbcUserDao(DataSource dataSource, HealthDao healthDao) {
@@ -77,6 +85,19 @@ public class JdbcUserDao implements UserDao {
         return user;
     }
 
+    /**
+     * user, health and group are mapped from a row, for sign in.
+     */
+    public User findByEmailWithHealth(String email) {
+        User user = null;
+        try {
+            user = simple.queryForObject(SELECT_RECORD_WITH_HEALTH_BY_EMAIL, userWithHealthRowMapper, email);
+        } catch (EmptyResultDataAccessException e) {
+            logger.info("not found user email is {}", email);
+        }
+        return user;
+    }
+
     public User findByNickname(String nickname) {
         User user = null;
         try {
@@ -102,7 +123,9 @@ public class JdbcUserDao implements UserDao {
     }
     
 	public User find(Integer pk) {
-		User user = null;
+		User user = identityMap.get(User.class, pk);
+		if (user != null)
+			return user;
 		try {
 			user = simple.queryForObject(SELECT_RECORD_QUERY, userRowMapper, pk);
 		} catch (EmptyResultDataAccessException e) {
@@ -160,6 +183,14 @@ public class JdbcUserDao implements UserDao {
 	public void update(Health instance) {
 		healthDao.update(instance);
 	}
+
+	public void updateLogin(Health instance) {
+		healthDao.updateLogin(instance);
+	}
+
+	public void recordLogin(Health instance) {
+		healthDao.recordLogin(instance);
+	}
 	
 	private void validate(User user) {
 		if (user == null || user.getEmail() == null)
@@ -175,6 +206,7 @@ public class JdbcUserDao implements UserDao {
 				.setNickname(rs.getString("nickname"))
 				.setEmail(rs.getString("email"))
 				.setJoined(rs.getTimestamp("joined"));
+			identityMap.put(User.class, user.getId(), user);
 //			User user = new User(rs.getString("id"))
 //							.setGroupId(rs.getString("groupId"))
 //							.setGroup(groupDao.find(rs.getString("groupId")))
@@ -185,4 +217,33 @@ public class JdbcUserDao implements UserDao {
 			return user;
 		}
 	};
+
+	private RowMapper<User> userWithHealthRowMapper = new RowMapper<User>() {
+		public User mapRow(ResultSet rs, int rowNum) throws SQLException {
+			User user = new User(rs.getInt("id"))
+							.setPassword(rs.getString("password"))
+							.setName(rs.getString("name"))
+							.setNickname(rs.getString("nickname"))
+							.setEmail(rs.getString("email"))
+							.setJoined(rs.getTimestamp("joined"));
+			Group group = null;
+			int groupId = rs.getInt("groupId");
+			if (!rs.wasNull())
+				group = new Group(groupId)
+								.setCode(rs.getString("groupCode"))
+								.setName(rs.getString("groupName"))
+								.setPhoneNumber(rs.getString("groupPhoneNumber"));
+			user.getHealth()
+					.setLogin(rs.getInt("login"))
+					.setLoginFail(rs.getInt("loginFail"))
+					.setLastLogin(rs.getTimestamp("lastLogin"))
+					.setAdmitter(rs.getString("admitted"))
+					.setActive(rs.getBoolean("active"))
+					.setGroup(group)
+					.setGroupJoined(rs.getTimestamp("groupJoined"));
+			identityMap.put(User.class, user.getId(), user);
+			identityMap.put(Health.class, user.getId(), user.getHealth());
+			return user;
+		}
+	};
 }
@@ -0,0 +1,97 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package jp.dip.komusubi.lunch.module.dao.monitor;
+
+/**
+ * histogram of long values in power of two buckets.
+ * percentiles are upper bound of bucket, so they are approximate(within x2).
+ * @author jun.ozeki
+ * @since 2013/07/06
+ */
+public class Histogram {
+
+    private final long[] buckets = new long[64];
+    private long count;
+    private long sum;
+    private long min = Long.MAX_VALUE;
+    private long max;
+
+    /**
+     * record a value. negative value is recorded as zero.
+     * @param value
+     */
+    public synchronized void record(long value) {
+        if (value < 0)
+            value = 0;
+        buckets[bucketOf(value)]++;
+        count++;
+        sum += value;
+        min = Math.min(min, value);
+        max = Math.max(max, value);
+    }
+
+    private int bucketOf(long value) {
+        return 64 - Long.numberOfLeadingZeros(value);
+    }
+
+    public synchronized long getCount() {
+        return count;
+    }
+
+    public synchronized long getSum() {
+        return sum;
+    }
+
+    public synchronized long getMin() {
+        return count == 0 ? 0 : min;
+    }
+
+    public synchronized long getMax() {
+        return max;
+    }
+
+    public synchronized double getMean() {
+        return count == 0 ? 0d : (double) sum / count;
+    }
+
+    /**
+     * get percentile.
+     * @param percent 0 to 100.
+     * @return upper bound of bucket which includes the percentile, not over max.
+     */
+    public synchronized long getPercentile(double percent) {
+        if (count == 0)
+            return 0;
+        long rank = (long) Math.ceil(count * percent / 100d);
+        long seen = 0;
+        for (int i = 0; i < buckets.length; i++) {
+            seen += buckets[i];
+            if (seen >= rank && seen > 0)
+                return Math.min(i == 0 ? 0 : (1L << i) - 1, max);
+        }
+        return max;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return String.format("count=%d, min=%d, mean=%.1f, p50=%d, p95=%d, p99=%d, max=%d",
+                count, getMin(), getMean(), getPercentile(50), getPercentile(95),
+                getPercentile(99), max);
+    }
+}
@@ -0,0 +1,53 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package jp.dip.komusubi.lunch.module.dao.monitor;
+
+import org.aopalliance.intercept.MethodInterceptor;
+import org.aopalliance.intercept.MethodInvocation;
+
+/**
+ * record statements per dao method to {@link QueryMonitor}.
+ * @author jun.ozeki
+ * @since 2013/07/06
+ */
+public class MonitorInterceptor implements MethodInterceptor {
+
+    private final QueryMonitor monitor;
+    private final String prefix;
+
+    /**
+     * create interceptor.
+     * @param monitor
+     * @param prefix prefix of metrics name, e.g. "dao:".
+     */
+    public MonitorInterceptor(QueryMonitor monitor, String prefix) {
+        this.monitor = monitor;
+        this.prefix = prefix;
+    }
+
+    @Override
+    public Object invoke(MethodInvocation invocation) throws Throwable {
+        monitor.begin();
+        try {
+            return invocation.proceed();
+        } finally {
+            monitor.end(prefix + QueryMonitor.nameOf(invocation.getMethod()));
+        }
+    }
+}
@@ -0,0 +1,218 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package jp.dip.komusubi.lunch.module.dao.monitor;
+
+import java.io.PrintWriter;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.SQLFeatureNotSupportedException;
+import java.sql.Statement;
+
+import javax.sql.DataSource;
+
+/**
+ * data source which reports statements to {@link QueryMonitor}.
+ * connections, statements and result sets are wrapped by dynamic proxy.
+ * a batch is counted as a statement(a round trip to database).
+ * @author jun.ozeki
+ * @since 2013/07/06
+ */
+public class MonitoredDataSource implements DataSource {
+
+    private final DataSource dataSource;
+    private final QueryMonitor monitor;
+
+    public MonitoredDataSource(DataSource dataSource, QueryMonitor monitor) {
+        this.dataSource = dataSource;
+        this.monitor = monitor;
+    }
+
+    /**
+     * get wrapped data source.
+     * @return
+     */
+    public DataSource getDataSource() {
+        return dataSource;
+    }
+
+    @Override
+    public Connection getConnection() throws SQLException {
+        return wrap(dataSource.getConnection());
+    }
+
+    @Override
+    public Connection getConnection(String username, String password) throws SQLException {
+        return wrap(dataSource.getConnection(username, password));
+    }
+
+    @Override
+    public PrintWriter getLogWriter() throws SQLException {
+        return dataSource.getLogWriter();
+    }
+
+    @Override
+    public void setLogWriter(PrintWriter out) throws SQLException {
+        dataSource.setLogWriter(out);
+    }
+
+    @Override
+    public void setLoginTimeout(int seconds) throws SQLException {
+        dataSource.setLoginTimeout(seconds);
+    }
+
+    @Override
+    public int getLoginTimeout() throws SQLException {
+        return dataSource.getLoginTimeout();
+    }
+
+    @Override
+    public <T> T unwrap(Class<T> iface) throws SQLException {
+        if (iface.isInstance(this))
+            return iface.cast(this);
+        return dataSource.unwrap(iface);
+    }
+
+    @Override
+    public boolean isWrapperFor(Class<?> iface) throws SQLException {
+        return iface.isInstance(this) || dataSource.isWrapperFor(iface);
+    }
+
+    public java.util.logging.Logger getParentLogger() throws SQLFeatureNotSupportedException {
+        throw new SQLFeatureNotSupportedException();
+    }
+
+    private Connection wrap(Connection connection) {
+        return proxy(Connection.class, new ConnectionHandler(connection));
+    }
+
+    private <T> T proxy(Class<T> type, InvocationHandler handler) {
+        return type.cast(Proxy.newProxyInstance(MonitoredDataSource.class.getClassLoader(),
+                new Class<?>[]{ type }, handler));
+    }
+
+    /**
+     * invocation handler which delegates to target.
+     */
+    private abstract static class Delegate implements InvocationHandler {
+        protected final Object target;
+
+        private Delegate(Object target) {
+            this.target = target;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            if ("equals".equals(method.getName()) && method.getParameterTypes().length == 1)
+                return proxy == args[0];
+            if ("hashCode".equals(method.getName()) && method.getParameterTypes().length == 0)
+                return System.identityHashCode(proxy);
+            return delegate(method, args);
+        }
+
+        protected Object delegate(Method method, Object[] args) throws Throwable {
+            try {
+                return method.invoke(target, args);
+            } catch (InvocationTargetException e) {
+                throw e.getTargetException();
+            }
+        }
+    }
+
+    /**
+     * wrap statements created by connection.
+     */
+    private class ConnectionHandler extends Delegate {
+
+        private ConnectionHandler(Connection connection) {
+            super(connection);
+        }
+
+        @Override
+        protected Object delegate(Method method, Object[] args) throws Throwable {
+            Object result = super.delegate(method, args);
+            if (result instanceof Statement && method.getReturnType().isInterface())
+                return proxy(method.getReturnType(), new StatementHandler(result));
+            return result;
+        }
+    }
+
+    /**
+     * time execute methods and count rows.
+     */
+    private class StatementHandler extends Delegate {
+
+        private StatementHandler(Object statement) {
+            super(statement);
+        }
+
+        @Override
+        protected Object delegate(Method method, Object[] args) throws Throwable {
+            String name = method.getName();
+            if (!name.startsWith("execute")) {
+                Object result = super.delegate(method, args);
+                if ("getResultSet".equals(name) && result != null)
+                    return proxy(ResultSet.class, new ResultSetHandler(result));
+                return result;
+            }
+            long started = System.nanoTime();
+            Object result = null;
+            try {
+                result = super.delegate(method, args);
+                return result instanceof ResultSet
+                        ? proxy(ResultSet.class, new ResultSetHandler(result)) : result;
+            } finally {
+                monitor.executed(System.nanoTime() - started, rowsOf(result));
+            }
+        }
+
+        private int rowsOf(Object result) {
+            if (result instanceof Integer)
+                return Math.max((Integer) result, 0);
+            int count = 0;
+            if (result instanceof int[]) {
+                for (int rows: (int[]) result)
+                    count += Math.max(rows, 0);
+            }
+            return count;
+        }
+    }
+
+    /**
+     * count fetched rows.
+     */
+    private class ResultSetHandler extends Delegate {
+
+        private ResultSetHandler(Object resultSet) {
+            super(resultSet);
+        }
+
+        @Override
+        protected Object delegate(Method method, Object[] args) throws Throwable {
+            Object result = super.delegate(method, args);
+            if ("next".equals(method.getName()) && Boolean.TRUE.equals(result))
+                monitor.fetched();
+            return result;
+        }
+    }
+}
@@ -0,0 +1,314 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package jp.dip.komusubi.lunch.module.dao.monitor;
+
+import java.io.PrintWriter;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.SQLFeatureNotSupportedException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.sql.DataSource;
+
+import jp.dip.komusubi.lunch.LunchException;
+
+import org.apache.commons.dbcp.BasicDataSource;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * data source which measures connection pool.
+ * waiters and wait time of borrowing, and connections held over leak threshold
+ * with borrower thread(and stack trace if traced).
+ * @author jun.ozeki
+ * @since 2013/07/13
+ */
+public class PoolDataSource implements DataSource {
+
+    private static final Logger logger = LoggerFactory.getLogger(PoolDataSource.class);
+    private static final long LEAK_CHECK_INTERVAL = TimeUnit.SECONDS.toNanos(10);
+    private final BasicDataSource dataSource;
+    private final long leakThreshold;
+    private final boolean traceStack;
+    private final ConcurrentMap<Connection, Lease> leases = new ConcurrentHashMap<>();
+    private final Histogram waitTime = new Histogram();
+    private final AtomicInteger waiters = new AtomicInteger();
+    private final AtomicLong borrowed = new AtomicLong();
+    private final AtomicLong failures = new AtomicLong();
+    private final AtomicLong leaked = new AtomicLong();
+    private volatile long lastLeakCheck = System.nanoTime();
+
+    /**
+     * create data source.
+     * @param dataSource pool.
+     * @param leakThreshold milliseconds to report a connection as leaked, 0 or less is disabled.
+     */
+    public PoolDataSource(BasicDataSource dataSource, long leakThreshold) {
+        this(dataSource, leakThreshold, false);
+    }
+
+    /**
+     * create data source.
+     * @param dataSource pool.
+     * @param leakThreshold milliseconds to report a connection as leaked, 0 or less is disabled.
+     * @param traceStack true: capture stack trace of borrower on every borrowing(costly),
+     *          false: borrower thread name only.
+     */
+    public PoolDataSource(BasicDataSource dataSource, long leakThreshold, boolean traceStack) {
+        this.dataSource = dataSource;
+        this.leakThreshold = TimeUnit.MILLISECONDS.toNanos(leakThreshold);
+        this.traceStack = traceStack;
+    }
+
+    @Override
+    public Connection getConnection() throws SQLException {
+        waiters.incrementAndGet();
+        long started = System.nanoTime();
+        Connection connection;
+        try {
+            connection = dataSource.getConnection();
+        } catch (SQLException e) {
+            failures.incrementAndGet();
+            logger.warn("connection pool exhausted, active: {}, idle: {}, waiters: {}",
+                    dataSource.getNumActive(), dataSource.getNumIdle(), waiters.get());
+            throw e;
+        } finally {
+            waiters.decrementAndGet();
+            waitTime.record(TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - started));
+        }
+        borrowed.incrementAndGet();
+        if (leakThreshold <= 0)
+            return connection;
+        checkLeaks();
+        Connection proxy = (Connection) Proxy.newProxyInstance(PoolDataSource.class.getClassLoader(),
+                new Class<?>[]{ Connection.class }, new ConnectionHandler(connection));
+        leases.put(proxy, new Lease());
+        return proxy;
+    }
+
+    @Override
+    public Connection getConnection(String username, String password) throws SQLException {
+        throw new SQLFeatureNotSupportedException("pool has a user.");
+    }
+
+    /**
+     * log connections held over leak threshold, once per connection.
+     * checked on borrowing at most every 10 seconds.
+     */
+    private void checkLeaks() {
+        long now = System.nanoTime();
+        if (now - lastLeakCheck < LEAK_CHECK_INTERVAL)
+            return;
+        lastLeakCheck = now;
+        for (Lease lease: leases.values()) {
+            if (!lease.reported && lease.isLeaked(now)) {
+                lease.reported = true;
+                leaked.incrementAndGet();
+                logger.warn("connection held over " + TimeUnit.NANOSECONDS.toMillis(leakThreshold)
+                        + "ms, might be leaked.", lease.getBorrower());
+            }
+        }
+    }
+
+    /**
+     * borrowed connections held over leak threshold.
+     * @return borrower, stack trace is empty unless traced.
+     */
+    public List<Throwable> getLeaks() {
+        long now = System.nanoTime();
+        List<Throwable> list = new ArrayList<>();
+        for (Lease lease: leases.values()) {
+            if (lease.isLeaked(now))
+                list.add(lease.getBorrower());
+        }
+        return list;
+    }
+
+    /**
+     * close pool.
+     */
+    public void close() {
+        try {
+            dataSource.close();
+        } catch (SQLException e) {
+            throw new LunchException(e);
+        }
+    }
+
+    public int getActive() {
+        return dataSource.getNumActive();
+    }
+
+    public int getIdle() {
+        return dataSource.getNumIdle();
+    }
+
+    public int getMaxActive() {
+        return dataSource.getMaxActive();
+    }
+
+    /**
+     * threads waiting for a connection.
+     * @return
+     */
+    public int getWaiters() {
+        return waiters.get();
+    }
+
+    /**
+     * time to get a connection in micro seconds.
+     * @return
+     */
+    public Histogram getWaitTime() {
+        return waitTime;
+    }
+
+    public long getBorrowed() {
+        return borrowed.get();
+    }
+
+    /**
+     * count of failure to get a connection(e.g. wait timeout).
+     * @return
+     */
+    public long getFailures() {
+        return failures.get();
+    }
+
+    /**
+     * count of connections reported as leaked.
+     * @return
+     */
+    public long getLeaked() {
+        return leaked.get();
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder builder = new StringBuilder();
+        builder.append("PoolDataSource [active=").append(getActive()).append(", idle=").append(getIdle())
+                .append(", maxActive=").append(getMaxActive()).append(", waiters=").append(getWaiters())
+                .append(", borrowed=").append(getBorrowed()).append(", failures=").append(getFailures())
+                .append(", leaked=").append(getLeaked()).append(", waitTime(us)={").append(waitTime)
+                .append("}]");
+        return builder.toString();
+    }
+
+    @Override
+    public PrintWriter getLogWriter() throws SQLException {
+        return dataSource.getLogWriter();
+    }
+
+    @Override
+    public void setLogWriter(PrintWriter out) throws SQLException {
+        dataSource.setLogWriter(out);
+    }
+
+    @Override
+    public void setLoginTimeout(int seconds) throws SQLException {
+        dataSource.setLoginTimeout(seconds);
+    }
+
+    @Override
+    public int getLoginTimeout() throws SQLException {
+        return dataSource.getLoginTimeout();
+    }
+
+    @Override
+    public <T> T unwrap(Class<T> iface) throws SQLException {
+        if (iface.isInstance(this))
+            return iface.cast(this);
+        return dataSource.unwrap(iface);
+    }
+
+    @Override
+    public boolean isWrapperFor(Class<?> iface) throws SQLException {
+        return iface.isInstance(this) || dataSource.isWrapperFor(iface);
+    }
+
+    public java.util.logging.Logger getParentLogger() throws SQLFeatureNotSupportedException {
+        throw new SQLFeatureNotSupportedException();
+    }
+
+    /**
+     * borrowing of a connection.
+     */
+    private class Lease {
+        private final long started = System.nanoTime();
+        private final String thread = Thread.currentThread().getName();
+        private final Throwable borrower = traceStack ? new Throwable(getMessage()) : null;
+        private volatile boolean reported;
+
+        private boolean isLeaked(long now) {
+            return now - started > leakThreshold;
+        }
+
+        private String getMessage() {
+            return "connection borrowed by " + thread;
+        }
+
+        /**
+         * borrower captured on borrowing, or built on reporting without stack trace.
+         */
+        private Throwable getBorrower() {
+            if (borrower != null)
+                return borrower;
+            Throwable throwable = new Throwable(getMessage());
+            throwable.setStackTrace(new StackTraceElement[0]);
+            return throwable;
+        }
+    }
+
+    /**
+     * release lease on close.
+     */
+    private class ConnectionHandler implements InvocationHandler {
+        private final Connection target;
+
+        private ConnectionHandler(Connection target) {
+            this.target = target;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            String name = method.getName();
+            if ("equals".equals(name) && method.getParameterTypes().length == 1)
+                return proxy == args[0];
+            if ("hashCode".equals(name) && method.getParameterTypes().length == 0)
+                return System.identityHashCode(proxy);
+            if ("close".equals(name))
+                leases.remove(proxy);
+            try {
+                return method.invoke(target, args);
+            } catch (InvocationTargetException e) {
+                throw e.getTargetException();
+            }
+        }
+    }
+}
@@ -0,0 +1,309 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package jp.dip.komusubi.lunch.module.dao.monitor;
+
+import java.lang.reflect.Method;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.inject.Singleton;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * sql statement monitor.
+ * statements executed through {@link MonitoredDataSource} are counted per thread between
+ * #begin and #end(e.g. a wicket request, a transaction or a dao method).
+ * scopes are nested and a statement is counted in all of open scopes.
+ * when outermost scope executes statements over budget, a warning is logged.
+ * @author jun.ozeki
+ * @since 2013/07/06
+ */
+@Singleton
+public class QueryMonitor {
+
+    private static final Logger logger = LoggerFactory.getLogger(QueryMonitor.class);
+    public static final int DEFAULT_BUDGET = 30;
+    private final ThreadLocal<Deque<Statistics>> scopes = new ThreadLocal<>();
+    private final ConcurrentMap<String, Metrics> metrics = new ConcurrentHashMap<>();
+    private final AtomicLong statements = new AtomicLong();
+    private final AtomicLong rows = new AtomicLong();
+    private final AtomicLong overBudget = new AtomicLong();
+    private final boolean enabled;
+    private final int budget;
+
+    public QueryMonitor() {
+        this(true, DEFAULT_BUDGET);
+    }
+
+    /**
+     * create monitor.
+     * @param enabled false, #begin and #end do nothing.
+     * @param budget statements per outermost scope, 0 or less is unlimited.
+     */
+    public QueryMonitor(boolean enabled, int budget) {
+        this.enabled = enabled;
+        this.budget = budget;
+    }
+
+    /**
+     * method name for metrics, e.g. "JdbcOrderDao#find".
+     * @param method
+     * @return
+     */
+    public static String nameOf(Method method) {
+        return method.getDeclaringClass().getSimpleName() + "#" + method.getName();
+    }
+
+    /**
+     * begin scope in current thread.
+     */
+    public void begin() {
+        if (!enabled)
+            return;
+        Deque<Statistics> deque = scopes.get();
+        if (deque == null) {
+            deque = new ArrayDeque<>();
+            scopes.set(deque);
+        }
+        deque.push(new Statistics());
+    }
+
+    /**
+     * end scope in current thread and record it to metrics.
+     * @param name metrics name.
+     * @return statistics of ended scope, null if out of scope.
+     */
+    public Statistics end(String name) {
+        Deque<Statistics> deque = scopes.get();
+        if (deque == null || deque.isEmpty())
+            return null;
+        Statistics statistics = deque.pop();
+        statistics.elapsed = System.nanoTime() - statistics.started;
+        metricsOf(name).record(statistics);
+        if (deque.isEmpty()) {
+            scopes.remove();
+            if (budget > 0 && statistics.statements > budget) {
+                overBudget.incrementAndGet();
+                logger.warn("query budget {} exceeded, {} {}", budget, name, statistics);
+            } else if (logger.isDebugEnabled()) {
+                logger.debug("{} {}", name, statistics);
+            }
+        }
+        return statistics;
+    }
+
+    private Metrics metricsOf(String name) {
+        Metrics m = metrics.get(name);
+        if (m == null) {
+            Metrics created = new Metrics();
+            m = metrics.putIfAbsent(name, created);
+            if (m == null)
+                m = created;
+        }
+        return m;
+    }
+
+    /**
+     * a statement is executed.
+     * @param nanos execution time.
+     * @param count affected rows.
+     */
+    void executed(long nanos, int count) {
+        statements.incrementAndGet();
+        rows.addAndGet(count);
+        Deque<Statistics> deque = scopes.get();
+        if (deque == null)
+            return;
+        for (Statistics statistics: deque) {
+            statistics.statements++;
+            statistics.rows += count;
+            statistics.time += nanos;
+        }
+    }
+
+    /**
+     * a row is fetched from result set.
+     */
+    void fetched() {
+        rows.incrementAndGet();
+        Deque<Statistics> deque = scopes.get();
+        if (deque == null)
+            return;
+        for (Statistics statistics: deque)
+            statistics.rows++;
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * is in scope.
+     * @return
+     */
+    public boolean isActive() {
+        Deque<Statistics> deque = scopes.get();
+        return deque != null && !deque.isEmpty();
+    }
+
+    /**
+     * get statistics of innermost scope.
+     * @return statistics, null if out of scope.
+     */
+    public Statistics getStatistics() {
+        Deque<Statistics> deque = scopes.get();
+        return deque == null ? null : deque.peek();
+    }
+
+    /**
+     * metrics per name, sorted by name.
+     * @return
+     */
+    public Map<String, Metrics> getMetrics() {
+        return new TreeMap<>(metrics);
+    }
+
+    /**
+     * total statement count since application start.
+     * @return
+     */
+    public long getStatements() {
+        return statements.get();
+    }
+
+    /**
+     * total affected and fetched row count since application start.
+     * @return
+     */
+    public long getRows() {
+        return rows.get();
+    }
+
+    /**
+     * count of outermost scopes over budget.
+     * @return
+     */
+    public long getOverBudget() {
+        return overBudget.get();
+    }
+
+    public int getBudget() {
+        return budget;
+    }
+
+    /**
+     * statements of a scope.
+     */
+    public static class Statistics {
+        private final long started = System.nanoTime();
+        private int statements;
+        private long rows;
+        private long time;
+        private long elapsed;
+
+        public int getStatements() {
+            return statements;
+        }
+
+        public long getRows() {
+            return rows;
+        }
+
+        /**
+         * time of statements execution.
+         * @return nano seconds.
+         */
+        public long getTime() {
+            return time;
+        }
+
+        /**
+         * time between begin and end of scope.
+         * @return nano seconds.
+         */
+        public long getElapsed() {
+            return elapsed;
+        }
+
+        @Override
+        public String toString() {
+            StringBuilder builder = new StringBuilder();
+            builder.append("Statistics [statements=").append(statements).append(", rows=").append(rows)
+                    .append(", time=").append(TimeUnit.NANOSECONDS.toMicros(time)).append("us")
+                    .append(", elapsed=").append(TimeUnit.NANOSECONDS.toMicros(elapsed)).append("us")
+                    .append("]");
+            return builder.toString();
+        }
+    }
+
+    /**
+     * histograms of scopes which have same name.
+     */
+    public static class Metrics {
+        private final Histogram statements = new Histogram();
+        private final Histogram rows = new Histogram();
+        private final Histogram time = new Histogram();
+
+        private void record(Statistics statistics) {
+            statements.record(statistics.statements);
+            rows.record(statistics.rows);
+            time.record(TimeUnit.NANOSECONDS.toMicros(statistics.time));
+        }
+
+        /**
+         * statements per scope.
+         * @return
+         */
+        public Histogram getStatements() {
+            return statements;
+        }
+
+        /**
+         * rows per scope.
+         * @return
+         */
+        public Histogram getRows() {
+            return rows;
+        }
+
+        /**
+         * time of statements execution per scope in micro seconds.
+         * @return
+         */
+        public Histogram getTime() {
+            return time;
+        }
+
+        @Override
+        public String toString() {
+            StringBuilder builder = new StringBuilder();
+            builder.append("Metrics [statements={").append(statements).append("}, rows={").append(rows)
+                    .append("}, time(us)={").append(time).append("}]");
+            return builder.toString();
+        }
+    }
+}
@@ -19,14 +19,18 @@
 package jp.dip.komusubi.lunch.module.database;
 
 import java.sql.Connection;
+import java.sql.DatabaseMetaData;
 import java.sql.DriverManager;
+import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.text.ParseException;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Calendar;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Properties;
+import java.util.Set;
 
 import jp.dip.komusubi.lunch.LunchException;
 import jp.dip.komusubi.lunch.model.Product;
@@ -41,6 +45,7 @@ import org.apache.empire.db.DBColumn;
 import org.apache.empire.db.DBCommand;
 import org.apache.empire.db.DBDatabase;
 import org.apache.empire.db.DBDatabaseDriver;
+import org.apache.empire.db.DBIndex;
 import org.apache.empire.db.DBRecord;
 import org.apache.empire.db.DBSQLScript;
 import org.apache.empire.db.DBTable;
@@ -237,6 +242,7 @@ public class Lunchat extends DBDatabase {
 
             setPrimaryKey(id);
             setCascadeDelete(true);
+            addIndex("products_shop_finish_idx", false, new DBTableColumn[]{ shopId, finish });
         }
 
     }
@@ -265,6 +271,8 @@ public class Lunchat extends DBDatabase {
             datetime  = addColumn("datetime",  DataType.DATETIME, 0,        DataMode.NotNull);
 
             setPrimaryKey(id);
+            addIndex("receipts_order_idx", false, new DBTableColumn[]{ orderId });
+            addIndex("receipts_group_datetime_idx", false, new DBTableColumn[]{ groupId, datetime });
         }
 
     }
@@ -366,6 +374,8 @@ public class Lunchat extends DBDatabase {
         public final DBTableColumn summary; // サマリー  
         public final DBTableColumn cancel;  // キャンセル
         public final DBTableColumn datetime;// 注文日時
+        public final DBTableColumn summaryDay; // サマリー注文日(サマリー以外はnull)
+        public final DBTableColumn token;   // 注文トークン(二重注文防止)
 //		public final DBTableColumn payment; // 支払方法
         
         public Orders(DBDatabase db) {
@@ -379,14 +389,51 @@ public class Lunchat extends DBDatabase {
             summary     = addColumn("summary",  DataType.BOOL,            0, DataMode.NotNull,     Boolean.FALSE);
             cancel      = addColumn("cancel",   DataType.BOOL,            0, DataMode.NotNull,     Boolean.FALSE);
             datetime    = addColumn("datetime", DataType.DATETIME,        0, DataMode.Nullable);
+            summaryDay  = addColumn("summaryDay", DataType.DATE,          0, DataMode.Nullable);
+            token       = addColumn("token",    DataType.TEXT,           36, DataMode.Nullable);
 
             setPrimaryKey(id);
 
             setCascadeDelete(true);
+            // find orders of the day by user or group, see JdbcOrderDao.
+            addIndex("orders_user_datetime_idx", false, new DBTableColumn[]{ userId, datetime });
+            addIndex("orders_group_datetime_summary_idx", false, new DBTableColumn[]{ groupId, datetime, summary });
+            // a summary per group, shop and day. summaryDay of member orders is null and never conflicts.
+            addIndex("orders_group_shop_summary_uk", true, new DBTableColumn[]{ groupId, shopId, summaryDay });
+            // a submission per user, shop and token, see Shopping#order(Basket, String).
+            addIndex("orders_user_shop_token_uk", true, new DBTableColumn[]{ userId, shopId, token });
         }
 
     }
 
+    // daily counters of orders per group, shop and product (denormalized from orders and orderLines)
+    public static class DailyCounters extends DBTable {
+
+        private static final long serialVersionUID = 1L;
+
+        public final DBTableColumn groupId;   // グループID
+        public final DBTableColumn shopId;    // 店舗ID
+        public final DBTableColumn productId; // 商品ID
+        public final DBTableColumn orderDay;  // 注文日
+        public final DBTableColumn quantity;  // 数量
+        public final DBTableColumn amount;    // 金額
+        public final DBTableColumn orderers;  // 注文数
+
+        public DailyCounters(DBDatabase db) {
+            super("dailyCounters", db);
+            groupId   = addColumn("groupId",   DataType.INTEGER,            0, DataMode.NotNull);
+            shopId    = addColumn("shopId",    DataType.TEXT,    sizeOfShopId, DataMode.NotNull);
+            productId = addColumn("productId", DataType.TEXT, sizeOfProductId, DataMode.NotNull);
+            orderDay  = addColumn("orderDay",  DataType.DATE,               0, DataMode.NotNull);
+            quantity  = addColumn("quantity",  DataType.INTEGER,            0, DataMode.NotNull);
+            amount    = addColumn("amount",    DataType.INTEGER,            0, DataMode.NotNull);
+            orderers  = addColumn("orderers",  DataType.INTEGER,            0, DataMode.NotNull);
+
+            // counters of a group in a day, see JdbcDailyCounterDao.
+            setPrimaryKey(groupId, orderDay, shopId, productId);
+        }
+    }
+
     // order lines
     public static class OrderLines extends DBTable {
 
@@ -468,6 +515,7 @@ public class Lunchat extends DBDatabase {
     public final ShippingLines SHIPPING_LINES = new ShippingLines(this);
     public final Orders ORDERS = new Orders(this);
     public final OrderLines ORDER_LINES = new OrderLines(this);
+    public final DailyCounters DAILY_COUNTERS = new DailyCounters(this);
     public final Receipts RECEIPTS = new Receipts(this);
     public final ReceiptLines RECEIPT_LINES = new ReceiptLines(this);
     public final Payment PAYMENT = new Payment(this);
@@ -513,18 +561,35 @@ public class Lunchat extends DBDatabase {
     private static final String FRESH_LUNCH_SHIBAURA = "fresh-shibaura";
     private static final String FRESH_LUNCH_KAWASAKI = "fresh-kawasaki";
     private static final String TAMAGOYA_OOTAKU = "tamagoya";
+    private static final String MYSQL_DEFAULT_HOST = "localhost:3306";
+    private static final String USAGE = "usage: [migrate] [host[:port]] databaseName user password";
 
     /**
      * main
+     * usage: [migrate] [host[:port]] databaseName user password
+     * host is localhost:3306 if omitted.
      * @param args
      */
     public static void main(String[] args) {
-        if (args.length != 3)
-            throw new IllegalArgumentException("less argument! missing databse name and  user and passowrd");
+        boolean migrate = args.length > 0 && "migrate".equals(args[0]);
+        String[] params = migrate ? Arrays.copyOfRange(args, 1, args.length) : args;
+        if (params.length != 3 && params.length != 4)
+            throw new IllegalArgumentException(USAGE);
+        String host = params.length == 4 ? params[0] : MYSQL_DEFAULT_HOST;
+        int i = params.length - 3;
 
         Lunchat lunchat = new Lunchat();
-        lunchat.configureMysql(args[0], args[1], args[2]);
-        System.out.printf("finish initialize database");
+        if (migrate) {
+            lunchat.migrate(mysqlUrl(host, params[i]), params[i + 1], params[i + 2]);
+            System.out.println("finish migrate database");
+            return;
+        }
+        lunchat.configureMysql(host, params[i], params[i + 1], params[i + 2]);
+        System.out.println("finish initialize database");
+    }
+
+    private static String mysqlUrl(String host, String databaseName) {
+        return "jdbc:log4jdbc:mysql://" + host + "/" + databaseName;
     }
 
     /**
@@ -534,7 +599,18 @@ public class Lunchat extends DBDatabase {
      * @param password
      */
     public void configureMysql(String databaseName, String user, String password) {
-        configure("jdbc:log4jdbc:mysql://localhost:3306/" + databaseName, user, password, "utf8");
+        configureMysql(MYSQL_DEFAULT_HOST, databaseName, user, password);
+    }
+
+    /**
+     * 
+     * @param host host name, port is optional(host:port).
+     * @param databaseName
+     * @param user
+     * @param password
+     */
+    public void configureMysql(String host, String databaseName, String user, String password) {
+        configure(mysqlUrl(host, databaseName), user, password, "utf8");
     }
     
     /**
@@ -557,7 +633,7 @@ public class Lunchat extends DBDatabase {
         boolean drop = Boolean.getBoolean("DropTable");
         drop = true;
         // table list must below order because foreign key relations.
-        List<DBTable> tableList = Arrays.asList(HEALTH, SHIPPING_LINES, SHIPPING, ORDER_LINES,
+        List<DBTable> tableList = Arrays.asList(HEALTH, DAILY_COUNTERS, SHIPPING_LINES, SHIPPING, ORDER_LINES,
                 RECEIPT_LINES, RECEIPTS, ORDERS, PAYMENT, PRODUCTS, CONTRACTS, GROUPS, NOTICES, SHOPS,
                 GEOLOCATION, USERS);
         String message = "craete tables...";
@@ -613,6 +689,125 @@ public class Lunchat extends DBDatabase {
     }
     
     
+    /**
+     * migrate existing database, create tables, columns and indexes which are not exist yet.
+     * existing tables and records are kept.
+     * @param url
+     * @param user
+     * @param password
+     */
+    public void migrate(String url, String user, String password) {
+        Properties prop = new Properties();
+        prop.put("user", user);
+        prop.put("password", password);
+        prop.put("characterEncoding", "utf8");
+
+        DBSQLScript script = new DBSQLScript();
+        try (Connection con = DriverManager.getConnection(url, prop)) {
+            con.setAutoCommit(false);
+            if (!isOpen())
+                open(loadDriver(), con);
+            for (DBTable table: getTables()) {
+                if (!existsTableMetaData(table, con)) {
+                    loadDriver().getDDLScript(DBCmdType.CREATE, table, script);
+                    continue;
+                }
+                Set<String> columns = getColumnNames(table, con);
+                for (DBColumn column: table.getColumns()) {
+                    if (!columns.contains(column.getName().toLowerCase()))
+                        loadDriver().getDDLScript(DBCmdType.CREATE, column, script);
+                }
+                Set<String> exists = getIndexNames(table, con);
+                for (DBIndex index: table.getIndexes()) {
+                    if (index.getType() == DBIndex.PRIMARYKEY
+                            || exists.contains(index.getName().toLowerCase()))
+                        continue;
+                    script.addStmt(createIndexStatement(table, index));
+                }
+            }
+            logger.info("migrate script is {}", script.toString());
+            script.run(loadDriver(), con);
+            commit(con);
+        } catch (SQLException e) {
+            throw new LunchException("script: " + script, e);
+        }
+    }
+
+    /**
+     * index names of the table in the database (lower case).
+     * @param table
+     * @param con
+     * @return
+     * @throws SQLException
+     */
+    private Set<String> getIndexNames(DBTable table, Connection con) throws SQLException {
+        DatabaseMetaData meta = con.getMetaData();
+        String tableName = table.getName();
+        if (meta.storesUpperCaseIdentifiers())
+            tableName = tableName.toUpperCase();
+        Set<String> names = new HashSet<>();
+        try (ResultSet rs = meta.getIndexInfo(null, null, tableName, false, false)) {
+            while (rs.next()) {
+                String name = rs.getString("INDEX_NAME");
+                if (name != null)
+                    names.add(name.toLowerCase());
+            }
+        }
+        return names;
+    }
+
+    /**
+     * column names of the table in the database (lower case).
+     * @param table
+     * @param con
+     * @return
+     * @throws SQLException
+     */
+    private Set<String> getColumnNames(DBTable table, Connection con) throws SQLException {
+        DatabaseMetaData meta = con.getMetaData();
+        String tableName = table.getName();
+        if (meta.storesUpperCaseIdentifiers())
+            tableName = tableName.toUpperCase();
+        Set<String> names = new HashSet<>();
+        try (ResultSet rs = meta.getColumns(null, null, tableName, null)) {
+            while (rs.next())
+                names.add(rs.getString("COLUMN_NAME").toLowerCase());
+        }
+        return names;
+    }
+
+    /**
+     * exists table in the database, checked by meta data without query.
+     * @param table
+     * @param con
+     * @return
+     * @throws SQLException
+     */
+    private boolean existsTableMetaData(DBTable table, Connection con) throws SQLException {
+        DatabaseMetaData meta = con.getMetaData();
+        String tableName = table.getName();
+        if (meta.storesUpperCaseIdentifiers())
+            tableName = tableName.toUpperCase();
+        try (ResultSet rs = meta.getTables(null, null, tableName, null)) {
+            return rs.next();
+        }
+    }
+
+    private String createIndexStatement(DBTable table, DBIndex index) {
+        StringBuilder builder = new StringBuilder("create ");
+        if (index.getType() == DBIndex.UNIQUE)
+            builder.append("unique ");
+        builder.append("index ").append(index.getName())
+               .append(" on ").append(table.getName()).append(" (");
+        DBColumn[] columns = index.getColumns();
+        for (int i = 0; i < columns.length; i++) {
+            if (i > 0)
+                builder.append(", ");
+            builder.append(columns[i].getName());
+        }
+        return builder.append(")").toString();
+    }
+
     /**
      * exists table
      * @param tableName
@@ -740,6 +935,24 @@ public class Lunchat extends DBDatabase {
         return list;
     }
 
+    /**
+     * catalogue products of the shop finish at the day.
+     * @param shopId
+     * @param start
+     * @param finish
+     * @return products, empty if the shop has no catalogue.
+     */
+    public static List<Product> getProducts(String shopId, Calendar start, Calendar finish) {
+        switch (shopId) {
+        case TAMAGOYA_OOTAKU:
+            return getTamagoyaProducts(start, finish);
+        case FRESH_LUNCH_SHIBAURA:
+            return getFreshLunchProducts(start, finish);
+        default:
+            return new ArrayList<>();
+        }
+    }
+
     public static List<Product> getTamagoyaProducts(Calendar start, Calendar finish) {
         List<Product> products = new ArrayList<>();
         String idFormat = "tamagoya%tm%td";
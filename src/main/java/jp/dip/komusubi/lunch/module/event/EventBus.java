@@ -0,0 +1,278 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package jp.dip.komusubi.lunch.module.event;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.inject.Inject;
+import javax.inject.Singleton;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+/**
+ * in-process event bus of order changes per group.
+ * recent events are kept per group and subscribers long-poll them by sequence,
+ * a published event wakes all waiting subscribers of the group at once.
+ * in a transaction, event is published after commit and discarded on rollback.
+ * @author jun.ozeki
+ * @since 2013/08/12
+ */
+@Singleton
+public class EventBus {
+
+    private static final Logger logger = LoggerFactory.getLogger(EventBus.class);
+    public static final int DEFAULT_CAPACITY = 64;
+    public static final long DEFAULT_TIMEOUT = 25000L;
+    /** about 25% of a container pool of 200 threads, the rest serves pages and api. */
+    public static final int DEFAULT_MAX_WAITERS = 50;
+    private final int capacity;
+    private final long timeout;
+    private final int maxWaiters;
+    private final ConcurrentMap<Integer, Channel> channels = new ConcurrentHashMap<>();
+    // starts with current time, so sequence after restart is greater than before.
+    private final AtomicLong sequence = new AtomicLong(System.currentTimeMillis());
+    private final AtomicInteger waiters = new AtomicInteger();
+    private final AtomicLong published = new AtomicLong();
+    private final AtomicLong delivered = new AtomicLong();
+    private final AtomicLong rejected = new AtomicLong();
+    private volatile boolean stopped;
+
+    /**
+     * create new instance with default configuration.
+     */
+    @Inject
+    public EventBus() {
+        this(DEFAULT_CAPACITY, DEFAULT_TIMEOUT, DEFAULT_MAX_WAITERS);
+    }
+
+    /**
+     * create new instance.
+     * @param capacity events kept per group.
+     * @param timeout max wait of a poll(millisecond).
+     * @param maxWaiters max subscribers waiting at once, each holds a request thread.
+     *          keep it well below request threads of the container.
+     */
+    public EventBus(int capacity, long timeout, int maxWaiters) {
+        this.capacity = capacity;
+        this.timeout = timeout;
+        this.maxWaiters = maxWaiters;
+    }
+
+    /**
+     * publish event to subscribers of the group. in a transaction, published after commit.
+     * @param event
+     */
+    public void publish(final OrderEvent event) {
+        if (event.getGroupId() == null)
+            return;
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronizationAdapter() {
+                @Override
+                public void afterCommit() {
+                    dispatch(event);
+                }
+            });
+            return;
+        }
+        dispatch(event);
+    }
+
+    private void dispatch(OrderEvent event) {
+        Channel channel = channel(event.getGroupId());
+        synchronized (channel) {
+            event.setSequence(sequence.incrementAndGet());
+            if (channel.events.size() >= capacity)
+                channel.dropped = channel.events.removeFirst().getSequence();
+            channel.events.addLast(event);
+            channel.notifyAll();
+        }
+        published.incrementAndGet();
+        if (logger.isDebugEnabled())
+            logger.debug("published: {}", event);
+    }
+
+    /**
+     * events of the group after the sequence, waiting until an event is published or timeout.
+     * @param groupId
+     * @param since last sequence received, current sequence of the group if negative.
+     * @return events, empty if timeout. rejected without waiting if too many subscribers are waiting.
+     * @throws InterruptedException
+     */
+    public Events poll(Integer groupId, long since) throws InterruptedException {
+        Channel channel = channel(groupId);
+        synchronized (channel) {
+            if (since < 0)
+                since = channel.last();
+            if (channel.last() <= since && !stopped) {
+                if (waiters.incrementAndGet() > maxWaiters) {
+                    waiters.decrementAndGet();
+                    rejected.incrementAndGet();
+                    return new Events(since, false, true, new ArrayList<OrderEvent>());
+                }
+                try {
+                    long deadline = System.currentTimeMillis() + timeout;
+                    long remaining = timeout;
+                    while (channel.last() <= since && remaining > 0 && !stopped) {
+                        channel.wait(remaining);
+                        remaining = deadline - System.currentTimeMillis();
+                    }
+                } finally {
+                    waiters.decrementAndGet();
+                }
+            }
+            List<OrderEvent> events = new ArrayList<>();
+            for (OrderEvent event: channel.events) {
+                if (event.getSequence() > since)
+                    events.add(event);
+            }
+            delivered.addAndGet(events.size());
+            // events might be lost if dropped over capacity or polled since before restart.
+            boolean reset = channel.dropped > since || since < channel.created;
+            return new Events(Math.max(since, channel.last()), reset, events);
+        }
+    }
+
+    /**
+     * latest sequence of the group.
+     * @param groupId
+     * @return
+     */
+    public long getSequence(Integer groupId) {
+        Channel channel = channel(groupId);
+        synchronized (channel) {
+            return channel.last();
+        }
+    }
+
+    /**
+     * wake all waiting subscribers and stop waiting.
+     */
+    public void stop() {
+        stopped = true;
+        for (Channel channel: channels.values()) {
+            synchronized (channel) {
+                channel.notifyAll();
+            }
+        }
+        logger.info("event bus stopped: {}", this);
+    }
+
+    public int getWaiters() {
+        return waiters.get();
+    }
+
+    private Channel channel(Integer groupId) {
+        Channel channel = channels.get(groupId);
+        if (channel == null) {
+            Channel created = new Channel(sequence.get());
+            channel = channels.putIfAbsent(groupId, created);
+            if (channel == null)
+                channel = created;
+        }
+        return channel;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder builder = new StringBuilder();
+        builder.append("EventBus [groups=").append(channels.size()).append(", waiters=").append(waiters.get())
+                .append(", published=").append(published.get()).append(", delivered=").append(delivered.get())
+                .append(", rejected=").append(rejected.get()).append("]");
+        return builder.toString();
+    }
+
+    /**
+     * recent events of a group.
+     */
+    private static class Channel {
+        private final Deque<OrderEvent> events = new ArrayDeque<>();
+        // sequence when channel created.
+        private final long created;
+        // sequence of the last event removed over capacity.
+        private long dropped;
+
+        private Channel(long created) {
+            this.created = created;
+        }
+
+        private long last() {
+            return events.isEmpty() ? created : events.getLast().getSequence();
+        }
+    }
+
+    /**
+     * events polled.
+     */
+    public static class Events {
+        private final long sequence;
+        private final boolean reset;
+        private final boolean rejected;
+        private final List<OrderEvent> events;
+
+        Events(long sequence, boolean reset, List<OrderEvent> events) {
+            this(sequence, reset, false, events);
+        }
+
+        Events(long sequence, boolean reset, boolean rejected, List<OrderEvent> events) {
+            this.sequence = sequence;
+            this.reset = reset;
+            this.rejected = rejected;
+            this.events = events;
+        }
+
+        /**
+         * sequence to poll next time.
+         * @return
+         */
+        public long getSequence() {
+            return sequence;
+        }
+
+        /**
+         * true if some events might be lost, subscriber should reload all.
+         * @return
+         */
+        public boolean isReset() {
+            return reset;
+        }
+
+        /**
+         * true if poll is rejected without waiting because too many subscribers are waiting,
+         * subscriber should retry later with the same sequence.
+         * @return
+         */
+        public boolean isRejected() {
+            return rejected;
+        }
+
+        public List<OrderEvent> getEvents() {
+            return events;
+        }
+    }
+}
@@ -0,0 +1,104 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package jp.dip.komusubi.lunch.module.event;
+
+import java.util.Date;
+
+/**
+ * order change of a group published to subscribers.
+ * @author jun.ozeki
+ * @since 2013/08/12
+ */
+public class OrderEvent {
+
+    /**
+     * kind of change.
+     */
+    public enum Type {
+        PLACED, CANCELLED, SUMMARY_CLOSED;
+    }
+
+    private final Type type;
+    private final Integer groupId;
+    private final int orderId;
+    private final Integer userId;
+    private final String shopId;
+    private final int amount;
+    private final Date datetime;
+    private long sequence;
+
+    public OrderEvent(Type type, Integer groupId, int orderId, Integer userId, String shopId, int amount, Date datetime) {
+        this.type = type;
+        this.groupId = groupId;
+        this.orderId = orderId;
+        this.userId = userId;
+        this.shopId = shopId;
+        this.amount = amount;
+        this.datetime = datetime;
+    }
+
+    public Type getType() {
+        return type;
+    }
+
+    public Integer getGroupId() {
+        return groupId;
+    }
+
+    public int getOrderId() {
+        return orderId;
+    }
+
+    public Integer getUserId() {
+        return userId;
+    }
+
+    public String getShopId() {
+        return shopId;
+    }
+
+    public int getAmount() {
+        return amount;
+    }
+
+    public Date getDatetime() {
+        return datetime;
+    }
+
+    /**
+     * sequence given by event bus when published, increases in a group.
+     * @return
+     */
+    public long getSequence() {
+        return sequence;
+    }
+
+    void setSequence(long sequence) {
+        this.sequence = sequence;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder builder = new StringBuilder();
+        builder.append("OrderEvent [type=").append(type).append(", groupId=").append(groupId)
+                .append(", orderId=").append(orderId).append(", userId=").append(userId)
+                .append(", shopId=").append(shopId).append(", sequence=").append(sequence).append("]");
+        return builder.toString();
+    }
+}
@@ -0,0 +1,278 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package jp.dip.komusubi.lunch.module.mail;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.inject.Inject;
+import javax.inject.Singleton;
+
+import org.komusubi.common.protocol.smtp.MailMessage;
+import org.komusubi.common.protocol.smtp.SmtpServer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+/**
+ * asynchronous outbound mail queue.
+ * mails are sent by worker threads via smtp server and retried with backoff on failure.
+ * in a transaction, space of the queue is reserved on posting, mail is queued after commit
+ * and discarded on rollback.
+ * @author jun.ozeki
+ * @since 2013/06/22
+ */
+@Singleton
+public class Outbox {
+
+    private static final Logger logger = LoggerFactory.getLogger(Outbox.class);
+    public static final int DEFAULT_CAPACITY = 1000;
+    public static final int DEFAULT_WORKERS = 2;
+    public static final int DEFAULT_MAX_ATTEMPTS = 5;
+    public static final long DEFAULT_BACKOFF = 1000L;
+    private static final long STOP_TIMEOUT = 10;
+    private final SmtpServer smtp;
+    private final int maxAttempts;
+    private final long backoff;
+    private final ThreadPoolExecutor workers;
+    private final ScheduledExecutorService retries;
+    private final AtomicLong sent = new AtomicLong();
+    private final AtomicLong retried = new AtomicLong();
+    private final AtomicLong failed = new AtomicLong();
+    private final AtomicLong rejected = new AtomicLong();
+    // spaces of the queue reserved by posted mails not queued yet.
+    private final AtomicInteger reserved = new AtomicInteger();
+
+    /**
+     * create new instance with default configuration.
+     * @param smtp
+     */
+    @Inject
+    public Outbox(SmtpServer smtp) {
+        this(smtp, DEFAULT_CAPACITY, DEFAULT_WORKERS, DEFAULT_MAX_ATTEMPTS, DEFAULT_BACKOFF);
+    }
+
+    /**
+     * create new instance.
+     * @param smtp
+     * @param capacity max mails waiting to send.
+     * @param workerSize count of sending threads.
+     * @param maxAttempts max send attempts of a mail.
+     * @param backoff first retry delay(millisecond), doubled each retry.
+     */
+    public Outbox(SmtpServer smtp, int capacity, int workerSize, int maxAttempts, long backoff) {
+        this.smtp = smtp;
+        this.maxAttempts = maxAttempts;
+        this.backoff = backoff;
+        this.workers = new ThreadPoolExecutor(workerSize, workerSize, 0L, TimeUnit.MILLISECONDS,
+                                new ArrayBlockingQueue<Runnable>(capacity), new NamedThreadFactory("lunch-mail-"));
+        this.retries = Executors.newSingleThreadScheduledExecutor(new NamedThreadFactory("lunch-mail-retry-"));
+    }
+
+    /**
+     * post mail. in a transaction, space is reserved now and mail is queued after commit.
+     * @param mail
+     * @return false if outbox is full.
+     */
+    public boolean post(MailMessage mail) {
+        final Envelope envelope = new Envelope(mail);
+        if (!reserve()) {
+            rejected.incrementAndGet();
+            logger.warn("outbox is full, rejected mail: {}", mail);
+            return false;
+        }
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronizationAdapter() {
+                @Override
+                public void afterCompletion(int status) {
+                    if (status == STATUS_COMMITTED)
+                        submit(envelope);
+                    else
+                        reserved.decrementAndGet();
+                }
+            });
+            return true;
+        }
+        return submit(envelope);
+    }
+
+    /**
+     * reserve a space of the queue, released by #submit.
+     * @return false if no space.
+     */
+    private boolean reserve() {
+        for (;;) {
+            int count = reserved.get();
+            if (workers.getQueue().remainingCapacity() - count <= 0)
+                return false;
+            if (reserved.compareAndSet(count, count + 1))
+                return true;
+        }
+    }
+
+    /**
+     * queue reserved mail.
+     * @param envelope
+     * @return false if workers are stopped.
+     */
+    private boolean submit(Envelope envelope) {
+        try {
+            workers.execute(envelope);
+            return true;
+        } catch (RejectedExecutionException e) {
+            rejected.incrementAndGet();
+            logger.warn("outbox rejected mail: {}", envelope.mail);
+            return false;
+        } finally {
+            reserved.decrementAndGet();
+        }
+    }
+
+    /**
+     * stop workers, waiting mails are sent until timeout.
+     */
+    public void stop() {
+        retries.shutdownNow();
+        workers.shutdown();
+        try {
+            if (!workers.awaitTermination(STOP_TIMEOUT, TimeUnit.SECONDS))
+                logger.warn("outbox stopped, discard mails: {}", workers.shutdownNow().size());
+        } catch (InterruptedException e) {
+            workers.shutdownNow();
+            Thread.currentThread().interrupt();
+        }
+        logger.info("outbox stopped: {}", this);
+    }
+
+    /**
+     * count of mails waiting to send.
+     * @return
+     */
+    public int getPending() {
+        return workers.getQueue().size();
+    }
+
+    public long getSent() {
+        return sent.get();
+    }
+
+    public long getRetried() {
+        return retried.get();
+    }
+
+    /**
+     * count of mails given up after max attempts.
+     * @return
+     */
+    public long getFailed() {
+        return failed.get();
+    }
+
+    /**
+     * count of mails rejected because outbox is full.
+     * @return
+     */
+    public long getRejected() {
+        return rejected.get();
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder builder = new StringBuilder();
+        builder.append("Outbox [pending=").append(getPending()).append(", sent=").append(sent)
+                .append(", retried=").append(retried).append(", failed=").append(failed)
+                .append(", rejected=").append(rejected).append("]");
+        return builder.toString();
+    }
+
+    /**
+     * a mail and its attempts.
+     */
+    private class Envelope implements Runnable {
+        private final MailMessage mail;
+        private int attempts;
+
+        private Envelope(MailMessage mail) {
+            this.mail = mail;
+        }
+
+        @Override
+        public void run() {
+            attempts++;
+            try {
+                smtp.send(mail);
+                sent.incrementAndGet();
+                logger.info("mail sent: {}", mail);
+            } catch (Exception e) {
+                if (attempts >= maxAttempts) {
+                    failed.incrementAndGet();
+                    logger.error("give up sending mail after " + attempts + " attempts: " + mail, e);
+                    return;
+                }
+                long delay = backoff << (attempts - 1);
+                retried.incrementAndGet();
+                logger.warn("retry sending mail in {}ms, attempts: {}, cause: {}",
+                        new Object[]{ delay, attempts, e.toString() });
+                try {
+                    retries.schedule(new Runnable() {
+                        @Override
+                        public void run() {
+                            if (reserve()) {
+                                submit(Envelope.this);
+                            } else {
+                                failed.incrementAndGet();
+                                logger.error("outbox is full, discard mail to retry: {}", mail);
+                            }
+                        }
+                    }, delay, TimeUnit.MILLISECONDS);
+                } catch (RejectedExecutionException ex) {
+                    failed.incrementAndGet();
+                    logger.error("outbox stopped, discard mail: {}", mail);
+                }
+            }
+        }
+    }
+
+    /**
+     * daemon thread factory.
+     */
+    private static class NamedThreadFactory implements ThreadFactory {
+        private final String prefix;
+        private final AtomicInteger count = new AtomicInteger();
+
+        private NamedThreadFactory(String prefix) {
+            this.prefix = prefix;
+        }
+
+        @Override
+        public Thread newThread(Runnable runnable) {
+            Thread thread = new Thread(runnable, prefix + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }
+    }
+}
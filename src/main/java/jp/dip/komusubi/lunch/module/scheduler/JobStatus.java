@@ -0,0 +1,127 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package jp.dip.komusubi.lunch.module.scheduler;
+
+import java.util.Date;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * status of a scheduled job.
+ * @author jun.ozeki
+ * @since 2013/06/15
+ */
+public class JobStatus {
+
+    private final String name;
+    private final String time;
+    private final AtomicBoolean running = new AtomicBoolean();
+    private volatile Date lastStart;
+    private volatile Date lastFinish;
+    private volatile Date nextRun;
+    private volatile String lastResult;
+    private volatile String lastError;
+    private volatile int runCount;
+    private volatile int skipCount;
+
+    JobStatus(String name, String time) {
+        this.name = name;
+        this.time = time;
+    }
+
+    /**
+     * mark running.
+     * @return false if already running.
+     */
+    boolean begin() {
+        if (!running.compareAndSet(false, true)) {
+            skipCount++;
+            return false;
+        }
+        lastStart = new Date();
+        return true;
+    }
+
+    void end(Object result, Exception error) {
+        lastFinish = new Date();
+        lastResult = result == null ? null : result.toString();
+        lastError = error == null ? null : error.toString();
+        runCount++;
+        running.set(false);
+    }
+
+    void setNextRun(long nextRun) {
+        this.nextRun = new Date(nextRun);
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * daily run time "HH:mm".
+     * @return
+     */
+    public String getTime() {
+        return time;
+    }
+
+    public boolean isRunning() {
+        return running.get();
+    }
+
+    public Date getLastStart() {
+        return lastStart;
+    }
+
+    public Date getLastFinish() {
+        return lastFinish;
+    }
+
+    public Date getNextRun() {
+        return nextRun;
+    }
+
+    public String getLastResult() {
+        return lastResult;
+    }
+
+    public String getLastError() {
+        return lastError;
+    }
+
+    public int getRunCount() {
+        return runCount;
+    }
+
+    public int getSkipCount() {
+        return skipCount;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder builder = new StringBuilder();
+        builder.append("JobStatus [name=").append(name).append(", time=").append(time)
+                .append(", running=").append(running.get()).append(", lastStart=").append(lastStart)
+                .append(", lastFinish=").append(lastFinish).append(", nextRun=").append(nextRun)
+                .append(", runCount=").append(runCount).append(", skipCount=").append(skipCount)
+                .append(", lastResult=").append(lastResult).append(", lastError=").append(lastError)
+                .append("]");
+        return builder.toString();
+    }
+}
@@ -0,0 +1,225 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package jp.dip.komusubi.lunch.module.scheduler;
+
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.inject.Singleton;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * background job scheduler.
+ * started and stopped with servlet context by Bootstrap.
+ * a job is never run concurrently with itself, overlapped run is skipped.
+ * @author jun.ozeki
+ * @since 2013/06/15
+ */
+@Singleton
+public class Scheduler {
+
+    private static final Logger logger = LoggerFactory.getLogger(Scheduler.class);
+    private static final long STOP_TIMEOUT = 30;
+    private final List<Job> jobs = Collections.synchronizedList(new ArrayList<Job>());
+    private ScheduledThreadPoolExecutor executor;
+
+    /**
+     * start scheduler.
+     */
+    public synchronized void start() {
+        if (executor != null)
+            return;
+        executor = new ScheduledThreadPoolExecutor(1, new ThreadFactory() {
+            private final AtomicInteger count = new AtomicInteger();
+
+            @Override
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, "lunch-scheduler-" + count.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        // next daily runs are dropped on stop, only running jobs are waited for.
+        executor.setExecuteExistingDelayedTasksAfterShutdownPolicy(false);
+        logger.info("scheduler started.");
+    }
+
+    /**
+     * stop scheduler, running job is interrupted after timeout.
+     * waits without the monitor, a finishing job must not block on it.
+     */
+    public void stop() {
+        ScheduledThreadPoolExecutor stopping;
+        synchronized (this) {
+            if (executor == null)
+                return;
+            stopping = executor;
+            executor = null;
+            stopping.shutdown();
+        }
+        try {
+            if (!stopping.awaitTermination(STOP_TIMEOUT, TimeUnit.SECONDS))
+                stopping.shutdownNow();
+        } catch (InterruptedException e) {
+            stopping.shutdownNow();
+            Thread.currentThread().interrupt();
+        }
+        logger.info("scheduler stopped: {}", jobs);
+    }
+
+    public synchronized boolean isStarted() {
+        return executor != null;
+    }
+
+    /**
+     * schedule a job run daily at time.
+     * @param name job name.
+     * @param task job.
+     * @param time "HH:mm".
+     * @param runOnStart run immediately as well.
+     * @return status of the job.
+     */
+    public synchronized JobStatus scheduleDaily(String name, Callable<?> task, String time, boolean runOnStart) {
+        if (executor == null)
+            throw new IllegalStateException("scheduler is not started.");
+        String[] hourMinute = time.split(":");
+        if (hourMinute.length != 2)
+            throw new IllegalArgumentException("time must be HH:mm format: " + time);
+        Job job = new Job(new JobStatus(name, time), task,
+                        Integer.parseInt(hourMinute[0].trim()),
+                        Integer.parseInt(hourMinute[1].trim()));
+        jobs.add(job);
+        if (runOnStart)
+            executor.execute(job);
+        job.scheduleNext();
+        return job.status;
+    }
+
+    /**
+     * run a scheduled job now. skipped if the job is running.
+     * @param name job name.
+     * @return true if accepted.
+     */
+    public synchronized boolean runNow(String name) {
+        if (executor == null)
+            return false;
+        for (Job job: jobs) {
+            if (job.status.getName().equals(name)) {
+                executor.execute(job);
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * status of all jobs.
+     * @return
+     */
+    public List<JobStatus> getStatuses() {
+        List<JobStatus> statuses = new ArrayList<>();
+        synchronized (jobs) {
+            for (Job job: jobs)
+                statuses.add(job.status);
+        }
+        return statuses;
+    }
+
+    /**
+     * delay until next hour:minute.
+     * @param now
+     * @param hour
+     * @param minute
+     * @return millisecond.
+     */
+    static long delay(Calendar now, int hour, int minute) {
+        Calendar next = (Calendar) now.clone();
+        next.set(Calendar.HOUR_OF_DAY, hour);
+        next.set(Calendar.MINUTE, minute);
+        next.set(Calendar.SECOND, 0);
+        next.set(Calendar.MILLISECOND, 0);
+        if (!next.after(now))
+            next.add(Calendar.DATE, 1);
+        return next.getTimeInMillis() - now.getTimeInMillis();
+    }
+
+    /**
+     * scheduled job.
+     */
+    private class Job implements Runnable {
+        private final JobStatus status;
+        private final Callable<?> task;
+        private final int hour;
+        private final int minute;
+
+        private Job(JobStatus status, Callable<?> task, int hour, int minute) {
+            this.status = status;
+            this.task = task;
+            this.hour = hour;
+            this.minute = minute;
+        }
+
+        @Override
+        public void run() {
+            if (!status.begin()) {
+                logger.warn("job is running, skip: {}", status);
+                return;
+            }
+            Object result = null;
+            Exception error = null;
+            try {
+                result = task.call();
+            } catch (Exception e) {
+                error = e;
+                logger.error("job failed: " + status.getName(), e);
+            } finally {
+                status.end(result, error);
+                logger.info("job finished: {}", status);
+            }
+        }
+
+        private void scheduleNext() {
+            long delay = delay(Calendar.getInstance(), hour, minute);
+            status.setNextRun(System.currentTimeMillis() + delay);
+            // reschedule every day instead of fixed rate, follows changes of time zone offset.
+            executor.schedule(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        Job.this.run();
+                    } finally {
+                        synchronized (Scheduler.this) {
+                            if (executor != null && !executor.isShutdown())
+                                scheduleNext();
+                        }
+                    }
+                }
+            }, delay, TimeUnit.MILLISECONDS);
+        }
+    }
+}
@@ -18,10 +18,16 @@ package jp.dip.komusubi.lunch.service;
 
 import java.io.Serializable;
 import java.text.MessageFormat;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.Date;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.MissingResourceException;
 import java.util.ResourceBundle;
+import java.util.Set;
 
 import javax.inject.Inject;
 import javax.inject.Named;
@@ -37,10 +43,12 @@ import jp.dip.komusubi.lunch.model.ReceiptLine;
 import jp.dip.komusubi.lunch.model.User;
 import jp.dip.komusubi.lunch.module.Transactional;
 import jp.dip.komusubi.lunch.module.dao.ContractDao;
+import jp.dip.komusubi.lunch.module.dao.DailyCounterDao;
 import jp.dip.komusubi.lunch.module.dao.GroupDao;
 import jp.dip.komusubi.lunch.module.dao.OrderDao;
 import jp.dip.komusubi.lunch.module.dao.ReceiptDao;
 import jp.dip.komusubi.lunch.module.dao.UserDao;
+import jp.dip.komusubi.lunch.module.mail.Outbox;
 import jp.dip.komusubi.lunch.util.Nonce;
 
 import org.apache.commons.lang3.time.DateFormatUtils;
@@ -83,7 +91,9 @@ public class AccountService implements Serializable {
 	@Inject private GroupDao groupDao;
 	@Inject private ContractDao contractDao;
 	@Inject private OrderDao orderDao;
+	@Inject private DailyCounterDao dailyCounterDao;
 	@Inject private ReceiptDao receiptDao;
+	@Inject private transient Outbox outbox;
 	private User authedUser;
 	
 	// default constructor need from cglib.
@@ -169,28 +179,31 @@ public class AccountService implements Serializable {
 		return userDao.findByEmail(email);
 	}
 	
-	protected void temporarySupply() {
-		// FIXME supply product from back office here. 
-		BackOffice backOffice = Configuration.getInstance(BackOffice.class);
-		backOffice.supplyProduct();
+	public boolean signIn(String email, String password) {
+		return authenticate(email, password) != null;
 	}
 	
+	/**
+	 * authenticate user by a query of user, health and group.
+	 * login counters of health are updated by primary key.
+	 * @param email
+	 * @param password plain password.
+	 * @return authenticated user, null if not found, locked or password unmatched.
+	 */
 	@Transactional
-	public boolean signIn(String email, String password) {
-		temporarySupply();
-		
+	public User authenticate(String email, String password) {
 		boolean evaluate = false;
 //		User user = userDao.find(id);
-		User user = userDao.findByEmail(email);
+		User user = userDao.findByEmailWithHealth(email);
 		if (user == null)
-			return evaluate;
+			return null;
 		
 		if (logger.isDebugEnabled())
 			logger.debug("user is {}", user);
 		
 		if (!user.getHealth().isActive()) {
 			logger.info("account locked, id:{}, name:{}", user.getId(), user.getName());
-			return evaluate;
+			return null;
 		}
 		
 		// account lock when login fail over 5 times.  
@@ -198,6 +211,8 @@ public class AccountService implements Serializable {
 			user.getHealth().setActive(false);
 		}
 		
+		// login fail and active are security relevant, persisted immediately.
+		boolean secure = user.getHealth().getLoginFail() == 0 && user.getHealth().isActive();
 		if (email.equals(user.getEmail()) &&
 				digester.resolve(password).equals(user.getPassword())) {
 			// clear user health, after authenticated 
@@ -208,17 +223,21 @@ public class AccountService implements Serializable {
 		} else {
 			logger.info("password unmatch, email:{}, password:{}", email, password);
 			user.getHealth().incrementLoginFail();
+			secure = false;
 		}
-		userDao.update(user.getHealth());
+		if (secure)
+			userDao.recordLogin(user.getHealth());
+		else
+			userDao.updateLogin(user.getHealth());
 		authedUser = user;
-		return evaluate;
+		return evaluate ? user : null;
 	}
 	
 	/**
 	 * apply to create a account for new user.
 	 * @param user for registry.
 	 * @param url temporary url for authentication.
-	 * @return
+	 * @return false if confirm mail is not accepted(e.g. outbox is full).
 	 */
 	public boolean apply(User user, String url) {
 		try {
@@ -231,7 +250,8 @@ public class AccountService implements Serializable {
 			mail.setContent(content);
 			mail.setFrom(getAdminUser());
 			mail.addToRecipient(user);
-			smtp.send(mail);
+			if (!send(mail))
+				return false;
 			logger.info("send to {}, subject is {},", user.getEmail(), getString("confirm.mail.title"));
 			return true;
 		} catch (Exception e) {
@@ -245,6 +265,7 @@ public class AccountService implements Serializable {
 	 * @param who admit to member of group.
 	 * @param whom request to member of group.
 	 * @param url 
+	 * @throws IllegalStateException if admit mail is not accepted(e.g. outbox is full), nothing is persisted.
 	 */
 	@Transactional
 	public void apply(User who, User whom, String url) {
@@ -270,7 +291,8 @@ public class AccountService implements Serializable {
 			mail.setContent(content);
 			mail.setFrom(getAdminUser());
 			mail.addToRecipient(who);
-			smtp.send(mail);
+			if (!send(mail))
+				throw new IllegalStateException("admit mail is not accepted: " + who.getEmail());
 			logger.info("send to {}, subject is {}.", who.getEmail(), getString("admit.mail.title"));
 			
 			// persist after mail sent.
@@ -291,6 +313,7 @@ public class AccountService implements Serializable {
 	 * @param admitter 
 	 * @param applicant
 	 * @param message 
+	 * @throws IllegalStateException if approve mail is not accepted(e.g. outbox is full), membership is rolled back.
 	 */
 	@Transactional
 	public void approve(User admitter, User applicant, String message, String url) {
@@ -313,7 +336,8 @@ public class AccountService implements Serializable {
     	    mail.setContent(content);
     	    mail.setFrom(getAdminUser());
     	    mail.addToRecipient(applicant);
-    	    smtp.send(mail);
+    	    if (!send(mail))
+    	        throw new IllegalStateException("approve mail is not accepted: " + applicant.getEmail());
     	    logger.info("send to {}, subject is {}", applicant.getEmail(), getString("approve.mail.subject"));
     	    
 	    } catch (IllegalStateException e) {
@@ -328,8 +352,9 @@ public class AccountService implements Serializable {
 	 * @param admitter
 	 * @param applicant
 	 * @param message
+	 * @return false if decline mail is not accepted(e.g. outbox is full).
 	 */
-	public void decline(User admitter, User applicant, String message) {
+	public boolean decline(User admitter, User applicant, String message) {
 	    try {
 	        MailContent content = new MailContent();
 	        content.setSubject(getString("decline.mail.subject"));
@@ -352,9 +377,10 @@ public class AccountService implements Serializable {
 	        mail.setContent(content);
 	        mail.setFrom(getAdminUser());
 	        mail.addToRecipient(applicant);
-	        smtp.send(mail);
+	        if (!send(mail))
+	            return false;
 	        logger.info("send to {}, subject is {}", applicant.getEmail(), getString("deny.mail.subject"));
-	        
+	        return true;
 	    } catch (IllegalStateException e) {
 	        throw e;
 	    } catch (Exception e) {
@@ -362,6 +388,26 @@ public class AccountService implements Serializable {
 	    }
 	}
 	
+	/**
+	 * send mail via outbox, mail is sent after commit in a transaction.
+	 * send directly if outbox is not injected(e.g. unit test).
+	 * @param mail
+	 * @return false if outbox is full, space is reserved before commit so posted mail is not dropped.
+	 */
+	protected boolean send(MailMessage mail) {
+		if (outbox == null) {
+			try {
+				smtp.send(mail);
+			} catch (RuntimeException e) {
+				throw e;
+			} catch (Exception e) {
+				throw new LunchException(e);
+			}
+			return true;
+		}
+		return outbox.post(mail);
+	}
+
 	private User getAdminUser() {
 	    return new User()
 	                .setName(getString("admin.name"))
@@ -373,6 +419,14 @@ public class AccountService implements Serializable {
 //		userDao.update(health);
 //	}
 	
+	/**
+	 * remind mail to unlock account.
+	 * @param email
+	 * @param url
+	 * @return nonce in the mail.
+	 * @throws NotFoundEmailException if email is not registered.
+	 * @throws LunchException if remind mail is not accepted(e.g. outbox is full).
+	 */
 	public Nonce remind(String email, String url) {
 		User to = userDao.findByEmail(email);
 		if (to == null) 
@@ -394,9 +448,12 @@ public class AccountService implements Serializable {
 			mail.setContent(content);
 			mail.setFrom(from);
 			mail.addToRecipient(to);
-			smtp.send(mail);
+			if (!send(mail))
+				throw new LunchException("remind mail is not accepted: " + to.getEmail());
 			logger.info("send to {}, subject is {}", to.getEmail(), getString("remind.mail.title"));
 			return nonce;
+		} catch (LunchException e) {
+			throw e;
 		} catch (Exception e) {
 			throw new LunchException(e);
 		}
@@ -487,6 +544,16 @@ public class AccountService implements Serializable {
 	    return getOrderHistory(group);
 	}
 	
+	/**
+	 * today's orders of the group per shop, read from daily counters
+	 * (no aggregation over orders and order lines).
+	 * @param groupId
+	 * @return summary orders per shop, not persisted.
+	 */
+	public List<Order> getGroupOrderStatus(String groupId) {
+	    return dailyCounterDao.findByGroupIdAndDate(new Integer(groupId), dateResolver.resolve());
+	}
+	
 	public List<Order> getOrderHistory(Group group) {
 	    return getOrderHistroy(group, dateResolver.resolve());
 	}
@@ -517,7 +584,7 @@ public class AccountService implements Serializable {
 	                        .setDatetime(dateResolver.resolve())
 	                        .setUser(user)
 	                        .setGroup(user.getGroup())
-	                        .setShop(null);
+	                        .setShop(orderLine.getProduct().getShop());
 	    receipt.addLine(orderLine.toReceiptLine()
 	                            .setMemo(memo));
 	                            
@@ -525,6 +592,91 @@ public class AccountService implements Serializable {
 	    return receipt;
 	}
 	
+	/**
+	 * receive user orders of a group summary order(same group, shop and day) at once.
+	 * summary of other group is skipped, its orders are not looked up.
+	 * @param receiver user of the group.
+	 * @param summaryOrderId
+	 * @param memo
+	 * @return receipts per user.
+	 */
+	@Transactional
+	public ReceiveReport receiveSummary(User receiver, Integer summaryOrderId, String memo) {
+	    List<Order> summaries = orderDao.findByIds(Collections.singletonList(summaryOrderId));
+	    if (summaries.isEmpty() || !summaries.get(0).isSummary() || summaries.get(0).getGroup() == null
+	            || !summaries.get(0).getGroup().getId().equals(receiver.getGroupId()))
+	        return receiveAll(receiver, Collections.<Order>emptyList(), Collections.singletonList(summaryOrderId), memo);
+	    Order summary = summaries.get(0);
+	    List<Order> orders = new ArrayList<>();
+	    for (Order order: orderDao.findByGroupIdAndDate(summary.getGroup().getId(), summary.getDatetime(), false)) {
+	        if (order.getShop().getId().equals(summary.getShop().getId()))
+	            orders.add(order);
+	    }
+	    return receiveAll(receiver, orders, Collections.<Integer>emptyList(), memo);
+	}
+
+	/**
+	 * receive user orders at once.
+	 * @param receiver user of the group.
+	 * @param orderIds
+	 * @param memo
+	 * @return receipts per user.
+	 */
+	@Transactional
+	public ReceiveReport receiveOrders(User receiver, Collection<Integer> orderIds, String memo) {
+	    List<Order> orders = orderDao.findByIds(orderIds);
+	    List<Integer> notFound = new ArrayList<>(orderIds);
+	    for (Order order: orders)
+	        notFound.remove(Integer.valueOf(order.getId()));
+	    return receiveAll(receiver, orders, notFound, memo);
+	}
+
+	/**
+	 * create receipts of orders, receipts and receipt lines are inserted by a batch each.
+	 * summary, canceled, received already and other group's orders are skipped.
+	 * orders are locked before checking receipts, concurrent receiving of same orders waits for commit.
+	 */
+	private ReceiveReport receiveAll(User receiver, List<Order> orders, List<Integer> skipped, String memo) {
+	    ReceiveReport report = new ReceiveReport();
+	    for (Integer orderId: skipped)
+	        report.skip(orderId);
+	    List<Integer> orderIds = new ArrayList<>(orders.size());
+	    for (Order order: orders)
+	        orderIds.add(order.getId());
+	    orderDao.lockByIds(orderIds);
+	    Set<Integer> received = receiptDao.findReceivedOrderIds(orderIds);
+	    Integer groupId = receiver.getGroupId();
+	    Date now = dateResolver.resolve();
+	    List<Receipt> receipts = new ArrayList<>(orders.size());
+	    for (Order order: orders) {
+	        List<OrderLine> orderLines = order.getOrderLines(false);
+	        if (order.isSummary() || order.isCancel() || orderLines.isEmpty() || received.contains(order.getId())
+	                || order.getGroup() == null || !order.getGroup().getId().equals(groupId)) {
+	            report.skip(order.getId());
+	            continue;
+	        }
+	        Receipt receipt = new Receipt()
+	                            .setOrderId(order.getId())
+	                            .setUser(order.getUser())
+	                            .setGroup(order.getGroup())
+	                            .setShop(order.getShop())
+	                            .setDatetime(now);
+	        int amount = 0;
+	        for (OrderLine orderLine: orderLines) {
+	            receipt.addLine(orderLine.toReceiptLine()
+	                                .setDatetime(now)
+	                                .setMemo(memo));
+	            amount += orderLine.getAmount();
+	        }
+	        receipts.add(receipt.setAmount(amount));
+	    }
+	    receiptDao.persistAll(receipts);
+	    for (Receipt receipt: receipts)
+	        report.add(receipt);
+	    logger.info("received by {}: {}", receiver.getId(), report);
+	    return report;
+	}
+
 	public String digest(User who, User whom, Date stamp) {
 	    String groupCode = who.getGroup() != null ? who.getGroup().getCode() : "";
 	    String admitterEmail = who.getEmail();
@@ -541,5 +693,72 @@ public class AccountService implements Serializable {
         return fragment;
 	}
 	
-	
+	/**
+	 * result of receiving orders at once.
+	 */
+	public static class ReceiveReport {
+		private final Map<Integer, List<Receipt>> receipts = new LinkedHashMap<>();
+		private final List<Integer> skipped = new ArrayList<>();
+
+		private void add(Receipt receipt) {
+			Integer userId = receipt.getUser().getId();
+			List<Receipt> list = receipts.get(userId);
+			if (list == null) {
+				list = new ArrayList<>();
+				receipts.put(userId, list);
+			}
+			list.add(receipt);
+		}
+
+		private void skip(Integer orderId) {
+			skipped.add(orderId);
+		}
+
+		/**
+		 * receipts per user id.
+		 * @return
+		 */
+		public Map<Integer, List<Receipt>> getReceipts() {
+			return receipts;
+		}
+
+		/**
+		 * received amount of the user.
+		 * @param userId
+		 * @return
+		 */
+		public int getAmount(Integer userId) {
+			int amount = 0;
+			List<Receipt> list = receipts.get(userId);
+			if (list != null) {
+				for (Receipt receipt: list)
+					amount += receipt.getAmount();
+			}
+			return amount;
+		}
+
+		public int getReceiptCount() {
+			int count = 0;
+			for (List<Receipt> list: receipts.values())
+				count += list.size();
+			return count;
+		}
+
+		/**
+		 * order ids not received(not found, summary, canceled, received already or other group).
+		 * @return
+		 */
+		public List<Integer> getSkipped() {
+			return skipped;
+		}
+
+		@Override
+		public String toString() {
+			StringBuilder builder = new StringBuilder();
+			builder.append("ReceiveReport [users=").append(receipts.size())
+					.append(", receipts=").append(getReceiptCount())
+					.append(", skipped=").append(skipped).append("]");
+			return builder.toString();
+		}
+	}
 }
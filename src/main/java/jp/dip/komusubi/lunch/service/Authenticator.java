@@ -18,20 +18,167 @@
  */
 package jp.dip.komusubi.lunch.service;
 
+import java.io.UnsupportedEncodingException;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.util.Arrays;
+import java.util.Date;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
 import javax.inject.Inject;
+import javax.inject.Named;
 
+import jp.dip.komusubi.lunch.LunchException;
 import jp.dip.komusubi.lunch.model.Authentication;
+import jp.dip.komusubi.lunch.model.Role;
 import jp.dip.komusubi.lunch.model.User;
+import jp.dip.komusubi.lunch.module.dao.UserDao;
+
+import org.apache.commons.codec.binary.Base64;
+import org.komusubi.common.util.Resolver;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
+/**
+ * authenticator.
+ * api token is signed "user id:expiration" by hmac, so nothing is kept in server.
+ * administrators are users of ADMIN role or emails listed in "api.admin.users".
+ * @author jun.ozeki
+ */
 public class Authenticator {
+	private static final Logger logger = LoggerFactory.getLogger(Authenticator.class);
+	private static final String ALGORITHM = "HmacSHA256";
+	/** default time to live of token, 12 hours. */
+	public static final long DEFAULT_TOKEN_TTL = 12 * 60 * 60 * 1000L;
+	private static final String BEARER = "Bearer ";
 	private Authentication auth;
+	@Inject private UserDao userDao;
+	@Inject @Named("date") private Resolver<Date> dateResolver;
+	@Inject @Named("api.token.secret") private String secret;
+	@Inject @Named("api.token.ttl") private Long ttl;
+	@Inject @Named("api.admin.users") private String admins;
 	
 	@Inject
 	public Authenticator(Authentication auth) {
 		this.auth = auth;
 	}
 	
+	// for unit test.
+	Authenticator(UserDao userDao, Resolver<Date> dateResolver, String secret, long ttl) {
+		this(userDao, dateResolver, secret, ttl, null);
+	}
+
+	// for unit test.
+	Authenticator(UserDao userDao, Resolver<Date> dateResolver, String secret, long ttl, String admins) {
+		this.userDao = userDao;
+		this.dateResolver = dateResolver;
+		this.secret = secret;
+		this.ttl = ttl;
+		this.admins = admins;
+	}
+	
 	public boolean login(User user) {
 		return auth.evaluate(user);
 	}
+
+	/**
+	 * issue api token of the user.
+	 * @param user authenticated user.
+	 * @return token.
+	 */
+	public String issue(User user) {
+		long expiration = dateResolver.resolve().getTime() + ttl;
+		String payload = user.getId() + ":" + expiration;
+		return encode(payload) + "." + sign(payload);
+	}
+
+	/**
+	 * verify api token.
+	 * @param token
+	 * @return user of token, null if token is invalid, expired or user is locked.
+	 */
+	public User verify(String token) {
+		if (token == null)
+			return null;
+		int dot = token.indexOf('.');
+		if (dot < 0)
+			return null;
+		String payload = decode(token.substring(0, dot));
+		if (payload == null || !MessageDigest.isEqual(toBytes(sign(payload)), toBytes(token.substring(dot + 1))))
+			return null;
+		String[] values = payload.split(":");
+		if (values.length != 2)
+			return null;
+		try {
+			if (Long.parseLong(values[1]) < dateResolver.resolve().getTime())
+				return null;
+			User user = userDao.find(Integer.valueOf(values[0]));
+			if (user == null || user.getHealth() == null || !user.getHealth().isActive()) {
+				logger.info("token of unavailable user: {}", values[0]);
+				return null;
+			}
+			return user;
+		} catch (NumberFormatException e) {
+			return null;
+		}
+	}
+
+	/**
+	 * verify "Authorization: Bearer token" header.
+	 * @param authorization value of authorization header.
+	 * @return user of token, null if header is not bearer or token is invalid.
+	 */
+	public User verifyBearer(String authorization) {
+		if (authorization == null || !authorization.startsWith(BEARER))
+			return null;
+		return verify(authorization.substring(BEARER.length()).trim());
+	}
+
+	/**
+	 * administrator or not.
+	 * @param user verified user.
+	 * @return true if user has ADMIN role or email is listed in "api.admin.users".
+	 */
+	public boolean isAdmin(User user) {
+		if (user.hasRole(Role.ADMIN))
+			return true;
+		if (admins == null || user.getEmail() == null)
+			return false;
+		for (String admin: Arrays.asList(admins.split(","))) {
+			if (admin.trim().equalsIgnoreCase(user.getEmail()))
+				return true;
+		}
+		return false;
+	}
+
+	private String sign(String payload) {
+		try {
+			Mac mac = Mac.getInstance(ALGORITHM);
+			mac.init(new SecretKeySpec(toBytes(secret), ALGORITHM));
+			return Base64.encodeBase64URLSafeString(mac.doFinal(toBytes(payload)));
+		} catch (GeneralSecurityException e) {
+			throw new LunchException(e);
+		}
+	}
+
+	private String encode(String value) {
+		return Base64.encodeBase64URLSafeString(toBytes(value));
+	}
+
+	private String decode(String value) {
+		try {
+			return new String(Base64.decodeBase64(value), "UTF-8");
+		} catch (UnsupportedEncodingException e) {
+			throw new LunchException(e);
+		}
+	}
+
+	private byte[] toBytes(String value) {
+		try {
+			return value.getBytes("UTF-8");
+		} catch (UnsupportedEncodingException e) {
+			throw new LunchException(e);
+		}
+	}
 }
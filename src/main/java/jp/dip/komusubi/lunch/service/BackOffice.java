@@ -18,18 +18,28 @@
  */
 package jp.dip.komusubi.lunch.service;
 
+import java.util.ArrayList;
 import java.util.Calendar;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
 import javax.inject.Inject;
 import javax.inject.Named;
 
 import jp.dip.komusubi.lunch.model.Product;
 import jp.dip.komusubi.lunch.model.Shop;
-import jp.dip.komusubi.lunch.module.dao.ProductDao;
+import jp.dip.komusubi.lunch.module.Transactional;
+import jp.dip.komusubi.lunch.module.dao.DailyCounterDao;
+import jp.dip.komusubi.lunch.module.dao.ProductBatchDao;
 import jp.dip.komusubi.lunch.module.dao.ShopDao;
 import jp.dip.komusubi.lunch.module.database.Lunchat;
 
+import org.apache.commons.lang3.time.DateFormatUtils;
+import org.apache.commons.lang3.time.DateUtils;
 import org.komusubi.common.util.Resolver;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -43,42 +53,114 @@ public class BackOffice {
 
 	private static final Logger logger = LoggerFactory.getLogger(BackOffice.class);
 	@Inject	private ShopDao shopDao;
-	@Inject	private ProductDao productDao;
+	@Inject	private ProductBatchDao productDao;
+	@Inject	private MenuCalendar menuCalendar;
+	@Inject	private DailyCounterDao dailyCounterDao;
 	@Inject	@Named("calendar")
 	private Resolver<Calendar> calendarResolver;
+	// calendar days, days off of each shop are skipped.
+	private static final int SUPPLY_DAYS = 7;
 	private Shop shop;
 
 	public BackOffice() {
 
 	}
 
-	public void supplyProduct() {
-		// supply product in 7 days
-		// FIXME not supported shop and national holiday.
-		Calendar calendar = calendarResolver.resolve();
-//		for (Shop shop: shopDao.findAll()) {
-			for (int i = 0; i < 7; i++) {
-				calendar.add(Calendar.DATE, 1);
-				if (calendar.get(Calendar.DAY_OF_WEEK) == Calendar.SATURDAY
-						|| calendar.get(Calendar.DAY_OF_WEEK) == Calendar.SUNDAY) {
-					logger.info("{} is skip", calendar.getTime());
+	/**
+	 * supply products of the next 7 days which are not stocked yet.
+	 * @return report.
+	 */
+	public SupplyReport supplyProduct() {
+		return supplyProduct(SUPPLY_DAYS);
+	}
+
+	/**
+	 * supply products of the next days which are not stocked yet.
+	 * products of every shop which has a catalogue are supplied, except days off of the shop.
+	 * stocked shops and days are checked by a query and missing products are inserted by a batch.
+	 * FIXME not supported national holiday.
+	 * @param days count of calendar days from tomorrow.
+	 * @return report.
+	 */
+	@Transactional
+	public SupplyReport supplyProduct(int days) {
+		long begin = System.currentTimeMillis();
+		Calendar start = calendarResolver.resolve();
+		SupplyReport report = new SupplyReport(days);
+		if (days <= 0)
+			return report.finish(begin);
+		Calendar from = DateUtils.truncate(start, Calendar.DATE);
+		from.add(Calendar.DATE, 1);
+		Calendar to = (Calendar) from.clone();
+		to.add(Calendar.DATE, days);
+
+		// stocked shop and day in the period.
+		Set<String> stocked = new HashSet<>();
+		for (Product product: productDao.findByFinishPeriod(from.getTime(), to.getTime()))
+			stocked.add(stockKey(product));
+
+		List<Shop> shops = shopDao.findAll();
+		List<Product> missing = new ArrayList<>();
+		for (Calendar finish = (Calendar) from.clone(); finish.before(to); finish.add(Calendar.DATE, 1)) {
+			for (Product product: getProducts(shops, start, finish)) {
+				if (stocked.contains(stockKey(product)))
 					continue;
-				}
-				// 代表してtamagoyaでチェック
-				List<Product> products = productDao.findByShopIdAndFinishDate("tamagoya", calendar.getTime());
-				if (products.size() == 0)
-					supplyProduct(calendar);
+				missing.add(product);
+				report.count(product.getShopId());
 			}
-//		}
+		}
+		productDao.persistAll(missing);
+		if (missing.size() > 0)
+			menuCalendar.invalidate();
+		report.finish(begin);
+		logger.info("supply product: {}", report);
+		return report;
 	}
 
+	/**
+	 * supply products finish at the day.
+	 * @param finish
+	 */
+	@Transactional
 	public void supplyProduct(Calendar finish) {
-		Calendar cal = calendarResolver.resolve();
-		List<Product> products = Lunchat.getTamagoyaProducts(cal, finish);
-		products.addAll(Lunchat.getFreshLunchProducts(cal, finish));
-		for (Product product: products) {
-			productDao.persist(product);
+		productDao.persistAll(getProducts(shopDao.findAll(), calendarResolver.resolve(), finish));
+		menuCalendar.invalidate();
+	}
+
+	/**
+	 * rebuild daily counters of the period from orders, e.g. after counters drifted
+	 * or orders were fixed by hand.
+	 * @param from first day.
+	 * @param to last day(inclusive).
+	 * @return count of rebuilt counters.
+	 */
+	@Transactional
+	public int rebuildDailyCounters(Date from, Date to) {
+		if (from == null || to == null || from.after(to))
+			throw new IllegalArgumentException("invalid period from: " + from + ", to: " + to);
+		return dailyCounterDao.rebuild(from, to);
+	}
+
+	/**
+	 * catalogue products of the shops finish at the day, shops on day off are skipped.
+	 */
+	private List<Product> getProducts(List<Shop> shops, Calendar start, Calendar finish) {
+		List<Product> products = new ArrayList<>();
+		for (Shop shop: shops) {
+			if (shop.isDayOff(finish.getTime())) {
+				logger.debug("{} is day off of {}", finish.getTime(), shop.getId());
+				continue;
+			}
+			List<Product> catalogue = Lunchat.getProducts(shop.getId(), start, (Calendar) finish.clone());
+			if (catalogue.isEmpty())
+				logger.debug("no catalogue of shop: {}", shop.getId());
+			products.addAll(catalogue);
 		}
+		return products;
+	}
+
+	private String stockKey(Product product) {
+		return product.getShopId() + "/" + DateFormatUtils.format(product.getFinish(), "yyyyMMdd");
 	}
 
 	public void setShop(Shop shop) {
@@ -95,4 +177,62 @@ public class BackOffice {
 		productDao.persist(product);
 	}
 
+	/**
+	 * result of product supply.
+	 */
+	public static class SupplyReport {
+		private final int days;
+		private final Map<String, Integer> inserted = new LinkedHashMap<>();
+		private long elapsed;
+
+		SupplyReport(int days) {
+			this.days = days;
+		}
+
+		private void count(String shopId) {
+			Integer count = inserted.get(shopId);
+			inserted.put(shopId, count == null ? 1 : count + 1);
+		}
+
+		private SupplyReport finish(long begin) {
+			elapsed = System.currentTimeMillis() - begin;
+			return this;
+		}
+
+		public int getDays() {
+			return days;
+		}
+
+		/**
+		 * inserted count per shop id.
+		 * @return
+		 */
+		public Map<String, Integer> getInserted() {
+			return inserted;
+		}
+
+		public int getInsertedCount() {
+			int total = 0;
+			for (Integer count: inserted.values())
+				total += count;
+			return total;
+		}
+
+		/**
+		 * elapsed time (millisecond).
+		 * @return
+		 */
+		public long getElapsed() {
+			return elapsed;
+		}
+
+		@Override
+		public String toString() {
+			StringBuilder builder = new StringBuilder();
+			builder.append("SupplyReport [days=").append(days).append(", inserted=").append(inserted)
+					.append(", total=").append(getInsertedCount()).append(", elapsed=").append(elapsed)
+					.append("ms]");
+			return builder.toString();
+		}
+	}
 }
@@ -18,7 +18,252 @@
  */
 package jp.dip.komusubi.lunch.service;
 
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.text.ParseException;
+import java.util.Date;
+import java.util.Map;
+
+import javax.inject.Inject;
+import javax.ws.rs.GET;
+import javax.ws.rs.HeaderParam;
+import javax.ws.rs.POST;
+import javax.ws.rs.Path;
+import javax.ws.rs.Produces;
+import javax.ws.rs.QueryParam;
+import javax.ws.rs.WebApplicationException;
+import javax.ws.rs.core.HttpHeaders;
+import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.Response;
+import javax.ws.rs.core.Response.Status;
+import javax.ws.rs.core.StreamingOutput;
+
+import jp.dip.komusubi.lunch.model.User;
+import jp.dip.komusubi.lunch.module.dao.monitor.PoolDataSource;
+import jp.dip.komusubi.lunch.module.dao.monitor.QueryMonitor;
+import jp.dip.komusubi.lunch.module.dao.monitor.QueryMonitor.Metrics;
+import jp.dip.komusubi.lunch.module.scheduler.JobStatus;
+import jp.dip.komusubi.lunch.module.scheduler.Scheduler;
+import jp.dip.komusubi.lunch.service.BillingExport.Format;
+import jp.dip.komusubi.lunch.wicket.SessionMonitor;
+
+import org.apache.commons.lang3.time.DateUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * back office resource for operators.
+ * every method requires "Authorization: Bearer token" of an administrator,
+ * except billing is also available for members of the group.
+ * @author jun.ozeki
+ */
+@Path("/backoffice")
 public class BackOfficeResource {
 
-	
+	private static final Logger logger = LoggerFactory.getLogger(BackOfficeResource.class);
+	private Authenticator auth;
+	private Scheduler scheduler;
+	private QueryMonitor queryMonitor;
+	private PoolDataSource poolDataSource;
+	private BackOffice backOffice;
+	private SessionMonitor sessionMonitor;
+	private BillingExport billingExport;
+
+	@Inject
+	public BackOfficeResource(Authenticator auth, Scheduler scheduler, QueryMonitor queryMonitor,
+			PoolDataSource poolDataSource, BackOffice backOffice, SessionMonitor sessionMonitor,
+			BillingExport billingExport) {
+		this.auth = auth;
+		this.scheduler = scheduler;
+		this.queryMonitor = queryMonitor;
+		this.poolDataSource = poolDataSource;
+		this.backOffice = backOffice;
+		this.sessionMonitor = sessionMonitor;
+		this.billingExport = billingExport;
+	}
+
+	/**
+	 * scheduled job status, a job per line.
+	 * @param authorization bearer token of an administrator.
+	 * @return
+	 */
+	@GET
+	@Path("/scheduler")
+	@Produces(MediaType.TEXT_PLAIN)
+	public String readScheduler(@HeaderParam(HttpHeaders.AUTHORIZATION) String authorization) {
+		authorize(authorization);
+		StringBuilder builder = new StringBuilder();
+		builder.append("started: ").append(scheduler.isStarted()).append("\n");
+		for (JobStatus status: scheduler.getStatuses())
+			builder.append(status).append("\n");
+		return builder.toString();
+	}
+
+	/**
+	 * sql statement metrics per request, transaction and dao method, a name per line.
+	 * @param authorization bearer token of an administrator.
+	 * @return
+	 */
+	@GET
+	@Path("/sql")
+	@Produces(MediaType.TEXT_PLAIN)
+	public String readSql(@HeaderParam(HttpHeaders.AUTHORIZATION) String authorization) {
+		authorize(authorization);
+		StringBuilder builder = new StringBuilder();
+		builder.append("enabled: ").append(queryMonitor.isEnabled())
+				.append(", budget: ").append(queryMonitor.getBudget())
+				.append(", over budget: ").append(queryMonitor.getOverBudget())
+				.append(", statements: ").append(queryMonitor.getStatements())
+				.append(", rows: ").append(queryMonitor.getRows()).append("\n");
+		for (Map.Entry<String, Metrics> e: queryMonitor.getMetrics().entrySet())
+			builder.append(e.getKey()).append(" ").append(e.getValue()).append("\n");
+		return builder.toString();
+	}
+
+	/**
+	 * connection pool status and stack traces of connections might be leaked.
+	 * @param authorization bearer token of an administrator.
+	 * @return
+	 */
+	@GET
+	@Path("/pool")
+	@Produces(MediaType.TEXT_PLAIN)
+	public String readPool(@HeaderParam(HttpHeaders.AUTHORIZATION) String authorization) {
+		authorize(authorization);
+		StringWriter writer = new StringWriter();
+		PrintWriter printer = new PrintWriter(writer);
+		printer.println(poolDataSource);
+		for (Throwable leak: poolDataSource.getLeaks())
+			leak.printStackTrace(printer);
+		printer.flush();
+		return writer.toString();
+	}
+
+	/**
+	 * sampled session bytes and form keys, session bytes per hour of day, off heap page store.
+	 * @param authorization bearer token of an administrator.
+	 * @return
+	 */
+	@GET
+	@Path("/session")
+	@Produces(MediaType.TEXT_PLAIN)
+	public String readSession(@HeaderParam(HttpHeaders.AUTHORIZATION) String authorization) {
+		authorize(authorization);
+		StringBuilder builder = new StringBuilder();
+		builder.append("enabled: ").append(sessionMonitor.isEnabled())
+				.append(", sampling: ").append(sessionMonitor.getSampling()).append("\n");
+		builder.append("bytes ").append(sessionMonitor.getBytes()).append("\n");
+		builder.append("form keys ").append(sessionMonitor.getFormKeys()).append("\n");
+		for (int hour = 0; hour < 24; hour++) {
+			if (sessionMonitor.getBytes(hour).getCount() > 0)
+				builder.append(String.format("%02d:00 bytes ", hour))
+						.append(sessionMonitor.getBytes(hour)).append("\n");
+		}
+		if (sessionMonitor.getDataStore() != null)
+			builder.append(sessionMonitor.getDataStore()).append("\n");
+		return builder.toString();
+	}
+
+	/**
+	 * rebuild daily counters from orders.
+	 * @param authorization bearer token of an administrator.
+	 * @param from first day(yyyyMMdd).
+	 * @param to last day(yyyyMMdd), same as from if omitted.
+	 * @return count of rebuilt counters.
+	 */
+	@POST
+	@Path("/counters/rebuild")
+	@Produces(MediaType.TEXT_PLAIN)
+	public String rebuildCounters(@HeaderParam(HttpHeaders.AUTHORIZATION) String authorization,
+			@QueryParam("from") String from, @QueryParam("to") String to) {
+		authorize(authorization);
+		Date fromDay = parseDay(from);
+		Date toDay = to == null ? fromDay : parseDay(to);
+		if (fromDay.after(toDay))
+			throw new WebApplicationException(Status.BAD_REQUEST);
+		int count = backOffice.rebuildDailyCounters(fromDay, toDay);
+		return "rebuilt: " + count + "\n";
+	}
+
+	/**
+	 * monthly billing of a group, receipt lines are streamed to response.
+	 * @param authorization bearer token of an administrator or a user in the group.
+	 * @param groupId
+	 * @param month yyyyMM.
+	 * @param format "csv"(default) or "json".
+	 * @return
+	 */
+	@GET
+	@Path("/billing")
+	public Response readBilling(@HeaderParam(HttpHeaders.AUTHORIZATION) String authorization,
+			@QueryParam("group") final Integer groupId, @QueryParam("month") String month,
+			@QueryParam("format") String format) {
+		User user = authenticate(authorization);
+		if (groupId == null)
+			throw new WebApplicationException(Status.BAD_REQUEST);
+		if (!groupId.equals(user.getGroupId()) && !auth.isAdmin(user)) {
+			logger.info("billing of other group is not allowed: {}, group: {}", user.getId(), groupId);
+			throw new WebApplicationException(Status.FORBIDDEN);
+		}
+		final Date monthDay = parseDate(month, "yyyyMM");
+		final Format exportFormat;
+		try {
+			exportFormat = format == null ? Format.CSV : Format.valueOf(format.toUpperCase());
+		} catch (IllegalArgumentException e) {
+			throw new WebApplicationException(e, Status.BAD_REQUEST);
+		}
+		StreamingOutput output = new StreamingOutput() {
+
+			@Override
+			public void write(OutputStream out) throws IOException {
+				billingExport.export(groupId, monthDay, exportFormat,
+						new BufferedWriter(new OutputStreamWriter(out, "UTF-8")));
+			}
+		};
+		String fileName = "billing-" + groupId + "-" + month + "." + exportFormat.name().toLowerCase();
+		return Response.ok(output)
+				.type(exportFormat == Format.JSON ? MediaType.APPLICATION_JSON + ";charset=utf-8" : "text/csv;charset=utf-8")
+				.header("Content-Disposition", "attachment; filename=" + fileName)
+				.build();
+	}
+
+	/**
+	 * authorize administrator.
+	 * @param authorization bearer token.
+	 * @return administrator, 401 if not authenticated, 403 if not an administrator.
+	 */
+	private User authorize(String authorization) {
+		User user = authenticate(authorization);
+		if (!auth.isAdmin(user)) {
+			logger.info("back office is not allowed: {}", user.getId());
+			throw new WebApplicationException(Status.FORBIDDEN);
+		}
+		return user;
+	}
+
+	private User authenticate(String authorization) {
+		User user = auth.verifyBearer(authorization);
+		if (user == null)
+			throw new WebApplicationException(Response.status(Status.UNAUTHORIZED)
+					.header(HttpHeaders.WWW_AUTHENTICATE, "Bearer").build());
+		return user;
+	}
+
+	private Date parseDay(String day) {
+		return parseDate(day, "yyyyMMdd");
+	}
+
+	private Date parseDate(String date, String pattern) {
+		if (date == null)
+			throw new WebApplicationException(Status.BAD_REQUEST);
+		try {
+			return DateUtils.parseDateStrictly(date, pattern);
+		} catch (ParseException e) {
+			throw new WebApplicationException(e, Status.BAD_REQUEST);
+		}
+	}
 }
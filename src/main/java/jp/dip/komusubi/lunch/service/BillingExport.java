@@ -0,0 +1,168 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package jp.dip.komusubi.lunch.service;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.Date;
+
+import javax.inject.Inject;
+
+import jp.dip.komusubi.lunch.LunchException;
+import jp.dip.komusubi.lunch.module.dao.BillingLine;
+import jp.dip.komusubi.lunch.module.dao.ReceiptDao;
+
+import org.apache.commons.lang3.time.DateFormatUtils;
+import org.apache.commons.lang3.time.FastDateFormat;
+
+/**
+ * monthly billing export of a group for treasurers.
+ * receipt lines are written to writer while scanning a result set,
+ * so memory does not grow with count of lines.
+ * @author jun.ozeki
+ * @since 2013/08/11
+ */
+public class BillingExport {
+
+	/**
+	 * export format.
+	 */
+	public enum Format {
+		CSV, JSON;
+	}
+
+	private static final String[] HEADERS = { "receiptId", "no", "orderId", "datetime", "userId", "userName",
+			"email", "shopId", "shopName", "productId", "productName", "quantity", "amount" };
+	private static final FastDateFormat DATETIME_FORMAT = FastDateFormat.getInstance("yyyy-MM-dd HH:mm:ss");
+	private ReceiptDao receiptDao;
+
+	@Inject
+	public BillingExport(ReceiptDao receiptDao) {
+		this.receiptDao = receiptDao;
+	}
+
+	/**
+	 * write billing lines of the group in the month.
+	 * @param groupId
+	 * @param month any day of the month.
+	 * @param format
+	 * @param writer
+	 * @return count of lines.
+	 * @throws IOException
+	 */
+	public int export(Integer groupId, Date month, Format format, Writer writer) throws IOException {
+		try {
+			if (format == Format.JSON)
+				return exportJson(groupId, month, writer);
+			return exportCsv(groupId, month, writer);
+		} catch (LunchException e) {
+			if (e.getCause() instanceof IOException)
+				throw (IOException) e.getCause();
+			throw e;
+		} finally {
+			writer.flush();
+		}
+	}
+
+	private int exportCsv(Integer groupId, Date month, final Writer writer) throws IOException {
+		for (int i = 0; i < HEADERS.length; i++)
+			writer.append(i == 0 ? "" : ",").append(HEADERS[i]);
+		writer.append("\r\n");
+		return receiptDao.scanBillingByGroupAndMonth(groupId, month, new BillingLine.Handler() {
+
+			@Override
+			public void processLine(BillingLine line) {
+				try {
+					writer.append(String.valueOf(line.getReceiptId())).append(',')
+						.append(String.valueOf(line.getNo())).append(',')
+						.append(String.valueOf(line.getOrderId())).append(',')
+						.append(line.getDatetime() == null ? "" : DATETIME_FORMAT.format(line.getDatetime())).append(',')
+						.append(String.valueOf(line.getUserId())).append(',')
+						.append(csv(line.getUserName())).append(',')
+						.append(csv(line.getEmail())).append(',')
+						.append(csv(line.getShopId())).append(',')
+						.append(csv(line.getShopName())).append(',')
+						.append(csv(line.getProductId())).append(',')
+						.append(csv(line.getProductName())).append(',')
+						.append(String.valueOf(line.getQuantity())).append(',')
+						.append(String.valueOf(line.getAmount())).append("\r\n");
+				} catch (IOException e) {
+					throw new LunchException(e);
+				}
+			}
+		});
+	}
+
+	private int exportJson(Integer groupId, Date month, final Writer writer) throws IOException {
+		final Json json = new Json().beginObject()
+				.property("groupId", groupId)
+				.property("month", DateFormatUtils.format(month, "yyyy-MM"))
+				.name("lines").beginArray();
+		final int[] amount = new int[1];
+		int count = receiptDao.scanBillingByGroupAndMonth(groupId, month, new BillingLine.Handler() {
+
+			@Override
+			public void processLine(BillingLine line) {
+				json.beginObject()
+					.property("receiptId", line.getReceiptId())
+					.property("no", line.getNo())
+					.property("orderId", line.getOrderId())
+					.property("datetime", line.getDatetime())
+					.property("userId", line.getUserId())
+					.property("userName", line.getUserName())
+					.property("email", line.getEmail())
+					.property("shopId", line.getShopId())
+					.property("shopName", line.getShopName())
+					.property("productId", line.getProductId())
+					.property("productName", line.getProductName())
+					.property("quantity", line.getQuantity())
+					.property("amount", line.getAmount())
+					.endObject();
+				amount[0] += line.getAmount();
+				try {
+					json.flushTo(writer);
+				} catch (IOException e) {
+					throw new LunchException(e);
+				}
+			}
+		});
+		json.endArray()
+			.property("count", count)
+			.property("amount", amount[0])
+			.endObject();
+		json.flushTo(writer);
+		return count;
+	}
+
+	/**
+	 * csv value, quoted if necessary. value starting with "=", "+", "-", "@", tab or carriage return
+	 * is prefixed with "'", not to be evaluated as a formula by spreadsheets.
+	 * @param value
+	 * @return
+	 */
+	private String csv(String value) {
+		if (value == null)
+			return "";
+		if (!value.isEmpty() && "=+-@\t\r".indexOf(value.charAt(0)) >= 0)
+			value = "'" + value;
+		if (value.indexOf(',') < 0 && value.indexOf('"') < 0 && value.indexOf('\n') < 0 && value.indexOf('\r') < 0)
+			return value;
+		return "\"" + value.replace("\"", "\"\"") + "\"";
+	}
+}
@@ -0,0 +1,181 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package jp.dip.komusubi.lunch.service;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayDeque;
+import java.util.Date;
+import java.util.Deque;
+
+import org.apache.commons.lang3.time.DateFormatUtils;
+
+/**
+ * minimal json writer for rest resources.
+ * commas are put by nesting state, so values are written in order without any object mapping.
+ * @author jun.ozeki
+ * @since 2013/08/04
+ */
+class Json {
+
+	private final StringBuilder builder = new StringBuilder();
+	// true if the current object or array has no element yet.
+	private final Deque<Boolean> empties = new ArrayDeque<>();
+	private boolean named;
+
+	Json beginObject() {
+		separate();
+		builder.append('{');
+		empties.push(true);
+		return this;
+	}
+
+	Json endObject() {
+		empties.pop();
+		builder.append('}');
+		return this;
+	}
+
+	Json beginArray() {
+		separate();
+		builder.append('[');
+		empties.push(true);
+		return this;
+	}
+
+	Json endArray() {
+		empties.pop();
+		builder.append(']');
+		return this;
+	}
+
+	Json name(String name) {
+		separate();
+		quote(name);
+		builder.append(':');
+		named = true;
+		return this;
+	}
+
+	Json value(String value) {
+		separate();
+		if (value == null)
+			builder.append("null");
+		else
+			quote(value);
+		return this;
+	}
+
+	Json value(Number value) {
+		separate();
+		builder.append(value == null ? "null" : value.toString());
+		return this;
+	}
+
+	Json value(boolean value) {
+		separate();
+		builder.append(value);
+		return this;
+	}
+
+	/**
+	 * date as iso 8601 string.
+	 * @param value
+	 * @return
+	 */
+	Json value(Date value) {
+		String formatted = value == null ? null : DateFormatUtils.ISO_DATETIME_TIME_ZONE_FORMAT.format(value);
+		return value(formatted);
+	}
+
+	Json property(String name, String value) {
+		return name(name).value(value);
+	}
+
+	Json property(String name, Number value) {
+		return name(name).value(value);
+	}
+
+	Json property(String name, boolean value) {
+		return name(name).value(value);
+	}
+
+	Json property(String name, Date value) {
+		return name(name).value(value);
+	}
+
+	private void separate() {
+		if (named) {
+			named = false;
+			return;
+		}
+		if (empties.isEmpty())
+			return;
+		if (empties.peek()) {
+			empties.pop();
+			empties.push(false);
+		} else
+			builder.append(',');
+	}
+
+	private void quote(String value) {
+		builder.append('"');
+		for (int i = 0; i < value.length(); i++) {
+			char c = value.charAt(i);
+			switch (c) {
+			case '"':
+				builder.append("\\\"");
+				break;
+			case '\\':
+				builder.append("\\\\");
+				break;
+			case '\n':
+				builder.append("\\n");
+				break;
+			case '\r':
+				builder.append("\\r");
+				break;
+			case '\t':
+				builder.append("\\t");
+				break;
+			default:
+				if (c < 0x20 || c == '\u2028' || c == '\u2029')
+					builder.append(String.format("\\u%04x", (int) c));
+				else
+					builder.append(c);
+			}
+		}
+		builder.append('"');
+	}
+
+	/**
+	 * write json built so far to writer and clear it, to stream large json.
+	 * @param writer
+	 * @throws IOException
+	 */
+	void flushTo(Writer writer) throws IOException {
+		writer.append(builder);
+		builder.setLength(0);
+	}
+
+	@Override
+	public String toString() {
+		return builder.toString();
+	}
+}
@@ -0,0 +1,221 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package jp.dip.komusubi.lunch.service;
+
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+
+import javax.inject.Inject;
+import javax.inject.Named;
+import javax.inject.Singleton;
+
+import jp.dip.komusubi.lunch.model.Product;
+import jp.dip.komusubi.lunch.module.dao.ProductBatchDao;
+
+import org.apache.commons.lang3.time.DateUtils;
+import org.komusubi.common.util.Resolver;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+/**
+ * menu calendar, products of shops indexed by finish date time.
+ * products finish from today to period days later are loaded by a query, and
+ * rebuilt when day changes, max age passed or products are supplied(#invalidate).
+ * dates out of indexed period are found by product dao.
+ * @author jun.ozeki
+ * @since 2013/07/20
+ */
+@Singleton
+public class MenuCalendar {
+
+    private static final Logger logger = LoggerFactory.getLogger(MenuCalendar.class);
+    public static final int DEFAULT_PERIOD = 14;
+    public static final long DEFAULT_MAX_AGE = TimeUnit.MINUTES.toMillis(10);
+    private final ProductBatchDao productDao;
+    private final Resolver<Date> dateResolver;
+    private final int period;
+    private final long maxAge;
+    private volatile Index index;
+
+    @Inject
+    public MenuCalendar(ProductBatchDao productDao, @Named("date") Resolver<Date> dateResolver) {
+        this(productDao, dateResolver, DEFAULT_PERIOD, DEFAULT_MAX_AGE);
+    }
+
+    /**
+     * create menu calendar.
+     * @param productDao
+     * @param dateResolver
+     * @param period days to index after today.
+     * @param maxAge milliseconds to rebuild index.
+     */
+    public MenuCalendar(ProductBatchDao productDao, Resolver<Date> dateResolver, int period, long maxAge) {
+        this.productDao = productDao;
+        this.dateResolver = dateResolver;
+        this.period = period;
+        this.maxAge = maxAge;
+    }
+
+    /**
+     * products of the shop finish in the day of date.
+     * @param shopId
+     * @param date
+     * @return
+     */
+    public List<Product> getDeadlineProducts(String shopId, Date date) {
+        Date from = DateUtils.truncate(date, Calendar.DATE);
+        Index current = getIndex();
+        if (!current.covers(from))
+            return productDao.findByShopIdAndFinishDate(shopId, date);
+        return current.find(shopId, from, DateUtils.addDays(from, 1));
+    }
+
+    /**
+     * products of the shop finish after date in the day.
+     * @param shopId
+     * @param date
+     * @return
+     */
+    public List<Product> getDeadlineTimeProducts(String shopId, Date date) {
+        Index current = getIndex();
+        if (!current.covers(date))
+            return productDao.findByShopIdAndFinishDatetime(shopId, date);
+        return current.find(shopId, date, DateUtils.addDays(DateUtils.truncate(date, Calendar.DATE), 1));
+    }
+
+    /**
+     * products of the shop in the next orderable day, within period days after date.
+     * @param shopId
+     * @param date
+     * @return products of a day, empty if not found in period.
+     */
+    public List<Product> getNextProducts(String shopId, Date date) {
+        Date from = DateUtils.addDays(DateUtils.truncate(date, Calendar.DATE), 1);
+        Date to = DateUtils.addDays(from, period);
+        Index current = getIndex();
+        if (current.covers(from) && current.covers(DateUtils.addMilliseconds(to, -1)))
+            return current.findFirstDay(shopId, from, to);
+        List<Product> products = productDao.findByFinishPeriod(from, to);
+        return new Index(from, to, System.currentTimeMillis(), products).findFirstDay(shopId, from, to);
+    }
+
+    /**
+     * discard index, after commit in a transaction.
+     */
+    public void invalidate() {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronizationAdapter() {
+                @Override
+                public void afterCommit() {
+                    index = null;
+                }
+            });
+        } else {
+            index = null;
+        }
+    }
+
+    private Index getIndex() {
+        Date today = DateUtils.truncate(dateResolver.resolve(), Calendar.DATE);
+        Index current = index;
+        if (current != null && current.isValid(today))
+            return current;
+        synchronized (this) {
+            current = index;
+            if (current != null && current.isValid(today))
+                return current;
+            Date to = DateUtils.addDays(today, period + 1);
+            current = new Index(today, to, System.currentTimeMillis(), productDao.findByFinishPeriod(today, to));
+            logger.info("menu calendar built, from: {}, to: {}, shops: {}", new Object[]{ today, to, current.shops.size() });
+            index = current;
+            return current;
+        }
+    }
+
+    /**
+     * immutable index of products finish in [from, to).
+     */
+    private class Index {
+        private final Date from;
+        private final Date to;
+        private final long built;
+        private final Map<String, NavigableMap<Date, List<Product>>> shops = new HashMap<>();
+
+        private Index(Date from, Date to, long built, List<Product> products) {
+            this.from = from;
+            this.to = to;
+            this.built = built;
+            for (Product product: products) {
+                if (product.getFinish() == null)
+                    continue;
+                NavigableMap<Date, List<Product>> finishes = shops.get(product.getShopId());
+                if (finishes == null) {
+                    finishes = new TreeMap<>();
+                    shops.put(product.getShopId(), finishes);
+                }
+                Date finish = new Date(product.getFinish().getTime());
+                List<Product> list = finishes.get(finish);
+                if (list == null) {
+                    list = new ArrayList<>(1);
+                    finishes.put(finish, list);
+                }
+                list.add(product);
+            }
+        }
+
+        private boolean isValid(Date today) {
+            return from.equals(today) && System.currentTimeMillis() - built < maxAge;
+        }
+
+        private boolean covers(Date date) {
+            return !date.before(from) && date.before(to);
+        }
+
+        private List<Product> find(String shopId, Date start, Date end) {
+            NavigableMap<Date, List<Product>> finishes = shops.get(shopId);
+            if (finishes == null)
+                return Collections.emptyList();
+            List<Product> list = new ArrayList<>();
+            for (List<Product> products: finishes.subMap(start, true, end, false).values())
+                list.addAll(products);
+            return list;
+        }
+
+        private List<Product> findFirstDay(String shopId, Date start, Date end) {
+            NavigableMap<Date, List<Product>> finishes = shops.get(shopId);
+            if (finishes == null)
+                return Collections.emptyList();
+            Date first = finishes.ceilingKey(start);
+            if (first == null || !first.before(end))
+                return Collections.emptyList();
+            Date day = DateUtils.truncate(first, Calendar.DATE);
+            return find(shopId, day, DateUtils.addDays(day, 1));
+        }
+    }
+}
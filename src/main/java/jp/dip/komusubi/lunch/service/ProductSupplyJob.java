@@ -0,0 +1,46 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package jp.dip.komusubi.lunch.service;
+
+import java.util.concurrent.Callable;
+
+import javax.inject.Inject;
+
+import jp.dip.komusubi.lunch.service.BackOffice.SupplyReport;
+
+/**
+ * product supply job, scheduled daily by Bootstrap.
+ * @author jun.ozeki
+ * @since 2013/06/15
+ */
+public class ProductSupplyJob implements Callable<SupplyReport> {
+
+    public static final String NAME = "product supply";
+    private BackOffice backOffice;
+
+    @Inject
+    public ProductSupplyJob(BackOffice backOffice) {
+        this.backOffice = backOffice;
+    }
+
+    @Override
+    public SupplyReport call() throws Exception {
+        return backOffice.supplyProduct();
+    }
+}
@@ -17,15 +17,15 @@
 package jp.dip.komusubi.lunch.service;
 
 import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Calendar;
 import java.util.Date;
-import java.util.HashMap;
 import java.util.List;
-import java.util.Map;
 
 import javax.inject.Inject;
 import javax.inject.Named;
 
-import jp.dip.komusubi.lunch.TransactionException;
+import jp.dip.komusubi.lunch.DuplicateOrderException;
 import jp.dip.komusubi.lunch.model.Group;
 import jp.dip.komusubi.lunch.model.Order;
 import jp.dip.komusubi.lunch.model.OrderLine;
@@ -35,12 +35,19 @@ import jp.dip.komusubi.lunch.model.Shop;
 import jp.dip.komusubi.lunch.model.User;
 import jp.dip.komusubi.lunch.module.Basket;
 import jp.dip.komusubi.lunch.module.Transactional;
+import jp.dip.komusubi.lunch.module.dao.DailyCounterDao;
 import jp.dip.komusubi.lunch.module.dao.OrderDao;
 import jp.dip.komusubi.lunch.module.dao.OrderLineDao;
 import jp.dip.komusubi.lunch.module.dao.ProductDao;
 import jp.dip.komusubi.lunch.module.dao.ShopDao;
+import jp.dip.komusubi.lunch.module.event.EventBus;
+import jp.dip.komusubi.lunch.module.event.OrderEvent;
+import jp.dip.komusubi.lunch.module.event.OrderEvent.Type;
 
+import org.apache.commons.lang3.time.DateUtils;
 import org.komusubi.common.util.Resolver;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 /**
  * shopping.
@@ -50,12 +57,20 @@ import org.komusubi.common.util.Resolver;
 public class Shopping implements Serializable {
 
 	private static final long serialVersionUID = 6554643970716125151L;
+	private static final Logger logger = LoggerFactory.getLogger(Shopping.class);
+	/** hour of last order of today's products. */
+	public static final int LAST_ORDER_HOUR = 13;
+	/** days to seek products of next orderable day. */
+	public static final int SEEK_PERIOD = 14;
 	@Inject private Basket basket;
 	@Inject private ProductDao productDao;
 	@Inject private OrderDao orderDao;
 	@Inject private OrderLineDao orderLineDao;
+	@Inject private DailyCounterDao dailyCounterDao;
 	@Inject private ShopDao shopDao;
 	@Inject @Named("date") private Resolver<Date> dateResolver;
+	@Inject private transient MenuCalendar menuCalendar;
+	@Inject private transient EventBus eventBus;
 
 	public Shopping() {
 //		this(new User(), Configuration.getInstance(Basket.class));
@@ -76,14 +91,16 @@ public class Shopping implements Serializable {
 //	}
 
 	// package scope for unit test
-	Shopping(User user, Basket basket, OrderDao orderDao, 
-	        OrderLineDao orderLineDao, ProductDao productDao, ShopDao shopDao, Resolver<Date> resolver) {
+	Shopping(User user, Basket basket, OrderDao orderDao, OrderLineDao orderLineDao, 
+	        DailyCounterDao dailyCounterDao, ProductDao productDao, ShopDao shopDao, Resolver<Date> resolver, EventBus eventBus) {
 		this.basket = basket;
 		this.orderDao = orderDao;
 		this.orderLineDao = orderLineDao;
+		this.dailyCounterDao = dailyCounterDao;
 		this.productDao = productDao;
 		this.shopDao = shopDao;
 		this.dateResolver = resolver;
+		this.eventBus = eventBus;
 		basket.setUser(user);
 	}
 
@@ -132,8 +149,32 @@ public class Shopping implements Serializable {
 	public List<Product> getDeadlineProducts(Shop shop, Date date) {
 		if (shop == null)
 			throw new IllegalArgumentException("shop is null");
+		if (menuCalendar != null)
+			return menuCalendar.getDeadlineProducts(shop.getId(), date);
 		return productDao.findByShopIdAndFinishDate(shop.getId(), date);
 	}
+
+	/**
+	 * products of the next orderable day after date.
+	 * @param shop
+	 * @param date
+	 * @param period days to seek.
+	 * @return products of a day, empty if not found in period.
+	 */
+	public List<Product> getNextDeadlineProducts(Shop shop, Date date, int period) {
+		if (shop == null)
+			throw new IllegalArgumentException("shop is null");
+		if (menuCalendar != null && period <= MenuCalendar.DEFAULT_PERIOD)
+			return menuCalendar.getNextProducts(shop.getId(), date);
+		Date day = date;
+		for (int i = 0; i < period; i++) {
+			day = new Date(day.getTime() + 24 * 60 * 60 * 1000L);
+			List<Product> products = productDao.findByShopIdAndFinishDate(shop.getId(), day);
+			if (products.size() > 0)
+				return products;
+		}
+		return new ArrayList<>();
+	}
 	
 	public List<Product> getDeadlineTimeProducts(Shop shop) {
 		return getDeadlineTimeProducts(shop, dateResolver.resolve());
@@ -142,9 +183,70 @@ public class Shopping implements Serializable {
 	public List<Product> getDeadlineTimeProducts(Shop shop, Date date) {
 		if (shop == null)
 			throw new IllegalArgumentException("shop is null");
+		if (menuCalendar != null)
+			return menuCalendar.getDeadlineTimeProducts(shop.getId(), date);
 		return productDao.findByShopIdAndFinishDatetime(shop.getId(), date);
 	}
 	
+	/**
+	 * orderable products, today's products until last order hour and products of next orderable day after that.
+	 * @param shop
+	 * @param date
+	 * @return products, empty if shop is day off or nothing found.
+	 */
+	public List<Product> getOrderableProducts(Shop shop, Date date) {
+		Date todayLimit = DateUtils.setHours(DateUtils.truncate(date, Calendar.DAY_OF_MONTH), LAST_ORDER_HOUR);
+		if (date.before(todayLimit)) {
+			if (shop.isDayOff(date))
+				return new ArrayList<>();
+			return getDeadlineTimeProducts(shop, date);
+		}
+		return getNextDeadlineProducts(shop, date, SEEK_PERIOD);
+	}
+
+	/**
+	 * get shop.
+	 * @param id shop id.
+	 * @return shop, null if not found.
+	 */
+	public Shop getShop(String id) {
+		return shopDao.find(id);
+	}
+
+	/**
+	 * get order.
+	 * @param id order id.
+	 * @return order, null if not found.
+	 */
+	public Order getOrder(int id) {
+		return orderDao.find(id);
+	}
+
+	/**
+	 * get product.
+	 * @param id product id.
+	 * @return product, null if not found.
+	 */
+	public Product getProduct(String id) {
+		return productDao.find(id);
+	}
+
+	/**
+	 * get product orderable now.
+	 * @param id product id.
+	 * @return product, null if not found or not orderable now (e.g. after last order).
+	 */
+	public Product getOrderableProduct(String id) {
+		Product product = productDao.find(id);
+		if (product == null || product.getShop() == null)
+			return null;
+		for (Product orderable: getOrderableProducts(product.getShop(), dateResolver.resolve())) {
+			if (id.equals(orderable.getId()))
+				return orderable;
+		}
+		return null;
+	}
+
 	public List<Product> getProductsAll(String shopId) {
 		return productDao.findByShopId(shopId);
 	}
@@ -169,54 +271,80 @@ public class Shopping implements Serializable {
 		for (Order order: basket) {
 			// set order date when ordered.
 			order.setDatetime(dateResolver.resolve());
-			orderDao.persist(order);
+			Integer id = orderDao.persist(order);
+			// daily counters are updated in the same transaction.
+			dailyCounterDao.increment(order);
+			publish(Type.PLACED, order, id, order.getAmount());
 		}
 	}
 	
+	/**
+	 * order basket once per token. when the token was submitted already(double click,
+	 * retry after timeout), orders of the former submission are returned.
+	 * @param basket
+	 * @param token idempotency token of the submission.
+	 * @return persisted orders.
+	 */
+	public List<Order> order(Basket basket, String token) {
+	    if (token == null)
+	        throw new IllegalArgumentException("token must NOT be null.");
+	    for (Order order: basket)
+	        order.setToken(token);
+	    try {
+	        order(basket);
+	        return basket.getOrders();
+	    } catch (DuplicateOrderException e) {
+	        logger.info("already submitted, userId: {}, token: {}", basket.getUser().getId(), token);
+	        return orderDao.findByUserAndToken(basket.getUser().getId(), token);
+	    }
+	}
+	
 	public void order() {
 		order(this.basket);
 	}
 	
-	@Transactional
-	public void order(Group group) {
+	/**
+	 * order summaries of the group to shops.
+	 * concurrent orders are resolved by unique key of orders, the loser receives
+	 * summaries persisted by the winner.
+	 * @param group
+	 * @return summary orders of the day.
+	 */
+	public List<Order> order(Group group) {
 	    if (group == null)
 	        throw new IllegalArgumentException("group must NOT be null.");
 	    if (basket.getUser() == null || basket.getUser().getId() == null)
 	        throw new IllegalStateException("user must NOT be null.");
 	    
-	    Map<Shop, Order> groupOrders = new HashMap<>();
-	    List<Order> orders = orderDao.findByGroupIdAndDate(group.getId(), dateResolver.resolve(), false);
-	    for (Order order: orders) {
-	        if (order.isCancel())
-	            continue;
-	        Order summary;
-	        if (groupOrders.containsKey(order.getShop())) {
-	            summary = groupOrders.get(order.getShop());
-	        } else {
-	            summary = new Order();
-	            summary.setGroup(order.getGroup());
-	            summary.setShop(order.getShop());
-	            summary.setUser(basket.getUser());
-	            summary.setDatetime(dateResolver.resolve());
-	            summary.setSummary(true);
-	        }
-   	        for (OrderLine orderLine: order) {
-   	            if (orderLine.isCancel())
-   	                continue;
-   	            summary.addLine(orderLine, true);
-   	        }
-   	        groupOrders.put(order.getShop(), summary);
+	    Date date = dateResolver.resolve();
+	    try {
+	        return summarize(group, date);
+	    } catch (DuplicateOrderException e) {
+	        logger.info("already ordered by other transaction, groupId: {}, date: {}", group.getId(), date);
+	        return orderDao.findByGroupIdAndDate(group.getId(), date, true);
 	    }
-
-	    List<Order> existOrder = orderDao.findByGroupIdAndDate(group.getId(), dateResolver.resolve(), true);
+	}
+	
+	@Transactional
+	protected List<Order> summarize(Group group, Date date) {
+	    List<Order> existOrder = orderDao.findByGroupIdAndDate(group.getId(), date, true);
 	    if (existOrder.size() > 0) {
-	        throw new TransactionException("already ordered. groupId: " 
-	                + group.getId() + ", date: " + dateResolver.resolve());
+	        logger.info("already ordered, groupId: {}, date: {}", group.getId(), date);
+	        return existOrder;
 	    }
 	    
-	    // persist summary order. 
-	    for (Order order: groupOrders.values()) 
-	        orderDao.persist(order);
+	    // summary per shop is aggregated by database.
+	    List<Order> summaries = orderDao.summarizeByGroupIdAndDate(group.getId(), date);
+	    for (Order summary: summaries) {
+	        summary.setGroup(group)
+	               .setUser(basket.getUser())
+	               .setDatetime(date);
+	    }
+	    // persist summary order, unique per group, shop and day.
+	    List<Integer> ids = orderDao.persistAll(summaries);
+	    for (int i = 0; i < ids.size(); i++)
+	        publish(Type.SUMMARY_CLOSED, summaries.get(i), ids.get(i), summaries.get(i).getAmount());
+	    return summaries;
 	}
 	
 	public void purchase() {
@@ -233,8 +361,13 @@ public class Shopping implements Serializable {
      */
     @Transactional
     public void cancel(Order order) {
+        boolean canceled = order.isCancel();
         order.setCancel(true);
         orderDao.update(order);
+        if (!canceled) {
+            dailyCounterDao.decrement(order);
+            publish(Type.CANCELLED, order, order.getId(), order.getAmount());
+        }
     }
     
     /**
@@ -258,11 +391,27 @@ public class Shopping implements Serializable {
         // true: cancel just a order line. 
         // false: cancel order(all order lines)
         if (available) {
-            order.setCancel(true);
-            orderDao.update(order);
+            for (OrderLine line: order.getOrderLines(false)) {
+                if (line.getPrimaryKey().getNo() != key.getNo())
+                    continue;
+                line.setCancel(true);
+                orderLineDao.update(line);
+                dailyCounterDao.decrement(order, line);
+                publish(Type.CANCELLED, order, order.getId(), line.getProduct().getAmount() * line.getQuantity());
+            }
         } else {
             cancel(order);
         }
     }
+
+    /**
+     * publish order change to group members, after commit in a transaction.
+     */
+    private void publish(Type type, Order order, Integer orderId, int amount) {
+        if (eventBus == null || order.getUser() == null || orderId == null)
+            return;
+        eventBus.publish(new OrderEvent(type, order.getUser().getGroupId(), orderId, order.getUser().getId(),
+                order.getShop() == null ? null : order.getShop().getId(), amount, order.getDatetime()));
+    }
 	
 }
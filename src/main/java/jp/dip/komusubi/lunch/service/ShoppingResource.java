@@ -18,39 +18,458 @@
  */
 package jp.dip.komusubi.lunch.service;
 
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
 import javax.inject.Inject;
+import javax.inject.Named;
+import javax.ws.rs.Consumes;
+import javax.ws.rs.DELETE;
+import javax.ws.rs.FormParam;
 import javax.ws.rs.GET;
+import javax.ws.rs.HeaderParam;
 import javax.ws.rs.POST;
 import javax.ws.rs.PUT;
 import javax.ws.rs.Path;
+import javax.ws.rs.PathParam;
+import javax.ws.rs.Produces;
+import javax.ws.rs.QueryParam;
+import javax.ws.rs.WebApplicationException;
+import javax.ws.rs.core.CacheControl;
+import javax.ws.rs.core.Context;
+import javax.ws.rs.core.EntityTag;
+import javax.ws.rs.core.HttpHeaders;
+import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.Request;
 import javax.ws.rs.core.Response;
+import javax.ws.rs.core.Response.ResponseBuilder;
+import javax.ws.rs.core.Response.Status;
+
+import jp.dip.komusubi.lunch.model.Order;
+import jp.dip.komusubi.lunch.model.OrderLine;
+import jp.dip.komusubi.lunch.model.Product;
+import jp.dip.komusubi.lunch.model.Receipt;
+import jp.dip.komusubi.lunch.model.Shop;
+import jp.dip.komusubi.lunch.model.User;
+import jp.dip.komusubi.lunch.module.Basket;
+import jp.dip.komusubi.lunch.module.event.EventBus;
+import jp.dip.komusubi.lunch.module.event.EventBus.Events;
+import jp.dip.komusubi.lunch.module.event.OrderEvent;
+import jp.dip.komusubi.lunch.service.AccountService.ReceiveReport;
 
+import org.apache.commons.codec.digest.DigestUtils;
+import org.komusubi.common.util.Resolver;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
+/**
+ * shopping resource for mobile clients.
+ * nothing is kept in server between requests, basket is sent by client as "item" parameters
+ * (product id or "product id:quantity"), user is authenticated by "Authorization: Bearer token".
+ * @author jun.ozeki
+ */
 @Path("/v1")
 public class ShoppingResource {
 
+	private static final Logger logger = LoggerFactory.getLogger(ShoppingResource.class);
+	private static final String JSON = MediaType.APPLICATION_JSON + ";charset=utf-8";
+	/** seconds of menu cached by clients. */
+	private static final int MENU_MAX_AGE = 60;
+	/** seconds to retry polling events when too many subscribers are waiting. */
+	private static final int EVENTS_RETRY_AFTER = 5;
 	private Authenticator auth;
+	private Shopping shopping;
+	private AccountService accountService;
+	private Resolver<Date> dateResolver;
+	private EventBus eventBus;
 
 	@Inject
-	public ShoppingResource(Authenticator auth) {
+	public ShoppingResource(Authenticator auth, Shopping shopping, AccountService accountService,
+			@Named("date") Resolver<Date> dateResolver, EventBus eventBus) {
 		this.auth = auth;
+		this.shopping = shopping;
+		this.accountService = accountService;
+		this.dateResolver = dateResolver;
+		this.eventBus = eventBus;
+	}
+
+	/**
+	 * issue api token.
+	 * @param email
+	 * @param password
+	 * @return token, 401 if not authenticated.
+	 */
+	@POST
+	@Path("/token")
+	@Consumes(MediaType.APPLICATION_FORM_URLENCODED)
+	@Produces(JSON)
+	public Response createToken(@FormParam("email") String email, @FormParam("password") String password) {
+		if (email == null || password == null)
+			throw new WebApplicationException(Status.BAD_REQUEST);
+		User user = accountService.authenticate(email, password);
+		if (user == null)
+			throw unauthorized();
+		Json json = new Json().beginObject()
+				.property("token", auth.issue(user))
+				.property("userId", user.getId())
+				.property("name", user.getName())
+				.endObject();
+		return Response.ok(json.toString()).cacheControl(noStore()).build();
+	}
+
+	/**
+	 * orderable products of all shops.
+	 * @param request
+	 * @return menu, 304 if not modified.
+	 */
+	@GET
+	@Path("/menu")
+	@Produces(JSON)
+	public Response readMenu(@Context Request request) {
+		Date now = dateResolver.resolve();
+		Json json = new Json().beginObject().name("shops").beginArray();
+		for (Shop shop: shopping.getAvailableShops())
+			writeShop(json, shop, now);
+		json.endArray().endObject();
+		return cached(request, json.toString());
+	}
+
+	/**
+	 * orderable products of a shop.
+	 * @param shopId
+	 * @param request
+	 * @return shop and products, 304 if not modified.
+	 */
+	@GET
+	@Path("/shops/{shopId}/products")
+	@Produces(JSON)
+	public Response readProducts(@PathParam("shopId") String shopId, @Context Request request) {
+		Shop shop = shopping.getShop(shopId);
+		if (shop == null)
+			throw new WebApplicationException(Status.NOT_FOUND);
+		Json json = new Json();
+		writeShop(json, shop, dateResolver.resolve());
+		return cached(request, json.toString());
 	}
-	// resource url
-	// http://domain.com/basket
 
+	/**
+	 * create basket.
+	 * @param items
+	 * @return basket with amount.
+	 */
 	@POST
-	@Path("/cart")
-	public Response createBasket() {
-		return null;
+	@Path("/basket")
+	@Consumes(MediaType.APPLICATION_FORM_URLENCODED)
+	@Produces(JSON)
+	public Response createBasket(@FormParam("item") List<String> items) {
+		return basket(newBasket(null, items));
 	}
-	
+
+	/**
+	 * update basket.
+	 * @param items all items of basket.
+	 * @return basket with amount.
+	 */
 	@PUT
-	public void updateBasket() {
-		
+	@Path("/basket")
+	@Consumes(MediaType.APPLICATION_FORM_URLENCODED)
+	@Produces(JSON)
+	public Response updateBasket(@FormParam("item") List<String> items) {
+		return basket(newBasket(null, items));
+	}
+
+	/**
+	 * read basket.
+	 * @param items
+	 * @return basket with amount.
+	 */
+	@GET
+	@Path("/basket")
+	@Produces(JSON)
+	public Response readBasket(@QueryParam("item") List<String> items) {
+		return basket(newBasket(null, items));
+	}
+
+	/**
+	 * order basket.
+	 * @param authorization bearer token.
+	 * @param items
+	 * @param token idempotency token, same orders are returned when submitted again.
+	 * @return orders, 409 if products are not orderable now.
+	 */
+	@POST
+	@Path("/orders")
+	@Consumes(MediaType.APPLICATION_FORM_URLENCODED)
+	@Produces(JSON)
+	public Response createOrder(@HeaderParam(HttpHeaders.AUTHORIZATION) String authorization,
+			@FormParam("item") List<String> items, @FormParam("token") String token) {
+		User user = authenticate(authorization);
+		if (token == null || token.isEmpty())
+			throw new WebApplicationException(Status.BAD_REQUEST);
+		Basket basket = newBasket(user, items);
+		if (basket.getOrders().isEmpty())
+			throw new WebApplicationException(Status.BAD_REQUEST);
+		Date now = dateResolver.resolve();
+		for (Order order: basket) {
+			Set<String> orderable = new HashSet<>();
+			for (Product product: shopping.getOrderableProducts(order.getShop(), now))
+				orderable.add(product.getId());
+			for (OrderLine orderLine: order) {
+				if (!orderable.contains(orderLine.getProduct().getId())) {
+					logger.info("not orderable product: {}, user: {}", orderLine.getProduct().getId(), user.getId());
+					throw new WebApplicationException(Status.CONFLICT);
+				}
+			}
+		}
+		List<Order> orders = shopping.order(basket, token);
+		return Response.status(Status.CREATED).entity(orders(orders)).cacheControl(noStore()).build();
+	}
+
+	/**
+	 * today's orders of user.
+	 * @param authorization bearer token.
+	 * @return orders.
+	 */
+	@GET
+	@Path("/orders")
+	@Produces(JSON)
+	public Response readOrders(@HeaderParam(HttpHeaders.AUTHORIZATION) String authorization) {
+		User user = authenticate(authorization);
+		List<Order> orders = accountService.getOrderHistory(user, dateResolver.resolve());
+		return Response.ok(orders(orders)).cacheControl(noStore()).build();
+	}
+
+	/**
+	 * cancel order of user.
+	 * @param authorization bearer token.
+	 * @param orderId
+	 * @return 204, 404 if not user's order.
+	 */
+	@DELETE
+	@Path("/orders/{orderId}")
+	public Response cancelOrder(@HeaderParam(HttpHeaders.AUTHORIZATION) String authorization,
+			@PathParam("orderId") int orderId) {
+		User user = authenticate(authorization);
+		Order order = shopping.getOrder(orderId);
+		if (order == null || order.getUser() == null || !user.getId().equals(order.getUser().getId()))
+			throw new WebApplicationException(Status.NOT_FOUND);
+		shopping.cancel(order);
+		return Response.noContent().build();
+	}
+
+	/**
+	 * receive lunches of the group at once, by a summary order or order ids.
+	 * @param authorization bearer token of a user in the group.
+	 * @param summaryOrderId summary order, user orders of the same group, shop and day are received.
+	 * @param orderIds user orders, used if summary is omitted.
+	 * @param memo
+	 * @return receipts per user and skipped order ids.
+	 */
+	@POST
+	@Path("/receipts")
+	@Consumes(MediaType.APPLICATION_FORM_URLENCODED)
+	@Produces(JSON)
+	public Response createReceipts(@HeaderParam(HttpHeaders.AUTHORIZATION) String authorization,
+			@FormParam("summary") Integer summaryOrderId, @FormParam("order") List<Integer> orderIds,
+			@FormParam("memo") String memo) {
+		User user = authenticate(authorization);
+		if (user.getGroupId() == null)
+			throw new WebApplicationException(Status.FORBIDDEN);
+		ReceiveReport report;
+		if (summaryOrderId != null)
+			report = accountService.receiveSummary(user, summaryOrderId, memo);
+		else if (orderIds != null && !orderIds.isEmpty())
+			report = accountService.receiveOrders(user, orderIds, memo);
+		else
+			throw new WebApplicationException(Status.BAD_REQUEST);
+		Json json = new Json().beginObject().name("users").beginArray();
+		for (Map.Entry<Integer, List<Receipt>> e: report.getReceipts().entrySet()) {
+			json.beginObject()
+				.property("userId", e.getKey())
+				.property("amount", report.getAmount(e.getKey()))
+				.name("receipts").beginArray();
+			for (Receipt receipt: e.getValue()) {
+				json.beginObject()
+					.property("id", receipt.getId())
+					.property("orderId", receipt.getOrderId())
+					.property("amount", receipt.getAmount())
+					.endObject();
+			}
+			json.endArray().endObject();
+		}
+		json.endArray().name("skipped").beginArray();
+		for (Integer orderId: report.getSkipped())
+			json.value(orderId);
+		json.endArray().endObject();
+		return Response.status(Status.CREATED).entity(json.toString()).cacheControl(noStore()).build();
 	}
-	
+
+	/**
+	 * order changes of the group by long polling, instead of reloading group orders.
+	 * response is returned when an order is placed, canceled or summarized in the group, or timeout.
+	 * @param authorization bearer token of a user in the group.
+	 * @param groupId
+	 * @param since "sequence" of the last response, omit at first.
+	 * @return events and sequence to poll next, "reset" is true if events might be lost.
+	 * 			503 with "Retry-After" if too many subscribers are waiting.
+	 */
 	@GET
-	public String readBasket() {
-		return null;
+	@Path("/groups/{groupId}/events")
+	@Produces(JSON)
+	public Response readEvents(@HeaderParam(HttpHeaders.AUTHORIZATION) String authorization,
+			@PathParam("groupId") Integer groupId, @QueryParam("since") Long since) {
+		User user = authenticate(authorization);
+		if (!groupId.equals(user.getGroupId()))
+			throw new WebApplicationException(Status.FORBIDDEN);
+		Events events;
+		try {
+			events = eventBus.poll(groupId, since == null ? -1L : since);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new WebApplicationException(e, Status.SERVICE_UNAVAILABLE);
+		}
+		if (events.isRejected())
+			throw new WebApplicationException(Response.status(Status.SERVICE_UNAVAILABLE)
+					.header("Retry-After", EVENTS_RETRY_AFTER).cacheControl(noStore()).build());
+		Json json = new Json().beginObject()
+				.property("sequence", events.getSequence())
+				.property("reset", events.isReset())
+				.name("events").beginArray();
+		for (OrderEvent event: events.getEvents()) {
+			json.beginObject()
+				.property("type", event.getType().name())
+				.property("orderId", event.getOrderId())
+				.property("userId", event.getUserId())
+				.property("shopId", event.getShopId())
+				.property("amount", event.getAmount())
+				.property("datetime", event.getDatetime())
+				.property("sequence", event.getSequence())
+				.endObject();
+		}
+		json.endArray().endObject();
+		return Response.ok(json.toString()).cacheControl(noStore()).build();
+	}
+
+	private User authenticate(String authorization) {
+		User user = auth.verifyBearer(authorization);
+		if (user == null)
+			throw unauthorized();
+		return user;
+	}
+
+	private WebApplicationException unauthorized() {
+		return new WebApplicationException(Response.status(Status.UNAUTHORIZED)
+				.header(HttpHeaders.WWW_AUTHENTICATE, "Bearer").build());
+	}
+
+	/**
+	 * basket of items.
+	 * @param user null for anonymous.
+	 * @param items product id or "product id:quantity".
+	 * @return basket.
+	 */
+	private Basket newBasket(User user, List<String> items) {
+		Basket basket = shopping.getBasket(user);
+		basket.clear();
+		for (String item: items == null ? new ArrayList<String>() : items) {
+			String[] values = item.split(":");
+			try {
+				int quantity = values.length > 1 ? Integer.parseInt(values[1]) : 1;
+				if (quantity <= 0)
+					throw new WebApplicationException(Status.BAD_REQUEST);
+				basket.add(values[0], quantity);
+			} catch (NumberFormatException e) {
+				throw new WebApplicationException(e, Status.BAD_REQUEST);
+			} catch (IllegalArgumentException e) {
+				// product not found.
+				throw new WebApplicationException(e, Status.BAD_REQUEST);
+			}
+		}
+		return basket;
+	}
+
+	/**
+	 * menu is shared by all clients, cached with entity tag.
+	 * @param request
+	 * @param body
+	 * @return
+	 */
+	private Response cached(Request request, String body) {
+		CacheControl cacheControl = new CacheControl();
+		cacheControl.setMaxAge(MENU_MAX_AGE);
+		EntityTag tag = new EntityTag(DigestUtils.md5Hex(body));
+		ResponseBuilder builder = request.evaluatePreconditions(tag);
+		if (builder == null)
+			builder = Response.ok(body).tag(tag);
+		return builder.cacheControl(cacheControl).build();
+	}
+
+	private CacheControl noStore() {
+		CacheControl cacheControl = new CacheControl();
+		cacheControl.setNoStore(true);
+		return cacheControl;
+	}
+
+	private Response basket(Basket basket) {
+		Json json = new Json().beginObject()
+				.property("amount", basket.amount())
+				.name("orders").beginArray();
+		for (Order order: basket)
+			writeOrder(json, order);
+		json.endArray().endObject();
+		return Response.ok(json.toString()).cacheControl(noStore()).build();
+	}
+
+	private String orders(List<Order> orders) {
+		Json json = new Json().beginObject().name("orders").beginArray();
+		for (Order order: orders)
+			writeOrder(json, order);
+		return json.endArray().endObject().toString();
+	}
+
+	private void writeShop(Json json, Shop shop, Date date) {
+		json.beginObject()
+			.property("id", shop.getId())
+			.property("name", shop.getName())
+			.name("products").beginArray();
+		for (Product product: shopping.getOrderableProducts(shop, date)) {
+			json.beginObject()
+				.property("id", product.getId())
+				.property("name", product.getName())
+				.property("amount", product.getAmount())
+				.property("finish", product.getFinish())
+				.endObject();
+		}
+		json.endArray().endObject();
+	}
+
+	private void writeOrder(Json json, Order order) {
+		json.beginObject();
+		if (order.getId() > 0)
+			json.property("id", order.getId());
+		json.name("shop").beginObject()
+				.property("id", order.getShop().getId())
+				.property("name", order.getShop().getName())
+				.endObject()
+			.property("datetime", order.getDatetime())
+			.property("cancel", order.isCancel())
+			.property("amount", order.getAmount())
+			.name("lines").beginArray();
+		for (OrderLine orderLine: order.getOrderLines()) {
+			json.beginObject();
+			if (orderLine.getPrimaryKey() != null)
+				json.property("no", orderLine.getPrimaryKey().getNo());
+			json.property("productId", orderLine.getProduct().getId())
+				.property("name", orderLine.getProduct().getName())
+				.property("quantity", orderLine.getQuantity())
+				.property("amount", orderLine.getAmount())
+				.property("cancel", orderLine.isCancel())
+				.endObject();
+		}
+		json.endArray().endObject();
 	}
 }
@@ -0,0 +1,359 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package jp.dip.komusubi.lunch.wicket;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel.MapMode;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import jp.dip.komusubi.lunch.LunchException;
+
+import org.apache.wicket.pageStore.IDataStore;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * page data store in a memory mapped ring buffer (off heap).
+ * pages are written in order around the ring, the oldest pages are evicted to make room for new ones.
+ * bytes of a session are limited by quota, the oldest pages of the session are evicted over quota.
+ * evicted pages are spilled to spill store(e.g. disk data store) if specified, otherwise discarded.
+ * @author jun.ozeki
+ * @since 2013/07/28
+ */
+public class OffHeapDataStore implements IDataStore {
+
+    private static final Logger logger = LoggerFactory.getLogger(OffHeapDataStore.class);
+    private final int budget;
+    private final int sessionQuota;
+    private final IDataStore spillStore;
+    private final File file;
+    private final RandomAccessFile randomAccessFile;
+    private final MappedByteBuffer buffer;
+    // pages in written order, the oldest first (includes removed pages until overwritten).
+    private final ArrayDeque<Entry> ring = new ArrayDeque<>();
+    private final Map<String, SessionPages> sessions = new HashMap<>();
+    private int head;
+    private long used;
+    private long hits;
+    private long misses;
+    private long stores;
+    private long evictions;
+    private long spills;
+
+    /**
+     * create new instance.
+     * @param file memory mapped file, deleted on destroy.
+     * @param budget bytes of all pages.
+     * @param sessionQuota bytes of pages per session.
+     * @param spillStore store of evicted pages, null is discard.
+     */
+    public OffHeapDataStore(File file, int budget, int sessionQuota, IDataStore spillStore) {
+        if (budget <= 0 || sessionQuota <= 0)
+            throw new IllegalArgumentException("budget and quota must be positive: " + budget + ", " + sessionQuota);
+        this.file = file;
+        this.budget = budget;
+        this.sessionQuota = Math.min(sessionQuota, budget);
+        this.spillStore = spillStore;
+        try {
+            this.randomAccessFile = new RandomAccessFile(file, "rw");
+            randomAccessFile.setLength(budget);
+            this.buffer = randomAccessFile.getChannel().map(MapMode.READ_WRITE, 0, budget);
+        } catch (IOException e) {
+            throw new LunchException("failed to map page store: " + file, e);
+        }
+        logger.info("off heap page store: {}, budget: {}, session quota: {}", 
+                new Object[]{ file, budget, this.sessionQuota });
+    }
+
+    @Override
+    public byte[] getData(String sessionId, int id) {
+        synchronized (this) {
+            SessionPages pages = sessions.get(sessionId);
+            Entry entry = pages == null ? null : pages.get(id);
+            if (entry != null) {
+                hits++;
+                return read(entry);
+            }
+            misses++;
+        }
+        return spillStore == null ? null : spillStore.getData(sessionId, id);
+    }
+
+    @Override
+    public void removeData(String sessionId, int id) {
+        synchronized (this) {
+            SessionPages pages = sessions.get(sessionId);
+            Entry entry = pages == null ? null : pages.get(id);
+            if (entry != null)
+                kill(entry);
+        }
+        if (spillStore != null)
+            spillStore.removeData(sessionId, id);
+    }
+
+    @Override
+    public void removeData(String sessionId) {
+        synchronized (this) {
+            SessionPages pages = sessions.get(sessionId);
+            if (pages != null) {
+                for (Entry entry: new ArrayList<>(pages.entries.values()))
+                    kill(entry);
+            }
+        }
+        if (spillStore != null)
+            spillStore.removeData(sessionId);
+    }
+
+    @Override
+    public void storeData(String sessionId, int id, byte[] data) {
+        List<Spill> spilled = new ArrayList<>();
+        synchronized (this) {
+            stores++;
+            SessionPages pages = sessions.get(sessionId);
+            if (pages != null && pages.get(id) != null)
+                kill(pages.get(id));
+            if (data.length > sessionQuota) {
+                spilled.add(new Spill(sessionId, id, data));
+            } else {
+                // pages of the session are removed from sessions when the last one is killed.
+                pages = sessions.get(sessionId);
+                while (pages != null && pages.bytes + data.length > sessionQuota) {
+                    evict(pages.entries.values().iterator().next(), spilled);
+                    pages = sessions.get(sessionId);
+                }
+                if (head + data.length > budget) {
+                    evict(head, budget, spilled);
+                    head = 0;
+                }
+                evict(head, head + data.length, spilled);
+                pages = sessions.get(sessionId);
+                if (pages == null) {
+                    pages = new SessionPages();
+                    sessions.put(sessionId, pages);
+                }
+                write(new Entry(sessionId, id, head, data.length), data, pages);
+            }
+        }
+        if (spillStore != null) {
+            for (Spill spill: spilled)
+                spillStore.storeData(spill.sessionId, spill.id, spill.data);
+        }
+    }
+
+    @Override
+    public void destroy() {
+        synchronized (this) {
+            ring.clear();
+            sessions.clear();
+            used = 0;
+            try {
+                randomAccessFile.close();
+            } catch (IOException e) {
+                logger.warn("failed to close page store: {}", e.getMessage());
+            }
+            if (!file.delete())
+                logger.warn("failed to delete page store: {}", file);
+        }
+        if (spillStore != null)
+            spillStore.destroy();
+    }
+
+    @Override
+    public boolean isReplicated() {
+        return false;
+    }
+
+    /**
+     * spill to disk can be asynchronous.
+     */
+    @Override
+    public boolean canBeAsynchronous() {
+        return true;
+    }
+
+    private void write(Entry entry, byte[] data, SessionPages pages) {
+        ByteBuffer view = buffer.duplicate();
+        view.position(entry.offset);
+        view.put(data);
+        ring.addLast(entry);
+        pages.put(entry);
+        used += entry.length;
+        head += entry.length;
+    }
+
+    private byte[] read(Entry entry) {
+        byte[] data = new byte[entry.length];
+        ByteBuffer view = buffer.duplicate();
+        view.position(entry.offset);
+        view.get(data);
+        return data;
+    }
+
+    /**
+     * evict the oldest pages which are overlapped with the range.
+     * @param from
+     * @param to exclusive.
+     * @param spilled
+     */
+    private void evict(int from, int to, List<Spill> spilled) {
+        while (!ring.isEmpty()) {
+            Entry entry = ring.peekFirst();
+            if (entry.offset >= to || entry.offset + entry.length <= from)
+                return;
+            ring.pollFirst();
+            if (entry.alive)
+                evict(entry, spilled);
+        }
+    }
+
+    private void evict(Entry entry, List<Spill> spilled) {
+        evictions++;
+        if (spillStore != null) {
+            spills++;
+            spilled.add(new Spill(entry.sessionId, entry.pageId, read(entry)));
+        }
+        kill(entry);
+    }
+
+    /**
+     * remove from session, the region is reused when the ring comes around.
+     * @param entry
+     */
+    private void kill(Entry entry) {
+        entry.alive = false;
+        used -= entry.length;
+        SessionPages pages = sessions.get(entry.sessionId);
+        if (pages != null) {
+            pages.remove(entry);
+            if (pages.entries.isEmpty())
+                sessions.remove(entry.sessionId);
+        }
+    }
+
+    public int getBudget() {
+        return budget;
+    }
+
+    public int getSessionQuota() {
+        return sessionQuota;
+    }
+
+    public synchronized long getUsed() {
+        return used;
+    }
+
+    public synchronized int getSessions() {
+        return sessions.size();
+    }
+
+    public synchronized long getHits() {
+        return hits;
+    }
+
+    public synchronized long getMisses() {
+        return misses;
+    }
+
+    public synchronized long getStores() {
+        return stores;
+    }
+
+    public synchronized long getEvictions() {
+        return evictions;
+    }
+
+    public synchronized long getSpills() {
+        return spills;
+    }
+
+    @Override
+    public synchronized String toString() {
+        StringBuilder builder = new StringBuilder();
+        builder.append("OffHeapDataStore [budget=").append(budget).append(", sessionQuota=").append(sessionQuota)
+                .append(", used=").append(used).append(", sessions=").append(sessions.size())
+                .append(", stores=").append(stores).append(", hits=").append(hits)
+                .append(", misses=").append(misses).append(", evictions=").append(evictions)
+                .append(", spills=").append(spills).append("]");
+        return builder.toString();
+    }
+
+    /**
+     * a page in the ring.
+     */
+    private static class Entry {
+        private final String sessionId;
+        private final int pageId;
+        private final int offset;
+        private final int length;
+        private boolean alive = true;
+
+        private Entry(String sessionId, int pageId, int offset, int length) {
+            this.sessionId = sessionId;
+            this.pageId = pageId;
+            this.offset = offset;
+            this.length = length;
+        }
+    }
+
+    /**
+     * pages of a session, the oldest first.
+     */
+    private static class SessionPages {
+        private final Map<Integer, Entry> entries = new LinkedHashMap<>();
+        private int bytes;
+
+        private Entry get(int pageId) {
+            return entries.get(pageId);
+        }
+
+        private void put(Entry entry) {
+            entries.put(entry.pageId, entry);
+            bytes += entry.length;
+        }
+
+        private void remove(Entry entry) {
+            if (entries.remove(entry.pageId) != null)
+                bytes -= entry.length;
+        }
+    }
+
+    /**
+     * evicted page to be stored in spill store out of lock.
+     */
+    private static class Spill {
+        private final String sessionId;
+        private final int id;
+        private final byte[] data;
+
+        private Spill(String sessionId, int id, byte[] data) {
+            this.sessionId = sessionId;
+            this.id = id;
+            this.data = data;
+        }
+    }
+}
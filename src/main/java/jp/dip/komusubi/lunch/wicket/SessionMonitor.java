@@ -0,0 +1,133 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package jp.dip.komusubi.lunch.wicket;
+
+import java.io.Serializable;
+import java.util.Calendar;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.inject.Singleton;
+
+import jp.dip.komusubi.lunch.module.dao.monitor.Histogram;
+
+import org.apache.wicket.Session;
+import org.apache.wicket.core.util.lang.WicketObjects;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * serialized size of sessions, sampled at the end of requests.
+ * sizes are also kept per hour of day, so growth of sessions over a day can be seen.
+ * @author jun.ozeki
+ * @since 2013/07/28
+ */
+@Singleton
+public class SessionMonitor {
+
+    private static final Logger logger = LoggerFactory.getLogger(SessionMonitor.class);
+    /** default sampling, a request per 10 requests. */
+    public static final int DEFAULT_SAMPLING = 10;
+    private final int sampling;
+    private final AtomicLong requests = new AtomicLong();
+    private final Histogram bytes = new Histogram();
+    private final Histogram formKeys = new Histogram();
+    private final Histogram[] bytesByHour = new Histogram[24];
+    private volatile OffHeapDataStore dataStore;
+
+    /**
+     * create new instance.
+     */
+    public SessionMonitor() {
+        this(DEFAULT_SAMPLING);
+    }
+
+    /**
+     * create new instance.
+     * @param sampling measure a request per sampling requests, 0 is disabled.
+     */
+    public SessionMonitor(int sampling) {
+        this.sampling = sampling;
+        for (int i = 0; i < bytesByHour.length; i++)
+            bytesByHour[i] = new Histogram();
+    }
+
+    /**
+     * measure the session if sampled, serialization is not cheap.
+     * @param session
+     */
+    public void sample(Session session) {
+        if (sampling <= 0 || session == null || requests.incrementAndGet() % sampling != 0)
+            return;
+        long size = WicketObjects.sizeof(session);
+        if (size < 0) {
+            logger.warn("session is not serializable: {}", session.getId());
+            return;
+        }
+        int keys = session instanceof WicketSession ? ((WicketSession) session).getFormKeyCount() : 0;
+        record(size, keys);
+    }
+
+    /**
+     * record a session size.
+     * @param size serialized bytes.
+     * @param keys count of form keys.
+     */
+    void record(long size, int keys) {
+        bytes.record(size);
+        formKeys.record(keys);
+        bytesByHour[Calendar.getInstance().get(Calendar.HOUR_OF_DAY)].record(size);
+    }
+
+    public boolean isEnabled() {
+        return sampling > 0;
+    }
+
+    /**
+     * page store of sessions, null if not off heap.
+     * @return
+     */
+    public OffHeapDataStore getDataStore() {
+        return dataStore;
+    }
+
+    public void setDataStore(OffHeapDataStore dataStore) {
+        this.dataStore = dataStore;
+    }
+
+    public int getSampling() {
+        return sampling;
+    }
+
+    public Histogram getBytes() {
+        return bytes;
+    }
+
+    public Histogram getFormKeys() {
+        return formKeys;
+    }
+
+    /**
+     * session bytes of the hour of day.
+     * @param hour 0 to 23.
+     * @return
+     */
+    public Histogram getBytes(int hour) {
+        return bytesByHour[hour];
+    }
+}
@@ -16,8 +16,16 @@
  */
 package jp.dip.komusubi.lunch.wicket;
 
+import java.io.File;
+import java.io.IOException;
+
 import javax.servlet.http.HttpServletRequest;
 
+import jp.dip.komusubi.lunch.Configuration;
+import jp.dip.komusubi.lunch.LunchException;
+import jp.dip.komusubi.lunch.module.dao.IdentityMap;
+import jp.dip.komusubi.lunch.module.dao.IdentityMap.Statistics;
+import jp.dip.komusubi.lunch.module.dao.monitor.QueryMonitor;
 import jp.dip.komusubi.lunch.wicket.component.AuthorizedFrame;
 import jp.dip.komusubi.lunch.wicket.page.Attendance;
 import jp.dip.komusubi.lunch.wicket.page.Grouping;
@@ -25,6 +33,7 @@ import jp.dip.komusubi.lunch.wicket.page.Home;
 import jp.dip.komusubi.lunch.wicket.page.Login;
 import jp.dip.komusubi.lunch.wicket.page.Member;
 import jp.dip.komusubi.lunch.wicket.page.OrderComplete;
+import jp.dip.komusubi.lunch.wicket.page.OrderConfirmation;
 import jp.dip.komusubi.lunch.wicket.page.Receipt;
 import jp.dip.komusubi.lunch.wicket.page.Reminder;
 import jp.dip.komusubi.lunch.wicket.page.account.Registry;
@@ -33,16 +42,26 @@ import jp.dip.komusubi.lunch.wicket.page.error.ErrorPage;
 import jp.dip.komusubi.lunch.wicket.page.error.ExpiredError;
 import jp.dip.komusubi.lunch.wicket.page.error.InternalServerError;
 
+import org.apache.wicket.MetaDataKey;
 import org.apache.wicket.RuntimeConfigurationType;
+import org.apache.wicket.Session;
 import org.apache.wicket.authorization.strategies.page.SimplePageAuthorizationStrategy;
 import org.apache.wicket.authroles.authentication.AbstractAuthenticatedWebSession;
 import org.apache.wicket.authroles.authentication.AuthenticatedWebApplication;
+import org.apache.wicket.DefaultPageManagerProvider;
+import org.apache.wicket.core.request.handler.IPageClassRequestHandler;
 import org.apache.wicket.guice.GuiceComponentInjector;
 import org.apache.wicket.markup.html.WebPage;
 import org.apache.wicket.markup.html.pages.BrowserInfoPage;
+import org.apache.wicket.pageStore.IDataStore;
 import org.apache.wicket.protocol.http.WebApplication;
 import org.apache.wicket.protocol.http.servlet.XForwardedRequestWrapper;
+import org.apache.wicket.request.IRequestHandler;
+import org.apache.wicket.request.cycle.AbstractRequestCycleListener;
+import org.apache.wicket.request.cycle.RequestCycle;
 import org.apache.wicket.request.http.WebRequest;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 import com.google.inject.Injector;
 
@@ -54,6 +73,15 @@ import com.google.inject.Injector;
  */
 public class WicketApplication extends AuthenticatedWebApplication {
 
+    private static final Logger logger = LoggerFactory.getLogger(WicketApplication.class);
+    private static final MetaDataKey<String> REQUEST_NAME = new MetaDataKey<String>() {
+        private static final long serialVersionUID = 1L;
+    };
+    /** default bytes of off heap page store, 64MB. */
+    private static final String DEFAULT_PAGE_STORE_BUDGET = String.valueOf(64 * 1024 * 1024);
+    /** default bytes of pages per session in off heap page store, 2MB. */
+    private static final String DEFAULT_PAGE_STORE_QUOTA = String.valueOf(2 * 1024 * 1024);
+
 
     /**
      * 
@@ -77,10 +105,57 @@ public class WicketApplication extends AuthenticatedWebApplication {
     @Override
     public void init() {
         super.init();
+        Injector injector = (Injector) getServletContext().getAttribute(Injector.class.getName());
         // guice injector
-        getComponentInstantiationListeners().add(
-                new GuiceComponentInjector(this, (Injector) getServletContext().getAttribute(
-                        Injector.class.getName())));
+        getComponentInstantiationListeners().add(new GuiceComponentInjector(this, injector));
+        // identity map and sql monitor scope per request
+        final IdentityMap identityMap = injector.getInstance(IdentityMap.class);
+        final QueryMonitor queryMonitor = injector.getInstance(QueryMonitor.class);
+        final SessionMonitor sessionMonitor = injector.getInstance(SessionMonitor.class);
+        getRequestCycleListeners().add(new AbstractRequestCycleListener() {
+
+            @Override
+            public void onBeginRequest(RequestCycle cycle) {
+                identityMap.begin();
+                queryMonitor.begin();
+            }
+
+            @Override
+            public void onRequestHandlerResolved(RequestCycle cycle, IRequestHandler handler) {
+                // metrics per page, url includes page id or fragment.
+                if (cycle.getMetaData(REQUEST_NAME) != null)
+                    return;
+                if (handler instanceof IPageClassRequestHandler)
+                    cycle.setMetaData(REQUEST_NAME, ((IPageClassRequestHandler) handler).getPageClass().getSimpleName());
+                else
+                    cycle.setMetaData(REQUEST_NAME, handler.getClass().getSimpleName());
+            }
+
+            @Override
+            public void onEndRequest(RequestCycle cycle) {
+                Statistics statistics = identityMap.end();
+                if (statistics != null && logger.isDebugEnabled())
+                    logger.debug("identity map {}, url: {}", statistics, cycle.getRequest().getUrl());
+                String name = cycle.getMetaData(REQUEST_NAME);
+                queryMonitor.end("request:" + (name == null ? "unknown" : name));
+                // session is not created by monitor.
+                if (Session.exists())
+                    sessionMonitor.sample(Session.get());
+            }
+        });
+        // page store
+        setPageManagerProvider(new DefaultPageManagerProvider(this) {
+
+            @Override
+            protected IDataStore newDataStore() {
+                IDataStore diskDataStore = super.newDataStore();
+                if (!Boolean.valueOf(Configuration.getParameter("page.store.offheap", "true")))
+                    return diskDataStore;
+                OffHeapDataStore dataStore = newOffHeapDataStore(diskDataStore);
+                sessionMonitor.setDataStore(dataStore);
+                return dataStore;
+            }
+        });
         // security
         getSecuritySettings().setEnforceMounts(true);
         getSecuritySettings().setAuthorizationStrategy(
@@ -118,6 +193,26 @@ public class WicketApplication extends AuthenticatedWebApplication {
         }
     }
 
+    /**
+     * off heap page store in front of disk data store, evicted pages are spilled to disk.
+     * @param diskDataStore
+     * @return
+     */
+    private OffHeapDataStore newOffHeapDataStore(IDataStore diskDataStore) {
+        int budget = Integer.parseInt(Configuration.getParameter("page.store.budget", DEFAULT_PAGE_STORE_BUDGET));
+        int quota = Integer.parseInt(Configuration.getParameter("page.store.session.quota", DEFAULT_PAGE_STORE_QUOTA));
+        try {
+            File folder = getStoreSettings().getFileStoreFolder();
+            if (!folder.exists() && !folder.mkdirs())
+                throw new IOException("can not create folder: " + folder);
+            File file = File.createTempFile(getName() + "-pages", ".map", folder);
+            file.deleteOnExit();
+            return new OffHeapDataStore(file, budget, quota, diskDataStore);
+        } catch (IOException e) {
+            throw new LunchException(e);
+        }
+    }
+
     private void mount() {
         mountPage("/login", Login.class);
         mountPage("/postback", BrowserInfoPage.class);
@@ -127,7 +222,7 @@ public class WicketApplication extends AuthenticatedWebApplication {
         mountPage("/reminder", Reminder.class);
         mountPage("/receipt", Receipt.class);
         mountPage("/order", OrderComplete.class);
-//        mountPage("/ordering", OrderConfirmation.class);
+        mountPage("/ordering", OrderConfirmation.class);
         mountPage("/group", Grouping.class);
         mountPage("/group/attendance/${fragment}", Attendance.class);
         mountPage("/members", Member.class);
@@ -16,14 +16,12 @@
  */
 package jp.dip.komusubi.lunch.wicket;
 
-import java.util.HashSet;
-import java.util.Set;
-
 import jp.dip.komusubi.lunch.Configuration;
 import jp.dip.komusubi.lunch.model.User;
 import jp.dip.komusubi.lunch.module.Basket;
 import jp.dip.komusubi.lunch.service.AccountService;
 import jp.dip.komusubi.lunch.wicket.component.FormKey;
+import jp.dip.komusubi.lunch.wicket.component.FormKeyStore;
 import jp.dip.komusubi.lunch.wicket.component.SimpleBrowserInfoPage;
 
 import org.apache.wicket.Session;
@@ -44,7 +42,7 @@ public class WicketSession extends AuthenticatedWebSession {
     private static final long serialVersionUID = 2537313227105289690L;
     private static final Logger logger = LoggerFactory.getLogger(WicketSession.class);
     private User loggedInUser;
-    private Set<FormKey> formKeys = new HashSet<>();
+    private FormKeyStore formKeys = new FormKeyStore();
     private Basket basket;
 
     public static WicketSession get() {
@@ -62,8 +60,10 @@ public class WicketSession extends AuthenticatedWebSession {
     @Override
     public boolean authenticate(final String email, final String password) {
         AccountService accountService = Configuration.getInstance(AccountService.class);
-        if (accountService.signIn(email, password)) {
-            loggedInUser = accountService.find(email);
+        // authenticated user is reused, not queried again.
+        User user = accountService.authenticate(email, password);
+        if (user != null) {
+            loggedInUser = user;
             // when user has basket already, set user to basket.
             if (this.basket != null)
                 basket.setUser(loggedInUser);
@@ -102,6 +102,14 @@ public class WicketSession extends AuthenticatedWebSession {
     public boolean removeFormKey(FormKey key) {
         return formKeys.remove(key);
     }
+
+    /**
+     * count of form keys kept in this session.
+     * @return
+     */
+    public int getFormKeyCount() {
+        return formKeys.size();
+    }
     
     public Basket getBasket() {
         if (this.basket == null) {
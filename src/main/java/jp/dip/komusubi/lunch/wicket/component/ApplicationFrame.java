@@ -25,6 +25,7 @@ import jp.dip.komusubi.lunch.wicket.page.account.Setting;
 import org.apache.wicket.markup.html.WebMarkupContainer;
 import org.apache.wicket.markup.html.basic.Label;
 import org.apache.wicket.markup.html.link.Link;
+import org.apache.wicket.markup.html.link.StatelessLink;
 import org.apache.wicket.model.IModel;
 import org.apache.wicket.request.mapper.parameter.PageParameters;
 import org.slf4j.Logger;
@@ -42,10 +43,11 @@ public class ApplicationFrame extends ApplicationPage {
     /**
      * custom link component.
      * changeable <code>Link</code> component in ParentFrame class.
+     * stateless, so that pages of anonymous user can be stateless.
      * @author jun.ozeki
      * @param <K>
      */
-    private static abstract class CustomLink<K> extends Link<K> {
+    private static abstract class CustomLink<K> extends StatelessLink<K> {
 
         private static final long serialVersionUID = 1L;
 
@@ -63,7 +65,8 @@ public class ApplicationFrame extends ApplicationPage {
          * @param model
          */
         public CustomLink(String id, IModel<K> model) {
-            super(id, model);
+            super(id);
+            setDefaultModel(model);
 
         }
     }
@@ -18,6 +18,8 @@
  */
 package jp.dip.komusubi.lunch.wicket.component;
 
+import javax.servlet.http.HttpSession;
+
 import jp.dip.komusubi.lunch.Configuration;
 import jp.dip.komusubi.lunch.Configuration.RuntimeMode;
 import jp.dip.komusubi.lunch.wicket.WicketSession;
@@ -86,14 +88,18 @@ public class ApplicationPage extends WebPage {
     @Override
     protected void onInitialize() {
         super.onInitialize();
-        WebClientInfo clientInfo = WicketSession.get().getClientInfo();
         ServletWebRequest request = (ServletWebRequest) getRequestCycle().getRequest();
 //		MDC.put("ipaddr", clientInfo.getProperties().getRemoteAddress());
         MDC.put("ipaddr", request.getContainerRequest().getRemoteAddr());
-        MDC.put("sessionId", request.getContainerRequest().getSession().getId());
+        // do NOT create http session for stateless page.
+        HttpSession httpSession = request.getContainerRequest().getSession(false);
+        MDC.put("sessionId", httpSession == null ? "-" : httpSession.getId());
         logger.info("[start] lunchat {}", request.getClientUrl().toString(StringMode.FULL));
-        if (logger.isDebugEnabled()) {
-            logger.debug("user agent is {} ", clientInfo.getUserAgent());
+        // browser info page binds session, so client info is gathered in bound session only.
+        if (!WicketSession.get().isTemporary()) {
+            WebClientInfo clientInfo = WicketSession.get().getClientInfo();
+            if (logger.isDebugEnabled())
+                logger.debug("user agent is {} ", clientInfo.getUserAgent());
         }
     }
     
@@ -18,6 +18,8 @@
  */
 package jp.dip.komusubi.lunch.wicket.component;
 
+import org.apache.wicket.request.mapper.parameter.PageParameters;
+
 /**
  * @author jun.ozeki
  */
@@ -25,4 +27,18 @@ public class AuthorizedPage extends ApplicationPage {
 
     private static final long serialVersionUID = 1L;
 
+    /**
+     * create new instance.
+     */
+    public AuthorizedPage() {
+
+    }
+
+    /**
+     * create new instance.
+     * @param parameters
+     */
+    public AuthorizedPage(PageParameters parameters) {
+        super(parameters);
+    }
 }
@@ -20,6 +20,7 @@ package jp.dip.komusubi.lunch.wicket.component;
 
 import java.io.Serializable;
 import java.util.Date;
+import java.util.UUID;
 
 /**
  * 
@@ -31,11 +32,33 @@ public class FormKey implements Serializable {
 	private int pageId;
 	private String formId;
 	private Date date;
+	private String token;
 
 	public FormKey(int pageId, String formId, Date date) {
 		this.pageId = pageId;
 		this.formId = formId;
 		this.date = date;
+		this.token = UUID.randomUUID().toString();
+	}
+
+	public int getPageId() {
+		return pageId;
+	}
+
+	public String getFormId() {
+		return formId;
+	}
+
+	public Date getDate() {
+		return date;
+	}
+
+	/**
+	 * idempotency token of the form submission, not a part of equality.
+	 * @return
+	 */
+	public String getToken() {
+		return token;
 	}
 
 	@Override
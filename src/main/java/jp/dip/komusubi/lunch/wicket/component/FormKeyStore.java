@@ -0,0 +1,171 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package jp.dip.komusubi.lunch.wicket.component;
+
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * double submit keys of a session.
+ * a key per page id, least recently used keys over max size and keys older than max age
+ * are discarded, so that the session does not grow with rendered pages.
+ * serialized form is a count and primitive fields of keys (no class descriptors per key).
+ * @author jun.ozeki
+ * @since 2013/07/28
+ */
+public class FormKeyStore implements Serializable {
+
+    private static final long serialVersionUID = 3207766392216102817L;
+    /** default max count of keys, same order as pages kept in a session. */
+    public static final int DEFAULT_MAX_SIZE = 16;
+    /** default max age of a key (millisecond). */
+    public static final long DEFAULT_MAX_AGE = 30 * 60 * 1000L;
+    private final int maxSize;
+    private final long maxAge;
+    private transient Map<Integer, Entry> entries;
+
+    /**
+     * create new instance.
+     */
+    public FormKeyStore() {
+        this(DEFAULT_MAX_SIZE, DEFAULT_MAX_AGE);
+    }
+
+    /**
+     * create new instance.
+     * @param maxSize max count of keys.
+     * @param maxAge max age of a key (millisecond).
+     */
+    public FormKeyStore(int maxSize, long maxAge) {
+        if (maxSize <= 0)
+            throw new IllegalArgumentException("maxSize must be positive: " + maxSize);
+        this.maxSize = maxSize;
+        this.maxAge = maxAge;
+        this.entries = newEntries();
+    }
+
+    /**
+     * add a key, replace a key of the same page.
+     * @param key
+     */
+    public synchronized void add(FormKey key) {
+        long now = System.currentTimeMillis();
+        expire(now);
+        Entry entry = entries.get(key.getPageId());
+        if (entry != null && entry.matches(key))
+            return;
+        entries.put(key.getPageId(), new Entry(key.getFormId(), 
+                key.getDate() == null ? 0L : key.getDate().getTime(), now));
+    }
+
+    /**
+     * remove a key.
+     * @param key
+     * @return true if the key was stored and not expired.
+     */
+    public synchronized boolean remove(FormKey key) {
+        expire(System.currentTimeMillis());
+        Entry entry = entries.get(key.getPageId());
+        if (entry == null || !entry.matches(key))
+            return false;
+        entries.remove(key.getPageId());
+        return true;
+    }
+
+    /**
+     * count of keys (including expired and not discarded yet).
+     * @return
+     */
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    private void expire(long now) {
+        if (maxAge <= 0)
+            return;
+        // entries are ordered by access, but added time is updated only by #add.
+        for (Iterator<Entry> it = entries.values().iterator(); it.hasNext(); ) {
+            if (now - it.next().added > maxAge)
+                it.remove();
+        }
+    }
+
+    private Map<Integer, Entry> newEntries() {
+        return new LinkedHashMap<Integer, Entry>(maxSize + 1, 0.75f, true) {
+
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Integer, Entry> eldest) {
+                return size() > maxSize;
+            }
+        };
+    }
+
+    private synchronized void writeObject(ObjectOutputStream out) throws IOException {
+        out.defaultWriteObject();
+        expire(System.currentTimeMillis());
+        out.writeInt(entries.size());
+        for (Map.Entry<Integer, Entry> e: entries.entrySet()) {
+            out.writeInt(e.getKey());
+            out.writeBoolean(e.getValue().formId != null);
+            if (e.getValue().formId != null)
+                out.writeUTF(e.getValue().formId);
+            out.writeLong(e.getValue().date);
+            out.writeLong(e.getValue().added);
+        }
+    }
+
+    private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+        in.defaultReadObject();
+        entries = newEntries();
+        int size = in.readInt();
+        for (int i = 0; i < size; i++) {
+            int pageId = in.readInt();
+            String formId = in.readBoolean() ? in.readUTF() : null;
+            entries.put(pageId, new Entry(formId, in.readLong(), in.readLong()));
+        }
+    }
+
+    /**
+     * stored key of a page.
+     */
+    private static class Entry {
+        private final String formId;
+        private final long date;
+        private final long added;
+
+        private Entry(String formId, long date, long added) {
+            this.formId = formId;
+            this.date = date;
+            this.added = added;
+        }
+
+        private boolean matches(FormKey key) {
+            long keyDate = key.getDate() == null ? 0L : key.getDate().getTime();
+            return date == keyDate 
+                    && (formId == null ? key.getFormId() == null : formId.equals(key.getFormId()));
+        }
+    }
+}
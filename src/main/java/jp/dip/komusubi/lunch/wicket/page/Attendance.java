@@ -83,7 +83,13 @@ public class Attendance extends AuthorizedFrame {
                 if (WicketSession.get().removeFormKey(key)) {
                     // FIXME Home.class can't get "http://localhost:8080/" 
 //                    account.approve(getAdmitter(), getApplicant(), getMessageFromAdmitter(), getPageUrl(Home.class));
-                    account.approve(getAdmitter(), getApplicant(), getMessageFromAdmitter(), null);
+                    try {
+                        account.approve(getAdmitter(), getApplicant(), getMessageFromAdmitter(), null);
+                    } catch (IllegalStateException e) {
+                        logger.warn("approve failed: {}", e.getMessage());
+                        error(getString("approve.error"));
+                        return;
+                    }
                     logger.info("{} was admitted to become a member of {}", getApplicant().getNickname(), 
                             getAdmitter().getGroup().getCode());
                 } else {
@@ -94,7 +100,10 @@ public class Attendance extends AuthorizedFrame {
             @Override
             protected void onCancel() {
                 if (WicketSession.get().removeFormKey(key)) {
-                    account.decline(getAdmitter(), getApplicant(), getMessageFromAdmitter());
+                    if (!account.decline(getAdmitter(), getApplicant(), getMessageFromAdmitter())) {
+                        error(getString("decline.error"));
+                        return;
+                    }
                     logger.info("{} denied {} join a member of {}", 
                             new Object[]{ getAdmitter().getNickname(), 
                                             getApplicant().getNickname(), 
@@ -42,6 +42,7 @@ import jp.dip.komusubi.lunch.wicket.panel.GroupRegistry;
 import jp.dip.komusubi.lunch.wicket.panel.OrderLines;
 import jp.dip.komusubi.lunch.wicket.panel.UserImpression;
 
+import org.apache.wicket.Page;
 import org.apache.wicket.markup.html.WebMarkupContainer;
 import org.apache.wicket.model.IModel;
 import org.apache.wicket.model.Model;
@@ -54,6 +55,7 @@ import com.google.inject.name.Named;
 
 /**
  * home page.
+ * stateless for anonymous user, neither session nor page store is used until login.
  * @author jun.ozeki
  * @since 2011/12/19
  */
@@ -87,8 +89,9 @@ public class Home extends ApplicationFrame {
         add(newGroupRegistry("group.registry"));
         add(newOrderedComponents("ordered.components"));
         add(new AuthenticatedLabel("greeting", getLocalizer().getString("greeting", this, new Model<Home>(this))));
-        // for duble submit key
-        this.key = new FormKey(getPageId(), getId(), new Date());
+        // for duble submit key, anonymous user chooses product by bookmarkable link.
+        if (WicketSession.get().isSignedIn())
+            this.key = new FormKey(getPageId(), getId(), new Date());
     }
 
     /**
@@ -97,7 +100,8 @@ public class Home extends ApplicationFrame {
     @Override
     protected void onConfigure() {
         super.onConfigure();
-        WicketSession.get().addFormKey(key);
+        if (key != null)
+            WicketSession.get().addFormKey(key);
     }
 
     /**
@@ -160,7 +164,7 @@ public class Home extends ApplicationFrame {
             @Override
             protected void onChoiceProduct(Product product) {
                 // validate double submit
-                if (!WicketSession.get().removeFormKey(key)) {
+                if (key == null || !WicketSession.get().removeFormKey(key)) {
                     logger.info("double submit ChoiceLunch#onChoiceProduct");
                     return;
                 }
@@ -178,6 +182,14 @@ public class Home extends ApplicationFrame {
                 }
             }
 
+            /**
+             * order confirmation by product id for anonymous user.
+             */
+            @Override
+            protected Class<? extends Page> getChoicePageClass() {
+                return OrderConfirmation.class;
+            }
+
         };
     }
 
@@ -30,10 +30,14 @@ import jp.dip.komusubi.lunch.wicket.WicketApplication;
 import jp.dip.komusubi.lunch.wicket.WicketSession;
 import jp.dip.komusubi.lunch.wicket.component.AuthorizedPage;
 import jp.dip.komusubi.lunch.wicket.component.FormKey;
+import jp.dip.komusubi.lunch.wicket.panel.ChoiceLunch;
 import jp.dip.komusubi.lunch.wicket.panel.Dialog;
 
+import org.apache.wicket.RestartResponseAtInterceptPageException;
+import org.apache.wicket.RestartResponseException;
 import org.apache.wicket.markup.html.basic.Label;
 import org.apache.wicket.model.Model;
+import org.apache.wicket.request.mapper.parameter.PageParameters;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -58,6 +62,23 @@ public class OrderConfirmation extends AuthorizedPage {
 //        add(getDialog("confirm", model));
     }
 
+    /**
+     * create new instance by product id, bookmarkable link from stateless home page.
+     * anonymous user is sent to login page and comes back here after login.
+     * @param parameters "product" is product id, sent to home page if it is not orderable now.
+     */
+    public OrderConfirmation(PageParameters parameters) {
+        super(parameters);
+        Shopping shopping = Configuration.getInstance(Shopping.class);
+        String productId = parameters.get(ChoiceLunch.PRODUCT_PARAMETER).toOptionalString();
+        Product product = productId == null ? null : shopping.getOrderableProduct(productId);
+        if (product == null)
+            throw new RestartResponseException(WicketApplication.get().getHomePage());
+        if (!WicketSession.get().isSignedIn())
+            throw new RestartResponseAtInterceptPageException(WicketApplication.get().getSignInPageClass());
+        this.model = Model.of(product);
+    }
+
     /**
      * initialize components.
      */
@@ -94,10 +115,15 @@ public class OrderConfirmation extends AuthorizedPage {
                     if (WicketSession.get().removeFormKey(key)) {
                         // FIXME shopping with a basket !!
                         Shopping shopping = Configuration.getInstance(Shopping.class);
+                        // dialog might be left open over last order.
+                        if (shopping.getOrderableProduct(model.getObject().getId()) == null) {
+                            error(getString("order.closed", model));
+                            return;
+                        }
                         Basket basket = shopping.getBasket(WicketSession.get().getSignedInUser());
                         basket.add(model.getObject());
-                        shopping.order(basket);
-                        List<Order> orders = basket.getOrders();
+                        // orders are persisted once per form key even if submitted again.
+                        List<Order> orders = shopping.order(basket, key.getToken());
                         Order order = orders.get(0);
                         setResponsePage(new OrderComplete(Model.of(order)));
                     } else {
@@ -30,13 +30,17 @@ import jp.dip.komusubi.lunch.wicket.WicketSession;
 import org.apache.commons.lang3.time.DateFormatUtils;
 import org.apache.wicket.AttributeModifier;
 import org.apache.wicket.Component;
+import org.apache.wicket.Page;
 import org.apache.wicket.markup.html.basic.Label;
-import org.apache.wicket.markup.html.form.Form;
+import org.apache.wicket.markup.html.form.StatelessForm;
+import org.apache.wicket.markup.html.link.BookmarkablePageLink;
 import org.apache.wicket.markup.html.link.Link;
+import org.apache.wicket.markup.html.link.StatelessLink;
 import org.apache.wicket.markup.html.list.ListItem;
 import org.apache.wicket.markup.html.list.ListView;
 import org.apache.wicket.markup.html.panel.Panel;
 import org.apache.wicket.model.LoadableDetachableModel;
+import org.apache.wicket.request.mapper.parameter.PageParameters;
 import org.komusubi.common.util.Resolver;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -47,12 +51,14 @@ import com.google.inject.name.Named;
 
 /**
  * choice shop panel.
- * 
+ * stateless for anonymous user if choice page class is specified.
  * @author jun.ozeki
  * @since 2011/11/16
  */
 public class ChoiceLunch extends Panel {
 
+	/** page parameter name of chosen product id. */
+	public static final String PRODUCT_PARAMETER = "product";
 	private static final long serialVersionUID = 1L;
 	private static final Logger logger = LoggerFactory.getLogger(ChoiceLunch.class);
 
@@ -80,10 +86,10 @@ public class ChoiceLunch extends Panel {
 	
 	/**
 	 * choice from.
-	 * 
+	 * links only, nothing submitted, so it is stateless form.
 	 * @author jun.ozeki
 	 */
-	public class Choice extends Form<Void> {
+	public class Choice extends StatelessForm<Void> {
 
 		private static final long serialVersionUID = 4242361361989135612L;
 		@Inject private Shopping shopping;
@@ -92,13 +98,6 @@ public class ChoiceLunch extends Panel {
 		private LoadableDetachableModel<List<Object>> ldmodel = new LoadableDetachableModel<List<Object>>() {
 			private static final long serialVersionUID = 3385439610274972123L;
 			private static final int SEEK_PERIOD = 14;
-			private static final long MILLISECONDS_DAY = 60 * 60 * 24 * 1000;
-			
-			private Calendar getTomorrow(Calendar today) {
-				Calendar tomorrow = (Calendar) today.clone();
-				tomorrow.add(Calendar.DATE, 1);
-				return tomorrow;
-			}
 			
 			@Override
 			public List<Object> load() {
@@ -137,15 +136,10 @@ public class ChoiceLunch extends Panel {
 											.setShop(shop));
 						}
 					} else {
-						for (Calendar orderCalendar = getTomorrow(current);
-								(orderCalendar.getTimeInMillis() - current.getTimeInMillis()) / MILLISECONDS_DAY <= SEEK_PERIOD;
-								orderCalendar.add(Calendar.DATE, 1)) {
-						    for (Product product: shopping.getDeadlineProducts(shop, orderCalendar.getTime())) {
-								itemValues.add(product);
-								found = true;
-							}
-							if (found)
-								break;
+						// next orderable day from menu calendar.
+						for (Product product: shopping.getNextDeadlineProducts(shop, current.getTime(), SEEK_PERIOD)) {
+							itemValues.add(product);
+							found = true;
 						}
 						if (!found) { 
 							String msgPattern = getLocalizer().getString("not.found.product.in.period", ChoiceLunch.this);
@@ -205,7 +199,7 @@ public class ChoiceLunch extends Panel {
 		private Component getLinkOfItem(String id, final Object itemValue) {
 			Link<String> link;
 			if (itemValue instanceof Shop) {
-				link = new Link<String>(id) {
+				link = new StatelessLink<String>(id) {
 					private static final long serialVersionUID = 1L;
 
 					@Override
@@ -222,14 +216,21 @@ public class ChoiceLunch extends Panel {
 				link.add(new Label("amount.value"));
 			} else if (itemValue instanceof Product) {
 				final Product product = (Product) itemValue;
-				link = new Link<String>(id) {
-					private static final long serialVersionUID = 1L;
+				Class<? extends Page> pageClass = WicketSession.get().isSignedIn() ? null : getChoicePageClass();
+				if (pageClass != null) {
+					// anonymous user, do NOT keep this page in session.
+					link = new BookmarkablePageLink<String>(id, pageClass,
+									new PageParameters().add(PRODUCT_PARAMETER, product.getId()));
+				} else {
+					link = new Link<String>(id) {
+						private static final long serialVersionUID = 1L;
 
-					@Override
-					public void onClick() {
-						onChoiceProduct(product);
-					}
-				};
+						@Override
+						public void onClick() {
+							onChoiceProduct(product);
+						}
+					};
+				}
 				link.add(new Label("link.name", product.getName()));
 				String amount =  String.valueOf(product.getAmount()) 
 						+ getLocalizer().getString("amount.unit", ChoiceLunch.this);
@@ -295,5 +296,14 @@ public class ChoiceLunch extends Panel {
 	protected void onChoiceProduct(Product product) {
 	    logger.info("choice product is {}", product);
 	}
+
+	/**
+	 * bookmarkable page to choose a product by anonymous user.
+	 * product id is passed by "product" parameter.
+	 * @return page class, null is to call #onChoiceProduct(Product) by link.
+	 */
+	protected Class<? extends Page> getChoicePageClass() {
+		return null;
+	}
 	
 }
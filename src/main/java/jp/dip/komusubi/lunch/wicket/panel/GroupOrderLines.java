@@ -51,7 +51,7 @@ public class GroupOrderLines extends Panel {
     
     public GroupOrderLines(String id, IModel<String> model) {
         super(id, model);
-        for (Order order: account.getGroupOrderHistory(model.getObject()))
+        for (Order order: account.getGroupOrderStatus(model.getObject()))
             add(new OrderListFragment("order.by.shop", Model.of(order)));
         // TODO remove link after configured page. 
         add(getOrderLink("order"));
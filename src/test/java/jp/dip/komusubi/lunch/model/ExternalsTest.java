@@ -0,0 +1,80 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.    
+ */
+package jp.dip.komusubi.lunch.model;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.sql.Timestamp;
+
+import org.junit.Test;
+
+/**
+ * externalizable models round trip test.
+ * @author jun.ozeki
+ */
+public class ExternalsTest {
+
+    /**
+     * timestamp keeps its subtype and nanos.
+     */
+    @Test
+    public void dateSubtype() throws Exception {
+        Timestamp timestamp = new Timestamp(1375000000000L);
+        timestamp.setNanos(123456789);
+        Group group = roundTrip(new Group(10).setLastOrder(timestamp));
+        assertEquals(Timestamp.class, group.getLastOrder().getClass());
+        assertEquals(timestamp, group.getLastOrder());
+
+        assertNull(roundTrip(new Group(10)).getLastOrder());
+    }
+
+    /**
+     * contracts are kept, and refer back to the same group and shop.
+     */
+    @Test
+    public void contracts() throws Exception {
+        Shop shop = new Shop("tamagoya");
+        Group group = new Group(10).addContract(shop);
+        shop.setContracts(group.getContracts());
+
+        Group result = roundTrip(group);
+        assertEquals(1, result.getContracts().size());
+        Contract contract = result.getContracts().get(0);
+        assertSame(result, contract.getGroup());
+        assertEquals("tamagoya", contract.getShop().getId());
+        assertSame(contract, contract.getShop().getContracts().get(0));
+    }
+
+    @SuppressWarnings("unchecked")
+    private <T> T roundTrip(T value) throws Exception {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (ObjectOutputStream out = new ObjectOutputStream(bytes)) {
+            out.writeObject(value);
+        }
+        try (ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(bytes.toByteArray()))) {
+            return (T) in.readObject();
+        }
+    }
+}
@@ -0,0 +1,87 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package jp.dip.komusubi.lunch.module.dao;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import jp.dip.komusubi.lunch.model.Shop;
+import jp.dip.komusubi.lunch.module.dao.IdentityMap.Statistics;
+
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * identity map unit test.
+ * @author jun.ozeki
+ */
+public class IdentityMapTest {
+
+    private IdentityMap target;
+
+    @Before
+    public void before() {
+        target = new IdentityMap();
+    }
+
+    /**
+     * out of scope, nothing to keep.
+     * @throws Exception
+     */
+    @Test
+    public void outOfScope() throws Exception {
+        target.put(Shop.class, "tamagoya", new Shop("tamagoya"));
+        assertNull(target.get(Shop.class, "tamagoya"));
+        assertEquals(0, target.getMisses());
+    }
+
+    /**
+     * same instance in scope and count hit and miss.
+     * @throws Exception
+     */
+    @Test
+    public void inScope() throws Exception {
+        Shop shop = new Shop("tamagoya");
+        target.begin();
+        assertNull(target.get(Shop.class, "tamagoya"));
+        target.put(Shop.class, "tamagoya", shop);
+        assertSame(shop, target.get(Shop.class, "tamagoya"));
+        Statistics statistics = target.end();
+        assertEquals(1, statistics.getHits());
+        assertEquals(1, statistics.getMisses());
+        assertNull(target.get(Shop.class, "tamagoya"));
+    }
+
+    /**
+     * nested scope shares outer scope until outermost end.
+     * @throws Exception
+     */
+    @Test
+    public void nestedScope() throws Exception {
+        Shop shop = new Shop("tamagoya");
+        target.begin();
+        target.begin();
+        target.put(Shop.class, "tamagoya", shop);
+        target.end();
+        assertSame(shop, target.get(Shop.class, "tamagoya"));
+        target.clear();
+        assertNull(target.get(Shop.class, "tamagoya"));
+        target.end();
+    }
+}
@@ -18,6 +18,7 @@
  */
 package jp.dip.komusubi.lunch.module.dao;
 
+import java.util.Collection;
 import java.util.Date;
 import java.util.List;
 
@@ -81,4 +82,29 @@ public class MockOrderDao implements OrderDao {
         return null;
     }
 
+    @Override
+    public List<Order> summarizeByGroupIdAndDate(Integer groupId, Date date) {
+        return null;
+    }
+
+    @Override
+    public List<Integer> persistAll(Collection<Order> instances) {
+        return null;
+    }
+
+    @Override
+    public List<Order> findByUserAndToken(Integer userId, String token) {
+        return null;
+    }
+
+    @Override
+    public List<Order> findByIds(Collection<Integer> ids) {
+        return null;
+    }
+
+    @Override
+    public List<Integer> lockByIds(Collection<Integer> ids) {
+        return null;
+    }
+
 }
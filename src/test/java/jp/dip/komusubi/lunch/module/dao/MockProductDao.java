@@ -19,6 +19,7 @@
 package jp.dip.komusubi.lunch.module.dao;
 
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.Date;
 import java.util.List;
@@ -27,7 +28,7 @@ import jp.dip.komusubi.lunch.model.Product;
 
 import org.apache.commons.lang3.time.DateUtils;
 
-public class MockProductDao implements ProductDao {
+public class MockProductDao implements ProductBatchDao {
 
 	@Override
 	public Product find(String pk) {
@@ -89,6 +90,24 @@ public class MockProductDao implements ProductDao {
 		return null;
 	}
 
+	@Override
+	public List<Product> findByFinishPeriod(Date from, Date to) {
+		List<Product> products = new ArrayList<>();
+		for (Product p: getProductsAll()) {
+			if (!p.getFinish().before(from) && p.getFinish().before(to))
+				products.add(p);
+		}
+		return products;
+	}
+
+	@Override
+	public List<String> persistAll(Collection<Product> instances) {
+		List<String> ids = new ArrayList<>();
+		for (Product p: instances)
+			ids.add(persist(p));
+		return ids;
+	}
+
 	protected List<Product> getProductsAll() {
 		return Collections.emptyList();
 	}
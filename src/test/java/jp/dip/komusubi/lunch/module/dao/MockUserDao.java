@@ -62,6 +62,19 @@ public class MockUserDao implements UserDao {
 		return null;
 	}
 
+    @Override
+    public void updateLogin(Health instance) {
+    }
+
+    @Override
+    public void recordLogin(Health instance) {
+    }
+
+    @Override
+    public User findByEmailWithHealth(String email) {
+        return null;
+    }
+
     @Override
     public User findByNickname(String nickname) {
         return null;
@@ -0,0 +1,115 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package jp.dip.komusubi.lunch.module.dao.cache;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.util.Arrays;
+import java.util.Date;
+
+import jp.dip.komusubi.lunch.model.Shop;
+import jp.dip.komusubi.lunch.module.dao.jdbc.JdbcShopDao;
+
+import org.apache.commons.lang3.time.DateUtils;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+/**
+ * cached shop dao unit test.
+ * @author jun.ozeki
+ */
+public class CachedShopDaoTest {
+
+    private JdbcShopDao delegate;
+    private CachedShopDao target;
+
+    @Before
+    public void before() {
+        delegate = mock(JdbcShopDao.class);
+        target = new CachedShopDao(delegate, 10, 60000);
+    }
+
+    /**
+     * cached shop is loaded once, every caller gets its own copy.
+     */
+    @Test
+    public void findCopied() {
+        Shop shop = new Shop("tamagoya").setName("tamagoya").setLastOrder(new Date());
+        when(delegate.find("tamagoya")).thenReturn(shop);
+        Shop first = target.find("tamagoya");
+        assertNotSame(shop, first);
+        first.setName("changed");
+        assertEquals("tamagoya", target.find("tamagoya").getName());
+        verify(delegate, times(1)).find("tamagoya");
+    }
+
+    /**
+     * shop list of a caller can be modified without effect on others.
+     */
+    @Test
+    public void findAllCopied() {
+        when(delegate.findAll()).thenReturn(Arrays.asList(new Shop("tamagoya").setLastOrder(new Date())));
+        target.findAll().add(0, new Shop(""));
+        assertEquals(1, target.findAll().size());
+        verify(delegate, times(1)).findAll();
+    }
+
+    /**
+     * evicted on write, and again after commit.
+     */
+    @Test
+    public void evictAfterCommit() {
+        when(delegate.find("tamagoya")).thenReturn(new Shop("tamagoya").setLastOrder(new Date()));
+        TransactionSynchronizationManager.initSynchronization();
+        try {
+            target.update(new Shop("tamagoya"));
+            // a reader before commit caches the old record.
+            target.find("tamagoya");
+            target.find("tamagoya");
+            verify(delegate, times(1)).find("tamagoya");
+            for (TransactionSynchronization synchronization: TransactionSynchronizationManager.getSynchronizations())
+                synchronization.afterCommit();
+        } finally {
+            TransactionSynchronizationManager.clearSynchronization();
+        }
+        target.find("tamagoya");
+        verify(delegate, times(2)).find("tamagoya");
+    }
+
+    /**
+     * shop loaded before today is reloaded for today's last order time.
+     */
+    @Test
+    public void findReloadYesterday() {
+        Shop yesterday = new Shop("tamagoya").setLastOrder(DateUtils.addDays(new Date(), -1));
+        Shop today = new Shop("tamagoya").setLastOrder(new Date());
+        when(delegate.find("tamagoya")).thenReturn(yesterday, today);
+        assertEquals(yesterday.getLastOrder(), target.find("tamagoya").getLastOrder());
+        assertEquals(today.getLastOrder(), target.find("tamagoya").getLastOrder());
+        assertEquals(today.getLastOrder(), target.find("tamagoya").getLastOrder());
+        verify(delegate, times(2)).find("tamagoya");
+    }
+}
@@ -0,0 +1,73 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package jp.dip.komusubi.lunch.module.dao.cache;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import org.junit.Test;
+
+/**
+ * reference cache unit test.
+ * @author jun.ozeki
+ */
+public class ReferenceCacheTest {
+
+    /**
+     * least recently used entry is removed over max size.
+     * @throws Exception
+     */
+    @Test
+    public void removeEldest() throws Exception {
+        ReferenceCache<String, String> target = new ReferenceCache<>("test", 2, 60000L);
+        target.put("a", "A");
+        target.put("b", "B");
+        assertEquals("A", target.get("a"));
+        target.put("c", "C");
+        assertNull(target.get("b"));
+        assertEquals("A", target.get("a"));
+        assertEquals("C", target.get("c"));
+        assertEquals(2, target.size());
+        assertEquals(3, target.getHits());
+        assertEquals(1, target.getMisses());
+    }
+
+    /**
+     * expired entry is not returned.
+     * @throws Exception
+     */
+    @Test
+    public void expire() throws Exception {
+        ReferenceCache<String, String> target = new ReferenceCache<>("test", 2, -1L);
+        target.put("a", "A");
+        assertNull(target.get("a"));
+        assertEquals(0, target.size());
+    }
+
+    /**
+     * null value is not cached.
+     * @throws Exception
+     */
+    @Test
+    public void nullValue() throws Exception {
+        ReferenceCache<String, String> target = new ReferenceCache<>("test", 2, 60000L);
+        assertNull(target.put("a", null));
+        assertEquals(0, target.size());
+    }
+}
@@ -0,0 +1,207 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package jp.dip.komusubi.lunch.module.dao.cache;
+
+import static org.junit.Assert.assertEquals;
+import static org.mockito.Matchers.anyCollectionOf;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+
+import java.sql.Timestamp;
+import java.util.Collection;
+import java.util.Date;
+
+import javax.sql.DataSource;
+
+import jp.dip.komusubi.lunch.LunchException;
+import jp.dip.komusubi.lunch.model.Health;
+import jp.dip.komusubi.lunch.model.User;
+import jp.dip.komusubi.lunch.module.dao.GroupDao;
+import jp.dip.komusubi.lunch.module.dao.LoginCount;
+import jp.dip.komusubi.lunch.module.dao.jdbc.DataSourceResource;
+import jp.dip.komusubi.lunch.module.dao.jdbc.JdbcHealthDao;
+
+import org.junit.Before;
+import org.junit.ClassRule;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionStatus;
+import org.springframework.transaction.support.TransactionCallbackWithoutResult;
+import org.springframework.transaction.support.TransactionTemplate;
+
+/**
+ * write behind health dao unit test.
+ * @author jun.ozeki
+ */
+public class WriteBehindHealthDaoTest {
+
+    @ClassRule public static DataSourceResource resource = new DataSourceResource();
+    // committed by tests, far from fixture ids.
+    private static final int USER_ID = 9101;
+    private JdbcHealthDao delegate;
+    private WriteBehindHealthDao target;
+
+    @Before
+    public void before() {
+        delegate = mock(JdbcHealthDao.class);
+        target = new WriteBehindHealthDao(delegate, mock(PlatformTransactionManager.class), 0L, 100);
+    }
+
+    /**
+     * logins of a user are coalesced into an increment.
+     * @throws Exception
+     */
+    @Test
+    @SuppressWarnings("unchecked")
+    public void coalesce() throws Exception {
+        Health health = new User(1).getHealth();
+        target.recordLogin(health.setLastLogin(new Date(1000L)));
+        target.recordLogin(health.setLastLogin(new Date(2000L)));
+        target.recordLogin(new User(2).getHealth().setLastLogin(new Date(1500L)));
+        verify(delegate, never()).recordLogins(anyCollectionOf(LoginCount.class));
+        assertEquals(2, target.getPendings());
+
+        assertEquals(2, target.flush());
+        ArgumentCaptor<Collection> captor = ArgumentCaptor.forClass(Collection.class);
+        verify(delegate).recordLogins(captor.capture());
+        for (Object o: captor.getValue()) {
+            LoginCount count = (LoginCount) o;
+            if (count.getUserId() == 1) {
+                assertEquals(2, count.getCount());
+                assertEquals(new Date(2000L), count.getLastLogin());
+            } else {
+                assertEquals(1, count.getCount());
+            }
+        }
+        assertEquals(0, target.getPendings());
+    }
+
+    /**
+     * failed logins are kept for next flush.
+     * @throws Exception
+     */
+    @Test
+    public void retry() throws Exception {
+        doThrow(new LunchException("down")).when(delegate).recordLogins(anyCollectionOf(LoginCount.class));
+        target.recordLogin(new User(1).getHealth().setLastLogin(new Date()));
+        assertEquals(0, target.flush());
+        assertEquals(1, target.getPendings());
+    }
+
+    /**
+     * flushed logins are committed by flusher, out of transaction interceptor.
+     * @throws Exception
+     */
+    @Test
+    public void flushCommitted() throws Exception {
+        DataSource dataSource = resource.getDataSource();
+        final JdbcTemplate template = new JdbcTemplate(dataSource);
+        insertHealth(null);
+        try {
+            target = new WriteBehindHealthDao(new JdbcHealthDao(dataSource, mock(GroupDao.class)),
+                    new DataSourceTransactionManager(dataSource), 0L, 100);
+            target.recordLogin(new User(USER_ID).getHealth().setLastLogin(new Date(1000L)));
+            target.recordLogin(new User(USER_ID).getHealth().setLastLogin(new Date(2000L)));
+            assertEquals(1, target.flush());
+
+            // read by another connection.
+            assertEquals(5, template.queryForInt("select login from health where userId = ?", USER_ID));
+            assertEquals(2000L, template.queryForObject("select lastLogin from health where userId = ?", 
+                    Date.class, USER_ID).getTime());
+            assertEquals(0, target.getPendings());
+        } finally {
+            deleteHealth();
+        }
+    }
+
+    /**
+     * deferred login flushed after a newer login doesn't move last login backwards,
+     * but is still counted.
+     * @throws Exception
+     */
+    @Test
+    public void flushAfterNewerLogin() throws Exception {
+        DataSource dataSource = resource.getDataSource();
+        JdbcTemplate template = new JdbcTemplate(dataSource);
+        insertHealth(new Date(1000L));
+        try {
+            target = new WriteBehindHealthDao(new JdbcHealthDao(dataSource, mock(GroupDao.class)),
+                    new DataSourceTransactionManager(dataSource), 0L, 100);
+            target.recordLogin(new User(USER_ID).getHealth().setLastLogin(new Date(2000L)));
+            // newer login written before the flush(e.g. by other node).
+            new TransactionTemplate(new DataSourceTransactionManager(dataSource)).execute(new TransactionCallbackWithoutResult() {
+                @Override
+                protected void doInTransactionWithoutResult(TransactionStatus status) {
+                    new JdbcTemplate(resource.getDataSource()).update("update health set lastLogin = ? where userId = ?", 
+                            new Timestamp(3000L), USER_ID);
+                }
+            });
+            assertEquals(1, target.flush());
+
+            assertEquals(4, template.queryForInt("select login from health where userId = ?", USER_ID));
+            assertEquals(3000L, template.queryForObject("select lastLogin from health where userId = ?", 
+                    Date.class, USER_ID).getTime());
+        } finally {
+            deleteHealth();
+        }
+    }
+
+    private void insertHealth(final Date lastLogin) {
+        final JdbcTemplate template = new JdbcTemplate(resource.getDataSource());
+        new TransactionTemplate(new DataSourceTransactionManager(resource.getDataSource())).execute(new TransactionCallbackWithoutResult() {
+            @Override
+            protected void doInTransactionWithoutResult(TransactionStatus status) {
+                template.update("delete from health where userId = ?", USER_ID);
+                template.update("delete from users where id = ?", USER_ID);
+                template.update("insert into users (id, email, password, nickname, name, joined) values (?, ?, ?, ?, ?, ?)",
+                        USER_ID, "writebehind@example.com", "password", "writebehind", "write behind", new Timestamp(0L));
+                template.update("insert into health (userId, login, loginFail, active, lastLogin) values (?, 3, 0, ?, ?)",
+                        USER_ID, true, lastLogin == null ? null : new Timestamp(lastLogin.getTime()));
+            }
+        });
+    }
+
+    private void deleteHealth() {
+        final JdbcTemplate template = new JdbcTemplate(resource.getDataSource());
+        new TransactionTemplate(new DataSourceTransactionManager(resource.getDataSource())).execute(new TransactionCallbackWithoutResult() {
+            @Override
+            protected void doInTransactionWithoutResult(TransactionStatus status) {
+                template.update("delete from health where userId = ?", USER_ID);
+                template.update("delete from users where id = ?", USER_ID);
+            }
+        });
+    }
+
+    /**
+     * security relevant update is not deferred.
+     * @throws Exception
+     */
+    @Test
+    public void updateLoginImmediately() throws Exception {
+        Health health = new User(1).getHealth().incrementLoginFail();
+        target.updateLogin(health);
+        verify(delegate).updateLogin(health);
+        assertEquals(0, target.getPendings());
+    }
+}
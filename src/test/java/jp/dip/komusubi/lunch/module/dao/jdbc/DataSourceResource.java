@@ -20,15 +20,38 @@ package jp.dip.komusubi.lunch.module.dao.jdbc;
 
 import java.sql.Connection;
 import java.sql.SQLException;
+import java.sql.Timestamp;
 
 import javax.sql.DataSource;
 
 import jp.dip.komusubi.lunch.LunchException;
+import jp.dip.komusubi.lunch.module.dao.ContractDao;
+import jp.dip.komusubi.lunch.module.dao.DailyCounterDao;
+import jp.dip.komusubi.lunch.module.dao.GroupDao;
+import jp.dip.komusubi.lunch.module.dao.HealthDao;
+import jp.dip.komusubi.lunch.module.dao.OrderDao;
+import jp.dip.komusubi.lunch.module.dao.OrderLineDao;
+import jp.dip.komusubi.lunch.module.dao.ProductBatchDao;
+import jp.dip.komusubi.lunch.module.dao.ProductDao;
+import jp.dip.komusubi.lunch.module.dao.ReceiptDao;
+import jp.dip.komusubi.lunch.module.dao.ReceiptLineDao;
+import jp.dip.komusubi.lunch.module.dao.ShopDao;
+import jp.dip.komusubi.lunch.module.dao.UserDao;
 import jp.dip.komusubi.lunch.module.database.Lunchat;
 
 import org.apache.commons.dbcp.BasicDataSource;
 import org.apache.commons.lang3.SystemUtils;
 import org.junit.rules.ExternalResource;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.transaction.TransactionStatus;
+import org.springframework.transaction.support.TransactionCallbackWithoutResult;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import com.google.inject.AbstractModule;
+import com.google.inject.Guice;
+import com.google.inject.Injector;
+import com.google.inject.name.Names;
 
 /**
  * data source resource.
@@ -43,6 +66,19 @@ public class DataSourceResource extends ExternalResource {
 //    private static final String JDBC_URL = "jdbc:h2:" + SystemUtils.JAVA_IO_TMPDIR + "/lunchat";
     private static final String JDBC_USER = "sa";
     private static final String JDBC_USER_PASSWORD = "";
+    // h2 rejects a negative fetch size (mysql streaming value).
+    private static final int BILLING_FETCH_SIZE = 100;
+    // fixture records, ids are far from the ones generated by auto increment.
+    public static final int FIXTURE_GROUP_ID = 9001;
+    public static final String FIXTURE_GROUP_CODE = "fixture-group";
+    public static final int FIXTURE_USER_ID = 9001;
+    public static final int FIXTURE_OTHER_USER_ID = 9002;
+    public static final String FIXTURE_EMAIL = "fixture9001@example.com";
+    public static final String FIXTURE_PRODUCT_ID = "fixture-p1";
+    public static final String FIXTURE_OTHER_PRODUCT_ID = "fixture-p2";
+    public static final String FIXTURE_SHOP_ID = "tamagoya";
+    public static final String FIXTURE_TOKEN = "fixture-token";
+    private Injector injector;
     
     /**
      * get data source.
@@ -72,6 +108,99 @@ public class DataSourceResource extends ExternalResource {
         return dataSource; 
     }
 
+    /**
+     * get injector of jdbc daos on the data source.
+     * @return
+     */
+    public Injector getInjector() {
+        if (injector != null)
+            return injector;
+        injector = Guice.createInjector(new AbstractModule() {
+            @Override
+            protected void configure() {
+                bind(DataSource.class).toInstance(getDataSource());
+                bind(UserDao.class).to(JdbcUserDao.class);
+                bind(ShopDao.class).to(JdbcShopDao.class);
+                bind(OrderDao.class).to(JdbcOrderDao.class);
+                bind(OrderLineDao.class).to(JdbcOrderLineDao.class);
+                bind(DailyCounterDao.class).to(JdbcDailyCounterDao.class);
+                bind(ReceiptDao.class).to(JdbcReceiptDao.class);
+                bindConstant().annotatedWith(Names.named("billing.fetch.size")).to(BILLING_FETCH_SIZE);
+                bind(ReceiptLineDao.class).to(JdbcReceiptLineDao.class);
+                bind(HealthDao.class).to(JdbcHealthDao.class);
+                bind(GroupDao.class).to(JdbcGroupDao.class);
+                bind(ProductDao.class).to(JdbcProductDao.class);
+                bind(ProductBatchDao.class).to(JdbcProductDao.class);
+                bind(ContractDao.class).to(JdbcContractDao.class);
+            }
+        });
+        return injector;
+    }
+
+    /**
+     * execute callback in a transaction, and roll it back.
+     * @param callback
+     */
+    public void rollback(final TransactionCallbackWithoutResult callback) {
+        new TransactionTemplate(new DataSourceTransactionManager(getDataSource())).execute(new TransactionCallbackWithoutResult() {
+            @Override
+            protected void doInTransactionWithoutResult(TransactionStatus status) {
+                status.setRollbackOnly();
+                callback.doInTransaction(status);
+            }
+        });
+    }
+
+    /**
+     * insert fixture records of today in current transaction, call it in {@link #rollback}.
+     * <ul>
+     * <li>group 9001, users 9001 and 9002 of the group.</li>
+     * <li>products fixture-p1(400 yen) and fixture-p2(500 yen) of tamagoya.</li>
+     * <li>order 9001 of user 9001 with token: fixture-p1 x 2, fixture-p2 x 1.</li>
+     * <li>order 9002 of user 9002: fixture-p1 x 1, cancelled fixture-p2 x 3.</li>
+     * <li>cancelled order 9003 of user 9002: fixture-p1 x 5.</li>
+     * <li>receipt 9001 of order 9001: fixture-p1 x 2(amount is null), fixture-p2 x 1(450 yen).</li>
+     * </ul>
+     * @return datetime of orders and receipts.
+     */
+    public Timestamp insertFixture() {
+        JdbcTemplate jdbc = new JdbcTemplate(getDataSource());
+        Timestamp now = new Timestamp(System.currentTimeMillis());
+        jdbc.update("insert into groups (id, code, name) values (?, ?, ?)",
+                FIXTURE_GROUP_ID, FIXTURE_GROUP_CODE, "fixture group");
+        for (int userId: new int[]{ FIXTURE_USER_ID, FIXTURE_OTHER_USER_ID }) {
+            jdbc.update("insert into users (id, email, password, nickname, name, joined) values (?, ?, ?, ?, ?, ?)",
+                    userId, "fixture" + userId + "@example.com", "password", "fixture" + userId, "fixture user " + userId, now);
+            jdbc.update("insert into health (userId, login, loginFail, active, groupId, groupJoined) values (?, ?, ?, ?, ?, ?)",
+                    userId, 1, 0, true, FIXTURE_GROUP_ID, now);
+        }
+        jdbc.update("insert into products (id, shopId, name, amount) values (?, ?, ?, ?)",
+                FIXTURE_PRODUCT_ID, FIXTURE_SHOP_ID, "fixture bento", 400);
+        jdbc.update("insert into products (id, shopId, name, amount) values (?, ?, ?, ?)",
+                FIXTURE_OTHER_PRODUCT_ID, FIXTURE_SHOP_ID, "fixture special bento", 500);
+
+        String insertOrder = "insert into orders (id, userId, groupId, shopId, amount, summary, cancel, datetime, token)"
+                + " values (?, ?, ?, ?, ?, ?, ?, ?, ?)";
+        jdbc.update(insertOrder, 9001, FIXTURE_USER_ID, FIXTURE_GROUP_ID, FIXTURE_SHOP_ID, 1300, false, false, now, FIXTURE_TOKEN);
+        jdbc.update(insertOrder, 9002, FIXTURE_OTHER_USER_ID, FIXTURE_GROUP_ID, FIXTURE_SHOP_ID, 400, false, false, now, null);
+        jdbc.update(insertOrder, 9003, FIXTURE_OTHER_USER_ID, FIXTURE_GROUP_ID, FIXTURE_SHOP_ID, 2000, false, true, now, null);
+        String insertOrderLine = "insert into orderLines (orderId, no, productId, quantity, amount, datetime, cancel)"
+                + " values (?, ?, ?, ?, ?, ?, ?)";
+        jdbc.update(insertOrderLine, 9001, 1, FIXTURE_PRODUCT_ID, 2, 800, now, false);
+        jdbc.update(insertOrderLine, 9001, 2, FIXTURE_OTHER_PRODUCT_ID, 1, 500, now, false);
+        jdbc.update(insertOrderLine, 9002, 1, FIXTURE_PRODUCT_ID, 1, 400, now, false);
+        jdbc.update(insertOrderLine, 9002, 2, FIXTURE_OTHER_PRODUCT_ID, 3, 1500, now, true);
+        jdbc.update(insertOrderLine, 9003, 1, FIXTURE_PRODUCT_ID, 5, 2000, now, false);
+
+        jdbc.update("insert into receipts (id, orderId, userId, groupId, shopId, amount, datetime) values (?, ?, ?, ?, ?, ?, ?)",
+                9001, 9001, FIXTURE_USER_ID, FIXTURE_GROUP_ID, FIXTURE_SHOP_ID, 1250, now);
+        String insertReceiptLine = "insert into receiptLines (receiptId, no, productId, quantity, amount, datetime)"
+                + " values (?, ?, ?, ?, ?, ?)";
+        jdbc.update(insertReceiptLine, 9001, 1, FIXTURE_PRODUCT_ID, 2, null, now);
+        jdbc.update(insertReceiptLine, 9001, 2, FIXTURE_OTHER_PRODUCT_ID, 1, 450, now);
+        return now;
+    }
+
     /**
      * if does NOT exist table, create it. 
      * @see org.junit.rules.ExternalResource#before()
@@ -0,0 +1,159 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package jp.dip.komusubi.lunch.module.dao.jdbc;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import jp.dip.komusubi.lunch.model.Group;
+import jp.dip.komusubi.lunch.model.Order;
+import jp.dip.komusubi.lunch.model.OrderLine;
+import jp.dip.komusubi.lunch.model.OrderLine.OrderLineKey;
+import jp.dip.komusubi.lunch.model.Product;
+import jp.dip.komusubi.lunch.model.Shop;
+import jp.dip.komusubi.lunch.module.dao.DailyCounterDao;
+
+import org.junit.ClassRule;
+import org.junit.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.transaction.TransactionStatus;
+import org.springframework.transaction.support.TransactionCallbackWithoutResult;
+import org.springframework.transaction.support.TransactionTemplate;
+
+/**
+ * jdbc daily counter dao test on h2.
+ * @author jun.ozeki
+ */
+public class JdbcDailyCounterDaoTest {
+
+    @ClassRule public static DataSourceResource resource = new DataSourceResource();
+    private static final String SELECT_COUNTER = "select quantity, amount, orderers from dailyCounters "
+            + "where groupId = 9001 and productId = ?";
+
+    /**
+     * counter is inserted by first order, updated by next, and never goes below zero.
+     */
+    @Test
+    public void incrementAndDecrement() {
+        final DailyCounterDao target = resource.getInjector().getInstance(DailyCounterDao.class);
+        final JdbcTemplate jdbc = new JdbcTemplate(resource.getDataSource());
+        resource.rollback(new TransactionCallbackWithoutResult() {
+            @Override
+            protected void doInTransactionWithoutResult(TransactionStatus status) {
+                target.increment(newOrder(1, "p1", 2));
+                target.increment(newOrder(2, "p1", 1));
+                assertEquals(3, jdbc.queryForMap(SELECT_COUNTER, "p1").get("quantity"));
+                assertEquals(1200, jdbc.queryForMap(SELECT_COUNTER, "p1").get("amount"));
+                assertEquals(2, jdbc.queryForMap(SELECT_COUNTER, "p1").get("orderers"));
+
+                target.decrement(newOrder(3, "p1", 5));
+                assertEquals(0, jdbc.queryForMap(SELECT_COUNTER, "p1").get("quantity"));
+                assertEquals(0, jdbc.queryForMap(SELECT_COUNTER, "p1").get("amount"));
+                assertEquals(1, jdbc.queryForMap(SELECT_COUNTER, "p1").get("orderers"));
+            }
+        });
+    }
+
+    /**
+     * decrement of a missing counter inserts nothing.
+     */
+    @Test
+    public void decrementMissing() {
+        final DailyCounterDao target = resource.getInjector().getInstance(DailyCounterDao.class);
+        final JdbcTemplate jdbc = new JdbcTemplate(resource.getDataSource());
+        resource.rollback(new TransactionCallbackWithoutResult() {
+            @Override
+            protected void doInTransactionWithoutResult(TransactionStatus status) {
+                Order order = newOrder(4, "p2", 1);
+                target.decrement(order, order.getOrderLines().get(0));
+                target.decrement(order);
+                assertEquals(0, jdbc.queryForInt("select count(*) from dailyCounters where groupId = 9001"));
+            }
+        });
+    }
+
+    /**
+     * concurrent first orders of the same product are all counted in a counter.
+     */
+    @Test
+    public void incrementConcurrentFirstOrders() throws Exception {
+        final DailyCounterDao target = resource.getInjector().getInstance(DailyCounterDao.class);
+        final JdbcTemplate jdbc = new JdbcTemplate(resource.getDataSource());
+        final TransactionTemplate transaction = new TransactionTemplate(
+                new DataSourceTransactionManager(resource.getDataSource()));
+        final int threads = 2;
+        final CyclicBarrier barrier = new CyclicBarrier(threads);
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            List<Future<Void>> futures = new ArrayList<>();
+            for (int i = 0; i < threads; i++) {
+                final int id = 10 + i;
+                futures.add(executor.submit(new Callable<Void>() {
+                    @Override
+                    public Void call() throws Exception {
+                        barrier.await(5, TimeUnit.SECONDS);
+                        transaction.execute(new TransactionCallbackWithoutResult() {
+                            @Override
+                            protected void doInTransactionWithoutResult(TransactionStatus status) {
+                                target.increment(newOrder(id, "concurrent-p", 1));
+                            }
+                        });
+                        return null;
+                    }
+                }));
+            }
+            for (Future<Void> future: futures)
+                future.get(10, TimeUnit.SECONDS);
+            assertEquals(1, jdbc.queryForInt("select count(*) from dailyCounters where groupId = 9001 and productId = ?", 
+                    "concurrent-p"));
+            assertEquals(threads, jdbc.queryForMap(SELECT_COUNTER, "concurrent-p").get("quantity"));
+            assertEquals(threads * 400, jdbc.queryForMap(SELECT_COUNTER, "concurrent-p").get("amount"));
+            assertEquals(threads, jdbc.queryForMap(SELECT_COUNTER, "concurrent-p").get("orderers"));
+        } finally {
+            executor.shutdownNow();
+            transaction.execute(new TransactionCallbackWithoutResult() {
+                @Override
+                protected void doInTransactionWithoutResult(TransactionStatus status) {
+                    jdbc.update("delete from dailyCounters where groupId = 9001 and productId = ?", "concurrent-p");
+                }
+            });
+        }
+    }
+
+    private Order newOrder(int id, String productId, int quantity) {
+        Shop shop = new Shop("tamagoya");
+        return new Order(id)
+                    .setGroup(new Group(9001))
+                    .setShop(shop)
+                    .setDatetime(new Date())
+                    .addLine(new OrderLine(new OrderLineKey(id, 1))
+                                .setProduct(new Product(productId).setShop(shop).setAmount(400))
+                                .setQuantity(quantity));
+    }
+}
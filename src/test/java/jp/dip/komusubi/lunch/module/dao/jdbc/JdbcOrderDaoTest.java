@@ -0,0 +1,185 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.    
+ */
+package jp.dip.komusubi.lunch.module.dao.jdbc;
+
+import static jp.dip.komusubi.lunch.module.dao.jdbc.DataSourceResource.FIXTURE_GROUP_CODE;
+import static jp.dip.komusubi.lunch.module.dao.jdbc.DataSourceResource.FIXTURE_GROUP_ID;
+import static jp.dip.komusubi.lunch.module.dao.jdbc.DataSourceResource.FIXTURE_OTHER_PRODUCT_ID;
+import static jp.dip.komusubi.lunch.module.dao.jdbc.DataSourceResource.FIXTURE_OTHER_USER_ID;
+import static jp.dip.komusubi.lunch.module.dao.jdbc.DataSourceResource.FIXTURE_PRODUCT_ID;
+import static jp.dip.komusubi.lunch.module.dao.jdbc.DataSourceResource.FIXTURE_SHOP_ID;
+import static jp.dip.komusubi.lunch.module.dao.jdbc.DataSourceResource.FIXTURE_TOKEN;
+import static jp.dip.komusubi.lunch.module.dao.jdbc.DataSourceResource.FIXTURE_USER_ID;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.sql.Timestamp;
+import java.util.Date;
+import java.util.List;
+
+import jp.dip.komusubi.lunch.model.Order;
+import jp.dip.komusubi.lunch.model.OrderLine;
+import jp.dip.komusubi.lunch.model.Product;
+import jp.dip.komusubi.lunch.model.User;
+import jp.dip.komusubi.lunch.module.dao.OrderDao;
+
+import org.junit.ClassRule;
+import org.junit.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.TransactionStatus;
+import org.springframework.transaction.support.TransactionCallbackWithoutResult;
+
+/**
+ * jdbc order dao test on h2.
+ * @author jun.ozeki
+ */
+public class JdbcOrderDaoTest {
+
+    @ClassRule public static DataSourceResource resource = new DataSourceResource();
+
+    /**
+     * orders, lines, products, shop and users are assembled from the join query,
+     * the same record is the same instance in the graph.
+     */
+    @Test
+    public void findByGroupIdAndDate() {
+        final OrderDao target = resource.getInjector().getInstance(OrderDao.class);
+        resource.rollback(new TransactionCallbackWithoutResult() {
+            @Override
+            protected void doInTransactionWithoutResult(TransactionStatus status) {
+                Date now = resource.insertFixture();
+                List<Order> orders = target.findByGroupIdAndDate(FIXTURE_GROUP_ID, now, false);
+                assertEquals(3, orders.size());
+                Order first = orders.get(0);
+                Order second = orders.get(1);
+                assertEquals(9001, first.getId());
+                assertEquals(2, first.getOrderLines().size());
+                assertEquals(FIXTURE_PRODUCT_ID, first.getOrderLines().get(0).getProduct().getId());
+                assertEquals(FIXTURE_OTHER_PRODUCT_ID, first.getOrderLines().get(1).getProduct().getId());
+                assertEquals(FIXTURE_USER_ID, first.getUser().getId().intValue());
+                assertEquals(FIXTURE_GROUP_CODE, first.getUser().getGroup().getCode());
+                assertEquals(FIXTURE_SHOP_ID, first.getShop().getId());
+
+                assertEquals(FIXTURE_OTHER_USER_ID, second.getUser().getId().intValue());
+                assertSame(first.getShop(), second.getShop());
+                assertSame(first.getGroup(), second.getGroup());
+                assertSame(first.getOrderLines().get(0).getProduct(), second.getOrderLines().get(0).getProduct());
+                assertSame(second.getUser(), orders.get(2).getUser());
+                assertTrue(orders.get(2).isCancel());
+            }
+        });
+    }
+
+    /**
+     * orders of other group or summary orders are not found.
+     */
+    @Test
+    public void findByGroupIdAndDateNotFound() {
+        final OrderDao target = resource.getInjector().getInstance(OrderDao.class);
+        resource.rollback(new TransactionCallbackWithoutResult() {
+            @Override
+            protected void doInTransactionWithoutResult(TransactionStatus status) {
+                Date now = resource.insertFixture();
+                assertEquals(0, target.findByGroupIdAndDate(FIXTURE_GROUP_ID, now, true).size());
+                assertEquals(0, target.findByGroupIdAndDate(FIXTURE_GROUP_ID + 1, now, false).size());
+            }
+        });
+    }
+
+    /**
+     * time of product period is kept, and user without health is not dropped from the graph.
+     */
+    @Test
+    public void findByGroupIdAndDateProductPeriodAndUserWithoutHealth() {
+        final OrderDao target = resource.getInjector().getInstance(OrderDao.class);
+        resource.rollback(new TransactionCallbackWithoutResult() {
+            @Override
+            protected void doInTransactionWithoutResult(TransactionStatus status) {
+                Date now = resource.insertFixture();
+                JdbcTemplate jdbc = new JdbcTemplate(resource.getDataSource());
+                Timestamp start = new Timestamp(now.getTime() / 1000 * 1000 - 3600 * 1000);
+                Timestamp finish = new Timestamp(now.getTime() / 1000 * 1000 + 3600 * 1000);
+                jdbc.update("update products set start = ?, finish = ? where id = ?", start, finish, FIXTURE_PRODUCT_ID);
+                jdbc.update("delete from health where userId = ?", FIXTURE_OTHER_USER_ID);
+
+                List<Order> orders = target.findByGroupIdAndDate(FIXTURE_GROUP_ID, now, false);
+                assertEquals(3, orders.size());
+                Product product = orders.get(0).getOrderLines().get(0).getProduct();
+                assertEquals(start.getTime(), product.getStart().getTime());
+                assertEquals(finish.getTime(), product.getFinish().getTime());
+                User other = orders.get(1).getUser();
+                assertNotNull(other);
+                assertEquals(FIXTURE_OTHER_USER_ID, other.getId().intValue());
+                assertNull(other.getGroup());
+                assertSame(other, orders.get(2).getUser());
+            }
+        });
+    }
+
+    @Test
+    public void findByUserAndToken() {
+        final OrderDao target = resource.getInjector().getInstance(OrderDao.class);
+        resource.rollback(new TransactionCallbackWithoutResult() {
+            @Override
+            protected void doInTransactionWithoutResult(TransactionStatus status) {
+                resource.insertFixture();
+                List<Order> orders = target.findByUserAndToken(FIXTURE_USER_ID, FIXTURE_TOKEN);
+                assertEquals(1, orders.size());
+                assertEquals(9001, orders.get(0).getId());
+                assertEquals(FIXTURE_TOKEN, orders.get(0).getToken());
+                assertEquals(2, orders.get(0).getOrderLines().size());
+                // token is unique per user.
+                assertEquals(0, target.findByUserAndToken(FIXTURE_OTHER_USER_ID, FIXTURE_TOKEN).size());
+                assertEquals(0, target.findByUserAndToken(FIXTURE_USER_ID, "unknown").size());
+            }
+        });
+    }
+
+    /**
+     * cancelled orders and cancelled lines are not summarized.
+     */
+    @Test
+    public void summarizeByGroupIdAndDate() {
+        final OrderDao target = resource.getInjector().getInstance(OrderDao.class);
+        resource.rollback(new TransactionCallbackWithoutResult() {
+            @Override
+            protected void doInTransactionWithoutResult(TransactionStatus status) {
+                Date now = resource.insertFixture();
+                List<Order> summaries = target.summarizeByGroupIdAndDate(FIXTURE_GROUP_ID, now);
+                assertEquals(1, summaries.size());
+                Order summary = summaries.get(0);
+                assertTrue(summary.isSummary());
+                assertEquals(FIXTURE_SHOP_ID, summary.getShop().getId());
+                assertEquals(2, summary.getOrderLines().size());
+
+                OrderLine p1 = summary.getOrderLines().get(0);
+                assertEquals(FIXTURE_PRODUCT_ID, p1.getProduct().getId());
+                assertEquals(3, p1.getQuantity());
+                assertEquals(1200, p1.getAmount());
+                OrderLine p2 = summary.getOrderLines().get(1);
+                assertEquals(FIXTURE_OTHER_PRODUCT_ID, p2.getProduct().getId());
+                assertEquals(1, p2.getQuantity());
+                assertEquals(500, p2.getAmount());
+            }
+        });
+    }
+}
@@ -0,0 +1,155 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package jp.dip.komusubi.lunch.module.dao.jdbc;
+
+import static org.junit.Assert.assertEquals;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
+
+import javax.sql.DataSource;
+
+import jp.dip.komusubi.lunch.model.Group;
+import jp.dip.komusubi.lunch.model.Product;
+import jp.dip.komusubi.lunch.model.Receipt;
+import jp.dip.komusubi.lunch.model.ReceiptLine;
+import jp.dip.komusubi.lunch.model.Shop;
+import jp.dip.komusubi.lunch.model.User;
+import jp.dip.komusubi.lunch.module.dao.BillingLine;
+import jp.dip.komusubi.lunch.module.dao.ReceiptDao;
+
+import org.junit.ClassRule;
+import org.junit.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.TransactionStatus;
+import org.springframework.transaction.support.TransactionCallbackWithoutResult;
+
+/**
+ * jdbc receipt dao unit test.
+ * @author jun.ozeki
+ */
+public class JdbcReceiptDaoTest {
+
+    @ClassRule public static DataSourceResource resource = new DataSourceResource();
+
+    /**
+     * billing is scanned by a forward only, read only result set of the fetch size.
+     * @throws Exception
+     */
+    @Test
+    public void scanBillingFetchSize() throws Exception {
+        DataSource dataSource = mock(DataSource.class);
+        Connection con = mock(Connection.class);
+        PreparedStatement ps = mock(PreparedStatement.class);
+        when(dataSource.getConnection()).thenReturn(con);
+        when(con.prepareStatement(anyString(), eq(ResultSet.TYPE_FORWARD_ONLY), eq(ResultSet.CONCUR_READ_ONLY)))
+                .thenReturn(ps);
+        when(ps.executeQuery()).thenReturn(mock(ResultSet.class));
+
+        JdbcReceiptDao target = new JdbcReceiptDao(dataSource);
+        assertEquals(0, target.scanBillingByGroupAndMonth(1, new Date(), mock(BillingLine.Handler.class)));
+        verify(ps).setFetchSize(Integer.MIN_VALUE);
+        verify(ps).setInt(1, 1);
+    }
+
+    /**
+     * billing lines are flattened with user, shop and product, line amount falls back to product amount.
+     */
+    @Test
+    public void scanBillingByGroupAndMonth() {
+        final ReceiptDao target = resource.getInjector().getInstance(ReceiptDao.class);
+        resource.rollback(new TransactionCallbackWithoutResult() {
+            @Override
+            protected void doInTransactionWithoutResult(TransactionStatus status) {
+                Date now = resource.insertFixture();
+                final List<String> lines = new ArrayList<>();
+                int count = target.scanBillingByGroupAndMonth(DataSourceResource.FIXTURE_GROUP_ID, now, new BillingLine.Handler() {
+                    @Override
+                    public void processLine(BillingLine line) {
+                        // line instance is reused, keep values only.
+                        lines.add(line.getReceiptId() + "," + line.getNo() + "," + line.getOrderId() + ","
+                                + line.getEmail() + "," + line.getShopId() + "," + line.getProductId() + ","
+                                + line.getQuantity() + "," + line.getAmount());
+                    }
+                });
+                assertEquals(2, count);
+                assertEquals(Arrays.asList(
+                        "9001,1,9001,fixture9001@example.com,tamagoya,fixture-p1,2,800",
+                        "9001,2,9001,fixture9001@example.com,tamagoya,fixture-p2,1,450"), lines);
+                assertEquals(0, target.scanBillingByGroupAndMonth(DataSourceResource.FIXTURE_GROUP_ID + 1, now,
+                        new BillingLine.Handler() {
+                            @Override
+                            public void processLine(BillingLine line) {
+                            }
+                        }));
+            }
+        });
+    }
+
+    /**
+     * every receipt gets its own generated key, receipt lines refer to it.
+     */
+    @Test
+    public void persistAllGeneratedKeys() {
+        final ReceiptDao target = resource.getInjector().getInstance(ReceiptDao.class);
+        final JdbcTemplate jdbc = new JdbcTemplate(resource.getDataSource());
+        resource.rollback(new TransactionCallbackWithoutResult() {
+            @Override
+            protected void doInTransactionWithoutResult(TransactionStatus status) {
+                // receipts refer to orders, user, group and product of the fixture.
+                resource.insertFixture();
+                List<Receipt> receipts = Arrays.asList(newReceipt(9001), newReceipt(9002), newReceipt(9003));
+                List<Integer> ids = target.persistAll(receipts);
+                assertEquals(3, ids.size());
+                for (Receipt receipt: receipts) {
+                    assertEquals(receipt.getOrderId().intValue(),
+                            jdbc.queryForInt("select orderId from receipts where id = ?", receipt.getId()));
+                    assertEquals(1, jdbc.queryForInt("select count(*) from receiptLines where receiptId = ?", receipt.getId()));
+                }
+            }
+        });
+    }
+
+    private Receipt newReceipt(int orderId) {
+        Date now = new Date();
+        Receipt receipt = new Receipt()
+                            .setOrderId(orderId)
+                            .setUser(new User(DataSourceResource.FIXTURE_USER_ID))
+                            .setGroup(new Group(DataSourceResource.FIXTURE_GROUP_ID))
+                            .setShop(new Shop(DataSourceResource.FIXTURE_SHOP_ID))
+                            .setAmount(450)
+                            .setDatetime(now);
+        receipt.addLine(new ReceiptLine()
+                            .setProduct(new Product(DataSourceResource.FIXTURE_PRODUCT_ID))
+                            .setQuantity(1)
+                            .setAmount(450)
+                            .setDatetime(now));
+        return receipt;
+    }
+}
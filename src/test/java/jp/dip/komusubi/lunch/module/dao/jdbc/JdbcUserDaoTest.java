@@ -0,0 +1,127 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.    
+ */
+package jp.dip.komusubi.lunch.module.dao.jdbc;
+
+import static jp.dip.komusubi.lunch.module.dao.jdbc.DataSourceResource.FIXTURE_EMAIL;
+import static jp.dip.komusubi.lunch.module.dao.jdbc.DataSourceResource.FIXTURE_GROUP_CODE;
+import static jp.dip.komusubi.lunch.module.dao.jdbc.DataSourceResource.FIXTURE_GROUP_ID;
+import static jp.dip.komusubi.lunch.module.dao.jdbc.DataSourceResource.FIXTURE_OTHER_USER_ID;
+import static jp.dip.komusubi.lunch.module.dao.jdbc.DataSourceResource.FIXTURE_USER_ID;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.Date;
+import java.util.Map;
+
+import jp.dip.komusubi.lunch.model.Health;
+import jp.dip.komusubi.lunch.model.User;
+import jp.dip.komusubi.lunch.module.dao.LoginCount;
+import jp.dip.komusubi.lunch.module.dao.UserDao;
+
+import org.junit.ClassRule;
+import org.junit.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.TransactionStatus;
+import org.springframework.transaction.support.TransactionCallbackWithoutResult;
+
+/**
+ * jdbc user dao test on h2.
+ * @author jun.ozeki
+ */
+public class JdbcUserDaoTest {
+
+    @ClassRule public static DataSourceResource resource = new DataSourceResource();
+    private static final String SELECT_HEALTH = "select login, loginFail, active, groupId from health where userId = ?";
+
+    /**
+     * user, health and group by a query.
+     */
+    @Test
+    public void findByEmailWithHealth() {
+        final UserDao target = resource.getInjector().getInstance(UserDao.class);
+        resource.rollback(new TransactionCallbackWithoutResult() {
+            @Override
+            protected void doInTransactionWithoutResult(TransactionStatus status) {
+                resource.insertFixture();
+                User user = target.findByEmailWithHealth(FIXTURE_EMAIL);
+                assertEquals(FIXTURE_USER_ID, user.getId().intValue());
+                assertEquals(FIXTURE_EMAIL, user.getEmail());
+                assertEquals(FIXTURE_GROUP_ID, user.getGroup().getId().intValue());
+                assertEquals(FIXTURE_GROUP_CODE, user.getGroup().getCode());
+                assertEquals(1, user.getHealth().getLogin());
+                assertTrue(user.getHealth().isActive());
+
+                assertNull(target.findByEmailWithHealth("unknown@example.com"));
+            }
+        });
+    }
+
+    /**
+     * login columns are updated by user id, group membership is left alone.
+     */
+    @Test
+    public void updateLogin() {
+        final UserDao target = resource.getInjector().getInstance(UserDao.class);
+        final JdbcTemplate jdbc = new JdbcTemplate(resource.getDataSource());
+        resource.rollback(new TransactionCallbackWithoutResult() {
+            @Override
+            protected void doInTransactionWithoutResult(TransactionStatus status) {
+                resource.insertFixture();
+                // health without group.
+                Health health = new User(FIXTURE_USER_ID).getHealth()
+                                    .setLogin(5)
+                                    .setLoginFail(2)
+                                    .setLastLogin(new Date())
+                                    .setActive(false);
+                target.updateLogin(health);
+
+                Map<String, Object> row = jdbc.queryForMap(SELECT_HEALTH, FIXTURE_USER_ID);
+                assertEquals(5, row.get("login"));
+                assertEquals(2, row.get("loginFail"));
+                assertEquals(false, row.get("active"));
+                assertEquals(FIXTURE_GROUP_ID, row.get("groupId"));
+                // others are not updated.
+                assertEquals(1, jdbc.queryForMap(SELECT_HEALTH, FIXTURE_OTHER_USER_ID).get("login"));
+            }
+        });
+    }
+
+    /**
+     * login counts are added per user by a batch.
+     */
+    @Test
+    public void recordLogins() {
+        final JdbcHealthDao target = resource.getInjector().getInstance(JdbcHealthDao.class);
+        final JdbcTemplate jdbc = new JdbcTemplate(resource.getDataSource());
+        resource.rollback(new TransactionCallbackWithoutResult() {
+            @Override
+            protected void doInTransactionWithoutResult(TransactionStatus status) {
+                resource.insertFixture();
+                Date now = new Date();
+                target.recordLogins(Arrays.asList(new LoginCount(FIXTURE_USER_ID).add(3, now),
+                                                  new LoginCount(FIXTURE_OTHER_USER_ID).add(1, now)));
+                assertEquals(4, jdbc.queryForMap(SELECT_HEALTH, FIXTURE_USER_ID).get("login"));
+                assertEquals(2, jdbc.queryForMap(SELECT_HEALTH, FIXTURE_OTHER_USER_ID).get("login"));
+                assertEquals(FIXTURE_GROUP_ID, jdbc.queryForMap(SELECT_HEALTH, FIXTURE_USER_ID).get("groupId"));
+            }
+        });
+    }
+}
@@ -0,0 +1,109 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package jp.dip.komusubi.lunch.module.dao.monitor;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+
+import org.apache.commons.dbcp.BasicDataSource;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * pool data source unit test.
+ * @author jun.ozeki
+ */
+public class PoolDataSourceTest {
+
+    private PoolDataSource target;
+
+    @Before
+    public void before() {
+        BasicDataSource dataSource = new BasicDataSource();
+        dataSource.setUrl("jdbc:h2:mem:pool");
+        dataSource.setUsername("sa");
+        dataSource.setPassword("");
+        dataSource.setMaxActive(1);
+        dataSource.setMaxWait(10);
+        target = new PoolDataSource(dataSource, 1);
+    }
+
+    @After
+    public void after() {
+        target.close();
+    }
+
+    /**
+     * connection held over threshold is leaked until closed.
+     * @throws Exception
+     */
+    @Test
+    public void leak() throws Exception {
+        Connection connection = target.getConnection();
+        Thread.sleep(5);
+        assertEquals(1, target.getActive());
+        assertEquals(1, target.getLeaks().size());
+        assertEquals(0, target.getLeaks().get(0).getStackTrace().length);
+        connection.close();
+        assertEquals(0, target.getActive());
+        assertEquals(0, target.getLeaks().size());
+        assertEquals(1, target.getWaitTime().getCount());
+    }
+
+    /**
+     * stack trace of borrower is captured if traced.
+     * @throws Exception
+     */
+    @Test
+    public void leakStackTrace() throws Exception {
+        BasicDataSource dataSource = new BasicDataSource();
+        dataSource.setUrl("jdbc:h2:mem:pool");
+        dataSource.setUsername("sa");
+        dataSource.setPassword("");
+        PoolDataSource traced = new PoolDataSource(dataSource, 1, true);
+        try (Connection connection = traced.getConnection()) {
+            Thread.sleep(5);
+            assertTrue(traced.getLeaks().get(0).getStackTrace().length > 0);
+        } finally {
+            traced.close();
+        }
+    }
+
+    /**
+     * wait timeout is counted as failure.
+     * @throws Exception
+     */
+    @Test
+    public void exhausted() throws Exception {
+        try (Connection connection = target.getConnection()) {
+            try {
+                target.getConnection();
+            } catch (SQLException e) {
+                // pool exhausted
+            }
+        }
+        assertEquals(1, target.getFailures());
+        assertEquals(2, target.getBorrowed() + target.getFailures());
+        assertEquals(0, target.getWaiters());
+    }
+}
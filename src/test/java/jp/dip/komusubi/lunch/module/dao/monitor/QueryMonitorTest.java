@@ -0,0 +1,126 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package jp.dip.komusubi.lunch.module.dao.monitor;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import jp.dip.komusubi.lunch.module.dao.monitor.QueryMonitor.Statistics;
+
+import org.apache.commons.dbcp.BasicDataSource;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+/**
+ * query monitor unit test.
+ * @author jun.ozeki
+ */
+public class QueryMonitorTest {
+
+    private BasicDataSource dataSource;
+    private QueryMonitor target;
+    private JdbcTemplate template;
+
+    @Before
+    public void before() {
+        dataSource = new BasicDataSource();
+        dataSource.setUrl("jdbc:h2:mem:monitor;DB_CLOSE_DELAY=-1");
+        dataSource.setUsername("sa");
+        dataSource.setPassword("");
+        dataSource.setDefaultAutoCommit(true);
+        target = new QueryMonitor(true, 3);
+        template = new JdbcTemplate(new MonitoredDataSource(dataSource, target));
+        template.execute("create table if not exists shops (id varchar(64))");
+        template.execute("delete from shops");
+    }
+
+    @After
+    public void after() throws Exception {
+        dataSource.close();
+    }
+
+    /**
+     * count statements and rows in scope.
+     * @throws Exception
+     */
+    @Test
+    public void inScope() throws Exception {
+        target.begin();
+        template.update("insert into shops (id) values (?)", "tamagoya");
+        template.update("insert into shops (id) values (?)", "fresh-lunch");
+        assertEquals(2, template.queryForList("select id from shops", String.class).size());
+        Statistics statistics = target.end("request:Home");
+        assertEquals(3, statistics.getStatements());
+        assertEquals(4, statistics.getRows());
+        assertEquals(0, target.getOverBudget());
+        assertEquals(1, target.getMetrics().get("request:Home").getStatements().getCount());
+        assertFalse(target.isActive());
+    }
+
+    /**
+     * statement is counted in all of nested scopes, and budget is for outermost scope.
+     * @throws Exception
+     */
+    @Test
+    public void nestedScopeOverBudget() throws Exception {
+        target.begin();
+        template.update("insert into shops (id) values (?)", "tamagoya");
+        target.begin();
+        template.queryForList("select id from shops", String.class);
+        template.queryForList("select id from shops", String.class);
+        template.queryForList("select id from shops", String.class);
+        assertEquals(3, target.end("dao:JdbcShopDao#findAll").getStatements());
+        assertEquals(0, target.getOverBudget());
+        assertTrue(target.isActive());
+        assertEquals(4, target.end("request:Home").getStatements());
+        assertEquals(1, target.getOverBudget());
+    }
+
+    /**
+     * out of scope, only totals are counted.
+     * @throws Exception
+     */
+    @Test
+    public void outOfScope() throws Exception {
+        long statements = target.getStatements();
+        template.queryForList("select id from shops", String.class);
+        assertEquals(statements + 1, target.getStatements());
+        assertNull(target.end("request:Home"));
+    }
+
+    /**
+     * histogram percentile is upper bound of power of two bucket.
+     * @throws Exception
+     */
+    @Test
+    public void histogram() throws Exception {
+        Histogram histogram = new Histogram();
+        for (int i = 1; i <= 100; i++)
+            histogram.record(i);
+        assertEquals(100, histogram.getCount());
+        assertEquals(1, histogram.getMin());
+        assertEquals(100, histogram.getMax());
+        assertEquals(50.5d, histogram.getMean(), 0.01d);
+        assertEquals(63, histogram.getPercentile(50));
+        assertEquals(100, histogram.getPercentile(99));
+    }
+}
@@ -0,0 +1,137 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package jp.dip.komusubi.lunch.module.event;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import jp.dip.komusubi.lunch.module.event.EventBus.Events;
+import jp.dip.komusubi.lunch.module.event.OrderEvent.Type;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * event bus unit test.
+ * @author jun.ozeki
+ */
+public class EventBusTest {
+
+    private EventBus target;
+    private ExecutorService executor;
+
+    @Before
+    public void before() {
+        target = new EventBus(2, 5000L, 10);
+        executor = Executors.newCachedThreadPool();
+    }
+
+    @After
+    public void after() {
+        target.stop();
+        executor.shutdownNow();
+    }
+
+    /**
+     * events after the sequence are returned without waiting.
+     * @throws Exception
+     */
+    @Test
+    public void pollPublished() throws Exception {
+        long since = target.getSequence(10);
+        target.publish(event(Type.PLACED, 10, 1));
+        target.publish(event(Type.PLACED, 20, 2));
+        Events events = target.poll(10, since);
+        assertEquals(1, events.getEvents().size());
+        assertEquals(1, events.getEvents().get(0).getOrderId());
+        assertEquals(events.getEvents().get(0).getSequence(), events.getSequence());
+        assertFalse(events.isReset());
+    }
+
+    /**
+     * an event wakes all subscribers of the group.
+     * @throws Exception
+     */
+    @Test
+    public void fanOut() throws Exception {
+        final long since = target.getSequence(10);
+        List<Future<Events>> futures = new ArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            futures.add(executor.submit(new Callable<Events>() {
+                @Override
+                public Events call() throws Exception {
+                    return target.poll(10, since);
+                }
+            }));
+        }
+        while (target.getWaiters() < 3)
+            Thread.sleep(10);
+        target.publish(event(Type.CANCELLED, 10, 3));
+        for (Future<Events> future: futures) {
+            Events events = future.get(1, TimeUnit.SECONDS);
+            assertEquals(1, events.getEvents().size());
+            assertEquals(Type.CANCELLED, events.getEvents().get(0).getType());
+        }
+        assertEquals(0, target.getWaiters());
+    }
+
+    /**
+     * dropped events over capacity are notified by reset.
+     * @throws Exception
+     */
+    @Test
+    public void reset() throws Exception {
+        long since = target.getSequence(10);
+        for (int i = 1; i <= 3; i++)
+            target.publish(event(Type.PLACED, 10, i));
+        Events events = target.poll(10, since);
+        assertTrue(events.isReset());
+        assertEquals(2, events.getEvents().size());
+        assertEquals(2, events.getEvents().get(0).getOrderId());
+    }
+
+    /**
+     * poll over max waiters is rejected without waiting.
+     * @throws Exception
+     */
+    @Test
+    public void rejected() throws Exception {
+        target = new EventBus(2, 5000L, 0);
+        long since = target.getSequence(10);
+        Events events = target.poll(10, since);
+        assertTrue(events.isRejected());
+        assertEquals(since, events.getSequence());
+        target.publish(event(Type.PLACED, 10, 1));
+        assertFalse(target.poll(10, since).isRejected());
+    }
+
+    private OrderEvent event(Type type, Integer groupId, int orderId) {
+        return new OrderEvent(type, groupId, orderId, 1, "tamagoya", 450, null);
+    }
+}
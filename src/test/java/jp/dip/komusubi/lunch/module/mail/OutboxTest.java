@@ -0,0 +1,153 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package jp.dip.komusubi.lunch.module.mail;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import jp.dip.komusubi.lunch.service.MockSmtpServer;
+
+import org.junit.After;
+import org.junit.Test;
+import org.komusubi.common.protocol.smtp.MailContent;
+import org.komusubi.common.protocol.smtp.MailMessage;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+/**
+ * outbox unit test.
+ * @author jun.ozeki
+ */
+public class OutboxTest {
+
+    private Outbox target;
+
+    @After
+    public void after() {
+        if (target != null)
+            target.stop();
+    }
+
+    private MailMessage newMail() {
+        MailContent content = new MailContent();
+        content.setSubject("subject");
+        content.setBody("body");
+        MailMessage mail = new MailMessage();
+        mail.setContent(content);
+        return mail;
+    }
+
+    private void await(MockSmtpServer smtp) throws InterruptedException {
+        for (int i = 0; i < 100 && smtp.getMailMessage() == null; i++)
+            Thread.sleep(50);
+    }
+
+    /**
+     * sent by worker.
+     * @throws Exception
+     */
+    @Test
+    public void post() throws Exception {
+        MockSmtpServer smtp = new MockSmtpServer();
+        target = new Outbox(smtp);
+        MailMessage mail = newMail();
+        assertTrue(target.post(mail));
+        await(smtp);
+        assertSame(mail, smtp.getMailMessage());
+    }
+
+    /**
+     * retry after failure.
+     * @throws Exception
+     */
+    @Test
+    public void retry() throws Exception {
+        MockSmtpServer smtp = new MockSmtpServer() {
+            private static final long serialVersionUID = 1L;
+            private int count;
+
+            @Override
+            public void send(MailMessage message) {
+                if (count++ < 2)
+                    throw new IllegalStateException("smtp server is busy.");
+                super.send(message);
+            }
+        };
+        target = new Outbox(smtp, 10, 1, 3, 10L);
+        target.post(newMail());
+        await(smtp);
+        assertNotNull(smtp.getMailMessage());
+        assertEquals(2, target.getRetried());
+        assertEquals(0, target.getFailed());
+    }
+
+    /**
+     * rejected when outbox is full.
+     * @throws Exception
+     */
+    @Test
+    public void full() throws Exception {
+        final Object lock = new Object();
+        MockSmtpServer smtp = new MockSmtpServer() {
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            public void send(MailMessage message) {
+                synchronized (lock) {
+                    super.send(message);
+                }
+            }
+        };
+        target = new Outbox(smtp, 1, 1, 1, 10L);
+        synchronized (lock) {
+            assertTrue(target.post(newMail()));
+            for (int i = 0; i < 100 && target.getPending() > 0; i++)
+                Thread.sleep(10);
+            assertTrue(target.post(newMail()));
+            assertFalse(target.post(newMail()));
+        }
+        assertEquals(1, target.getRejected());
+    }
+
+    /**
+     * space is reserved in a transaction, and released on rollback.
+     * @throws Exception
+     */
+    @Test
+    public void reserveInTransaction() throws Exception {
+        MockSmtpServer smtp = new MockSmtpServer();
+        target = new Outbox(smtp, 1, 1, 1, 10L);
+        TransactionSynchronizationManager.initSynchronization();
+        try {
+            assertTrue(target.post(newMail()));
+            assertFalse(target.post(newMail()));
+            for (TransactionSynchronization synchronization: TransactionSynchronizationManager.getSynchronizations())
+                synchronization.afterCompletion(TransactionSynchronization.STATUS_ROLLED_BACK);
+        } finally {
+            TransactionSynchronizationManager.clearSynchronization();
+        }
+        MailMessage mail = newMail();
+        assertTrue(target.post(mail));
+        await(smtp);
+        assertSame(mail, smtp.getMailMessage());
+        assertEquals(1, target.getRejected());
+    }
+}
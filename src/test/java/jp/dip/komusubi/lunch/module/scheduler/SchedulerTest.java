@@ -0,0 +1,107 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package jp.dip.komusubi.lunch.module.scheduler;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Calendar;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * scheduler unit test.
+ * @author jun.ozeki
+ */
+public class SchedulerTest {
+
+    private Scheduler target;
+
+    @Before
+    public void before() {
+        target = new Scheduler();
+        target.start();
+    }
+
+    @After
+    public void after() {
+        target.stop();
+    }
+
+    /**
+     * delay until today or tomorrow.
+     * @throws Exception
+     */
+    @Test
+    public void delay() throws Exception {
+        Calendar now = Calendar.getInstance();
+        now.set(2013, Calendar.JUNE, 14, 5, 30, 0);
+        now.set(Calendar.MILLISECOND, 0);
+        assertEquals(TimeUnit.MINUTES.toMillis(30), Scheduler.delay(now, 6, 0));
+        assertEquals(TimeUnit.HOURS.toMillis(24), Scheduler.delay(now, 5, 30));
+        assertEquals(TimeUnit.MINUTES.toMillis(23 * 60 + 30), Scheduler.delay(now, 5, 0));
+    }
+
+    /**
+     * run on start and keep status.
+     * @throws Exception
+     */
+    @Test
+    public void runOnStart() throws Exception {
+        final CountDownLatch latch = new CountDownLatch(1);
+        JobStatus status = target.scheduleDaily("test", new Callable<String>() {
+            @Override
+            public String call() throws Exception {
+                latch.countDown();
+                return "done";
+            }
+        }, "06:00", true);
+        assertTrue(latch.await(5, TimeUnit.SECONDS));
+        target.stop();
+        assertEquals(1, status.getRunCount());
+        assertEquals("done", status.getLastResult());
+    }
+
+    /**
+     * next daily run does not keep stop waiting.
+     * @throws Exception
+     */
+    @Test
+    public void stopPromptly() throws Exception {
+        final CountDownLatch latch = new CountDownLatch(1);
+        target.scheduleDaily("test", new Callable<String>() {
+            @Override
+            public String call() throws Exception {
+                latch.countDown();
+                return "done";
+            }
+        }, "06:00", true);
+        assertTrue(latch.await(5, TimeUnit.SECONDS));
+        long start = System.nanoTime();
+        target.stop();
+        assertTrue(TimeUnit.NANOSECONDS.toSeconds(System.nanoTime() - start) < 5);
+        assertFalse(target.isStarted());
+    }
+}
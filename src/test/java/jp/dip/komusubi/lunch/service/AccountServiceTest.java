@@ -19,21 +19,42 @@
 package jp.dip.komusubi.lunch.service;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyBoolean;
+import static org.mockito.Matchers.anyCollectionOf;
+import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.Date;
+import java.util.List;
 
 import javax.servlet.ServletContext;
 import javax.servlet.ServletContextEvent;
 
+import jp.dip.komusubi.lunch.LunchException;
 import jp.dip.komusubi.lunch.MockBootstrap;
+import jp.dip.komusubi.lunch.model.Group;
+import jp.dip.komusubi.lunch.model.Order;
+import jp.dip.komusubi.lunch.model.OrderLine;
+import jp.dip.komusubi.lunch.model.OrderLine.OrderLineKey;
+import jp.dip.komusubi.lunch.model.Product;
+import jp.dip.komusubi.lunch.model.Receipt;
+import jp.dip.komusubi.lunch.model.Shop;
 import jp.dip.komusubi.lunch.model.User;
 import jp.dip.komusubi.lunch.module.DefaultNonce;
+import jp.dip.komusubi.lunch.module.dao.OrderDao;
+import jp.dip.komusubi.lunch.module.dao.ReceiptDao;
 import jp.dip.komusubi.lunch.module.dao.UserDao;
+import jp.dip.komusubi.lunch.module.mail.Outbox;
 import jp.dip.komusubi.lunch.module.resolver.DateResolver;
 import jp.dip.komusubi.lunch.module.resolver.DigestResolver;
+import jp.dip.komusubi.lunch.service.AccountService.ReceiveReport;
 import jp.dip.komusubi.lunch.util.Nonce;
 import junitx.util.PrivateAccessor;
 
@@ -42,6 +63,7 @@ import org.junit.Before;
 import org.junit.Test;
 import org.komusubi.common.protocol.smtp.MailMessage;
 import org.komusubi.common.util.Resolver;
+import org.mockito.InOrder;
 import org.mockito.Mockito;
 
 import com.google.inject.AbstractModule;
@@ -87,22 +109,16 @@ public class AccountServiceTest {
 		komusubi.getHealth().setActive(true);
 		
 		UserDao mock = Mockito.mock(UserDao.class);
-		when(mock.findByEmail(email)).thenReturn(komusubi);
+		when(mock.findByEmailWithHealth(email)).thenReturn(komusubi);
 
 		AccountService target = new AccountService(mock, 
 									new DigestResolver(), 
 									new MockSmtpServer(),
-									new DateResolver()) {
-			private static final long serialVersionUID = -2096190310264111713L;
-
-			@Override
-			protected void temporarySupply() {
-				// nothing to do
-			}
-		};
+									new DateResolver());
 		assertTrue(target.signIn(email, plainPassword));
 		
-		verify(mock).findByEmail(email);
+		verify(mock).findByEmailWithHealth(email);
+		verify(mock).recordLogin(komusubi.getHealth());
 	}
 	
 	@Test
@@ -123,4 +139,130 @@ public class AccountServiceTest {
 		assertEquals(admin.toString(), message.getFrom().toString());
 		assertEquals("確認メール", message.getContent().getSubject());
 	}
+
+	@Test
+	@SuppressWarnings("unchecked")
+	public void receiveOrders() throws Throwable {
+		Group group = new Group(10);
+		Shop shop = new Shop("tamagoya");
+		Product product = new Product("p1").setShop(shop).setAmount(450);
+		User receiver = new User(1);
+		receiver.getHealth().setGroup(group);
+		User other = new User(2);
+		other.getHealth().setGroup(group);
+		Order order1 = newOrder(1, receiver, group, shop, product);
+		Order order2 = newOrder(2, other, group, shop, product).setCancel(true);
+		Order order3 = newOrder(3, other, new Group(20), shop, product);
+		Order order4 = newOrder(4, other, group, shop, product);
+		Order order6 = newOrder(6, other, group, shop, product);
+		List<Integer> orderIds = Arrays.asList(1, 2, 3, 4, 5, 6);
+
+		OrderDao orderDao = Mockito.mock(OrderDao.class);
+		when(orderDao.findByIds(orderIds)).thenReturn(Arrays.asList(order1, order2, order3, order4, order6));
+		ReceiptDao receiptDao = Mockito.mock(ReceiptDao.class);
+		when(receiptDao.findReceivedOrderIds(Arrays.asList(1, 2, 3, 4, 6))).thenReturn(Collections.singleton(4));
+		AccountService target = new AccountService(Mockito.mock(UserDao.class),
+									new DigestResolver(),
+									new MockSmtpServer(),
+									new DateResolver());
+		PrivateAccessor.setField(target, "orderDao", orderDao);
+		PrivateAccessor.setField(target, "receiptDao", receiptDao);
+
+		ReceiveReport report = target.receiveOrders(receiver, orderIds, "thanks");
+		InOrder inOrder = Mockito.inOrder(orderDao, receiptDao);
+		inOrder.verify(orderDao).lockByIds(Arrays.asList(1, 2, 3, 4, 6));
+		inOrder.verify(receiptDao).findReceivedOrderIds(Arrays.asList(1, 2, 3, 4, 6));
+		inOrder.verify(receiptDao).persistAll(anyCollectionOf(Receipt.class));
+		assertEquals(2, report.getReceiptCount());
+		assertEquals(900, report.getAmount(1));
+		assertEquals(900, report.getAmount(2));
+		assertEquals(Arrays.asList(5, 2, 3, 4), report.getSkipped());
+		Receipt receipt = report.getReceipts().get(2).get(0);
+		assertEquals(Integer.valueOf(6), receipt.getOrderId());
+		assertEquals("thanks", receipt.getLine(0).getMemo());
+	}
+
+	@Test
+	public void receiveForeignSummary() throws Throwable {
+		Group group = new Group(10);
+		User receiver = new User(1);
+		receiver.getHealth().setGroup(group);
+		Order summary = new Order(7)
+							.setGroup(new Group(20))
+							.setShop(new Shop("tamagoya"))
+							.setSummary(true);
+
+		OrderDao orderDao = Mockito.mock(OrderDao.class);
+		when(orderDao.findByIds(Collections.singletonList(7))).thenReturn(Collections.singletonList(summary));
+		AccountService target = new AccountService(Mockito.mock(UserDao.class),
+									new DigestResolver(),
+									new MockSmtpServer(),
+									new DateResolver());
+		PrivateAccessor.setField(target, "orderDao", orderDao);
+		PrivateAccessor.setField(target, "receiptDao", Mockito.mock(ReceiptDao.class));
+
+		ReceiveReport report = target.receiveSummary(receiver, 7, "thanks");
+		verify(orderDao, never()).findByGroupIdAndDate(any(Integer.class), any(Date.class), anyBoolean());
+		assertEquals(0, report.getReceiptCount());
+		assertEquals(Collections.singletonList(7), report.getSkipped());
+	}
+
+	@Test
+	public void approveRejectedByOutbox() throws Throwable {
+		UserDao userDao = Mockito.mock(UserDao.class);
+		AccountService target = new AccountService(userDao, new DigestResolver(), new MockSmtpServer(), new DateResolver());
+		PrivateAccessor.setField(target, "outbox", fullOutbox());
+		User admitter = new User(1)
+							.setName("admitter")
+							.setNickname("admin")
+							.setGroup(new Group(10).setCode("komusubi").setName("こむすび"));
+		User applicant = new User(2)
+							.setName("applicant")
+							.setEmail("applicant@email.com");
+		try {
+			target.approve(admitter, applicant, "welcome", null);
+			fail("approve must throw if mail is not accepted.");
+		} catch (IllegalStateException e) {
+			// rollback by @Transactional
+		}
+	}
+
+	@Test
+	public void declineRejectedByOutbox() throws Throwable {
+		AccountService target = new AccountService(Mockito.mock(UserDao.class), new DigestResolver(), new MockSmtpServer(), new DateResolver());
+		PrivateAccessor.setField(target, "outbox", fullOutbox());
+		User admitter = new User(1)
+							.setName("admitter")
+							.setNickname("admin");
+		User applicant = new User(2)
+							.setName("applicant")
+							.setEmail("applicant@email.com");
+		assertFalse(target.decline(admitter, applicant, "sorry"));
+	}
+
+	@Test(expected = LunchException.class)
+	public void remindRejectedByOutbox() throws Throwable {
+		String email = "komusubi@email.com";
+		UserDao userDao = Mockito.mock(UserDao.class);
+		when(userDao.findByEmail(email)).thenReturn(new User(1).setName("こむすび").setEmail(email));
+		AccountService target = new AccountService(userDao, new DigestResolver(), new MockSmtpServer(), new DateResolver());
+		PrivateAccessor.setField(target, "outbox", fullOutbox());
+		target.remind(email, "http://www.domain.com/base");
+	}
+
+	private Outbox fullOutbox() {
+		Outbox outbox = Mockito.mock(Outbox.class);
+		when(outbox.post(any(MailMessage.class))).thenReturn(false);
+		return outbox;
+	}
+
+	private Order newOrder(int id, User user, Group group, Shop shop, Product product) {
+		return new Order(id)
+					.setUser(user)
+					.setGroup(group)
+					.setShop(shop)
+					.addLine(new OrderLine(new OrderLineKey(id, 1))
+									.setProduct(product)
+									.setQuantity(2));
+	}
 }
@@ -0,0 +1,105 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package jp.dip.komusubi.lunch.service;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.when;
+
+import java.util.Date;
+
+import jp.dip.komusubi.lunch.model.Health;
+import jp.dip.komusubi.lunch.model.Role;
+import jp.dip.komusubi.lunch.model.User;
+import jp.dip.komusubi.lunch.module.dao.UserDao;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.komusubi.common.util.Resolver;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+
+/**
+ * api token unit test.
+ * @author jun.ozeki
+ */
+public class AuthenticatorTest {
+
+    @Mock private UserDao userDao;
+    @Mock private Resolver<Date> dateResolver;
+    private Authenticator target;
+    private User user;
+
+    @Before
+    public void before() {
+        MockitoAnnotations.initMocks(this);
+        target = new Authenticator(userDao, dateResolver, "secret", 1000L);
+        user = new User(10).setHealth(new Health().setActive(true));
+        when(userDao.find(10)).thenReturn(user);
+        when(dateResolver.resolve()).thenReturn(new Date(0L));
+    }
+
+    @Test
+    public void verify() {
+        String token = target.issue(user);
+        assertEquals(user, target.verify(token));
+    }
+
+    @Test
+    public void expired() {
+        String token = target.issue(user);
+        when(dateResolver.resolve()).thenReturn(new Date(1001L));
+        assertNull(target.verify(token));
+    }
+
+    @Test
+    public void tampered() {
+        String token = target.issue(user);
+        String other = new Authenticator(userDao, dateResolver, "other", 1000L).issue(user);
+        assertNull(target.verify(other));
+        assertNull(target.verify(token.substring(1)));
+        assertNull(target.verify("nonsense"));
+    }
+
+    @Test
+    public void bearer() {
+        String token = target.issue(user);
+        assertEquals(user, target.verifyBearer("Bearer " + token));
+        assertNull(target.verifyBearer(token));
+        assertNull(target.verifyBearer(null));
+    }
+
+    @Test
+    public void admin() {
+        target = new Authenticator(userDao, dateResolver, "secret", 1000L, "ops@example.com, Admin@example.com");
+        assertTrue(target.isAdmin(new User(1).setEmail("admin@example.com")));
+        assertFalse(target.isAdmin(new User(2).setEmail("user@example.com")));
+        assertTrue(target.isAdmin(new User(3).setEmail("user@example.com").addRoles(Role.ADMIN)));
+        assertFalse(new Authenticator(userDao, dateResolver, "secret", 1000L).isAdmin(user));
+    }
+
+    @Test
+    public void locked() {
+        String token = target.issue(user);
+        user.getHealth().setActive(false);
+        assertNull(target.verify(token));
+    }
+}
@@ -0,0 +1,117 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package jp.dip.komusubi.lunch.service;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.util.Date;
+
+import javax.ws.rs.WebApplicationException;
+
+import jp.dip.komusubi.lunch.model.Group;
+import jp.dip.komusubi.lunch.model.User;
+import jp.dip.komusubi.lunch.module.dao.monitor.PoolDataSource;
+import jp.dip.komusubi.lunch.module.dao.monitor.QueryMonitor;
+import jp.dip.komusubi.lunch.module.scheduler.Scheduler;
+import jp.dip.komusubi.lunch.wicket.SessionMonitor;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+
+/**
+ * back office resource unit test.
+ * @author jun.ozeki
+ */
+public class BackOfficeResourceTest {
+
+    @Mock private Authenticator auth;
+    @Mock private Scheduler scheduler;
+    @Mock private QueryMonitor queryMonitor;
+    @Mock private PoolDataSource poolDataSource;
+    @Mock private BackOffice backOffice;
+    @Mock private SessionMonitor sessionMonitor;
+    @Mock private BillingExport billingExport;
+    private BackOfficeResource target;
+    private User admin;
+    private User member;
+
+    @Before
+    public void before() {
+        MockitoAnnotations.initMocks(this);
+        target = new BackOfficeResource(auth, scheduler, queryMonitor, poolDataSource,
+                backOffice, sessionMonitor, billingExport);
+        admin = new User(1).setGroup(new Group(10));
+        member = new User(2).setGroup(new Group(10));
+        when(auth.verifyBearer("Bearer admin")).thenReturn(admin);
+        when(auth.verifyBearer("Bearer member")).thenReturn(member);
+        when(auth.isAdmin(admin)).thenReturn(true);
+    }
+
+    @Test
+    public void unauthorized() {
+        try {
+            target.readPool(null);
+            fail();
+        } catch (WebApplicationException e) {
+            assertEquals(401, e.getResponse().getStatus());
+        }
+    }
+
+    @Test
+    public void forbidden() {
+        try {
+            target.rebuildCounters("Bearer member", "20130801", null);
+            fail();
+        } catch (WebApplicationException e) {
+            assertEquals(403, e.getResponse().getStatus());
+        }
+        verify(backOffice, never()).rebuildDailyCounters(any(Date.class), any(Date.class));
+    }
+
+    @Test
+    public void rebuildCounters() {
+        when(backOffice.rebuildDailyCounters(any(Date.class), any(Date.class))).thenReturn(3);
+        assertEquals("rebuilt: 3\n", target.rebuildCounters("Bearer admin", "20130801", "20130802"));
+    }
+
+    @Test
+    public void readBilling() {
+        assertEquals(200, target.readBilling("Bearer member", 10, "201308", null).getStatus());
+        assertEquals(200, target.readBilling("Bearer admin", 20, "201308", "json").getStatus());
+        try {
+            target.readBilling("Bearer member", 20, "201308", null);
+            fail();
+        } catch (WebApplicationException e) {
+            assertEquals(403, e.getResponse().getStatus());
+        }
+    }
+
+    @Test
+    public void readScheduler() {
+        when(scheduler.isStarted()).thenReturn(true);
+        assertEquals("started: true\n", target.readScheduler("Bearer admin"));
+    }
+}
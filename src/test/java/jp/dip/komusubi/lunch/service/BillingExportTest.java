@@ -0,0 +1,112 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package jp.dip.komusubi.lunch.service;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+
+import java.io.StringWriter;
+import java.util.Date;
+
+import jp.dip.komusubi.lunch.module.dao.BillingLine;
+import jp.dip.komusubi.lunch.module.dao.ReceiptDao;
+import jp.dip.komusubi.lunch.service.BillingExport.Format;
+
+import org.apache.commons.lang3.time.DateUtils;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+
+/**
+ * billing export unit test.
+ * @author jun.ozeki
+ */
+public class BillingExportTest {
+
+	private Date month;
+	private BillingExport target;
+
+	@Before
+	public void before() throws Exception {
+		month = DateUtils.parseDate("20130801", "yyyyMMdd");
+		ReceiptDao receiptDao = mock(ReceiptDao.class);
+		doAnswer(new Answer<Integer>() {
+			@Override
+			public Integer answer(InvocationOnMock invocation) throws Throwable {
+				BillingLine.Handler handler = (BillingLine.Handler) invocation.getArguments()[2];
+				// same instance is reused for each line.
+				BillingLine line = new BillingLine();
+				handler.processLine(line.setReceiptId(1).setNo(1).setOrderId(10).setUserId(3)
+						.setUserName("komusubi, jun").setShopId("tamagoya").setProductId("p1")
+						.setProductName("lunch \"A\"").setQuantity(2).setAmount(900));
+				handler.processLine(line.setNo(2).setUserName("=1+2").setProductId("p2").setProductName("lunch B")
+						.setQuantity(1).setAmount(450));
+				return 2;
+			}
+		}).when(receiptDao).scanBillingByGroupAndMonth(eq(1), eq(month), any(BillingLine.Handler.class));
+		target = new BillingExport(receiptDao);
+	}
+
+	/**
+	 * csv has header and a line per row, values are quoted if necessary.
+	 * @throws Exception
+	 */
+	@Test
+	public void exportCsv() throws Exception {
+		StringWriter writer = new StringWriter();
+		assertEquals(2, target.export(1, month, Format.CSV, writer));
+		String[] lines = writer.toString().split("\r\n");
+		assertEquals(3, lines.length);
+		assertTrue(lines[0].startsWith("receiptId,no,orderId,"));
+		assertEquals("1,1,10,,3,\"komusubi, jun\",,tamagoya,,p1,\"lunch \"\"A\"\"\",2,900", lines[1]);
+		assertTrue(lines[2].endsWith(",p2,lunch B,1,450"));
+	}
+
+	/**
+	 * value might be a formula is not evaluated by spreadsheets.
+	 * @throws Exception
+	 */
+	@Test
+	public void exportCsvFormula() throws Exception {
+		StringWriter writer = new StringWriter();
+		target.export(1, month, Format.CSV, writer);
+		String[] lines = writer.toString().split("\r\n");
+		assertTrue(lines[2], lines[2].startsWith("1,2,10,,3,'=1+2,,tamagoya,"));
+	}
+
+	/**
+	 * json has lines, count and total amount.
+	 * @throws Exception
+	 */
+	@Test
+	public void exportJson() throws Exception {
+		StringWriter writer = new StringWriter();
+		assertEquals(2, target.export(1, month, Format.JSON, writer));
+		String json = writer.toString();
+		assertTrue(json, json.startsWith("{\"groupId\":1,\"month\":\"2013-08\",\"lines\":[{\"receiptId\":1,"));
+		assertTrue(json, json.contains("\"productName\":\"lunch \\\"A\\\"\""));
+		assertTrue(json, json.contains("},{\"receiptId\":1,\"no\":2,"));
+		assertTrue(json, json.endsWith("],\"count\":2,\"amount\":1350}"));
+	}
+}
@@ -0,0 +1,117 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package jp.dip.komusubi.lunch.service;
+
+import static org.junit.Assert.assertEquals;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.util.Arrays;
+import java.util.Calendar;
+import java.util.Date;
+import java.util.List;
+
+import jp.dip.komusubi.lunch.model.Product;
+import jp.dip.komusubi.lunch.model.Shop;
+import jp.dip.komusubi.lunch.module.dao.ProductBatchDao;
+
+import org.apache.commons.lang3.time.DateUtils;
+import org.junit.Before;
+import org.junit.Test;
+import org.komusubi.common.util.Resolver;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+
+/**
+ * menu calendar unit test.
+ * @author jun.ozeki
+ */
+public class MenuCalendarTest {
+
+    @Mock private ProductBatchDao productDao;
+    @Mock private Resolver<Date> dateResolver;
+    private MenuCalendar target;
+    private Date today;
+    private Shop shop = new Shop("tamagoya");
+
+    @Before
+    public void before() {
+        MockitoAnnotations.initMocks(this);
+        today = DateUtils.truncate(new Date(), Calendar.DATE);
+        // 9:00 today
+        when(dateResolver.resolve()).thenReturn(DateUtils.addHours(today, 9));
+        target = new MenuCalendar(productDao, dateResolver, 14, 60000L);
+    }
+
+    private Product product(String id, Date day) {
+        return new Product(id).setShop(shop).setFinish(DateUtils.addHours(day, 10));
+    }
+
+    /**
+     * index is built by a query and products are found by finish date time.
+     * @throws Exception
+     */
+    @Test
+    public void deadlineProducts() throws Exception {
+        List<Product> products = Arrays.asList(product("today", today),
+                product("tomorrow1", DateUtils.addDays(today, 1)), product("tomorrow2", DateUtils.addDays(today, 1)));
+        when(productDao.findByFinishPeriod(any(Date.class), any(Date.class))).thenReturn(products);
+
+        assertEquals(1, target.getDeadlineTimeProducts("tamagoya", DateUtils.addHours(today, 9)).size());
+        assertEquals(0, target.getDeadlineTimeProducts("tamagoya", DateUtils.addHours(today, 11)).size());
+        assertEquals(2, target.getDeadlineProducts("tamagoya", DateUtils.addDays(today, 1)).size());
+        assertEquals(0, target.getDeadlineProducts("fresh", today).size());
+        verify(productDao, times(1)).findByFinishPeriod(today, DateUtils.addDays(today, 15));
+        verify(productDao, never()).findByShopIdAndFinishDate(anyString(), any(Date.class));
+    }
+
+    /**
+     * next orderable day skips days which have no product, e.g. weekend.
+     * @throws Exception
+     */
+    @Test
+    public void nextProducts() throws Exception {
+        List<Product> products = Arrays.asList(product("today", today),
+                product("3days", DateUtils.addDays(today, 3)), product("4days", DateUtils.addDays(today, 4)));
+        when(productDao.findByFinishPeriod(any(Date.class), any(Date.class))).thenReturn(products);
+
+        List<Product> next = target.getNextProducts("tamagoya", DateUtils.addHours(today, 15));
+        assertEquals(1, next.size());
+        assertEquals("3days", next.get(0).getId());
+        assertEquals(0, target.getNextProducts("fresh", today).size());
+    }
+
+    /**
+     * invalidated index is rebuilt on next access.
+     * @throws Exception
+     */
+    @Test
+    public void invalidate() throws Exception {
+        when(productDao.findByFinishPeriod(any(Date.class), any(Date.class)))
+                .thenReturn(Arrays.<Product>asList(), Arrays.asList(product("today", today)));
+        assertEquals(0, target.getDeadlineProducts("tamagoya", today).size());
+        target.invalidate();
+        assertEquals(1, target.getDeadlineProducts("tamagoya", today).size());
+        verify(productDao, times(2)).findByFinishPeriod(any(Date.class), any(Date.class));
+    }
+}
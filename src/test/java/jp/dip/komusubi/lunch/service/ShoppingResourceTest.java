@@ -0,0 +1,261 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package jp.dip.komusubi.lunch.service;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyCollectionOf;
+import static org.mockito.Matchers.anyInt;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+
+import javax.ws.rs.WebApplicationException;
+import javax.ws.rs.core.Response;
+
+import jp.dip.komusubi.lunch.model.Group;
+import jp.dip.komusubi.lunch.model.Order;
+import jp.dip.komusubi.lunch.model.OrderLine;
+import jp.dip.komusubi.lunch.model.Product;
+import jp.dip.komusubi.lunch.model.Shop;
+import jp.dip.komusubi.lunch.model.User;
+import jp.dip.komusubi.lunch.module.Basket;
+import jp.dip.komusubi.lunch.module.event.EventBus;
+import jp.dip.komusubi.lunch.module.event.OrderEvent;
+import jp.dip.komusubi.lunch.module.event.OrderEvent.Type;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.komusubi.common.util.Resolver;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+
+/**
+ * shopping resource unit test.
+ * @author jun.ozeki
+ */
+public class ShoppingResourceTest {
+
+    @Mock private Authenticator auth;
+    @Mock private Shopping shopping;
+    @Mock private AccountService accountService;
+    @Mock private Resolver<Date> dateResolver;
+    private EventBus eventBus;
+    private ShoppingResource target;
+    private User member;
+    private Shop shop;
+    private Product bento;
+    private Product special;
+
+    @Before
+    public void before() {
+        MockitoAnnotations.initMocks(this);
+        eventBus = new EventBus(64, 10, 10);
+        target = new ShoppingResource(auth, shopping, accountService, dateResolver, eventBus);
+        member = new User(2).setGroup(new Group(10));
+        when(auth.verifyBearer("Bearer member")).thenReturn(member);
+        when(auth.verifyBearer("Bearer nogroup")).thenReturn(new User(3));
+        when(dateResolver.resolve()).thenReturn(new Date());
+        shop = new Shop("tamagoya").setName("tamagoya");
+        bento = new Product("p1").setShop(shop).setName("bento").setAmount(400);
+        special = new Product("p2").setShop(shop).setName("special").setAmount(500);
+    }
+
+    @Test
+    public void createOrderUnauthorized() {
+        try {
+            target.createOrder(null, Arrays.asList("p1"), "t1");
+            fail();
+        } catch (WebApplicationException e) {
+            assertEquals(401, e.getResponse().getStatus());
+            assertEquals("Bearer", e.getResponse().getMetadata().getFirst("WWW-Authenticate"));
+        }
+        verify(shopping, never()).order(any(Basket.class), anyString());
+    }
+
+    /**
+     * whole basket is rejected if a product is not orderable now.
+     */
+    @Test
+    public void createOrderConflict() {
+        Basket basket = basket(bento, special);
+        when(shopping.getOrderableProducts(any(Shop.class), any(Date.class))).thenReturn(Arrays.asList(bento));
+        try {
+            target.createOrder("Bearer member", Arrays.asList("p1", "p2:2"), "t1");
+            fail();
+        } catch (WebApplicationException e) {
+            assertEquals(409, e.getResponse().getStatus());
+        }
+        verify(basket).add("p2", 2);
+        verify(shopping, never()).order(any(Basket.class), anyString());
+    }
+
+    @Test
+    public void createOrder() {
+        Basket basket = basket(bento, special);
+        when(shopping.getOrderableProducts(any(Shop.class), any(Date.class))).thenReturn(Arrays.asList(bento, special));
+        List<Order> orders = basket.getOrders();
+        when(shopping.order(basket, "t1")).thenReturn(orders);
+        Response response = target.createOrder("Bearer member", Arrays.asList("p1", "p2"), "t1");
+        assertEquals(201, response.getStatus());
+        verify(shopping).order(basket, "t1");
+    }
+
+    @Test
+    public void createReceiptsUnauthorized() {
+        try {
+            target.createReceipts("Bearer unknown", 1, null, null);
+            fail();
+        } catch (WebApplicationException e) {
+            assertEquals(401, e.getResponse().getStatus());
+        }
+        verify(accountService, never()).receiveSummary(any(User.class), anyInt(), anyString());
+    }
+
+    /**
+     * user not in a group can not receive lunches.
+     */
+    @Test
+    public void createReceiptsForbidden() {
+        try {
+            target.createReceipts("Bearer nogroup", 1, null, null);
+            fail();
+        } catch (WebApplicationException e) {
+            assertEquals(403, e.getResponse().getStatus());
+        }
+        verify(accountService, never()).receiveSummary(any(User.class), anyInt(), anyString());
+        verify(accountService, never()).receiveOrders(any(User.class), anyCollectionOf(Integer.class), anyString());
+    }
+
+    @Test
+    public void createReceiptsBadRequest() {
+        try {
+            target.createReceipts("Bearer member", null, Collections.<Integer>emptyList(), null);
+            fail();
+        } catch (WebApplicationException e) {
+            assertEquals(400, e.getResponse().getStatus());
+        }
+    }
+
+    /**
+     * order of other user is not found.
+     */
+    @Test
+    public void cancelOrderNotFound() {
+        when(shopping.getOrder(5)).thenReturn(new Order(5).setUser(new User(3)));
+        for (int orderId: new int[]{ 5, 6 }) {
+            try {
+                target.cancelOrder("Bearer member", orderId);
+                fail();
+            } catch (WebApplicationException e) {
+                assertEquals(404, e.getResponse().getStatus());
+            }
+        }
+        verify(shopping, never()).cancel(any(Order.class));
+    }
+
+    @Test
+    public void cancelOrder() {
+        Order order = new Order(5).setUser(member);
+        when(shopping.getOrder(5)).thenReturn(order);
+        assertEquals(204, target.cancelOrder("Bearer member", 5).getStatus());
+        verify(shopping).cancel(order);
+    }
+
+    @Test
+    public void readEventsUnauthorized() {
+        try {
+            target.readEvents("Bearer unknown", 10, null);
+            fail();
+        } catch (WebApplicationException e) {
+            assertEquals(401, e.getResponse().getStatus());
+        }
+    }
+
+    /**
+     * events of other group are forbidden.
+     */
+    @Test
+    public void readEventsForbidden() {
+        try {
+            target.readEvents("Bearer member", 20, null);
+            fail();
+        } catch (WebApplicationException e) {
+            assertEquals(403, e.getResponse().getStatus());
+        }
+    }
+
+    /**
+     * no event until timeout, current sequence is returned to poll next.
+     */
+    @Test
+    public void readEventsTimeout() {
+        long sequence = eventBus.getSequence(10);
+        Response response = target.readEvents("Bearer member", 10, sequence);
+        assertEquals(200, response.getStatus());
+        assertEquals("{\"sequence\":" + sequence + ",\"reset\":false,\"events\":[]}", response.getEntity());
+    }
+
+    @Test
+    public void readEvents() {
+        long since = eventBus.getSequence(10);
+        eventBus.publish(new OrderEvent(Type.PLACED, 10, 1, 2, "tamagoya", 400, new Date()));
+        String entity = (String) target.readEvents("Bearer member", 10, since).getEntity();
+        assertTrue(entity, entity.startsWith("{\"sequence\":" + (since + 1) + ",\"reset\":false,\"events\":[{\"type\":\"PLACED\",\"orderId\":1,"));
+    }
+
+    /**
+     * poll over max waiters is rejected with 503 and retry after, not answered as timeout.
+     */
+    @Test
+    public void readEventsRejected() {
+        target = new ShoppingResource(auth, shopping, accountService, dateResolver, new EventBus(64, 10, 0));
+        try {
+            target.readEvents("Bearer member", 10, null);
+            fail();
+        } catch (WebApplicationException e) {
+            assertEquals(503, e.getResponse().getStatus());
+            assertEquals(5, e.getResponse().getMetadata().getFirst("Retry-After"));
+        }
+    }
+
+    /**
+     * basket of member with an order of the products, items are added to it by the resource.
+     */
+    private Basket basket(Product... products) {
+        Order order = new Order().setUser(member).setShop(shop).setDatetime(new Date());
+        for (Product product: products)
+            order.addLine(new OrderLine().setProduct(product).setQuantity(1));
+        List<Order> orders = Arrays.asList(order);
+        Basket basket = mock(Basket.class);
+        when(basket.getOrders()).thenReturn(orders);
+        when(basket.iterator()).thenReturn(orders.iterator());
+        when(shopping.getBasket(member)).thenReturn(basket);
+        return basket;
+    }
+}
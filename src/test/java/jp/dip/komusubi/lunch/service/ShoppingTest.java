@@ -18,26 +18,39 @@
  */
 package jp.dip.komusubi.lunch.service;
 
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
 import static org.mockito.Mockito.doNothing;
+import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Date;
 import java.util.List;
 
+import jp.dip.komusubi.lunch.DuplicateOrderException;
 import jp.dip.komusubi.lunch.model.Group;
 import jp.dip.komusubi.lunch.model.Order;
 import jp.dip.komusubi.lunch.model.OrderLine;
+import jp.dip.komusubi.lunch.model.OrderLine.OrderLineKey;
 import jp.dip.komusubi.lunch.model.Product;
 import jp.dip.komusubi.lunch.model.Shop;
 import jp.dip.komusubi.lunch.model.User;
 import jp.dip.komusubi.lunch.module.Basket;
+import jp.dip.komusubi.lunch.module.dao.DailyCounterDao;
 import jp.dip.komusubi.lunch.module.dao.OrderDao;
 import jp.dip.komusubi.lunch.module.dao.OrderLineDao;
 import jp.dip.komusubi.lunch.module.dao.ProductDao;
 import jp.dip.komusubi.lunch.module.dao.ShopDao;
+import jp.dip.komusubi.lunch.module.event.EventBus;
+import jp.dip.komusubi.lunch.module.event.OrderEvent;
+import jp.dip.komusubi.lunch.module.event.OrderEvent.Type;
 
 import org.apache.commons.lang3.time.DateUtils;
 import org.junit.Before;
@@ -45,6 +58,8 @@ import org.junit.Test;
 import org.komusubi.common.util.Resolver;
 import org.mockito.Mock;
 import org.mockito.MockitoAnnotations;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
 
 /**
  * @author jun.ozeki
@@ -54,6 +69,7 @@ public class ShoppingTest /* extends Shopping */ {
 
     @Mock private OrderDao orderDao;
     @Mock private OrderLineDao orderLineDao;
+    @Mock private DailyCounterDao dailyCounterDao;
     @Mock private ProductDao productDao;
     @Mock private ShopDao shopDao;
     @Mock private Resolver<Date> dateResolver;
@@ -67,7 +83,7 @@ public class ShoppingTest /* extends Shopping */ {
     }
     
     private void scenario() {
-        target = new Shopping(user, new Basket(), orderDao, orderLineDao, productDao, shopDao, dateResolver);
+        target = new Shopping(user, new Basket(), orderDao, orderLineDao, dailyCounterDao, productDao, shopDao, dateResolver, new EventBus());
     }
     
     @Test
@@ -107,31 +123,58 @@ public class ShoppingTest /* extends Shopping */ {
                                 .setQuantity(1)
                                 .setDatetime(orderDate);
         
-        List<Order> orders1 = new ArrayList<>();
+        List<Order> summaries = new ArrayList<>();
         List<Order> orders2 = new ArrayList<>();
-        Order order1 = new Order()
-                        .setGroup(group)
-                        .setSummary(false)
-                        .setCancel(false)
-                        .setDatetime(orderDate)
-                        .setUser(user);
-        order1.addLine(orderLine1);
-        orders1.add(order1);
+        Order summary1 = new Order()
+                        .setShop(shop1)
+                        .setSummary(true);
+        summary1.addLine(orderLine1);
+        summary1.addLine(orderLine2);
+        summaries.add(summary1);
         
         when(dateResolver.resolve()).thenReturn(orderDate);
-        when(orderDao.findByGroupIdAndDate(groupId, orderDate, false)).thenReturn(orders1);
         when(orderDao.findByGroupIdAndDate(groupId, orderDate, true)).thenReturn(orders2);
-        when(orderDao.persist(order1)).thenReturn(1);
+        when(orderDao.summarizeByGroupIdAndDate(groupId, orderDate)).thenReturn(summaries);
         
         scenario();
         target.order(group);
         
-        verify(orderDao).findByGroupIdAndDate(groupId, orderDate, false);
         verify(orderDao).findByGroupIdAndDate(groupId, orderDate, true);
-        order1.setSummary(true);
-        verify(orderDao, times(1)).persist(order1);
+        verify(orderDao).summarizeByGroupIdAndDate(groupId, orderDate);
+        verify(orderDao, times(1)).persistAll(summaries);
+        assertSame(group, summary1.getGroup());
+        assertSame(user, summary1.getUser());
+        assertEquals(orderDate, summary1.getDatetime());
+        assertEquals(400, summary1.getAmount());
     }
     
+    /**
+     * group order placed by other transaction, existing summaries are returned.
+     * @throws Exception
+     */
+    @Test
+    public void グループ注文競合() throws Exception {
+        Integer groupId = 10;
+        Group group = new Group(groupId);
+        user = new User(50);
+        Date orderDate = DateUtils.parseDate("2012/04/08 09:29:00", new String[]{"yyyy/MM/dd HH:mm:ss"});
+        List<Order> summaries = new ArrayList<>();
+        summaries.add(new Order().setShop(new Shop("shop1")).setSummary(true));
+        List<Order> exists = new ArrayList<>();
+        exists.add(new Order(1).setShop(new Shop("shop1")).setSummary(true));
+
+        when(dateResolver.resolve()).thenReturn(orderDate);
+        when(orderDao.findByGroupIdAndDate(groupId, orderDate, true))
+                .thenReturn(new ArrayList<Order>(), exists);
+        when(orderDao.summarizeByGroupIdAndDate(groupId, orderDate)).thenReturn(summaries);
+        when(orderDao.persistAll(summaries))
+                .thenThrow(new DuplicateOrderException("duplicate", null));
+
+        scenario();
+        assertSame(exists, target.order(group));
+        verify(orderDao, times(2)).findByGroupIdAndDate(groupId, orderDate, true);
+    }
+
     private Group getGroup() {
         return new Group()
                     .setCode("CDE")
@@ -197,4 +240,127 @@ public class ShoppingTest /* extends Shopping */ {
         verify(orderDao, times(1)).find(orderLine.getPrimaryKey().getOrderId());
         verify(orderDao, times(1)).update(order);
     }
+
+    /**
+     * cancel a order line, other lines of the order are available.
+     * @throws Exception
+     */
+    @Test
+    public void cancelOrderLineAvailable() throws Exception {
+        OrderLine orderLine1 = new OrderLine(new OrderLineKey(1, 1))
+                                    .setProduct(getProduct())
+                                    .setQuantity(1);
+        OrderLine orderLine2 = new OrderLine(new OrderLineKey(1, 2))
+                                    .setProduct(getProduct())
+                                    .setQuantity(2);
+        Order order = new Order(1)
+                            .setDatetime(new Date())
+                            .setShop(getShop())
+                            .setUser(getUser())
+                            .addLine(orderLine1)
+                            .addLine(orderLine2);
+
+        when(orderDao.find(1)).thenReturn(order);
+        scenario();
+        target.cancel(new OrderLine(new OrderLineKey(1, 2)));
+        assertFalse(order.isCancel());
+        assertFalse(orderLine1.isCancel());
+        assertTrue(orderLine2.isCancel());
+        verify(orderLineDao, times(1)).update(orderLine2);
+        verify(dailyCounterDao, times(1)).decrement(order, orderLine2);
+        verify(orderDao, never()).update(order);
+    }
+
+    /**
+     * placed, cancelled and summary closed orders are published to the group after commit.
+     * @throws Exception
+     */
+    @Test
+    public void publishAfterCommit() throws Exception {
+        EventBus eventBus = new EventBus(64, 10, 10);
+        user = new User(50).setGroup(getGroup());
+        Date now = new Date();
+        Basket basket = new Basket();
+        Order placed = new Order().setUser(user).setShop(getShop());
+        basket.getOrders().add(placed);
+        Order cancelled = new Order(2).setUser(user).setShop(getShop()).setAmount(400);
+        List<Order> summaries = new ArrayList<>();
+        summaries.add(new Order().setShop(getShop()).setSummary(true));
+        when(dateResolver.resolve()).thenReturn(now);
+        when(orderDao.persist(placed)).thenReturn(1);
+        when(orderDao.findByGroupIdAndDate(1, now, true)).thenReturn(new ArrayList<Order>());
+        when(orderDao.summarizeByGroupIdAndDate(1, now)).thenReturn(summaries);
+        when(orderDao.persistAll(summaries)).thenReturn(Arrays.asList(3));
+        target = new Shopping(user, basket, orderDao, orderLineDao, dailyCounterDao, productDao, shopDao, dateResolver, eventBus);
+        long since = eventBus.getSequence(1);
+
+        TransactionSynchronizationManager.initSynchronization();
+        try {
+            target.order(basket);
+            target.cancel(cancelled);
+            target.order(getGroup());
+            assertEquals(since, eventBus.getSequence(1));
+            for (TransactionSynchronization synchronization: TransactionSynchronizationManager.getSynchronizations())
+                synchronization.afterCommit();
+        } finally {
+            TransactionSynchronizationManager.clearSynchronization();
+        }
+        List<OrderEvent> events = eventBus.poll(1, since).getEvents();
+        assertEquals(3, events.size());
+        assertEquals(Type.PLACED, events.get(0).getType());
+        assertEquals(1, events.get(0).getOrderId());
+        assertEquals(Type.CANCELLED, events.get(1).getType());
+        assertEquals(2, events.get(1).getOrderId());
+        assertEquals(Type.SUMMARY_CLOSED, events.get(2).getType());
+        assertEquals(3, events.get(2).getOrderId());
+    }
+
+    /**
+     * order changes are not published when rolled back.
+     * @throws Exception
+     */
+    @Test
+    public void publishDiscardedOnRollback() throws Exception {
+        EventBus eventBus = new EventBus(64, 10, 10);
+        user = new User(50).setGroup(getGroup());
+        target = new Shopping(user, new Basket(), orderDao, orderLineDao, dailyCounterDao, productDao, shopDao, dateResolver, eventBus);
+        long since = eventBus.getSequence(1);
+
+        TransactionSynchronizationManager.initSynchronization();
+        try {
+            target.cancel(new Order(2).setUser(user).setShop(getShop()).setAmount(400));
+            for (TransactionSynchronization synchronization: TransactionSynchronizationManager.getSynchronizations())
+                synchronization.afterCompletion(TransactionSynchronization.STATUS_ROLLED_BACK);
+        } finally {
+            TransactionSynchronizationManager.clearSynchronization();
+        }
+        assertEquals(since, eventBus.getSequence(1));
+        assertEquals(0, eventBus.poll(1, since).getEvents().size());
+    }
+
+    /**
+     * product is orderable until last order of the day.
+     * @throws Exception
+     */
+    @Test
+    public void getOrderableProduct() throws Exception {
+        Shop shop = new Shop("shop1");
+        Product p1 = new Product("1").setShop(shop);
+        Product p2 = new Product("2").setShop(shop);
+        Date morning = DateUtils.parseDate("2013/08/05 10:00:00", new String[]{"yyyy/MM/dd HH:mm:ss"});
+        Date afternoon = DateUtils.parseDate("2013/08/05 13:30:00", new String[]{"yyyy/MM/dd HH:mm:ss"});
+        List<Product> products = new ArrayList<>();
+        products.add(p1);
+        when(productDao.find("1")).thenReturn(p1);
+        when(productDao.find("2")).thenReturn(p2);
+        when(productDao.findByShopIdAndFinishDatetime("shop1", morning)).thenReturn(products);
+        scenario();
+
+        when(dateResolver.resolve()).thenReturn(morning);
+        assertSame(p1, target.getOrderableProduct("1"));
+        assertNull(target.getOrderableProduct("2"));
+        assertNull(target.getOrderableProduct("unknown"));
+        when(dateResolver.resolve()).thenReturn(afternoon);
+        assertNull(target.getOrderableProduct("1"));
+    }
 }
@@ -0,0 +1,199 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package jp.dip.komusubi.lunch.wicket;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.io.File;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.apache.wicket.pageStore.IDataStore;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * off heap data store unit test.
+ * @author jun.ozeki
+ */
+public class OffHeapDataStoreTest {
+
+    private OffHeapDataStore target;
+    private SpillStore spillStore;
+
+    @Before
+    public void before() throws Exception {
+        File file = File.createTempFile("lunch-pages", ".map");
+        spillStore = new SpillStore();
+        target = new OffHeapDataStore(file, 100, 40, spillStore);
+    }
+
+    @After
+    public void after() {
+        target.destroy();
+    }
+
+    /**
+     * stored page is read from memory.
+     */
+    @Test
+    public void getData() {
+        target.storeData("s1", 1, bytes(10, 1));
+        assertArrayEquals(bytes(10, 1), target.getData("s1", 1));
+        assertNull(target.getData("s1", 2));
+        assertEquals(1, target.getHits());
+        assertEquals(1, target.getMisses());
+        assertEquals(10, target.getUsed());
+    }
+
+    /**
+     * page stored again replaces the previous one, even if it is the only page of the session.
+     */
+    @Test
+    public void storeSameId() {
+        target.storeData("s1", 1, bytes(10, 1));
+        target.storeData("s1", 1, bytes(10, 2));
+        assertArrayEquals(bytes(10, 2), target.getData("s1", 1));
+        assertEquals(1, target.getSessions());
+        assertEquals(10, target.getUsed());
+    }
+
+    /**
+     * ring comes around over the only page of the session to be stored.
+     */
+    @Test
+    public void evictOnlyPage() {
+        target.storeData("s1", 1, bytes(30, 1));
+        target.storeData("s2", 1, bytes(30, 2));
+        target.storeData("s3", 1, bytes(30, 3));
+        target.storeData("s1", 2, bytes(30, 4));
+        assertEquals(1, target.getEvictions());
+        assertArrayEquals(bytes(30, 1), spillStore.pages.get("s1:1"));
+        assertArrayEquals(bytes(30, 4), target.getData("s1", 2));
+        assertEquals(3, target.getSessions());
+        assertEquals(90, target.getUsed());
+    }
+
+    /**
+     * oldest pages of a session over quota are spilled.
+     */
+    @Test
+    public void sessionQuota() {
+        target.storeData("s1", 1, bytes(20, 1));
+        target.storeData("s1", 2, bytes(20, 2));
+        target.storeData("s1", 3, bytes(20, 3));
+        assertEquals(1, target.getSpills());
+        assertEquals(40, target.getUsed());
+        assertArrayEquals(bytes(20, 1), spillStore.pages.get("s1:1"));
+        // read from spill store.
+        assertArrayEquals(bytes(20, 1), target.getData("s1", 1));
+        assertEquals(1, target.getMisses());
+    }
+
+    /**
+     * ring comes around, the oldest pages of all sessions are evicted.
+     */
+    @Test
+    public void budget() {
+        for (int i = 0; i < 4; i++)
+            target.storeData("s" + i, 1, bytes(30, i));
+        assertEquals(1, target.getEvictions());
+        assertEquals(90, target.getUsed());
+        assertArrayEquals(bytes(30, 0), spillStore.pages.get("s0:1"));
+        assertArrayEquals(bytes(30, 3), target.getData("s3", 1));
+        assertArrayEquals(bytes(30, 1), target.getData("s1", 1));
+        assertEquals(2, target.getHits());
+    }
+
+    /**
+     * removed pages are not evicted.
+     */
+    @Test
+    public void removeData() {
+        target.storeData("s1", 1, bytes(30, 1));
+        target.storeData("s2", 1, bytes(30, 2));
+        target.removeData("s1");
+        target.storeData("s3", 1, bytes(30, 3));
+        target.storeData("s4", 1, bytes(30, 4));
+        assertEquals(0, target.getEvictions());
+        assertEquals(90, target.getUsed());
+        assertEquals(3, target.getSessions());
+    }
+
+    /**
+     * page larger than quota goes to spill store.
+     */
+    @Test
+    public void oversized() {
+        target.storeData("s1", 1, bytes(50, 1));
+        assertEquals(0, target.getUsed());
+        assertArrayEquals(bytes(50, 1), target.getData("s1", 1));
+    }
+
+    private byte[] bytes(int length, int value) {
+        byte[] bytes = new byte[length];
+        for (int i = 0; i < length; i++)
+            bytes[i] = (byte) value;
+        return bytes;
+    }
+
+    /**
+     * spill store in memory.
+     */
+    private static class SpillStore implements IDataStore {
+        private final Map<String, byte[]> pages = new HashMap<>();
+
+        @Override
+        public byte[] getData(String sessionId, int id) {
+            return pages.get(sessionId + ":" + id);
+        }
+
+        @Override
+        public void removeData(String sessionId, int id) {
+            pages.remove(sessionId + ":" + id);
+        }
+
+        @Override
+        public void removeData(String sessionId) {
+        }
+
+        @Override
+        public void storeData(String sessionId, int id, byte[] data) {
+            pages.put(sessionId + ":" + id, data);
+        }
+
+        @Override
+        public void destroy() {
+            pages.clear();
+        }
+
+        @Override
+        public boolean isReplicated() {
+            return false;
+        }
+
+        @Override
+        public boolean canBeAsynchronous() {
+            return false;
+        }
+    }
+}
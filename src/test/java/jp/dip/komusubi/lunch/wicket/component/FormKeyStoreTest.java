@@ -0,0 +1,113 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package jp.dip.komusubi.lunch.wicket.component;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.util.Date;
+
+import org.junit.Test;
+
+/**
+ * form key store unit test.
+ * @author jun.ozeki
+ */
+public class FormKeyStoreTest {
+
+    /**
+     * a key is removed only once.
+     * @throws Exception
+     */
+    @Test
+    public void removeOnce() throws Exception {
+        FormKeyStore target = new FormKeyStore();
+        FormKey key = new FormKey(1, "1", new Date());
+        target.add(key);
+        target.add(key);
+        assertEquals(1, target.size());
+        assertFalse(target.remove(new FormKey(1, "1", new Date(0))));
+        assertTrue(target.remove(key));
+        assertFalse(target.remove(key));
+    }
+
+    /**
+     * least recently used page is discarded over max size.
+     * @throws Exception
+     */
+    @Test
+    public void leastRecentlyUsed() throws Exception {
+        FormKeyStore target = new FormKeyStore(2, 0);
+        Date date = new Date();
+        FormKey key1 = new FormKey(1, "1", date);
+        FormKey key2 = new FormKey(2, "2", date);
+        FormKey key3 = new FormKey(3, "3", date);
+        target.add(key1);
+        target.add(key2);
+        target.add(key1);
+        target.add(key3);
+        assertEquals(2, target.size());
+        assertFalse(target.remove(key2));
+        assertTrue(target.remove(key1));
+        assertTrue(target.remove(key3));
+    }
+
+    /**
+     * key over max age is expired.
+     * @throws Exception
+     */
+    @Test
+    public void expired() throws Exception {
+        FormKeyStore target = new FormKeyStore(16, 1);
+        FormKey key = new FormKey(1, "1", new Date());
+        target.add(key);
+        Thread.sleep(10);
+        assertFalse(target.remove(key));
+        assertEquals(0, target.size());
+    }
+
+    /**
+     * keys are kept through serialization.
+     * @throws Exception
+     */
+    @Test
+    public void serialize() throws Exception {
+        FormKeyStore target = new FormKeyStore();
+        FormKey key1 = new FormKey(1, "1", new Date());
+        FormKey key2 = new FormKey(2, null, null);
+        target.add(key1);
+        target.add(key2);
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (ObjectOutputStream out = new ObjectOutputStream(bytes)) {
+            out.writeObject(target);
+        }
+        FormKeyStore actual;
+        try (ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(bytes.toByteArray()))) {
+            actual = (FormKeyStore) in.readObject();
+        }
+        assertEquals(2, actual.size());
+        assertTrue(actual.remove(key1));
+        assertTrue(actual.remove(key2));
+    }
+}
@@ -18,49 +18,94 @@
  */
 package jp.dip.komusubi.lunch.wicket.page;
 
-import javax.servlet.ServletContextEvent;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.mock;
 
-import jp.dip.komusubi.lunch.MockBootstrap;
-import jp.dip.komusubi.lunch.wicket.WicketApplication;
+import java.util.Calendar;
+import java.util.Date;
+
+import javax.inject.Provider;
+
+import jp.dip.komusubi.lunch.module.DefaultNonce;
+import jp.dip.komusubi.lunch.module.dao.GroupDao;
+import jp.dip.komusubi.lunch.module.dao.ShopDao;
+import jp.dip.komusubi.lunch.module.resolver.DateResolver;
+import jp.dip.komusubi.lunch.module.resolver.Resolvers.CalendarResolver;
+import jp.dip.komusubi.lunch.service.AccountService;
+import jp.dip.komusubi.lunch.service.Shopping;
+import jp.dip.komusubi.lunch.util.Nonce;
+import jp.dip.komusubi.lunch.wicket.WicketTesterResource;
 
-import org.apache.wicket.protocol.http.WebApplication;
-import org.apache.wicket.protocol.http.mock.MockServletContext;
 import org.apache.wicket.util.tester.WicketTester;
-import org.junit.After;
-import org.junit.Before;
-import org.junit.Ignore;
+import org.junit.Rule;
 import org.junit.Test;
+import org.komusubi.common.util.Resolver;
+
+import com.google.inject.AbstractModule;
+import com.google.inject.Guice;
+import com.google.inject.Injector;
+import com.google.inject.TypeLiteral;
+import com.google.inject.name.Names;
 
 /**
- *  
+ * home page unit test.
  * @author jun
  */
 public class HomeTest {
 
-//	@Rule
-//	public WicketTesterResource resource;
-	private WicketTester tester;
-	
-	@Before
-	public void before() {
-		WebApplication application = new WicketApplication();
-		MockServletContext servletContext = new MockServletContext(
-				application, "/src/main/webapp");
-		MockBootstrap boot = new MockBootstrap();
-		boot.contextInitialized(new ServletContextEvent(servletContext));
-		tester = new WicketTester(application);
-//		tester = resource.get();
-	}
+	// services are mocked, instances returned by provider are not injected by guice.
+	static Shopping shopping = mock(Shopping.class);
+	static AccountService account = mock(AccountService.class);
 
-	@After
-	public void after() {
-		tester.destroy();
-	}
-	
-	@Ignore
+	static Resolver<Injector> injectBuilder = new Resolver<Injector>() {
+
+		@Override
+		public Injector resolve() {
+			return Guice.createInjector(new AbstractModule() {
+
+				@Override
+				protected void configure() {
+					bind(new TypeLiteral<Resolver<Calendar>>(){ })
+						.annotatedWith(Names.named("calendar")).toInstance(new CalendarResolver());
+					bind(new TypeLiteral<Resolver<Date>>(){ })
+						.annotatedWith(Names.named("date")).toInstance(new DateResolver());
+					bind(Nonce.class).to(DefaultNonce.class);
+					bind(GroupDao.class).toInstance(mock(GroupDao.class));
+					bind(ShopDao.class).toInstance(mock(ShopDao.class));
+					bind(Shopping.class).toProvider(new Provider<Shopping>() {
+						@Override
+						public Shopping get() {
+							return shopping;
+						}
+					});
+					bind(AccountService.class).toProvider(new Provider<AccountService>() {
+						@Override
+						public AccountService get() {
+							return account;
+						}
+					});
+				}
+			});
+		}
+
+		@Override
+		public Injector resolve(Injector injector) {
+			return injector;
+		}
+	};
+
+	@Rule public WicketTesterResource resource = new WicketTesterResource(injectBuilder);
+
+	/**
+	 * home page of anonymous user is stateless, session is not bound by rendering it.
+	 */
 	@Test
-	public void test() {
+	public void statelessForAnonymous() {
+		WicketTester tester = resource.getTester();
 		tester.startPage(Home.class);
+		tester.assertRenderedPage(Home.class);
+		assertTrue(tester.getLastRenderedPage().isPageStateless());
+		assertTrue(tester.getSession().isTemporary());
+		assertTrue(tester.getHttpSession().isTemporary());
 	}
-
 }
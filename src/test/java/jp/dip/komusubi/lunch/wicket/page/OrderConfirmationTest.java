@@ -0,0 +1,73 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.    
+ */
+package jp.dip.komusubi.lunch.wicket.page;
+
+import static org.mockito.Mockito.when;
+
+import jp.dip.komusubi.lunch.model.Product;
+import jp.dip.komusubi.lunch.model.Shop;
+import jp.dip.komusubi.lunch.wicket.WicketTesterResource;
+import jp.dip.komusubi.lunch.wicket.panel.ChoiceLunch;
+
+import org.apache.wicket.request.mapper.parameter.PageParameters;
+import org.apache.wicket.util.tester.WicketTester;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.mockito.Mockito;
+
+/**
+ * order confirmation page unit test, bookmarkable link from stateless home page.
+ * @author jun
+ */
+public class OrderConfirmationTest {
+
+	@Rule public WicketTesterResource resource = new WicketTesterResource(HomeTest.injectBuilder);
+
+	@Before
+	public void before() {
+		Mockito.reset(HomeTest.shopping);
+	}
+
+	/**
+	 * product not orderable now is sent to home page.
+	 */
+	@Test
+	public void notOrderableToHome() {
+		when(HomeTest.shopping.getOrderableProduct("bento-1")).thenReturn(null);
+		WicketTester tester = resource.getTester();
+		tester.startPage(OrderConfirmation.class, new PageParameters().add(ChoiceLunch.PRODUCT_PARAMETER, "bento-1"));
+		tester.assertRenderedPage(Home.class);
+	}
+
+	/**
+	 * anonymous user is sent to login page.
+	 */
+	@Test
+	public void anonymousToLogin() {
+		Product product = new Product("bento-1")
+								.setName("bento")
+								.setAmount(500)
+								.setShop(new Shop("bento"));
+		when(HomeTest.shopping.getOrderableProduct("bento-1")).thenReturn(product);
+		WicketTester tester = resource.getTester();
+		tester.startPage(OrderConfirmation.class, new PageParameters().add(ChoiceLunch.PRODUCT_PARAMETER, "bento-1"));
+		tester.assertRenderedPage(Login.class);
+	}
+}
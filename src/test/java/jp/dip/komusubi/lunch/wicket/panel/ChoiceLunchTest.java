@@ -34,6 +34,7 @@ import jp.dip.komusubi.lunch.module.dao.MockOrderDao;
 import jp.dip.komusubi.lunch.module.dao.MockProductDao;
 import jp.dip.komusubi.lunch.module.dao.MockShopDao;
 import jp.dip.komusubi.lunch.module.dao.OrderDao;
+import jp.dip.komusubi.lunch.module.dao.ProductBatchDao;
 import jp.dip.komusubi.lunch.module.dao.ProductDao;
 import jp.dip.komusubi.lunch.module.dao.ShopDao;
 import jp.dip.komusubi.lunch.module.resolver.DateResolver;
@@ -83,6 +84,7 @@ public class ChoiceLunchTest {
 					bind(new TypeLiteral<Resolver<Date>>(){ })
 						.annotatedWith(Names.named("date")).toInstance(new DateResolver());
 					bind(ProductDao.class).toProvider(ProductDaoProvider.class);
+					bind(ProductBatchDao.class).toProvider(ProductDaoProvider.class);
 					bind(ShopDao.class).toProvider(ShopDaoProvider.class);
 					bind(OrderDao.class).to(MockOrderDao.class);
 					bind(Shopping.class);
@@ -97,10 +99,10 @@ public class ChoiceLunchTest {
 		}
 	};
 	
-	private static class ProductDaoProvider implements Provider<ProductDao> {
+	private static class ProductDaoProvider implements Provider<ProductBatchDao> {
 
 		@Override
-		public ProductDao get() {
+		public ProductBatchDao get() {
 			return newProductDao();
 		}
 		
@@ -112,7 +114,7 @@ public class ChoiceLunchTest {
 		}
 	}
 	
-	private static ProductDao newProductDao() {
+	private static ProductBatchDao newProductDao() {
 		return new MockProductDao() {
 			@Override
 			protected List<Product> getProductsAll() {